@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timing precision of the schedule: the sample time of a call is the interval between two operations (1 / rate per
+ * worker), its spread and the 'lateBy' counters show how far the workers wake up after the intended start time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThroughputControllerBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int throughputPerWorker;
+
+    private ThroughputController throughputController;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class WakeUpLag {
+        public long operations;
+        public long lateByMoreThan10Micros;
+        public long lateByMoreThan100Micros;
+        public long totalLagInNanos;
+
+        public double meanLagInMicros() {
+            return operations == 0 ? 0 : totalLagInNanos / 1000.0 / operations;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        throughputController = ThroughputController.getInstance(throughputPerWorker);
+        throughputController.markCurrentTimeAsOperationStartTime();
+    }
+
+    @Benchmark
+    public long blockUntilIntendedStartTimeOfNextOperation(WakeUpLag wakeUpLag) {
+        final long intendedStartTime = throughputController.blockUntilIntendedStartTimeOfNextOperation();
+        final long lagInNanos = System.nanoTime() - intendedStartTime;
+        wakeUpLag.operations++;
+        wakeUpLag.totalLagInNanos += lagInNanos;
+        if (lagInNanos > 10_000) wakeUpLag.lateByMoreThan10Micros++;
+        if (lagInNanos > 100_000) wakeUpLag.lateByMoreThan100Micros++;
+        return intendedStartTime;
+    }
+}
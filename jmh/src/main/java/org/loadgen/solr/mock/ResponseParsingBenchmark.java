@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.mock;
+
+import org.apache.solr.client.solrj.ResponseParser;
+import org.apache.solr.client.solrj.impl.BinaryResponseParser;
+import org.apache.solr.client.solrj.response.DelegationTokenResponse;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.util.NamedList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client side parsing of a '/select' response: javabin (the default of SolrJ) into a QueryResponse, versus JSON with
+ * the JSON map parser of SolrJ. The payloads are the ones of the {@link MockSolrServer}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ResponseParsingBenchmark {
+
+    @Param({"10", "100"})
+    public int docsPerResponse;
+
+    @Param({"100", "1000"})
+    public int fieldSizeInBytes;
+
+    private byte[] javabinResponse;
+    private byte[] jsonResponse;
+
+    private final ResponseParser javabinResponseParser = new BinaryResponseParser();
+    private final ResponseParser jsonResponseParser = new DelegationTokenResponse.JsonMapResponseParser();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final MockSolrServer mockSolrServer = new MockSolrServer(0).setResponseSize(100_000, docsPerResponse, fieldSizeInBytes);
+        javabinResponse = mockSolrServer.getSelectResponse("javabin", 3);
+        jsonResponse = mockSolrServer.getSelectResponse("json", 3);
+    }
+
+    @Benchmark
+    public long parseJavabin() {
+        final NamedList<Object> namedList = javabinResponseParser.processResponse(new ByteArrayInputStream(javabinResponse), null);
+        return new QueryResponse(namedList, null).getResults().getNumFound();
+    }
+
+    @Benchmark
+    public Object parseJson() {
+        final NamedList<Object> namedList = jsonResponseParser.processResponse(new ByteArrayInputStream(jsonResponse), "UTF-8");
+        return namedList.get("response");
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.select;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query selection under contention (one QueryHandler shared by all the workers of a load generator) and the building
+ * and encoding of the SolrQuery, as done by SelectQueryWorker for every request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryHandlerBenchmark {
+
+    // relative to the working directory, the default assumes 'jmh/' (run with -p queryFiles=... otherwise)
+    @Param({"../QueryFiles/10000/TEXT_FIELD.txt ../QueryFiles/10000/TITLE_FUZZY.txt ../QueryFiles/10000/USERNAME_FIELD.txt ../QueryFiles/10000/TIMESTAMP_RANGE.txt"})
+    public String queryFiles;
+
+    private QueryHandler queryHandler;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        queryHandler = new QueryHandler();
+        for (String queryFile : queryFiles.split("\\s+")) {
+            queryHandler.registerQueryFile(new File(queryFile), 10000);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String getQuery() {
+        return queryHandler.getQuery();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String getQueryContended() {
+        return queryHandler.getQuery();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String buildAndEncodeSolrQuery() {
+        final SolrQuery solrQuery = new SolrQuery();
+        solrQuery.setStart(0);
+        solrQuery.setRows(10);
+        solrQuery.setFields("title", "username", "sha1", "timestamp", "id");
+        solrQuery.setQuery(queryHandler.getQuery());
+        solrQuery.setFilterQueries(queryHandler.getQuery(QueryHandler.SolrField.USERNAME, QueryHandler.QueryType.FIELD));
+        solrQuery.addOrUpdateSort(QueryHandler.SolrField.TIMESTAMP.name().toLowerCase(), SolrQuery.ORDER.desc);
+        return solrQuery.toQueryString();
+    }
+}
@@ -0,0 +1,33 @@
+#!/usr/bin/env bash
+# Runs a distributed benchmark on the local host: 1 coordinator + NUM_AGENTS agent JVMs talking over localhost
+#   NUM_AGENTS=3 CONFIG=test-config.yaml bash scripts/distributed-local.sh
+
+SCRIPT_DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" >/dev/null 2>&1 && pwd )"
+source ${SCRIPT_DIR}/utils.sh
+
+NUM_AGENTS=${NUM_AGENTS:-2}
+CONFIG=${CONFIG:-${SCRIPT_DIR}/../test-config.yaml}
+COORDINATOR_PORT=$(grep -E '^coordinatorPort:' ${CONFIG} | awk '{print $2}')
+COORDINATOR_PORT=${COORDINATOR_PORT:-7777}
+JAR=${JAR:-${SCRIPT_DIR}/../target/solr-benchmark-0.0.2-SNAPSHOT.jar}
+LOG_DIR=${LOG_DIR:-$(pwd)/distributed-$(date +"%d-%m-%Y_%T")}
+JAVA=${JAVA_HOME:+${JAVA_HOME}/bin/}java
+
+mkdir -p ${LOG_DIR}
+log "Starting coordinator for ${NUM_AGENTS} agent(s) on port ${COORDINATOR_PORT}, logs in ${LOG_DIR}"
+${JAVA} -DlogDir=${LOG_DIR} -DqueryType=${QUERY_TYPE} -cp ${JAR} org.bench.solr.Coordinator ${CONFIG} ${NUM_AGENTS} \
+    > ${LOG_DIR}/coordinator.log 2>&1 &
+COORDINATOR_PID=$!
+sleep 2
+
+AGENT_PIDS=()
+for (( i=0; i<${NUM_AGENTS}; i++ ));do
+    mkdir -p ${LOG_DIR}/agent-${i}
+    ${JAVA} -DlogDir=${LOG_DIR}/agent-${i} -DqueryType=${QUERY_TYPE} -cp ${JAR} org.bench.solr.Agent localhost:${COORDINATOR_PORT} \
+        > ${LOG_DIR}/agent-${i}/agent.log 2>&1 &
+    AGENT_PIDS+=($!)
+done
+
+wait ${AGENT_PIDS[@]}
+wait ${COORDINATOR_PID}
+log "Done. Merged report : ${LOG_DIR}/benchmark-report.json"
@@ -144,17 +144,28 @@ uploadWikiDump() {
 
     setupSchema
 
-    log_wrap "Downloading wiki.json (This will take some time. Please wait)"
-    COMMAND="[[ ! -f wiki.json ]] && (wget -q ${WIKI_DUMP_URL} -O wiki.json.gz;gzip -d wiki.json.gz) || echo \"wiki.json already exists\""
+    local DUMP_FILE=wiki.json.gz
+    if [[ -n "${SYNTHETIC_CORPUS_SIZE_IN_GB}" ]]; then
+        # A synthetic corpus instead of the wiki dump, with its own query files in place of the downloaded ones
+        DUMP_FILE=wiki.synthetic.json.gz
+        log_wrap "Generating a ${SYNTHETIC_CORPUS_SIZE_IN_GB}GB synthetic corpus and its query files"
+        COMMAND="/home/${AWS_USER}/${ZING}/bin/java \
+        -DsizeInGB=${SYNTHETIC_CORPUS_SIZE_IN_GB} \
+        -cp /home/${AWS_USER}/${SOLR_BENCHMARK_JAR} \
+        org.bench.solr.GenerateCorpus ${DUMP_FILE} QueryFiles/10000"
+    else
+        log_wrap "Downloading wiki.json.gz (This will take some time. Please wait)"
+        COMMAND="[[ ! -f wiki.json.gz ]] && wget -q ${WIKI_DUMP_URL} -O wiki.json.gz || echo \"wiki.json.gz already exists\""
+    fi
     runCommandOnClientNode "${COMMAND}"
 
-    log_wrap "Indexing wiki.json into Solr"
+    log_wrap "Indexing ${DUMP_FILE} into Solr"
     COMMAND="/home/${AWS_USER}/${ZING}/bin/java \
     -Xmx10g \
     -Dhp=zoo-node-1:2181,zoo-node-2:2181,zoo-node-3:2181 \
     -Dt=100 \
     -cp /home/${AWS_USER}/${SOLR_BENCHMARK_JAR} \
-    Upload wiki.json"
+    Upload ${DUMP_FILE}"
 
     runCommandOnClientNode "${COMMAND}"
 
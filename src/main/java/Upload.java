@@ -31,121 +31,115 @@
  */
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.invoke.MethodHandles;
-import java.util.Map;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutionException;
 
-import org.apache.solr.client.solrj.SolrClient;
-import org.apache.solr.client.solrj.SolrRequest.METHOD;
 import org.apache.solr.client.solrj.SolrServerException;
-import org.apache.solr.client.solrj.impl.ConcurrentUpdateHttp2SolrClient;
 import org.apache.solr.client.solrj.impl.Http2SolrClient;
-import org.apache.solr.client.solrj.request.GenericSolrRequest;
-import org.apache.solr.common.SolrInputDocument;
-import org.apache.solr.common.util.NamedList;
+import org.loadgen.solr.upload.CommitPolicy;
+import org.loadgen.solr.upload.IndexSizePoller;
+import org.loadgen.solr.upload.IndexingMetrics;
+import org.loadgen.solr.upload.UploadCheckpoint;
+import org.loadgen.solr.upload.UploadInput;
+import org.loadgen.solr.upload.UploadPipeline;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonStreamParser;
-
 /**
  * @author deepakr
  */
 public class Upload {
     private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
-    
-    private static final Gson gson = new GsonBuilder().disableJdkUnsafe().create();
-    private static InputStream inputStream;
-    private static JsonStreamParser jsonStreamParser;
 
     private static final String solrCollection = System.getProperty("c", "test");
     private static final String hostnamePortList = System.getProperty("hp", "localhost:8983");
     private static final long maxSize = Long.getLong("sz", 5L * 1024L * 1024L * 1024L);
-    private static final int NUM_OF_THREADS = Integer.getInteger("t", 5);
+    private static final int NUM_OF_THREADS = Integer.getInteger("t", 5); // sender threads
+    private static final int NUM_OF_PARSER_THREADS = Integer.getInteger("p", Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    private static final int BATCH_SIZE = Integer.getInteger("b", 500);
+    private static final int READ_BUFFER_SIZE = Integer.getInteger("readBufferSizeInBytes", 4 << 20);
+    private static final int WARMUP_TIME = Integer.getInteger("warmupTimeInSec", 0);
+    private static final int MEASUREMENT_TIME = Integer.getInteger("measurementTimeInSec", 0); // 0 = whole input
+    // Commit policy: none, commit_within, soft or hard (every COMMIT_EVERY_DOCS and/or COMMIT_EVERY_BYTES, 0 = not used)
+    private static final String COMMIT_POLICY = System.getProperty("commitPolicy", "hard");
+    private static final int COMMIT_WITHIN = Integer.getInteger("commitWithinInMillis", 15_000);
+    private static final long SOFT_COMMIT_INTERVAL = Long.getLong("softCommitIntervalInMillis", 1_000);
+    private static final long COMMIT_EVERY_DOCS = Long.getLong("commitEveryDocs", 10_000);
+    private static final long COMMIT_EVERY_BYTES = Long.getLong("commitEveryBytes", 0);
+    private static final double MERGE_STALL_FACTOR = Double.parseDouble(System.getProperty("mergeStallFactor", "10"));
+    // Checkpoint written after each hard commit (default: next to the input); resume = continue from it
+    private static final String CHECKPOINT_FILE = System.getProperty("checkpointFile");
+    private static final boolean RESUME = Boolean.getBoolean("resume");
+    // Uncompressed newline-delimited input only: N byte ranges read (mmap), parsed and sent in parallel, 0 = pipeline
+    private static final int PARTITIONS = Integer.getInteger("partitions", 0);
 
-    public static void main(String[] args) throws IOException, SolrServerException, InterruptedException {
+    public static void main(String[] args) throws IOException, SolrServerException, InterruptedException, ExecutionException {
         if (args.length != 1) {
-            log.error("First argument must be json file to be indexed in Solr");
+            log.error("First argument must be json file (or .json.gz / .json.zst) to be indexed in Solr");
             System.exit(3);
         }
         final File inputFile = new File(args[0]);
-        inputStream = new FileInputStream(inputFile);
-        jsonStreamParser = new JsonStreamParser(new InputStreamReader(inputStream));
+        final File checkpointFile = new File(CHECKPOINT_FILE != null ? CHECKPOINT_FILE : inputFile.getPath() + ".checkpoint");
+        final UploadCheckpoint checkpoint = RESUME ? UploadCheckpoint.read(checkpointFile) : null;
+        if (RESUME && checkpoint == null) {
+            log.info("No checkpoint found (" + checkpointFile + "), starting from the beginning of the input");
+        }
+        if (PARTITIONS > 0 && (UploadInput.getCompression(inputFile) != UploadInput.Compression.NONE || RESUME)) {
+            log.error("-Dpartitions needs an uncompressed newline-delimited json file, and does not support -Dresume");
+            System.exit(3);
+        }
+        if (checkpoint != null && !checkpoint.isFor(inputFile)) {
+            log.error("The checkpoint " + checkpointFile + " was written for another input: " + checkpoint.inputFile
+                    + " (" + checkpoint.inputLength + " bytes)");
+            System.exit(3);
+        }
 
         try (final var solrClient = new Http2SolrClient
             .Builder("http://" + hostnamePortList + "/solr/" + solrCollection)
             .build();
-        final var bulkClient = new ConcurrentUpdateHttp2SolrClient
-            .Builder("http://" + hostnamePortList + "/solr/" + solrCollection, solrClient)
-            .withThreadCount(NUM_OF_THREADS)
-            .build()) {
-          log.info("Delete all documents and committing empty index...");
-          bulkClient.deleteByQuery("*:*");
-          bulkClient.optimize();
-          bulkClient.commit();
+        final UploadInput uploadInput = PARTITIONS > 0 ? null : UploadInput.open(inputFile, READ_BUFFER_SIZE, checkpoint)) {
+          if (checkpoint == null) {
+            log.info("Delete all documents and committing empty index...");
+            solrClient.deleteByQuery("*:*");
+            solrClient.optimize();
+            solrClient.commit();
+          } else {
+            log.info("Resuming from the checkpoint: " + checkpoint);
+          }
           log.info("Start indexing...");
-          SolrInputDocument solrInputDocument;
-          int count = 0;
-          while ((solrInputDocument = getMeTheNextSolrInputDoc()) != null) {
-              try {
-                  bulkClient.add(solrInputDocument);
-                  count++;
-                  if (count % 10_000 == 0) {
-                    bulkClient.blockUntilFinished();
-                    bulkClient.commit();
-                    log.info("Number of docs indexed so far : " + count + " (out of ~12.8M docs)");
-                    long size = getIndexSize(solrClient);
-                    log.info("Size of index in bytes so far : " + size);
-                    if (size > maxSize) {
-                      log.info("Size exceeded 5 GiB, stopping indexing after " + count + " documents.");
-                      break;
-                    }
-                  }
-              } catch (SolrServerException | IOException e) {
-                  log.info("Error while indexin doc: " + e);
-              }
+          final UploadPipeline uploadPipeline = new UploadPipeline(solrClient)
+              .setNumberOfParserThreads(NUM_OF_PARSER_THREADS)
+              .setNumberOfSenderThreads(NUM_OF_THREADS)
+              .setBatchSize(BATCH_SIZE)
+              .setMaxIndexSizeInBytes(maxSize)
+              .setCommitPolicy(CommitPolicy.fromName(COMMIT_POLICY)
+                  .setCommitWithinInMillis(COMMIT_WITHIN)
+                  .setSoftCommitIntervalInMillis(SOFT_COMMIT_INTERVAL)
+                  .setCommitEveryDocs(COMMIT_EVERY_DOCS)
+                  .setCommitEveryBytes(COMMIT_EVERY_BYTES))
+              .setReadBufferSizeInBytes(READ_BUFFER_SIZE)
+              .setIndexingMetrics(new IndexingMetrics()
+                  .setWarmupTimeInSec(WARMUP_TIME)
+                  .setMeasurementTimeInSec(MEASUREMENT_TIME)
+                  .setMergeStallFactor(MERGE_STALL_FACTOR));
+          if (PARTITIONS > 0) {
+            uploadPipeline.runPartitioned(inputFile, PARTITIONS);
+          } else {
+            uploadPipeline.setCheckpoint(checkpointFile, checkpoint).run(uploadInput);
           }
           log.info("Indexing done. Optimizing to one segment and committing...");
-          bulkClient.optimize();
-          bulkClient.commit();
-          long finalSize = getIndexSize(solrClient);
+          solrClient.optimize();
+          solrClient.commit();
+          if (uploadPipeline.isComplete()) {
+            Files.deleteIfExists(checkpointFile.toPath());
+          } else if (PARTITIONS == 0) {
+            uploadPipeline.writeCheckpoint();
+            log.info("The input was not indexed to its end (or a batch failed), the upload can be resumed with -Dresume=true");
+          }
+          long finalSize = IndexSizePoller.getIndexSize(solrClient);
           log.info("Index created. Final index size in bytes: " + finalSize);
         }
     }
-
-    @SuppressWarnings("unchecked")
-    private static Map<String, String> getMeTheNextJsonDoc() {
-        while (jsonStreamParser.hasNext()) {
-            JsonElement e = jsonStreamParser.next();
-            if (e.isJsonObject()) {
-                return gson.fromJson(e, Map.class);
-            }
-        }
-        return null;
-    }
-
-    private static SolrInputDocument getMeTheNextSolrInputDoc() {
-        Map<String, String> jsonDoc = getMeTheNextJsonDoc();
-        if (jsonDoc == null) return null;
-
-        SolrInputDocument solrInputDocument = new SolrInputDocument();
-        for (String key : jsonDoc.keySet()) {
-            solrInputDocument.addField(key, jsonDoc.get(key));
-        }
-        return solrInputDocument;
-    }
-    
-    @SuppressWarnings("unchecked")
-    private static long getIndexSize(SolrClient solrClient) throws IOException, SolrServerException {
-      GenericSolrRequest admin = new GenericSolrRequest(METHOD.GET, "/admin/segments", null);
-      var result = solrClient.request(admin);
-      var segments = (NamedList<Object>) result.get("segments");
-      return segments.asMap().values().stream().mapToLong(v -> (((NamedList<Number>) v).get("sizeInBytes")).longValue()).sum();
-    }
 }
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.bench.solr;
+
+import org.HdrHistogram.Histogram;
+import org.loadgen.solr.BenchConfig;
+import org.loadgen.solr.GeneratorConfig;
+import org.loadgen.solr.PhaseConfig;
+import org.loadgen.solr.PhaseMetrics;
+import org.loadgen.solr.distributed.AgentProtocol;
+import org.loadgen.solr.distributed.DistributedRunMerger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.Constructor;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandles;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Load generator driven by a {@link Coordinator}: gets the shared config and the start time from it, runs its share of
+ * the target rates and streams the interval histograms back.
+ */
+public class Agent {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            throw new Exception("USAGE: java " + Agent.class.getName() + " coordinator-host:port");
+        }
+        final String[] hostAndPort = args[0].split(":");
+
+        try (Socket socket = new Socket(hostAndPort[0], Integer.parseInt(hostAndPort[1]));
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+
+            writer.println(AgentProtocol.HELLO + " " + InetAddress.getLocalHost().getHostName());
+
+            final String[] config = readMessage(reader, socket, AgentProtocol.CONFIG, 2);
+            final String[] start = readMessage(reader, socket, AgentProtocol.START, 4);
+            final BenchConfig benchConfig = new Yaml(new Constructor(BenchConfig.class)).load(AgentProtocol.decodeText(config[1]));
+            final int agentIndex = Integer.parseInt(start[1]);
+            final int agentCount = Integer.parseInt(start[2]);
+            final long startEpochMillis = Long.parseLong(start[3]);
+
+            applyShareOfTargetRates(benchConfig, agentIndex, agentCount);
+            benchConfig.recordingLatency = true; // interval histograms are needed by the coordinator
+            log.info(String.format("Agent %d/%d : starting at %d with target rate %d (select %d)", agentIndex + 1, agentCount,
+                    startEpochMillis, benchConfig.targetRate, benchConfig.targetRateForSelectOp));
+
+            final SolrBenchmark solrBenchmark = new SolrBenchmark(benchConfig);
+            solrBenchmark.setIntervalHistogramListener((operationName, clientSideViewServiceTime, serverSideViewServiceTime,
+                                                        clientSideViewResponseTime) -> {
+                final Histogram reference = clientSideViewResponseTime;
+                synchronized (writer) {
+                    writer.println(AgentProtocol.INTERVAL + " " + operationName + " " +
+                            reference.getStartTimeStamp() + " " + reference.getEndTimeStamp() + " " +
+                            DistributedRunMerger.encodeHistogram(clientSideViewServiceTime) + " " +
+                            DistributedRunMerger.encodeHistogram(serverSideViewServiceTime) + " " +
+                            DistributedRunMerger.encodeHistogram(clientSideViewResponseTime));
+                }
+            });
+
+            Thread.sleep(Math.max(0, startEpochMillis - System.currentTimeMillis()));
+
+            // same phases as a standalone SolrBenchmark, each one reported as soon as it is done
+            int phasesDone = 0;
+            if (solrBenchmark.hasScenario()) {
+                for (PhaseConfig phaseConfig : benchConfig.scenario) {
+                    solrBenchmark.runPhase(phaseConfig);
+                    phasesDone = sendNewPhasesDone(writer, solrBenchmark, phasesDone);
+                }
+            } else {
+                if (!benchConfig.continuousRun) {
+                    solrBenchmark.warmup();
+                    phasesDone = sendNewPhasesDone(writer, solrBenchmark, phasesDone);
+                }
+                solrBenchmark.run();
+                phasesDone = sendNewPhasesDone(writer, solrBenchmark, phasesDone);
+            }
+            solrBenchmark.writeReport();
+
+            synchronized (writer) {
+                writer.println(AgentProtocol.BYE);
+            }
+        }
+    }
+
+    private static String[] readMessage(BufferedReader reader, Socket socket, String type, int numberOfTokens) throws Exception {
+        final String line = reader.readLine();
+        if (line == null) {
+            throw new Exception("Coordinator " + socket.getRemoteSocketAddress() + " disconnected before sending " + type);
+        }
+        final String[] tokens = line.split(" ");
+        if (tokens.length < numberOfTokens || !type.equals(tokens[0])) {
+            throw new Exception("Unexpected message from coordinator " + socket.getRemoteSocketAddress() + " (expected " + type + ") : " + line);
+        }
+        return tokens;
+    }
+
+    private static void applyShareOfTargetRates(BenchConfig benchConfig, int agentIndex, int agentCount) {
+        benchConfig.targetRate                    = AgentProtocol.shareOf(benchConfig.targetRate, agentIndex, agentCount);
+        benchConfig.targetRateForSelectOpAtWarmup = AgentProtocol.shareOf(benchConfig.targetRateForSelectOpAtWarmup, agentIndex, agentCount);
+        benchConfig.targetRateForSelectOp         = AgentProtocol.shareOf(benchConfig.targetRateForSelectOp, agentIndex, agentCount);
+        benchConfig.targetRateForUpdateOpAtWarmup = AgentProtocol.shareOf(benchConfig.targetRateForUpdateOpAtWarmup, agentIndex, agentCount);
+        benchConfig.targetRateForUpdateOp         = AgentProtocol.shareOf(benchConfig.targetRateForUpdateOp, agentIndex, agentCount);
+        benchConfig.targetRateForRealTimeGetOpAtWarmup = AgentProtocol.shareOf(benchConfig.targetRateForRealTimeGetOpAtWarmup, agentIndex, agentCount);
+        benchConfig.targetRateForRealTimeGetOp         = AgentProtocol.shareOf(benchConfig.targetRateForRealTimeGetOp, agentIndex, agentCount);
+        benchConfig.freshnessProbeRate                 = benchConfig.freshnessProbeRate / agentCount;
+        if (benchConfig.scenario != null) {
+            for (PhaseConfig phaseConfig : benchConfig.scenario) {
+                for (GeneratorConfig generatorConfig : phaseConfig.generators) {
+                    generatorConfig.targetRate = AgentProtocol.shareOf(generatorConfig.targetRate, agentIndex, agentCount);
+                }
+            }
+        }
+    }
+
+    /** Sends a DONE for every phase of the report after the first 'phasesDone' ones, returns the number of phases done */
+    private static int sendNewPhasesDone(PrintWriter writer, SolrBenchmark solrBenchmark, int phasesDone) {
+        final List<String> phaseNames = solrBenchmark.getBenchmarkReport().getPhaseNames();
+        for (String phaseName : phaseNames.subList(phasesDone, phaseNames.size())) {
+            sendPhaseDone(writer, solrBenchmark, phaseName);
+        }
+        return phaseNames.size();
+    }
+
+    private static void sendPhaseDone(PrintWriter writer, SolrBenchmark solrBenchmark, String phaseName) {
+        final PhaseMetrics phaseMetrics = solrBenchmark.getBenchmarkReport().getPhase(phaseName);
+
+        final boolean saturated = phaseMetrics.getClientHealthMonitor() != null && phaseMetrics.getClientHealthMonitor().isClientSaturated();
+        synchronized (writer) {
+            writer.println(AgentProtocol.DONE + " " + phaseName + " " + phaseMetrics.getOperationName() + " " +
+                    phaseMetrics.getTargetThroughput() + " " + phaseMetrics.getStartTimeInSec() + " " +
+                    phaseMetrics.getEndTimeInSec() + " " + phaseMetrics.getTotalRequestsSent() + " " +
+                    phaseMetrics.getTotalErrors() + " " + saturated + " " + phaseMetrics.getMeasuredWindowInSec() + " " +
+                    phaseMetrics.getRequestsNotSentBeforeDeadline() + " " +
+                    DistributedRunMerger.encodeHistogram(phaseMetrics.getCompletedAfterDeadlineResponseTimeHistogram()));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.bench.solr;
+
+import org.loadgen.solr.report.RunComparison;
+import org.loadgen.solr.report.RunResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares repeated baseline runs against repeated candidate runs (JSON reports or hlog files) and exits with
+ * a non-zero code if any metric regressed by more than the threshold, so that it can gate a rollout pipeline.
+ * <pre>
+ * java -DregressionThresholdPercent=5 -Dconfidence=0.95 -Dphase=measurement -cp solr-benchmark.jar \
+ *      org.bench.solr.CompareRuns base1.json,base2.json,base3.json cand1.json,cand2.json,cand3.json
+ * </pre>
+ */
+public class CompareRuns {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    public static final int EXIT_CODE_REGRESSION = 1;
+
+    private static final double regressionThresholdPercent = Double.parseDouble(System.getProperty("regressionThresholdPercent", "5"));
+    private static final double confidence = Double.parseDouble(System.getProperty("confidence", "0.95"));
+    private static final String phaseName = System.getProperty("phase", "measurement");
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            throw new Exception("USAGE: java " + CompareRuns.class.getName() +
+                    " baseline-run1[,baseline-run2,...] candidate-run1[,candidate-run2,...]");
+        }
+
+        final List<RunResult> baselineRuns = loadRuns(args[0]);
+        final List<RunResult> candidateRuns = loadRuns(args[1]);
+        if (baselineRuns.size() < 2 || candidateRuns.size() < 2) {
+            log.warn("Less than 2 runs on one side, the confidence interval degenerates to the point estimate");
+        }
+
+        final List<RunComparison.MetricDelta> deltas = new RunComparison(regressionThresholdPercent, confidence)
+                .compare(baselineRuns, candidateRuns);
+
+        log.info(String.format("Baseline : %d run(s) | Candidate : %d run(s) | phase = %s | threshold = %.2f%% | confidence = %.2f",
+                baselineRuns.size(), candidateRuns.size(), phaseName, regressionThresholdPercent, confidence));
+        log.info(String.format("%-36s %14s %14s %10s %24s %s", "metric", "baseline", "candidate", "delta", "CI", ""));
+        boolean anyRegression = false;
+        for (RunComparison.MetricDelta delta : deltas) {
+            log.info(String.format("%-36s %14.3f %14.3f %9.2f%% %11.2f%% .. %8.2f%% %s",
+                    delta.metric, delta.baselineMean, delta.candidateMean, delta.deltaPercent,
+                    delta.ciLowPercent, delta.ciHighPercent, delta.regression ? "REGRESSION" : ""));
+            anyRegression |= delta.regression;
+        }
+
+        if (anyRegression) {
+            log.error("Candidate regressed by more than " + regressionThresholdPercent + "% on one or more metrics");
+            System.exit(EXIT_CODE_REGRESSION);
+        }
+        log.info("No regression beyond " + regressionThresholdPercent + "%");
+    }
+
+    private static List<RunResult> loadRuns(String commaSeparatedFiles) throws Exception {
+        final List<RunResult> runs = new ArrayList<>();
+        for (String fileName : commaSeparatedFiles.split(",")) {
+            if (fileName.trim().isEmpty()) continue;
+            runs.add(RunResult.load(new File(fileName.trim()), phaseName));
+        }
+        if (runs.isEmpty()) {
+            throw new Exception("No runs given in : " + commaSeparatedFiles);
+        }
+        return runs;
+    }
+}
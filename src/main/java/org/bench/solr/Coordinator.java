@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.bench.solr;
+
+import org.loadgen.solr.BenchConfig;
+import org.loadgen.solr.distributed.AgentProtocol;
+import org.loadgen.solr.distributed.DistributedRunMerger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandles;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Distributed load generation: waits for 'number-of-agents' {@link Agent}s to connect, hands them the shared config
+ * and a common start time, and merges the interval histograms they stream back into one set of hlogs and one report.
+ * Each agent runs its share (1/number-of-agents) of the target rates.
+ */
+public class Coordinator {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static class AgentConnection {
+        final Socket socket;
+        final BufferedReader reader;
+        final PrintWriter writer;
+        String agentName;
+
+        AgentConnection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            this.writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            throw new Exception("USAGE: java " + Coordinator.class.getName() + " config-file number-of-agents");
+        }
+        final String configYaml = new String(Files.readAllBytes(Paths.get(args[0])), StandardCharsets.UTF_8);
+        final BenchConfig benchConfig = SolrBenchmark.loadConfig(args[0]);
+        final int numberOfAgents = Integer.parseInt(args[1]);
+
+        final List<AgentConnection> agents = new ArrayList<>();
+        try (ServerSocket serverSocket = new ServerSocket(benchConfig.coordinatorPort)) {
+            log.info("Waiting for " + numberOfAgents + " agent(s) on port " + benchConfig.coordinatorPort + " ...");
+            while (agents.size() < numberOfAgents) {
+                final AgentConnection agent = new AgentConnection(serverSocket.accept());
+                final String helloLine = agent.reader.readLine();
+                if (helloLine == null) {
+                    log.error("Agent " + agent.socket.getRemoteSocketAddress() + " disconnected before saying " + AgentProtocol.HELLO);
+                    agent.socket.close();
+                    continue;
+                }
+                final String[] hello = helloLine.split(" ");
+                if (hello.length < 2 || !AgentProtocol.HELLO.equals(hello[0])) {
+                    log.error("Unexpected message from " + agent.socket.getRemoteSocketAddress() + " : " + helloLine);
+                    agent.socket.close();
+                    continue;
+                }
+                agent.agentName = hello[1] + "#" + agents.size();
+                agents.add(agent);
+                log.info("Agent " + agent.agentName + " connected (" + agents.size() + "/" + numberOfAgents + ")");
+            }
+        }
+
+        final long startEpochMillis = System.currentTimeMillis() + benchConfig.agentStartDelayInSec * 1000L;
+        final DistributedRunMerger distributedRunMerger = new DistributedRunMerger(startEpochMillis);
+        for (int i = 0; i < agents.size(); i++) {
+            agents.get(i).writer.println(AgentProtocol.CONFIG + " " + AgentProtocol.encodeText(configYaml));
+            agents.get(i).writer.println(AgentProtocol.START + " " + i + " " + agents.size() + " " + startEpochMillis);
+        }
+
+        final List<Thread> agentReaderThreads = new ArrayList<>();
+        for (AgentConnection agent : agents) {
+            final Thread agentReaderThread = new Thread(() -> readFromAgent(agent, distributedRunMerger), "agent-" + agent.agentName);
+            agentReaderThread.start();
+            agentReaderThreads.add(agentReaderThread);
+        }
+        for (Thread agentReaderThread : agentReaderThreads) {
+            agentReaderThread.join();
+        }
+
+        final String logDir = System.getProperty("logDir", ".");
+        distributedRunMerger.writeHistogramLogs(logDir);
+        distributedRunMerger.toReport(benchConfig).write(logDir);
+
+        for (String phaseName : distributedRunMerger.getPhaseNames()) {
+            final List<String> saturatedAgents = distributedRunMerger.getSaturatedAgents(phaseName);
+            if (!saturatedAgents.isEmpty()) {
+                log.warn("Client health (" + phaseName + ") : SATURATED agents, results are not valid -> " + saturatedAgents);
+            }
+        }
+        log.info("Distributed run completed");
+    }
+
+    private static void readFromAgent(AgentConnection agent, DistributedRunMerger distributedRunMerger) {
+        try (agent.socket) {
+            String line;
+            while ((line = agent.reader.readLine()) != null) {
+                final String[] tokens = line.split(" ");
+                if (AgentProtocol.INTERVAL.equals(tokens[0])) {
+                    distributedRunMerger.onInterval(tokens[1], Long.parseLong(tokens[2]), Long.parseLong(tokens[3]),
+                            DistributedRunMerger.decodeHistogram(tokens[4]),
+                            DistributedRunMerger.decodeHistogram(tokens[5]),
+                            DistributedRunMerger.decodeHistogram(tokens[6]));
+                } else if (AgentProtocol.DONE.equals(tokens[0])) {
+                    distributedRunMerger.onPhaseDone(agent.agentName, tokens[1], tokens[2], Integer.parseInt(tokens[3]),
+                            Double.parseDouble(tokens[4]), Double.parseDouble(tokens[5]),
+                            Long.parseLong(tokens[6]), Long.parseLong(tokens[7]), Boolean.parseBoolean(tokens[8]),
+                            Double.parseDouble(tokens[9]), Long.parseLong(tokens[10]),
+                            DistributedRunMerger.decodeHistogram(tokens[11]));
+                    log.info(String.format("Agent %s : phase %s done (%s requests)", agent.agentName, tokens[1], tokens[6]));
+                } else if (AgentProtocol.BYE.equals(tokens[0])) {
+                    return;
+                }
+            }
+            log.error("Agent " + agent.agentName + " (" + agent.socket.getRemoteSocketAddress() + ") disconnected before " + AgentProtocol.BYE);
+        } catch (IOException e) {
+            log.error("Lost connection to agent " + agent.agentName);
+            e.printStackTrace();
+        }
+    }
+}
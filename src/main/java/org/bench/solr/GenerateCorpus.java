@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.bench.solr;
+
+import org.loadgen.solr.corpus.CorpusWriter;
+import org.loadgen.solr.corpus.QueryFileGenerator;
+import org.loadgen.solr.corpus.SyntheticCorpus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.lang.invoke.MethodHandles;
+
+/**
+ * Generates a synthetic wiki-like corpus (newline-delimited JSON, '.gz' and '.zst' compressed by extension) of a given
+ * size and the matching query files, for runs which do not depend on downloading the wiki dump. The same seed and
+ * size give the same corpus and the same query files.
+ * <pre>
+ * java -Dseed=42 -DsizeInGB=50 -cp solr-benchmark.jar org.bench.solr.GenerateCorpus wiki.synthetic.json.gz QueryFiles/synthetic
+ * </pre>
+ * With -DqueriesOnly=true and the number of documents of the corpus (-Ddocs), only the query files are written.
+ */
+public class GenerateCorpus {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final long seed = Long.parseLong(System.getProperty("seed", "42"));
+    private static final double sizeInGB = Double.parseDouble(System.getProperty("sizeInGB", "1"));
+    private static final long docs = Long.parseLong(System.getProperty("docs", "0"));
+    private static final int vocabularySize = Integer.parseInt(System.getProperty("vocabularySize", "500000"));
+    private static final int users = Integer.parseInt(System.getProperty("users", "100000"));
+    private static final int threads = Integer.parseInt(System.getProperty("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+    private static final int queriesPerFile = Integer.parseInt(System.getProperty("queriesPerFile", "10000"));
+    private static final boolean queriesOnly = Boolean.parseBoolean(System.getProperty("queriesOnly", "false"));
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 2) {
+            throw new Exception("USAGE: java " + GenerateCorpus.class.getName() + " output-file [query-files-directory]");
+        }
+        if (queriesOnly && (docs <= 0 || args.length != 2)) {
+            throw new Exception("-DqueriesOnly=true needs the number of documents of the corpus (-Ddocs) and a query files directory");
+        }
+
+        final SyntheticCorpus corpus = new SyntheticCorpus(seed, vocabularySize, users);
+        long documents = docs;
+        if (!queriesOnly) {
+            final CorpusWriter corpusWriter = new CorpusWriter(corpus).setThreads(threads);
+            if (docs > 0) {
+                corpusWriter.setMaxDocuments(docs);
+            } else {
+                corpusWriter.setMaxBytes((long) (sizeInGB * (1L << 30)));
+            }
+            documents = corpusWriter.write(new File(args[0]));
+            log.info("To regenerate only the query files of this corpus : -Dseed=" + seed + " -Ddocs=" + documents
+                    + " -DvocabularySize=" + vocabularySize + " -Dusers=" + users + " -DqueriesOnly=true");
+        }
+        if (args.length == 2) {
+            new QueryFileGenerator(corpus, documents, seed).setThreads(threads).write(new File(args[1]), queriesPerFile);
+        }
+    }
+}
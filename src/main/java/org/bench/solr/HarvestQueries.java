@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.bench.solr;
+
+import org.apache.solr.client.solrj.impl.Http2SolrClient;
+import org.loadgen.solr.harvest.QueryHarvester;
+import org.loadgen.solr.harvest.SelectivityBands;
+
+import java.io.File;
+
+/**
+ * Harvests query files grouped by selectivity band (number of hits per query) from an indexed collection.
+ * <pre>
+ * java -Dhp=localhost:8983 -Dc=test -Dbands=1,10,100,1000,10000,100000 -DqueriesPerBand=1000 -cp solr-benchmark.jar \
+ *      org.bench.solr.HarvestQueries QueryFiles/harvested
+ * </pre>
+ */
+public class HarvestQueries {
+    private static final String solrCollection = System.getProperty("c", "test");
+    private static final String hostnamePortList = System.getProperty("hp", "localhost:8983");
+    private static final String bands = System.getProperty("bands", "1,10,100,1000,10000,100000");
+    private static final int queriesPerBand = Integer.parseInt(System.getProperty("queriesPerBand", "1000"));
+    private static final int maxProbesPerFile = Integer.parseInt(System.getProperty("maxProbesPerFile", "20000"));
+    private static final int sampleDocuments = Integer.parseInt(System.getProperty("sampleDocuments", "5000"));
+    private static final int threads = Integer.parseInt(System.getProperty("threads", "8"));
+    private static final long seed = Long.parseLong(System.getProperty("seed", "42"));
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            throw new Exception("USAGE: java " + HarvestQueries.class.getName() + " query-files-directory");
+        }
+
+        final String collectionUrl = "http://" + hostnamePortList + "/solr/" + solrCollection;
+        try (final var solrClient = new Http2SolrClient.Builder(collectionUrl).build()) {
+            new QueryHarvester(solrClient, collectionUrl, SelectivityBands.parse(bands))
+                    .setQueriesPerBand(queriesPerBand)
+                    .setMaxProbesPerFile(maxProbesPerFile)
+                    .setSampleDocuments(sampleDocuments)
+                    .setThreads(threads)
+                    .setSeed(seed)
+                    .harvest(new File(args[0]));
+        }
+    }
+}
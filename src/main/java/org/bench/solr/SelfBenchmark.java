@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.bench.solr;
+
+import org.HdrHistogram.Histogram;
+import org.loadgen.solr.BenchConfig;
+import org.loadgen.solr.LoadGenerator;
+import org.loadgen.solr.PhaseMetrics;
+import org.loadgen.solr.mock.LatencyModel;
+import org.loadgen.solr.mock.MockSolrServer;
+import org.loadgen.solr.report.BenchmarkReport;
+import org.loadgen.solr.select.LoadGeneratorForSelectQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the load generator itself against a local {@link MockSolrServer} (no cluster needed), with the threads,
+ * clients and query files of the given config:
+ * <ol>
+ *   <li>max rate: zero latency and an unreachable target rate -> the highest rate the generator can send</li>
+ *   <li>timing: a fixed latency at a fraction of that rate -> rate error and scheduling lag (actual vs intended send time)</li>
+ *   <li>stalls: periodic server stalls -> checks that the (coordinated omission corrected) response time shows them,
+ *   while the service time alone hides most of them</li>
+ * </ol>
+ * <pre>
+ * java -DselfBenchmarkDurationInSec=20 -DselfBenchmarkRateRatio=0.5 -DselfBenchmarkLatency=fixed:1 \
+ *      -DselfBenchmarkStalls=2000:200 -cp solr-benchmark.jar org.bench.solr.SelfBenchmark bench-config.yaml
+ * </pre>
+ */
+public class SelfBenchmark {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final int durationInSec = Integer.getInteger("selfBenchmarkDurationInSec", 20);
+    private static final int maxTargetRate = Integer.getInteger("selfBenchmarkMaxTargetRate", 1_000_000);
+    private static final double rateRatio = Double.parseDouble(System.getProperty("selfBenchmarkRateRatio", "0.5"));
+    private static final String latency = System.getProperty("selfBenchmarkLatency", "fixed:1");
+    private static final String stalls = System.getProperty("selfBenchmarkStalls", "2000:200");
+
+    private final BenchConfig benchConfig;
+    private final MockSolrServer mockSolrServer;
+    private final BenchmarkReport benchmarkReport;
+
+    public SelfBenchmark(BenchConfig benchConfig, MockSolrServer mockSolrServer) {
+        this.benchConfig = benchConfig;
+        this.mockSolrServer = mockSolrServer;
+        this.benchmarkReport = new BenchmarkReport(benchConfig);
+
+        benchConfig.hostnamePortList = "localhost:" + mockSolrServer.getPort();
+        benchConfig.solrCollection = "mock";
+        benchConfig.recordingLatency = true;
+        benchConfig.writePercent = 0;
+        benchConfig.benchmarkMeasurementTime = durationInSec;
+        benchConfig.continuousRun = false;
+        benchConfig.closedLoop = false;
+        benchConfig.sessionMode = false;
+        benchConfig.scenario = null;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            throw new Exception("USAGE: java " + SelfBenchmark.class.getName() + " config-file");
+        }
+
+        final MockSolrServer mockSolrServer = new MockSolrServer(0).start();
+        try {
+            new SelfBenchmark(SolrBenchmark.loadConfig(args[0]), mockSolrServer).run();
+        } finally {
+            mockSolrServer.stop();
+        }
+    }
+
+    public void run() throws IOException {
+        // 1. max achievable rate
+        mockSolrServer.setLatencyModel(LatencyModel.fixed(0));
+        final PhaseMetrics maxRatePhase = runPhase("selfbench_max_rate", maxTargetRate);
+        final double maxAchievableRate = maxRatePhase.getActualThroughput();
+
+        // 2. timing error at a sustainable rate
+        final int targetRate = Math.max(1, (int) (maxAchievableRate * rateRatio));
+        mockSolrServer.setLatencyModel(new LatencyModel(latency, null));
+        final PhaseMetrics timingPhase = runPhase("selfbench_timing", targetRate);
+        final Histogram schedulingLag = timingPhase.getClientHealthMonitor().getSchedulingLagHistogram();
+
+        // 3. injected stalls
+        final LatencyModel stallLatencyModel = new LatencyModel(latency, stalls);
+        mockSolrServer.setLatencyModel(stallLatencyModel);
+        final PhaseMetrics stallPhase = runPhase("selfbench_stalls", targetRate);
+
+        log.info(" ======================== self benchmark (mock Solr: " + latency + ") ======================== ");
+        log.info(String.format("%-36s %s %.1f req/sec (%d threads, %d clients)", "Max achievable rate", ":",
+                maxAchievableRate, benchConfig.maxNumberOfThreads, benchConfig.maxNumberOfClients));
+        log.info(String.format("%-36s %s %d req/sec -> actual %.1f req/sec (error %+.3f%%)", "Rate accuracy", ":",
+                targetRate, timingPhase.getActualThroughput(),
+                (timingPhase.getActualThroughput() / targetRate - 1) * 100));
+        log.info(String.format("%-36s %s p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms", "Scheduling lag (send - intended)", ":",
+                schedulingLag.getValueAtPercentile(50) / 1e6, schedulingLag.getValueAtPercentile(99) / 1e6,
+                schedulingLag.getValueAtPercentile(99.9) / 1e6, schedulingLag.getMaxValue() / 1e6));
+        reportStallDetection(stallLatencyModel, stallPhase);
+
+        benchmarkReport.write(System.getProperty("logDir", "."));
+    }
+
+    /**
+     * A request whose intended start falls into a stall waits for the rest of the stall, so with stalls of D every P,
+     * at least ~(D/2)/P of the requests should have a response time above 'latency + D/2' (more, while the backlog of
+     * the stall is caught up), and the max should be ~D.
+     */
+    private void reportStallDetection(LatencyModel stallLatencyModel, PhaseMetrics stallPhase) {
+        final long stallDurationInNanos = stallLatencyModel.getStallDurationInNanos();
+        final double expectedFraction = (stallDurationInNanos / 2.0) / stallLatencyModel.getStallEveryInNanos();
+        final long thresholdInNanos = stallDurationInNanos / 2 + getTypicalLatencyInNanos();
+
+        final Histogram responseTime = stallPhase.getClientSideViewResponseTimeHistogram();
+        final Histogram serviceTime = stallPhase.getClientSideViewServiceTimeHistogram();
+        final double responseTimeFraction = getFractionAbove(responseTime, thresholdInNanos);
+        final double serviceTimeFraction = getFractionAbove(serviceTime, thresholdInNanos);
+        final boolean detected = responseTimeFraction >= expectedFraction * 0.5 && responseTime.getMaxValue() >= stallDurationInNanos * 0.9;
+
+        log.info(String.format("%-36s %s %s", "Injected stalls", ":", stallLatencyModel));
+        log.info(String.format("%-36s %s %.3f%% of requests > %.1f ms (expected ~%.3f%%), max %.1f ms", "Response time (CO corrected)", ":",
+                responseTimeFraction * 100, thresholdInNanos / 1e6, expectedFraction * 100, responseTime.getMaxValue() / 1e6));
+        log.info(String.format("%-36s %s %.3f%% of requests > %.1f ms, max %.1f ms", "Service time (not corrected)", ":",
+                serviceTimeFraction * 100, thresholdInNanos / 1e6, serviceTime.getMaxValue() / 1e6));
+        log.info(String.format("%-36s %s %s", "Stalls visible in response time", ":", detected ? "YES" : "NO (check the generator)"));
+    }
+
+    private long getTypicalLatencyInNanos() {
+        final Histogram timingResponseTime = benchmarkReport.getPhase("selfbench_timing").getClientSideViewResponseTimeHistogram();
+        return timingResponseTime.getValueAtPercentile(50);
+    }
+
+    private static double getFractionAbove(Histogram histogram, long valueInNanos) {
+        if (histogram.getTotalCount() == 0) return 0;
+        return 1.0 - histogram.getPercentileAtOrBelowValue(valueInNanos) / 100.0;
+    }
+
+    private PhaseMetrics runPhase(String operationName, int targetRate) {
+        benchConfig.targetRateForSelectOp = targetRate;
+        final LoadGenerator selectLoadGenerator = new LoadGeneratorForSelectQuery() {
+            @Override
+            protected String getOperationName() {
+                return operationName;
+            }
+        };
+        selectLoadGenerator.applyConfig(benchConfig);
+        selectLoadGenerator.startBenchmark();
+        try {
+            selectLoadGenerator.waitForBenchmarkRunToFinish();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        benchmarkReport.addPhase(operationName, selectLoadGenerator.getPhaseMetrics());
+
+        // let the mock drain the responses still in flight before the next phase
+        try {
+            TimeUnit.SECONDS.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return selectLoadGenerator.getPhaseMetrics();
+    }
+}
@@ -38,33 +38,80 @@ package org.bench.solr;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.constructor.Constructor;
 import org.loadgen.solr.BenchConfig;
+import org.loadgen.solr.FreshnessProbe;
+import org.loadgen.solr.GeneratorConfig;
+import org.loadgen.solr.IntervalHistogramListener;
 import org.loadgen.solr.LoadGenerator;
+import org.loadgen.solr.PhaseConfig;
+import org.loadgen.solr.PhaseMetrics;
+import org.loadgen.solr.get.LoadGeneratorForRealTimeGet;
+import org.loadgen.solr.report.BenchmarkReport;
 import org.loadgen.solr.select.LoadGeneratorForSelectQuery;
+import org.loadgen.solr.update.LoadGeneratorForUpdateQuery;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
 
 public class SolrBenchmark {
     private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
     private final BenchConfig benchConfig;
+    private final BenchmarkReport benchmarkReport;
+    private IntervalHistogramListener intervalHistogramListener;
+
     public SolrBenchmark(String configFile) throws Exception {
+        this(loadConfig(configFile));
+    }
+
+    public SolrBenchmark(BenchConfig benchConfig) {
+        this.benchConfig = benchConfig;
+        this.benchmarkReport = new BenchmarkReport(benchConfig);
+    }
+
+    public static BenchConfig loadConfig(String configFile) throws IOException {
         Yaml yaml = new Yaml(new Constructor(BenchConfig.class));
         try (FileInputStream inputStream = new FileInputStream(configFile)) {
-            benchConfig = yaml.load(inputStream);
+            return yaml.load(inputStream);
         }
     }
 
+    public void setIntervalHistogramListener(IntervalHistogramListener intervalHistogramListener) {
+        this.intervalHistogramListener = intervalHistogramListener;
+    }
+
+    public BenchmarkReport getBenchmarkReport() {
+        return benchmarkReport;
+    }
+
     public static void main(String[] args) throws Exception {
         if (args.length != 1) {
             throw new Exception("USAGE: java " + SolrBenchmark.class.getName() + " config-file");
         }
 
         SolrBenchmark solrBenchmark = new SolrBenchmark(args[0]);
-        solrBenchmark.warmup();
-        solrBenchmark.run();
+        if (solrBenchmark.hasScenario()) {
+            solrBenchmark.runScenario();
+        } else {
+            if (!solrBenchmark.benchConfig.continuousRun) {
+                solrBenchmark.warmup();
+            }
+            solrBenchmark.run();
+        }
+        solrBenchmark.writeReport();
+    }
+
+    public void writeReport() {
+        try {
+            benchmarkReport.write(System.getProperty("logDir", "."));
+        } catch (IOException e) {
+            log.error("Failed to write the benchmark report");
+            e.printStackTrace();
+        }
     }
 
     public void warmup() {
@@ -78,42 +125,289 @@ public class SolrBenchmark {
             }
         };
         selectLoadGenerator.applyConfig(benchConfig);
+        selectLoadGenerator.setIntervalHistogramListener(intervalHistogramListener);
+        // Real-time get (optional) alongside
+        // -----------------------------------
+        final LoadGenerator realTimeGetLoadGenerator = getRealTimeGetLoadGenerator("warmup_get");
+        final FreshnessProbe freshnessProbe = getFreshnessProbe();
 
         selectLoadGenerator.startBenchmark();
+        if (realTimeGetLoadGenerator != null) {
+            realTimeGetLoadGenerator.startBenchmark();
+        }
+        if (freshnessProbe != null) {
+            freshnessProbe.start();
+        }
 
         try {
             selectLoadGenerator.waitForBenchmarkRunToFinish();
+            if (realTimeGetLoadGenerator != null) {
+                realTimeGetLoadGenerator.waitForBenchmarkRunToFinish();
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
+        if (freshnessProbe != null) {
+            freshnessProbe.stop();
+            if (selectLoadGenerator.getPhaseMetrics() != null) {
+                selectLoadGenerator.getPhaseMetrics().setFreshnessProbe(freshnessProbe);
+            }
+        }
+        benchmarkReport.addPhase("warmup", selectLoadGenerator.getPhaseMetrics());
+        if (realTimeGetLoadGenerator != null) {
+            benchmarkReport.addPhase("warmup_get", realTimeGetLoadGenerator.getPhaseMetrics());
+        }
         log.info("Warmup phase completed");
     }
 
+    /**
+     * Measurement phase. With 'continuousRun', the warmup runs first on the same workers and connections, and the
+     * measurement starts with a reset of the recorders and of the schedule instead of a new load generator.
+     */
     public void run() {
-        log.info("Starting measurement phase ...");
+        log.info(benchConfig.continuousRun ? "Starting warmup + measurement phases (continuous run) ..." : "Starting measurement phase ...");
         // Select
         // -----------------------------------
         final LoadGenerator selectLoadGenerator = new LoadGeneratorForSelectQuery();
         selectLoadGenerator.applyConfig(benchConfig);
+        selectLoadGenerator.setIntervalHistogramListener(intervalHistogramListener);
+        // Real-time get (optional) alongside
+        // -----------------------------------
+        final LoadGenerator realTimeGetLoadGenerator = getRealTimeGetLoadGenerator("get");
+        // (continuous run: the probe covers the warmup too, it is reported with the measurement)
+        final FreshnessProbe freshnessProbe = getFreshnessProbe();
 
         selectLoadGenerator.startBenchmark();
+        if (realTimeGetLoadGenerator != null) {
+            realTimeGetLoadGenerator.startBenchmark();
+        }
+        if (freshnessProbe != null) {
+            freshnessProbe.start();
+        }
 
         try {
             selectLoadGenerator.waitForBenchmarkRunToFinish();
+            if (realTimeGetLoadGenerator != null) {
+                realTimeGetLoadGenerator.waitForBenchmarkRunToFinish();
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
+        if (freshnessProbe != null) {
+            freshnessProbe.stop();
+            if (selectLoadGenerator.getPhaseMetrics() != null) {
+                selectLoadGenerator.getPhaseMetrics().setFreshnessProbe(freshnessProbe);
+            }
+        }
+        if (selectLoadGenerator.getWarmupPhaseMetrics() != null) {
+            // continuous run: the warmup was part of this run
+            benchmarkReport.addPhase("warmup", selectLoadGenerator.getWarmupPhaseMetrics());
+        }
+        if (realTimeGetLoadGenerator != null && realTimeGetLoadGenerator.getWarmupPhaseMetrics() != null) {
+            benchmarkReport.addPhase("warmup_get", realTimeGetLoadGenerator.getWarmupPhaseMetrics());
+        }
+        benchmarkReport.addPhase("measurement", selectLoadGenerator.getPhaseMetrics());
+        if (realTimeGetLoadGenerator != null) {
+            benchmarkReport.addPhase("measurement_get", realTimeGetLoadGenerator.getPhaseMetrics());
+        }
 
         // (track results for only 'Select' operations)
+        // (the actual rate is based on the measured window of the workers, not on the nominal measurement time)
+        final PhaseMetrics phaseMetrics = selectLoadGenerator.getPhaseMetrics();
         final long totalRequestsSent = selectLoadGenerator.getTotalRequestsSentFromAllWorker();
-        final long totalRunDurationInSec = benchConfig.getBenchmarkMeasurementTime();
 
-        log.info(String.format("Requested rate = %d req/sec | Actual rate = %d req/sec (%d queries in %d sec)",
+        log.info(String.format("Requested rate = %d req/sec | Actual rate = %.1f req/sec (%d queries in %.3f sec)",
                 benchConfig.getTargetRateForSelectOp(),
-                (totalRequestsSent / totalRunDurationInSec),
+                phaseMetrics != null ? phaseMetrics.getActualThroughput() : 0,
                 totalRequestsSent,
-                totalRunDurationInSec)
+                phaseMetrics != null ? phaseMetrics.getMeasuredWindowInSec() : 0)
         );
+        if (selectLoadGenerator.getClientHealthMonitor() != null) {
+            selectLoadGenerator.getClientHealthMonitor().printSummary();
+        }
+        if (selectLoadGenerator.getAdaptiveConcurrencyController() != null) {
+            selectLoadGenerator.getAdaptiveConcurrencyController().printSummary();
+        }
+        if (realTimeGetLoadGenerator != null && realTimeGetLoadGenerator.getPhaseMetrics() != null) {
+            final PhaseMetrics realTimeGetPhaseMetrics = realTimeGetLoadGenerator.getPhaseMetrics();
+            log.info(String.format("Real-time get : Requested rate = %d req/sec | Actual rate = %.1f req/sec (%d requests, %d errors in %.3f sec)",
+                    realTimeGetPhaseMetrics.getTargetThroughput(),
+                    realTimeGetPhaseMetrics.getActualThroughput(),
+                    realTimeGetPhaseMetrics.getTotalRequestsSent(),
+                    realTimeGetPhaseMetrics.getTotalErrors(),
+                    realTimeGetPhaseMetrics.getMeasuredWindowInSec())
+            );
+        }
         log.info("Measurement phase completed");
     }
+
+    /** The freshness probe of the warmup/measurement phases, null unless freshnessProbeRate is set */
+    private FreshnessProbe getFreshnessProbe() {
+        return benchConfig.freshnessProbeRate > 0 ? FreshnessProbe.fromConfig(benchConfig, benchConfig.freshnessProbeRate) : null;
+    }
+
+    /** The real-time get generator of the warmup/measurement phases, null unless maxNumberOfRealTimeGetOpThreads is set */
+    private LoadGenerator getRealTimeGetLoadGenerator(String operationName) {
+        if (benchConfig.maxNumberOfRealTimeGetOpThreads <= 0) {
+            return null;
+        }
+        final LoadGenerator realTimeGetLoadGenerator = new LoadGeneratorForRealTimeGet() {
+            @Override
+            protected String getOperationName() {
+                return operationName;
+            }
+        };
+        realTimeGetLoadGenerator.applyConfig(benchConfig);
+        realTimeGetLoadGenerator.setIntervalHistogramListener(intervalHistogramListener);
+        return realTimeGetLoadGenerator;
+    }
+
+    public boolean hasScenario() {
+        return benchConfig.scenario != null && !benchConfig.scenario.isEmpty();
+    }
+
+    public void runScenario() {
+        for (PhaseConfig phaseConfig : benchConfig.scenario) {
+            runPhase(phaseConfig);
+        }
+    }
+
+    public void runPhase(PhaseConfig phaseConfig) {
+        log.info("Starting phase '" + phaseConfig.name + "' ...");
+
+        final List<LoadGenerator> loadGenerators = new ArrayList<>();
+        final List<String> phaseNames = new ArrayList<>();
+        FreshnessProbe freshnessProbe = null;
+        for (GeneratorConfig generatorConfig : phaseConfig.generators) {
+            final String operationName = phaseConfig.name + "_" + generatorConfig.type;
+            final LoadGenerator loadGenerator;
+            if ("freshness".equals(generatorConfig.type)) {
+                // not a load generator: markers at 'targetRate' per sec, reported with the first generator of the phase
+                final double markersPerSec = generatorConfig.targetRate != -1 ? generatorConfig.targetRate : benchConfig.freshnessProbeRate;
+                if (markersPerSec > 0) {
+                    freshnessProbe = FreshnessProbe.fromConfig(benchConfig, markersPerSec);
+                }
+                continue;
+            }
+            if ("select".equals(generatorConfig.type)) {
+                loadGenerator = new LoadGeneratorForSelectQuery() {
+                    @Override
+                    protected String getOperationName() {
+                        return operationName;
+                    }
+                };
+            } else if ("update".equals(generatorConfig.type)) {
+                loadGenerator = new LoadGeneratorForUpdateQuery() {
+                    @Override
+                    protected String getOperationName() {
+                        return operationName;
+                    }
+                };
+            } else if ("get".equals(generatorConfig.type)) {
+                loadGenerator = new LoadGeneratorForRealTimeGet() {
+                    @Override
+                    protected String getOperationName() {
+                        return operationName;
+                    }
+                };
+            } else {
+                log.error("Unknown generator type '" + generatorConfig.type + "' in phase '" + phaseConfig.name + "', ignored");
+                continue;
+            }
+            loadGenerator.applyConfig(getGeneratorConfig(phaseConfig, generatorConfig));
+            loadGenerator.setIntervalHistogramListener(intervalHistogramListener);
+            loadGenerators.add(loadGenerator);
+            phaseNames.add(operationName);
+        }
+
+        // All the generators of a phase share the same run window
+        for (LoadGenerator loadGenerator : loadGenerators) {
+            loadGenerator.startBenchmark();
+        }
+        if (freshnessProbe != null) {
+            freshnessProbe.start();
+        }
+        for (LoadGenerator loadGenerator : loadGenerators) {
+            try {
+                loadGenerator.waitForBenchmarkRunToFinish();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        if (freshnessProbe != null) {
+            freshnessProbe.stop();
+            for (LoadGenerator loadGenerator : loadGenerators) {
+                if (loadGenerator.getPhaseMetrics() != null) {
+                    loadGenerator.getPhaseMetrics().setFreshnessProbe(freshnessProbe);
+                    break;
+                }
+            }
+        }
+
+        for (int i = 0; i < loadGenerators.size(); i++) {
+            final LoadGenerator loadGenerator = loadGenerators.get(i);
+            final String phaseName = phaseNames.get(i);
+            benchmarkReport.addPhase(phaseName, loadGenerator.getPhaseMetrics());
+
+            final PhaseMetrics phaseMetrics = loadGenerator.getPhaseMetrics();
+            if (phaseMetrics == null) continue; // generator was skipped (no threads/clients)
+            log.info(String.format("%-30s Requested rate = %d req/sec | Actual rate = %.1f req/sec (%d requests, %d errors in %.3f sec)",
+                    phaseName,
+                    phaseMetrics.getTargetThroughput(),
+                    phaseMetrics.getActualThroughput(),
+                    phaseMetrics.getTotalRequestsSent(),
+                    phaseMetrics.getTotalErrors(),
+                    phaseMetrics.getMeasuredWindowInSec())
+            );
+            if (loadGenerator.getClientHealthMonitor() != null) {
+                loadGenerator.getClientHealthMonitor().printSummary();
+            }
+            if (loadGenerator.getAdaptiveConcurrencyController() != null) {
+                loadGenerator.getAdaptiveConcurrencyController().printSummary();
+            }
+        }
+        log.info("Phase '" + phaseConfig.name + "' completed");
+    }
+
+    /**
+     * Top-level config with the phase/generator params applied on top of it. The generator gets all the resources
+     * (threads, clients, rate) unless they are set explicitly, i.e. the mix of a phase is given by its generators,
+     * not by 'writePercent'.
+     */
+    private BenchConfig getGeneratorConfig(PhaseConfig phaseConfig, GeneratorConfig generatorConfig) {
+        final Yaml yaml = new Yaml(new Constructor(BenchConfig.class));
+        final BenchConfig generatorBenchConfig = yaml.load(yaml.dump(benchConfig));
+        generatorBenchConfig.scenario = null;
+
+        final boolean isUpdate = "update".equals(generatorConfig.type);
+        final boolean isRealTimeGet = "get".equals(generatorConfig.type);
+        generatorBenchConfig.writePercent = isUpdate ? 100 : 0;
+        generatorBenchConfig.benchmarkWarmupTime = phaseConfig.duration;
+        generatorBenchConfig.benchmarkMeasurementTime = phaseConfig.duration;
+        generatorBenchConfig.benchmarkMeasurementSkipDuration = 0;
+        if (generatorConfig.queryFiles != null) generatorBenchConfig.selectQueryFiles = generatorConfig.queryFiles;
+        if (generatorConfig.batchSize != -1) {
+            generatorBenchConfig.updateBatchSize = generatorConfig.batchSize;
+            generatorBenchConfig.realTimeGetBatchSizes = String.valueOf(generatorConfig.batchSize);
+        }
+        if (generatorConfig.batchSizes != null) generatorBenchConfig.realTimeGetBatchSizes = generatorConfig.batchSizes;
+
+        if (isUpdate) {
+            generatorBenchConfig.maxNumberOfUpdateOpThreads = generatorConfig.threads;
+            generatorBenchConfig.maxNumberOfUpdateOpClients = generatorConfig.clients;
+            generatorBenchConfig.targetRateForUpdateOp = generatorConfig.targetRate;
+            generatorBenchConfig.targetRateForUpdateOpAtWarmup = generatorConfig.targetRate;
+        } else if (isRealTimeGet) {
+            generatorBenchConfig.maxNumberOfRealTimeGetOpThreads = generatorConfig.threads;
+            generatorBenchConfig.maxNumberOfRealTimeGetOpClients = generatorConfig.clients;
+            generatorBenchConfig.targetRateForRealTimeGetOp = generatorConfig.targetRate;
+            generatorBenchConfig.targetRateForRealTimeGetOpAtWarmup = generatorConfig.targetRate;
+        } else {
+            generatorBenchConfig.maxNumberOfSelectOpThreads = generatorConfig.threads;
+            generatorBenchConfig.maxNumberOfSelectOpClients = generatorConfig.clients;
+            generatorBenchConfig.targetRateForSelectOp = generatorConfig.targetRate;
+            generatorBenchConfig.targetRateForSelectOpAtWarmup = generatorConfig.targetRate;
+        }
+        return generatorBenchConfig;
+    }
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr;
+
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Closed-loop mode: instead of a fixed request rate, the number of workers allowed to have a request in flight is
+ * adjusted every interval with AIMD, driven by the client side service time. The limit is raised by one per interval
+ * while the median service time stays within 'latencyTolerance' x the lowest median seen so far, and cut by
+ * 'backoffRatio' when it does not. It settles around the concurrency beyond which more requests in flight only add
+ * queueing; {@link #getKnee()} tells that concurrency.
+ */
+public class AdaptiveConcurrencyController {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final double KNEE_THROUGHPUT_RATIO = 0.95;
+
+    public static class ConcurrencySample {
+        public final long timestampInMillis;
+        public final int concurrencyLimit;
+        public final double throughput;
+        public final double serviceTimeP50InMillis;
+        public final double serviceTimeP99InMillis;
+        public final boolean congested;
+
+        ConcurrencySample(long timestampInMillis, int concurrencyLimit, double throughput,
+                          double serviceTimeP50InMillis, double serviceTimeP99InMillis, boolean congested) {
+            this.timestampInMillis = timestampInMillis;
+            this.concurrencyLimit = concurrencyLimit;
+            this.throughput = throughput;
+            this.serviceTimeP50InMillis = serviceTimeP50InMillis;
+            this.serviceTimeP99InMillis = serviceTimeP99InMillis;
+            this.congested = congested;
+        }
+    }
+
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final double latencyTolerance;
+    private final double backoffRatio;
+
+    private volatile int concurrencyLimit;
+    private long lowestServiceTimeP50InNanos = Long.MAX_VALUE;
+    private final List<ConcurrencySample> samples = new ArrayList<>();
+
+    public AdaptiveConcurrencyController(int initialConcurrency, int minConcurrency, int maxConcurrency,
+                                         double latencyTolerance, double backoffRatio) {
+        this.minConcurrency = Math.max(1, Math.min(minConcurrency, maxConcurrency));
+        this.maxConcurrency = maxConcurrency;
+        this.latencyTolerance = latencyTolerance;
+        this.backoffRatio = backoffRatio;
+        this.concurrencyLimit = Math.max(this.minConcurrency, Math.min(initialConcurrency, maxConcurrency));
+    }
+
+    public boolean isActive(int workerIndex) {
+        return workerIndex < concurrencyLimit;
+    }
+
+    public int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    /**
+     * Called once per interval with the merged client side service time of all the workers.
+     */
+    public synchronized void onInterval(Histogram clientSideViewServiceTimeHistogram) {
+        final long requestsInInterval = clientSideViewServiceTimeHistogram.getTotalCount();
+        if (requestsInInterval == 0) return;
+
+        final long intervalInMillis = clientSideViewServiceTimeHistogram.getEndTimeStamp() - clientSideViewServiceTimeHistogram.getStartTimeStamp();
+        final double throughput = requestsInInterval / (Math.max(intervalInMillis, 1) / 1000.0);
+        final long serviceTimeP50InNanos = clientSideViewServiceTimeHistogram.getValueAtPercentile(50);
+
+        lowestServiceTimeP50InNanos = Math.min(lowestServiceTimeP50InNanos, serviceTimeP50InNanos);
+        final boolean congested = serviceTimeP50InNanos > lowestServiceTimeP50InNanos * latencyTolerance;
+
+        samples.add(new ConcurrencySample(clientSideViewServiceTimeHistogram.getEndTimeStamp(), concurrencyLimit, throughput,
+                serviceTimeP50InNanos / 1e6, clientSideViewServiceTimeHistogram.getValueAtPercentile(99) / 1e6, congested));
+
+        if (congested) {
+            concurrencyLimit = Math.max(minConcurrency, (int) (concurrencyLimit * backoffRatio));
+        } else {
+            concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1);
+        }
+    }
+
+    public synchronized List<ConcurrencySample> getSamples() {
+        return new ArrayList<>(samples);
+    }
+
+    /**
+     * Lowest concurrency that reached (within {@link #KNEE_THROUGHPUT_RATIO}) the highest throughput seen without a
+     * latency rise, i.e. adding requests in flight beyond it did not add throughput (null if there was no such interval).
+     */
+    public synchronized ConcurrencySample getKnee() {
+        double highestThroughput = 0;
+        for (ConcurrencySample sample : samples) {
+            if (!sample.congested) {
+                highestThroughput = Math.max(highestThroughput, sample.throughput);
+            }
+        }
+        ConcurrencySample knee = null;
+        for (ConcurrencySample sample : samples) {
+            if (!sample.congested && sample.throughput >= highestThroughput * KNEE_THROUGHPUT_RATIO
+                    && (knee == null || sample.concurrencyLimit < knee.concurrencyLimit)) {
+                knee = sample;
+            }
+        }
+        return knee;
+    }
+
+    public void printSummary() {
+        final ConcurrencySample knee = getKnee();
+        if (knee == null) {
+            log.info(String.format("%-30s %s %s", "Concurrency knee", ":", "not found (no interval without latency rise)"));
+            return;
+        }
+        log.info(String.format("%-30s %s %d in flight -> %.1f req/sec (service time p50 %.3f ms, p99 %.3f ms)",
+                "Concurrency knee", ":", knee.concurrencyLimit, knee.throughput,
+                knee.serviceTimeP50InMillis, knee.serviceTimeP99InMillis));
+        log.info(String.format("%-30s %s %d (limit range %d - %d)", "Final concurrency limit", ":",
+                concurrencyLimit, minConcurrency, maxConcurrency));
+    }
+}
@@ -38,6 +38,11 @@ package org.loadgen.solr;
 import lombok.Data;
 import lombok.ToString;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 @Data
 @ToString(callSuper = true)
 public class BenchConfig {
@@ -48,6 +53,7 @@ public class BenchConfig {
     public int benchmarkWarmupTime = 60;
     public int benchmarkMeasurementTime = 60;
     public int benchmarkMeasurementSkipDuration = 0;
+    public boolean continuousRun = false; // warmup + measurement on the same (warm) workers and connections
 
     public int maxNumberOfThreads = 1;
     public int maxNumberOfClients = 1;;
@@ -75,6 +81,61 @@ public class BenchConfig {
 
     public boolean recordingLatency = false;
     public int maxUsableSelectQueries = 10000;
+    public int updateBatchSize = 1;
+    public int updateCommitWithinMs = -1;
+    // Real-time get (/get by id, ids from documentIdFile) alongside the select queries, with its own resources and rate
+    // (0 threads = no real-time get). Each request looks up one of the batch sizes (space separated, picked evenly)
+    public int maxNumberOfRealTimeGetOpThreads = 0;
+    public int maxNumberOfRealTimeGetOpClients = -1;
+    public int targetRateForRealTimeGetOpAtWarmup = -1;
+    public int targetRateForRealTimeGetOp = -1;
+    public String realTimeGetBatchSizes = "1";
+    // Freshness probe: marker documents written at freshnessProbeRate per sec next to the select queries (0 = no probe),
+    // polled with /get and /select until visible, committed per updateCommitWithinMs (-1 = autoSoftCommit/autoCommit)
+    public double freshnessProbeRate = 0;
+    public int freshnessProbePollIntervalInMillis = 50;
+    public int freshnessProbeTimeoutInSec = 60;
+    // Transport: http2 (multiplexed) or http1 (keep-alive pool of maxConnectionsPerHost per client), -1 = SolrJ default
+    public String transport = "http2";
+    public int maxConnectionsPerHost = -1;
+    public int connectionIdleTimeoutInMillis = -1;
+    public boolean responseCompression = false; // ask for gzip responses (Accept-Encoding)
+
+    public String responseHandling = "full";      // select responses: full (parsed), streaming (QTime + numFound only), discard
+    public String responseWriterType = "javabin"; // wire format of the select responses: javabin or json
+    public int slowRequestsPerInterval = 10; // tail-latency exemplars dumped next to the hlogs (0 = disabled)
+
+    // Metrics sinks (space separated names: csv, hlog, live), fed asynchronously from per-worker ring buffers
+    public String metricsSinks = "";
+    public int metricsEventBufferSize = 65536; // per worker, power of 2
+    public int liveMetricsPort = 8099;
+
+    // Distributed load generation (Coordinator + Agents): each agent runs its share of the target rates
+    public int coordinatorPort = 7777;
+    public int agentStartDelayInSec = 5; // common start time = time all agents connected + this delay
+
+    // Session mode (select): users search, then follow a Markov chain of NEXT_PAGE / ADD_FILTER / CHANGE_SORT / REFINE
+    // steps with think times, until END. Latency is reported per step type
+    public boolean sessionMode = false;
+    public double sessionThinkTimeInMillis = 3000; // mean (exponential) think time between two steps of a user
+    public int maxSessionsPerWorker = 1000;        // users waiting for their next step, per worker
+    public Map<String, Map<String, Number>> sessionTransitions = new HashMap<>(); // step -> {next step: weight}, empty = built-in chain
+
+    // Closed-loop mode: no target rate, the number of requests in flight (up to the thread count) is adjusted with AIMD
+    // driven by the client side service time, to find the concurrency knee (needs recordingLatency, forced on)
+    public boolean closedLoop = false;
+    public int closedLoopInitialConcurrency = 1;
+    public int closedLoopMinConcurrency = 1;
+    public double closedLoopLatencyTolerance = 2.0; // median service time x this (vs the lowest median) = congestion
+    public double closedLoopBackoffRatio = 0.9;     // multiplicative decrease of the limit on congestion
+
+    // Multi-phase scenario: if set, its phases are run in order (instead of warmup + measurement)
+    public List<PhaseConfig> scenario = new ArrayList<>();
+
+    // Client self-health: the run is flagged as invalid (client saturated) if any of these is exceeded
+    public long maxClientWakeUpLagInMicros = 1000; // p99 of the oversleep of a worker after parking
+    public double maxClientGcPausePercent = 5;     // client GC pause time as % of the run duration
+    public double maxClientCpuLoadPercent = 90;    // p90 of the client process CPU load
 
 
     // Experimental
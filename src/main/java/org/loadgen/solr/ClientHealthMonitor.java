@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.OperatingSystemMXBean;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.invoke.MethodHandles;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watches the load generator itself: scheduling lag of the workers, client side GC pauses and process CPU usage.
+ * A run is only valid if the client was not the bottleneck, {@link #isClientSaturated()} tells if it was.
+ */
+public class ClientHealthMonitor {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final LoadGenerator loadGenerator;
+
+    private final Histogram schedulingLagHistogram = new Histogram(2);
+    private final Histogram wakeUpLagHistogram     = new Histogram(2);
+    private final Histogram gcPauseHistogram       = new Histogram(2); // in millis
+    private final Histogram processCpuLoadHistogram = new Histogram(2); // in percent
+
+    private final AtomicLong totalGcPauseInMillis = new AtomicLong();
+    private final List<NotificationEmitter> registeredGcBeans = new ArrayList<>();
+    private final NotificationListener gcNotificationListener = this::handleGcNotification;
+
+    private Timer healthSamplingTimer;
+    private long monitoringStartTimeInNanos;
+    private long monitoringEndTimeInNanos;
+
+    public ClientHealthMonitor(LoadGenerator loadGenerator) {
+        this.loadGenerator = loadGenerator;
+    }
+
+    public void start() {
+        monitoringStartTimeInNanos = System.nanoTime();
+
+        for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gcBean instanceof NotificationEmitter) {
+                ((NotificationEmitter) gcBean).addNotificationListener(gcNotificationListener, null, null);
+                registeredGcBeans.add((NotificationEmitter) gcBean);
+            }
+        }
+
+        // sample CPU and drain the per-worker lag recorders every 1 sec
+        healthSamplingTimer = new Timer("client-health-monitor", true);
+        healthSamplingTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                takeHealthSnapshot();
+            }// run method
+        }, TimeUnit.SECONDS.toMillis(1), TimeUnit.SECONDS.toMillis(1));
+    }
+
+    public void stop() {
+        healthSamplingTimer.cancel();
+        for (NotificationEmitter gcBean : registeredGcBeans) {
+            try {
+                gcBean.removeNotificationListener(gcNotificationListener);
+            } catch (ListenerNotFoundException e) {
+                e.printStackTrace();
+            }
+        }
+        registeredGcBeans.clear();
+
+        // Take one last snapshot to collect any residue buckets
+        takeHealthSnapshot();
+        monitoringEndTimeInNanos = System.nanoTime();
+    }
+
+    private synchronized void takeHealthSnapshot() {
+        final QueryWorker[] queryWorkers = loadGenerator.arrayOfQueryWorkers;
+        if (queryWorkers != null) {
+            for (int i = 0; i < queryWorkers.length; i++) {
+                schedulingLagHistogram.add(queryWorkers[i].getQueryWorkerStat().getSchedulingLagHistogram().getIntervalHistogram(null));
+                wakeUpLagHistogram.add(queryWorkers[i].getQueryWorkerStat().getWakeUpLagHistogram().getIntervalHistogram(null));
+            }
+        }
+
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof OperatingSystemMXBean) {
+            final double processCpuLoad = ((OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuLoad();
+            if (processCpuLoad >= 0) { // negative if not (yet) available
+                processCpuLoadHistogram.recordValue(Math.round(processCpuLoad * 100));
+            }
+        }
+    }
+
+    private void handleGcNotification(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        final GarbageCollectionNotificationInfo gcInfo = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+
+        // Concurrent collectors also report their (mostly concurrent) cycles, those do not pause the workers
+        if (gcInfo.getGcName().contains("Cycles") || gcInfo.getGcName().contains("Concurrent") || "No GC".equals(gcInfo.getGcCause())) {
+            return;
+        }
+
+        final long pauseInMillis = gcInfo.getGcInfo().getDuration();
+        totalGcPauseInMillis.addAndGet(pauseInMillis);
+        synchronized (this) {
+            gcPauseHistogram.recordValue(pauseInMillis);
+        }
+    }
+
+    private double getMonitoredDurationInMillis() {
+        final long endTimeInNanos = monitoringEndTimeInNanos != 0 ? monitoringEndTimeInNanos : System.nanoTime();
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(endTimeInNanos - monitoringStartTimeInNanos));
+    }
+
+    public double getGcPausePercent() {
+        return totalGcPauseInMillis.get() * 100.0 / getMonitoredDurationInMillis();
+    }
+
+    public synchronized Histogram getSchedulingLagHistogram() {
+        return schedulingLagHistogram.copy();
+    }
+
+    public synchronized Histogram getWakeUpLagHistogram() {
+        return wakeUpLagHistogram.copy();
+    }
+
+    public synchronized Histogram getGcPauseHistogram() {
+        return gcPauseHistogram.copy();
+    }
+
+    public synchronized Histogram getProcessCpuLoadHistogram() {
+        return processCpuLoadHistogram.copy();
+    }
+
+    public synchronized List<String> getSaturationReasons() {
+        final List<String> reasons = new ArrayList<>();
+
+        final long wakeUpLagP99InMicros = TimeUnit.NANOSECONDS.toMicros(wakeUpLagHistogram.getValueAtPercentile(99));
+        if (wakeUpLagP99InMicros > loadGenerator.maxClientWakeUpLagInMicros) {
+            reasons.add(String.format("p99 wake-up lag of workers %d us > %d us",
+                    wakeUpLagP99InMicros, loadGenerator.maxClientWakeUpLagInMicros));
+        }
+
+        final double gcPausePercent = getGcPausePercent();
+        if (gcPausePercent > loadGenerator.maxClientGcPausePercent) {
+            reasons.add(String.format("client GC paused for %.2f%% of the run > %.2f%%",
+                    gcPausePercent, loadGenerator.maxClientGcPausePercent));
+        }
+
+        final long processCpuLoadP90 = processCpuLoadHistogram.getValueAtPercentile(90);
+        if (processCpuLoadHistogram.getTotalCount() > 0 && processCpuLoadP90 > loadGenerator.maxClientCpuLoadPercent) {
+            reasons.add(String.format("p90 client process CPU load %d%% > %.2f%%",
+                    processCpuLoadP90, loadGenerator.maxClientCpuLoadPercent));
+        }
+        return reasons;
+    }
+
+    public boolean isClientSaturated() {
+        return !getSaturationReasons().isEmpty();
+    }
+
+    public synchronized void printSummary() {
+        log.info(String.format("Client scheduling lag (ms) : p50 = %.3f | p99 = %.3f | p99.9 = %.3f | max = %.3f",
+                schedulingLagHistogram.getValueAtPercentile(50) / 1e6,
+                schedulingLagHistogram.getValueAtPercentile(99) / 1e6,
+                schedulingLagHistogram.getValueAtPercentile(99.9) / 1e6,
+                schedulingLagHistogram.getMaxValue() / 1e6));
+        log.info(String.format("Client wake-up lag (ms)    : p50 = %.3f | p99 = %.3f | p99.9 = %.3f | max = %.3f",
+                wakeUpLagHistogram.getValueAtPercentile(50) / 1e6,
+                wakeUpLagHistogram.getValueAtPercentile(99) / 1e6,
+                wakeUpLagHistogram.getValueAtPercentile(99.9) / 1e6,
+                wakeUpLagHistogram.getMaxValue() / 1e6));
+        log.info(String.format("Client GC pauses           : count = %d | total = %d ms (%.2f%%) | max = %d ms",
+                gcPauseHistogram.getTotalCount(),
+                totalGcPauseInMillis.get(),
+                getGcPausePercent(),
+                gcPauseHistogram.getMaxValue()));
+        log.info(String.format("Client process CPU load    : mean = %.1f%% | p90 = %d%% | max = %d%%",
+                processCpuLoadHistogram.getMean(),
+                processCpuLoadHistogram.getValueAtPercentile(90),
+                processCpuLoadHistogram.getMaxValue()));
+
+        final List<String> saturationReasons = getSaturationReasons();
+        if (saturationReasons.isEmpty()) {
+            log.info("Client health : OK (load generator was not the bottleneck)");
+        } else {
+            log.warn("Client health : SATURATED, results of this run are not valid -> " + String.join(", ", saturationReasons));
+        }
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr;
+
+import org.HdrHistogram.Histogram;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Index-to-search visibility (NRT freshness): marker documents are written at a fixed rate next to the load of a
+ * phase, and every poll interval the pending markers are looked up with one '/get' and one '/select' request until they
+ * are visible, or time out. The write-to-visible latency runs from the scheduled write time of a marker (a slow write
+ * counts) to the first poll response that has it, i.e. its resolution is the poll interval. '/get' sees a marker once
+ * it is in the transaction log, '/select' once a (soft) commit opened a new searcher: the gap is the price of the
+ * commit policy (autoSoftCommit, or updateCommitWithinMs).
+ */
+public class FreshnessProbe {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    public static final String MARKER_ID_PREFIX = "freshness-";
+    private static final int MAX_IDS_PER_POLL = 500;
+
+    private static class Marker {
+        final long intendedWriteTimeInNanos;
+        boolean visibleInGet;
+
+        Marker(long intendedWriteTimeInNanos) {
+            this.intendedWriteTimeInNanos = intendedWriteTimeInNanos;
+        }
+    }
+
+    private final SolrClientFactory solrClientFactory;
+    private final double markersPerSec;
+    private final long pollIntervalInMillis;
+    private final long timeoutInNanos;
+    private final int commitWithinMs;
+    // unique per probe, so probes of concurrent agents never see (or delete) each other's markers
+    private final String idPrefix = MARKER_ID_PREFIX + UUID.randomUUID().toString().substring(0, 8) + "-";
+
+    private SolrClient solrClient;
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> writerFuture;
+    private long startTimeInNanos;
+    private final AtomicLong markerCounter = new AtomicLong();
+    private final Map<String, Marker> pendingMarkers = new ConcurrentHashMap<>();
+
+    // Written by the writer (write) and the poller (visible*) threads, read once the probe is stopped
+    private final Histogram writeTimeHistogram = new Histogram(2);
+    private final Histogram visibleInGetHistogram = new Histogram(2);
+    private final Histogram visibleInSelectHistogram = new Histogram(2);
+    private final Object writeLock = new Object();
+    private boolean writing;
+    private long markersWritten;
+    private long writeErrors;
+    private long pollErrors;
+    private long markersNotVisible;
+
+    public FreshnessProbe(SolrClientFactory solrClientFactory, double markersPerSec, long pollIntervalInMillis,
+                          long timeoutInSec, int commitWithinMs) {
+        this.solrClientFactory = solrClientFactory;
+        this.markersPerSec = markersPerSec;
+        this.pollIntervalInMillis = Math.max(1, pollIntervalInMillis);
+        this.timeoutInNanos = TimeUnit.SECONDS.toNanos(timeoutInSec);
+        this.commitWithinMs = commitWithinMs;
+    }
+
+    public static FreshnessProbe fromConfig(BenchConfig benchConfig, double markersPerSec) {
+        final String baseUrl = "http://" + benchConfig.hostnamePortList + "/solr/" + benchConfig.solrCollection;
+        return new FreshnessProbe(SolrClientFactory.fromConfig(baseUrl, benchConfig), markersPerSec,
+                benchConfig.freshnessProbePollIntervalInMillis, benchConfig.freshnessProbeTimeoutInSec,
+                benchConfig.updateCommitWithinMs);
+    }
+
+    public void start() {
+        log.info(String.format("%-30s %s %.1f markers/sec, polled every %d ms (timeout %d sec)", "freshness probe", ":",
+                markersPerSec, pollIntervalInMillis, TimeUnit.NANOSECONDS.toSeconds(timeoutInNanos)));
+        solrClient = solrClientFactory.newSolrClient();
+        scheduler = Executors.newScheduledThreadPool(2, runnable -> {
+            final Thread thread = new Thread(runnable, "freshness-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        startTimeInNanos = System.nanoTime();
+        writing = true;
+        writerFuture = scheduler.scheduleAtFixedRate(this::writeMarker, 0, (long) (TimeUnit.SECONDS.toNanos(1) / markersPerSec), TimeUnit.NANOSECONDS);
+        scheduler.scheduleWithFixedDelay(this::poll, pollIntervalInMillis, pollIntervalInMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void writeMarker() {
+        synchronized (writeLock) {
+            if (writing) {
+                writeMarker(markerCounter.getAndIncrement());
+            }
+        }
+    }
+
+    private void writeMarker(long markerNumber) {
+        // (the schedule, not the actual start: a late write is part of the latency)
+        final long intendedWriteTimeInNanos = startTimeInNanos + (long) (markerNumber * TimeUnit.SECONDS.toNanos(1) / markersPerSec);
+        final String id = idPrefix + markerNumber;
+
+        final SolrInputDocument marker = new SolrInputDocument();
+        marker.addField("id", id);
+        marker.addField("title", "freshness probe marker " + markerNumber);
+        marker.addField("username", "freshness-probe");
+        marker.addField("timestamp", Instant.now().toString());
+        try {
+            solrClient.add(marker, commitWithinMs);
+            writeTimeHistogram.recordValue(System.nanoTime() - intendedWriteTimeInNanos);
+            pendingMarkers.put(id, new Marker(intendedWriteTimeInNanos));
+            markersWritten++;
+        } catch (Exception e) {
+            writeErrors++;
+            log.error("Writing the freshness marker " + id + " failed : " + e.getMessage());
+        }
+    }
+
+    private void poll() {
+        final List<String> ids = new ArrayList<>();
+        final List<String> idsNotVisibleInGet = new ArrayList<>();
+        for (Map.Entry<String, Marker> pendingMarker : pendingMarkers.entrySet()) {
+            if (ids.size() == MAX_IDS_PER_POLL) break;
+            ids.add(pendingMarker.getKey());
+            if (!pendingMarker.getValue().visibleInGet) {
+                idsNotVisibleInGet.add(pendingMarker.getKey());
+            }
+        }
+        try {
+            if (!idsNotVisibleInGet.isEmpty()) {
+                final ModifiableSolrParams params = new ModifiableSolrParams();
+                params.set("ids", String.join(",", idsNotVisibleInGet));
+                params.set("fl", "id");
+                final QueryRequest getRequest = new QueryRequest(params, SolrRequest.METHOD.POST);
+                getRequest.setPath("/get");
+                final NamedList<Object> response = solrClient.request(getRequest);
+                final long now = System.nanoTime();
+                for (String id : getIds(response.get("response"))) {
+                    final Marker marker = pendingMarkers.get(id);
+                    if (marker != null && !marker.visibleInGet) {
+                        marker.visibleInGet = true;
+                        visibleInGetHistogram.recordValue(now - marker.intendedWriteTimeInNanos);
+                    }
+                }
+            }
+            if (!ids.isEmpty()) {
+                final SolrQuery selectQuery = new SolrQuery("{!terms f=id}" + String.join(",", ids))
+                        .setFields("id")
+                        .setRows(ids.size());
+                final NamedList<Object> response = solrClient.request(new QueryRequest(selectQuery, SolrRequest.METHOD.POST));
+                final long now = System.nanoTime();
+                for (String id : getIds(response.get("response"))) {
+                    final Marker marker = pendingMarkers.remove(id);
+                    if (marker != null) {
+                        visibleInSelectHistogram.recordValue(now - marker.intendedWriteTimeInNanos);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            pollErrors++;
+            log.error("Polling the freshness markers failed : " + e.getMessage());
+        }
+
+        final long now = System.nanoTime();
+        for (Iterator<Marker> iterator = pendingMarkers.values().iterator(); iterator.hasNext(); ) {
+            if (now - iterator.next().intendedWriteTimeInNanos > timeoutInNanos) {
+                iterator.remove();
+                markersNotVisible++;
+            }
+        }
+    }
+
+    private static List<String> getIds(Object documents) {
+        final List<String> ids = new ArrayList<>();
+        if (documents instanceof SolrDocumentList) {
+            for (SolrDocument document : (SolrDocumentList) documents) {
+                ids.add(String.valueOf(document.getFirstValue("id")));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Stops writing, waits (up to the timeout) for the markers still pending to be visible, then deletes the markers of
+     * this probe from the index (they are not part of the dataset)
+     */
+    public void stop() {
+        if (scheduler == null) return;
+
+        // No more markers, the poller keeps running while there are markers left
+        writerFuture.cancel(false);
+        synchronized (writeLock) {
+            // (lets a write in flight complete, its marker is then drained like the others)
+            writing = false;
+        }
+        final long drainStartTimeInNanos = System.nanoTime();
+        while (!pendingMarkers.isEmpty() && System.nanoTime() - drainStartTimeInNanos < timeoutInNanos) {
+            try {
+                Thread.sleep(pollIntervalInMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler = null;
+        markersNotVisible += pendingMarkers.size();
+        pendingMarkers.clear();
+
+        try {
+            solrClient.deleteByQuery("{!prefix f=id}" + idPrefix, commitWithinMs);
+        } catch (Exception e) {
+            log.error("Deleting the freshness markers (" + idPrefix + "*) failed : " + e.getMessage());
+        }
+        try {
+            solrClient.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        printSummary();
+    }
+
+    public void printSummary() {
+        log.info(String.format("%-30s %s %d markers written (%d write errors, %d poll errors), %d not visible within %d sec",
+                "freshness probe", ":", markersWritten, writeErrors, pollErrors, markersNotVisible,
+                TimeUnit.NANOSECONDS.toSeconds(timeoutInNanos)));
+        printLatency("write acknowledged", writeTimeHistogram);
+        printLatency("visible in /get", visibleInGetHistogram);
+        printLatency("visible in /select", visibleInSelectHistogram);
+    }
+
+    private static void printLatency(String name, Histogram histogram) {
+        log.info(String.format("%-30s %s %d markers | p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+                "freshness " + name, ":", histogram.getTotalCount(),
+                histogram.getValueAtPercentile(50) / 1e6,
+                histogram.getValueAtPercentile(99) / 1e6,
+                histogram.getMaxValue() / 1e6));
+    }
+
+    public double getMarkersPerSec() {
+        return markersPerSec;
+    }
+
+    public long getPollIntervalInMillis() {
+        return pollIntervalInMillis;
+    }
+
+    public long getMarkersWritten() {
+        return markersWritten;
+    }
+
+    public long getWriteErrors() {
+        return writeErrors;
+    }
+
+    public long getPollErrors() {
+        return pollErrors;
+    }
+
+    public long getMarkersNotVisible() {
+        return markersNotVisible;
+    }
+
+    /** Scheduled write time -> write acknowledged, in nanos */
+    public Histogram getWriteTimeHistogram() {
+        return writeTimeHistogram;
+    }
+
+    /** Scheduled write time -> first '/get' poll that returned the marker, in nanos */
+    public Histogram getVisibleInGetHistogram() {
+        return visibleInGetHistogram;
+    }
+
+    /** Scheduled write time -> first '/select' poll that returned the marker, in nanos */
+    public Histogram getVisibleInSelectHistogram() {
+        return visibleInSelectHistogram;
+    }
+}
@@ -45,8 +45,12 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
-import org.apache.solr.client.solrj.impl.Http2SolrClient;
+import org.HdrHistogram.Histogram;
+import org.loadgen.solr.sink.ConsumerMetricsSink;
+import org.loadgen.solr.sink.MetricsEventDispatcher;
+import org.loadgen.solr.sink.MetricsSink;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -68,23 +72,59 @@ public abstract class LoadGenerator {
 
     protected boolean collectLatencyMetrics;
 
+    // Closed-loop mode: adaptive number of requests in flight instead of a fixed rate (null = fixed rate)
+    protected AdaptiveConcurrencyController adaptiveConcurrencyController;
+
+    // Continuous run: warmup at its own rate on the same workers/clients, the measurement starts with a reset (0 = none)
+    protected long warmupDurationInSec;
+    protected int warmupTargetThroughput;
+    protected int slowRequestsPerInterval;
+
+    // Client saturation thresholds (see ClientHealthMonitor)
+    protected long maxClientWakeUpLagInMicros;
+    protected double maxClientGcPausePercent;
+    protected double maxClientCpuLoadPercent;
+
     private List<Future<Long>> listOfFutures;
     protected QueryWorker[] arrayOfQueryWorkers;
-    protected Consumer<Long> externalMetricsConsumer;
+    protected BenchConfig benchConfig;
+    private final List<MetricsSink> additionalMetricsSinks = new ArrayList<>();
+    private MetricsEventDispatcher metricsEventDispatcher;
+    protected IntervalHistogramListener intervalHistogramListener;
 
+    private SolrClientFactory solrClientFactory;
     private MetricsCollector metricsCollector;
+    private ClientHealthMonitor clientHealthMonitor;
+    private volatile PhaseMetrics phaseMetrics;
+    private PhaseMetrics warmupPhaseMetrics;
     private Timer progressTrackingTimer;
+    private Timer measurementStartTimer;
+    private volatile boolean inWarmup;
 
     public void applyConfig(BenchConfig solrConfig) {
+        this.benchConfig = solrConfig;
         this.setHostnamePortList(solrConfig.hostnamePortList)
             .setSolrCollection(solrConfig.solrCollection)
             .setNumberOfThreads(solrConfig.maxNumberOfThreads)
             .setNumberOfClients(solrConfig.maxNumberOfClients)
             .setSkipDurationInSec(solrConfig.benchmarkMeasurementSkipDuration)
             .setCollectLatencyMetrics(solrConfig.recordingLatency)
+            .setSlowRequestsPerInterval(solrConfig.slowRequestsPerInterval)
+            .setClientSaturationThresholds(solrConfig.maxClientWakeUpLagInMicros,
+                    solrConfig.maxClientGcPausePercent,
+                    solrConfig.maxClientCpuLoadPercent)
             .setUpdatePercentage(solrConfig.writePercent);
     }
 
+    // Closed-loop mode, once the thread count (= max concurrency) is final
+    protected void applyClosedLoopConfig(BenchConfig benchConfig) {
+        if (benchConfig.closedLoop && numberOfThreads > 0) {
+            this.setAdaptiveConcurrencyController(new AdaptiveConcurrencyController(
+                    benchConfig.closedLoopInitialConcurrency, benchConfig.closedLoopMinConcurrency, numberOfThreads,
+                    benchConfig.closedLoopLatencyTolerance, benchConfig.closedLoopBackoffRatio));
+        }
+    }
+
     public LoadGenerator setHostnamePortList(String hostnamePortList) {
         this.hostnamePortList = hostnamePortList;
         return this;
@@ -125,6 +165,35 @@ public abstract class LoadGenerator {
         return this;
     }
 
+    public LoadGenerator setSlowRequestsPerInterval(int slowRequestsPerInterval) {
+        this.slowRequestsPerInterval = slowRequestsPerInterval;
+        return this;
+    }
+
+    public LoadGenerator setClientSaturationThresholds(long maxClientWakeUpLagInMicros,
+                                                       double maxClientGcPausePercent,
+                                                       double maxClientCpuLoadPercent) {
+        this.maxClientWakeUpLagInMicros = maxClientWakeUpLagInMicros;
+        this.maxClientGcPausePercent = maxClientGcPausePercent;
+        this.maxClientCpuLoadPercent = maxClientCpuLoadPercent;
+        return this;
+    }
+
+    public LoadGenerator setAdaptiveConcurrencyController(AdaptiveConcurrencyController adaptiveConcurrencyController) {
+        this.adaptiveConcurrencyController = adaptiveConcurrencyController;
+        if (adaptiveConcurrencyController != null) {
+            // the controller is driven by the interval histograms
+            this.collectLatencyMetrics = true;
+        }
+        return this;
+    }
+
+    public LoadGenerator setWarmup(long warmupDurationInSec, int warmupTargetThroughput) {
+        this.warmupDurationInSec = warmupDurationInSec;
+        this.warmupTargetThroughput = warmupTargetThroughput;
+        return this;
+    }
+
     public LoadGenerator setUpdatePercentage(double updatePercentage) {
         this.updatePercentage = updatePercentage;
         // Having known the % of work intended to be updates, split the resources/work proportionately
@@ -152,7 +221,7 @@ public abstract class LoadGenerator {
     }
 
     public long getTotalRunDuration() {
-        return this.skipDurationInSec + this.runDurationInSec;
+        return this.warmupDurationInSec + this.skipDurationInSec + this.runDurationInSec;
     }
 
     abstract protected String getOperationName();
@@ -170,33 +239,39 @@ public abstract class LoadGenerator {
         for (int i = 0; i < numberOfThreads; i++) {
             arrayOfQueryWorkers[i] = this.getQueryWorkerInstance();
             arrayOfQueryWorkers[i].setRunDurationInSec(durationToRunInSec);
-            arrayOfQueryWorkers[i].setQueryWorkerStats(new QueryWorkerStats());
+            arrayOfQueryWorkers[i].setQueryWorkerStats(new QueryWorkerStats(collectLatencyMetrics ? slowRequestsPerInterval : 0));
+            if (metricsEventDispatcher != null) {
+                arrayOfQueryWorkers[i].getQueryWorkerStat().setRequestEventRingBuffer(
+                        metricsEventDispatcher.createRingBuffer(i, benchConfig.metricsEventBufferSize));
+            }
 
             // If throughputExpectedToBeAchievedByCurrentWorker somehow becomes 0, RateLimiter.create will throw exception
             // Simply set a ttpt to min value 1 in case it drops below that value
-            final int throughputExpectedToBeAchievedByCurrentWorker = (int)(Math.ceil((targetThroughput * 1.0) / numberOfThreads));
-            arrayOfQueryWorkers[i].setRateLimiter(ThroughputController.getInstance(Math.max(throughputExpectedToBeAchievedByCurrentWorker, 1)));
+            final int throughputExpectedToBeAchievedByCurrentWorker = getThroughputPerWorker(warmupDurationInSec > 0 ? warmupTargetThroughput : targetThroughput);
+            arrayOfQueryWorkers[i].setRateLimiter(adaptiveConcurrencyController != null
+                    ? ThroughputController.getClosedLoopInstance(adaptiveConcurrencyController, i)
+                    : ThroughputController.getInstance(Math.max(throughputExpectedToBeAchievedByCurrentWorker, 1)));
         }
 
+        final String baseUrl = "http://" + hostnamePortList + "/solr/" + solrCollection;
+        solrClientFactory = benchConfig != null
+                ? SolrClientFactory.fromConfig(baseUrl, benchConfig)
+                : new SolrClientFactory(baseUrl, SolrClientFactory.HTTP2, -1, -1, false);
         if (numberOfClients >= numberOfThreads) {
             for (int i = 0; i < numberOfClients; i++) {
-                arrayOfQueryWorkers[i % numberOfThreads].addSolrClient(
-                        new Http2SolrClient
-                                .Builder("http://" + hostnamePortList + "/solr/" + solrCollection)
-                                .build()
-                );
+                arrayOfQueryWorkers[i % numberOfThreads].addSolrClient(solrClientFactory.newSolrClient());
             }
         } else {
             for (int i = 0; i < numberOfThreads; i++) {
-                arrayOfQueryWorkers[i % numberOfThreads].addSolrClient(
-                        new Http2SolrClient
-                                .Builder("http://" + hostnamePortList + "/solr/" + solrCollection)
-                                .build()
-                );
+                arrayOfQueryWorkers[i % numberOfThreads].addSolrClient(solrClientFactory.newSolrClient());
             }
         }
     }
 
+    private int getThroughputPerWorker(int throughput) {
+        return (int)(Math.ceil((throughput * 1.0) / numberOfThreads));
+    }
+
     private void startWorkers() {
         ExecutorService executorService = Executors.newFixedThreadPool(numberOfThreads);
         for (int i = 0; i < numberOfThreads; i++) {
@@ -218,15 +293,48 @@ public abstract class LoadGenerator {
         }
 
         printConfig();
+
+        final List<MetricsSink> metricsSinks = new ArrayList<>(additionalMetricsSinks);
+        if (benchConfig != null) {
+            metricsSinks.addAll(MetricsEventDispatcher.loadMetricsSinks(benchConfig.metricsSinks));
+        }
+        metricsEventDispatcher = metricsSinks.isEmpty() ? null : new MetricsEventDispatcher(metricsSinks);
+
         createAndConfigureWorkers(totalRunDurationInSec);
+        solrClientFactory.printConfig();
+        inWarmup = warmupDurationInSec > 0;
+        if (inWarmup) {
+            warmupPhaseMetrics = new PhaseMetrics(getOperationName() + "_warmup", warmupTargetThroughput);
+            phaseMetrics = warmupPhaseMetrics;
+        } else {
+            phaseMetrics = new PhaseMetrics(getOperationName(), targetThroughput);
+        }
 
         if (collectLatencyMetrics) {
             metricsCollector = new MetricsCollector(this);
             metricsCollector.start();
         }
 
+        clientHealthMonitor = new ClientHealthMonitor(this);
+        clientHealthMonitor.start();
+
+        if (metricsEventDispatcher != null) {
+            metricsEventDispatcher.start(benchConfig, getOperationName(), System.getProperty("logDir", "."),
+                    warmupDurationInSec + skipDurationInSec);
+        }
+
         setOperationStartTimeInSec();
 
+        if (inWarmup) {
+            measurementStartTimer = new Timer("measurement-start", true);
+            measurementStartTimer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    startMeasurement();
+                }// run method
+            }, TimeUnit.SECONDS.toMillis(warmupDurationInSec));
+        }
+
         progressTrackingTimer = new Timer();
         progressTrackingTimer.schedule(new TimerTask() {
             int counter = 5;
@@ -240,6 +348,66 @@ public abstract class LoadGenerator {
         startWorkers();
     }
 
+    /**
+     * Warmup -> measurement switch of a continuous run. Connections, workers and query data are kept as they are; only
+     * the recorders and the schedule of the workers are reset, so the measurement starts from a warm state.
+     * The last warmup snapshot swaps the recorders of the workers and the phase is switched in the same step (under the
+     * lock of the collector), so every recorded request belongs to exactly one phase. The schedule is reset after that:
+     * the requests still sent at the warmup rate until a worker picks up its reset are part of the measurement.
+     */
+    private void startMeasurement() {
+        final PhaseMetrics measurementPhaseMetrics = new PhaseMetrics(getOperationName(), targetThroughput);
+        if (metricsCollector != null) {
+            synchronized (metricsCollector) {
+                metricsCollector.takeHistogramSnapshot();
+                phaseMetrics = measurementPhaseMetrics;
+                inWarmup = false;
+                metricsCollector.startMeasurement();
+            }
+        } else {
+            addRecordersToSummary(warmupPhaseMetrics);
+            phaseMetrics = measurementPhaseMetrics;
+            inWarmup = false;
+        }
+        clientHealthMonitor.stop();
+
+        long totalRequestsSentDuringWarmup = 0;
+        long totalErrorsDuringWarmup = 0;
+        final int throughputExpectedToBeAchievedByCurrentWorker = getThroughputPerWorker(targetThroughput);
+        for (int i = 0; i < numberOfThreads; i++) {
+            totalRequestsSentDuringWarmup += arrayOfQueryWorkers[i].getRateLimiter().getTotalOperationsCompletedSoFar();
+            arrayOfQueryWorkers[i].getRateLimiter().reset(throughputExpectedToBeAchievedByCurrentWorker);
+            totalErrorsDuringWarmup += arrayOfQueryWorkers[i].getQueryWorkerStat().reset();
+        }
+        setOperationEndTimeInSec();
+        warmupPhaseMetrics.complete(operationStartTimeInSec, operationEndTimeInSec,
+                totalRequestsSentDuringWarmup, totalErrorsDuringWarmup, clientHealthMonitor);
+
+        clientHealthMonitor = new ClientHealthMonitor(this);
+        clientHealthMonitor.start();
+        setOperationStartTimeInSec();
+        log.info(String.format("Warmup of operation %s completed (%d requests), measurement started at %d req/sec",
+                getOperationName(), totalRequestsSentDuringWarmup, targetThroughput));
+    }
+
+    /** Moves everything recorded by the workers since the last swap into the summary of the given phase */
+    private void addRecordersToSummary(PhaseMetrics phaseMetrics) {
+        for (int i = 0; i < numberOfThreads; i++) {
+            final QueryWorkerStats queryWorkerStats = arrayOfQueryWorkers[i].getQueryWorkerStat();
+            phaseMetrics.addToSummary(queryWorkerStats.getClientSideViewServiceTimeHistogram().getIntervalHistogram(null),
+                    queryWorkerStats.getServerSideViewServiceTimeHistogram().getIntervalHistogram(null),
+                    queryWorkerStats.getClientSideViewResponseTimeHistogram().getIntervalHistogram(null));
+            queryWorkerStats.getStepResponseTimeHistograms().forEach((step, recorder) ->
+                    phaseMetrics.addStepResponseTimes(step, recorder.getIntervalHistogram(null)));
+            queryWorkerStats.getSelectivityResponseTimeHistograms().forEach((selectivity, recorder) ->
+                    phaseMetrics.addSelectivityResponseTimes(selectivity, recorder.getIntervalHistogram(null)));
+        }
+    }
+
+    boolean isInWarmup() {
+        return inWarmup;
+    }
+
     public void waitForBenchmarkRunToFinish() throws ExecutionException, InterruptedException {
         if (listOfFutures == null) return;
 
@@ -247,15 +415,74 @@ public abstract class LoadGenerator {
         for (int i = 0; i < numberOfWorkers; i++) {
             listOfFutures.get(i).get();
         }
+        if (measurementStartTimer != null) {
+            measurementStartTimer.cancel();
+        }
 
         if (collectLatencyMetrics) {
             metricsCollector.stop();
+        } else {
+            // No interval histograms were taken, the recorders hold the whole run (or the measurement of a continuous run)
+            addRecordersToSummary(phaseMetrics);
+        }
+        clientHealthMonitor.stop();
+        if (metricsEventDispatcher != null) {
+            metricsEventDispatcher.stop();
         }
 
         progressTrackingTimer.cancel();
         System.out.println(); // start new line to allow logging to proceed
         setOperationEndTimeInSec();
+
+        phaseMetrics.complete(operationStartTimeInSec, operationEndTimeInSec,
+                getTotalRequestsSentFromAllWorker(), getTotalErrorsFromAllWorker(), clientHealthMonitor);
+        phaseMetrics.setAdaptiveConcurrencyController(adaptiveConcurrencyController);
+        completeDeadlineAccounting();
+        printStepSummary();
         closeAllClientConnections();
+        phaseMetrics.setSolrClientFactory(solrClientFactory);
+        solrClientFactory.printSummary(getOperationName(), phaseMetrics.getTotalRequestsSent());
+    }
+
+    /**
+     * The workers stop sending at their deadline, but the requests in flight at that point are waited for. The phase
+     * throughput is therefore based on the scheduled window of the workers (not the wall clock time of the phase, nor
+     * the nominal duration), and the requests that completed after the deadline are reported separately.
+     */
+    private void completeDeadlineAccounting() {
+        long totalMeasuredWindowInNanos = 0;
+        long totalRequestsNotSentBeforeDeadline = 0;
+        final Histogram completedAfterDeadlineResponseTimeHistogram = new Histogram(2);
+        for (int i = 0; i < numberOfThreads; i++) {
+            final ThroughputController throughputController = arrayOfQueryWorkers[i].getRateLimiter();
+            totalMeasuredWindowInNanos += throughputController.getMeasuredWindowInNanos();
+            totalRequestsNotSentBeforeDeadline += throughputController.getOperationsNotSentBeforeDeadline();
+            completedAfterDeadlineResponseTimeHistogram.add(arrayOfQueryWorkers[i].getQueryWorkerStat()
+                    .getCompletedAfterDeadlineHistogram().getIntervalHistogram(null));
+        }
+        phaseMetrics.completeDeadlineAccounting(totalMeasuredWindowInNanos / (double) numberOfThreads / TimeUnit.SECONDS.toNanos(1),
+                totalRequestsNotSentBeforeDeadline, completedAfterDeadlineResponseTimeHistogram);
+
+        if (completedAfterDeadlineResponseTimeHistogram.getTotalCount() > 0 || totalRequestsNotSentBeforeDeadline > 0) {
+            log.info(String.format("%-30s %s %d requests completed after the deadline (max response time %.3f ms), %d scheduled requests not sent",
+                    getOperationName(), ":", completedAfterDeadlineResponseTimeHistogram.getTotalCount(),
+                    completedAfterDeadlineResponseTimeHistogram.getMaxValue() / 1e6, totalRequestsNotSentBeforeDeadline));
+        }
+    }
+
+    private void printStepSummary() {
+        phaseMetrics.getStepResponseTimeHistograms().forEach((step, histogram) ->
+                log.info(String.format("%-30s %s %d requests | response time p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+                        "step " + step, ":", histogram.getTotalCount(),
+                        histogram.getValueAtPercentile(50) / 1e6,
+                        histogram.getValueAtPercentile(99) / 1e6,
+                        histogram.getMaxValue() / 1e6)));
+        phaseMetrics.getSelectivityResponseTimeHistograms().forEach((selectivity, histogram) ->
+                log.info(String.format("%-30s %s %d requests | response time p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+                        "selectivity " + selectivity + " hits", ":", histogram.getTotalCount(),
+                        histogram.getValueAtPercentile(50) / 1e6,
+                        histogram.getValueAtPercentile(99) / 1e6,
+                        histogram.getMaxValue() / 1e6)));
     }
 
     private void closeAllClientConnections() {
@@ -303,7 +530,46 @@ public abstract class LoadGenerator {
         return totalRequests;
     }
 
+    public long getTotalErrorsFromAllWorker() {
+        if (arrayOfQueryWorkers == null) return 0;
+
+        long totalErrors = 0;
+        for (int i = 0; i < arrayOfQueryWorkers.length; i++) {
+            totalErrors += arrayOfQueryWorkers[i].getQueryWorkerStat().getTotalErrors();
+        }
+        return totalErrors;
+    }
+
+    public PhaseMetrics getPhaseMetrics() {
+        return phaseMetrics;
+    }
+
+    public PhaseMetrics getWarmupPhaseMetrics() {
+        return warmupPhaseMetrics;
+    }
+
+    public AdaptiveConcurrencyController getAdaptiveConcurrencyController() {
+        return adaptiveConcurrencyController;
+    }
+
+    public ClientHealthMonitor getClientHealthMonitor() {
+        return clientHealthMonitor;
+    }
+
+    public void setIntervalHistogramListener(IntervalHistogramListener intervalHistogramListener) {
+        this.intervalHistogramListener = intervalHistogramListener;
+    }
+
+    public void addMetricsSink(MetricsSink metricsSink) {
+        this.additionalMetricsSinks.add(metricsSink);
+    }
+
     public void setupExternalMetricsConsumer(Consumer<Long> externalLatencyRecorder) {
-        this.externalMetricsConsumer = externalLatencyRecorder;
+        setupExternalLatencyConsumer(externalLatencyRecorder::accept);
+    }
+
+    // (same as setupExternalMetricsConsumer, without boxing every response time)
+    public void setupExternalLatencyConsumer(LongConsumer externalLatencyRecorder) {
+        addMetricsSink(new ConsumerMetricsSink(externalLatencyRecorder));
     }
 }
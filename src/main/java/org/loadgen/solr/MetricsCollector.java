@@ -35,14 +35,19 @@ package org.loadgen.solr;
 /**
  * @author deepakr
  */
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
 import org.HdrHistogram.Histogram;
 import org.HdrHistogram.HistogramLogWriter;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.TimeUnit;
@@ -54,8 +59,13 @@ class MetricsCollector {
     private HistogramLogWriter histogramLogWriterForClientSideViewServiceTimeHistogram;
     private HistogramLogWriter histogramLogWriterForServerSideViewServiceTimeHistogram;
     private HistogramLogWriter histogramLogWriterForClientSideViewResponseTimeHistogram;
+    private PrintStream slowRequestLog;
+
+    private static final Gson gson = new GsonBuilder().disableJdkUnsafe().create();
 
     private Timer metricsCollectionTimer;
+    // Set once the 'skipDurationInSec' is over, by the snapshot that closes the skipped interval
+    private boolean skipDurationOver;
 
     final private LoadGenerator loadGenerator;
     public MetricsCollector(LoadGenerator loadGenerator) {
@@ -82,25 +92,31 @@ class MetricsCollector {
         String CLIENT_RESPONSE_TIME_HLOG_FILE_NAME = LOG_DIR + File.separator + "hlog_ttpt" +
                 loadGenerator.targetThroughput + "_" + loadGenerator.getOperationName() + "_client_rt.log";
 
-        SERVER_SERVICE_TIME_HLOG_FILE_NAME  = getNonDuplicateLogName(SERVER_SERVICE_TIME_HLOG_FILE_NAME);
-        CLIENT_SERVICE_TIME_HLOG_FILE_NAME  = getNonDuplicateLogName(CLIENT_SERVICE_TIME_HLOG_FILE_NAME);
-        CLIENT_RESPONSE_TIME_HLOG_FILE_NAME = getNonDuplicateLogName(CLIENT_RESPONSE_TIME_HLOG_FILE_NAME);
+        SERVER_SERVICE_TIME_HLOG_FILE_NAME  = LogFiles.getNonDuplicateLogName(SERVER_SERVICE_TIME_HLOG_FILE_NAME);
+        CLIENT_SERVICE_TIME_HLOG_FILE_NAME  = LogFiles.getNonDuplicateLogName(CLIENT_SERVICE_TIME_HLOG_FILE_NAME);
+        CLIENT_RESPONSE_TIME_HLOG_FILE_NAME = LogFiles.getNonDuplicateLogName(CLIENT_RESPONSE_TIME_HLOG_FILE_NAME);
+        String SLOW_REQUESTS_LOG_FILE_NAME = LogFiles.getNonDuplicateLogName(LOG_DIR + File.separator + "hlog_ttpt" +
+                loadGenerator.targetThroughput + "_" + loadGenerator.getOperationName() + "_client_rt_slowest.jsonl");
 
         try {
             histogramLogWriterForServerSideViewServiceTimeHistogram  = new HistogramLogWriter(SERVER_SERVICE_TIME_HLOG_FILE_NAME);
             histogramLogWriterForClientSideViewServiceTimeHistogram  = new HistogramLogWriter(CLIENT_SERVICE_TIME_HLOG_FILE_NAME);
             histogramLogWriterForClientSideViewResponseTimeHistogram = new HistogramLogWriter(CLIENT_RESPONSE_TIME_HLOG_FILE_NAME);
-        } catch (FileNotFoundException e) {
+            if (loadGenerator.slowRequestsPerInterval > 0) {
+                slowRequestLog = new PrintStream(SLOW_REQUESTS_LOG_FILE_NAME, "UTF-8");
+            }
+        } catch (IOException e) {
             System.err.println("FATAL : Failed while setting up HDRHistogram logs");
             e.printStackTrace();
             System.exit(3);
         }
     }
 
-    public void takeHistogramSnapshot () {
+    public synchronized void takeHistogramSnapshot () {
         final Histogram serverSideViewServiceTimeHistogram_intervalHistogram  = new Histogram(2);
         final Histogram clientSideViewServiceTimeHistogram_intervalHistogram  = new Histogram(2);
         final Histogram clientSideViewResponseTimeHistogram_intervalHistogram = new Histogram(2);
+        final List<SlowRequest> slowRequests_interval = new ArrayList<>();
 
         for (int i = 0; i < loadGenerator.numberOfThreads; i++) {
 
@@ -110,6 +126,8 @@ class MetricsCollector {
                     .getClientSideViewServiceTimeHistogram().getIntervalHistogram(null));
             clientSideViewResponseTimeHistogram_intervalHistogram.add(loadGenerator.arrayOfQueryWorkers[i].getQueryWorkerStat()
                     .getClientSideViewResponseTimeHistogram().getIntervalHistogram(null));
+            slowRequests_interval.addAll(loadGenerator.arrayOfQueryWorkers[i].getQueryWorkerStat()
+                    .getSlowRequestRecorder().getIntervalSlowRequests());
         }// for loop ends
 
         histogramLogWriterForClientSideViewServiceTimeHistogram.outputIntervalHistogram(
@@ -123,23 +141,66 @@ class MetricsCollector {
         histogramLogWriterForClientSideViewResponseTimeHistogram.outputIntervalHistogram(
                 clientSideViewResponseTimeHistogram_intervalHistogram
         );
-    }
 
-    private String getNonDuplicateLogName(final String baseLogName) {
-        String uniqueLogFileName = baseLogName;
+        if (slowRequestLog != null) {
+            writeSlowRequests(SlowRequestRecorder.merge(slowRequests_interval, loadGenerator.slowRequestsPerInterval));
+        }
+
+        // (the warmup of a continuous run has a phase of its own: its intervals are reported under the name of that phase)
+        final PhaseMetrics phaseMetrics = loadGenerator.getPhaseMetrics();
+        if (loadGenerator.intervalHistogramListener != null) {
+            loadGenerator.intervalHistogramListener.onIntervalHistograms(phaseMetrics.getOperationName(),
+                    clientSideViewServiceTimeHistogram_intervalHistogram,
+                    serverSideViewServiceTimeHistogram_intervalHistogram,
+                    clientSideViewResponseTimeHistogram_intervalHistogram);
+        }
+
+        if (loadGenerator.adaptiveConcurrencyController != null) {
+            loadGenerator.adaptiveConcurrencyController.onInterval(clientSideViewServiceTimeHistogram_intervalHistogram);
+        }
 
-        File baseLogFile = new File(baseLogName);
-        int counter = 0;
+        phaseMetrics.addIntervalSample(System.currentTimeMillis(),
+                clientSideViewServiceTimeHistogram_intervalHistogram,
+                clientSideViewResponseTimeHistogram_intervalHistogram);
+
+        // The summary of the phase covers only the measured window (i.e. after the 'skipDurationInSec')
+        final boolean inMeasuredWindow = loadGenerator.isInWarmup() || skipDurationOver;
+        if (inMeasuredWindow) {
+            phaseMetrics.addToSummary(clientSideViewServiceTimeHistogram_intervalHistogram,
+                    serverSideViewServiceTimeHistogram_intervalHistogram,
+                    clientSideViewResponseTimeHistogram_intervalHistogram);
+        }
+        for (int i = 0; i < loadGenerator.numberOfThreads; i++) {
+            loadGenerator.arrayOfQueryWorkers[i].getQueryWorkerStat().getStepResponseTimeHistograms().forEach((step, recorder) -> {
+                final Histogram stepResponseTime = recorder.getIntervalHistogram(null);
+                if (inMeasuredWindow) {
+                    phaseMetrics.addStepResponseTimes(step, stepResponseTime);
+                }
+            });
+            loadGenerator.arrayOfQueryWorkers[i].getQueryWorkerStat().getSelectivityResponseTimeHistograms().forEach((selectivity, recorder) -> {
+                final Histogram selectivityResponseTime = recorder.getIntervalHistogram(null);
+                if (inMeasuredWindow) {
+                    phaseMetrics.addSelectivityResponseTimes(selectivity, selectivityResponseTime);
+                }
+            });
+        }
+    }
 
-        while (baseLogFile.exists()) {
-            uniqueLogFileName = baseLogName + "." + counter++;
-            baseLogFile = new File(uniqueLogFileName);
+    // One JSON line per exemplar, tagged with the end of the interval it belongs to (same interval as the hlog entry)
+    private void writeSlowRequests(List<SlowRequest> slowRequests) {
+        final long intervalEndEpochMillis = System.currentTimeMillis();
+        for (int rank = 0; rank < slowRequests.size(); rank++) {
+            final JsonObject slowRequestJson = gson.toJsonTree(slowRequests.get(rank)).getAsJsonObject();
+            slowRequestJson.addProperty("intervalEndEpochMillis", intervalEndEpochMillis);
+            slowRequestJson.addProperty("rank", rank + 1);
+            slowRequestLog.println(gson.toJson(slowRequestJson));
         }
-        return uniqueLogFileName;
+        slowRequestLog.flush();
     }
 
     public void start() {
         setupHistogramLogs();
+        skipDurationOver = loadGenerator.skipDurationInSec == 0;
 
         // start a timer to collect latency metrics every 1 sec
         metricsCollectionTimer = new Timer(true);
@@ -152,20 +213,31 @@ class MetricsCollector {
 
 
         // Experimental
+        // (a continuous run without skip duration: the measurement switch resets the schedule itself, a second reset
+        // at the same time could zero the operation count of the workers before the warmup count is taken)
+        if (loadGenerator.warmupDurationInSec > 0 && loadGenerator.skipDurationInSec == 0) return;
         metricsCollectionTimer.schedule(new TimerTask() {
             @Override
             public void run() {
+                endSkipDuration();
+                // (the metrics sinks get only the requests after the 'skipDurationInSec', see MetricsEventDispatcher)
                 for (int i = 0; i < loadGenerator.arrayOfQueryWorkers.length; i++) {
                     loadGenerator.arrayOfQueryWorkers[i].getRateLimiter().reset();
-
-                    // TODO: Re-work the code
-                    //  This is a dirty hack: Passing 'externalMetricsConsumer' AKA TUSLA recorder to each
-                    //  worker after the 'skipDurationInSec'
-                    loadGenerator.arrayOfQueryWorkers[i].getQueryWorkerStat().
-                            setupExternalMetricsConsumer(loadGenerator.externalMetricsConsumer);
                 }
             }
-        }, TimeUnit.SECONDS.toMillis(loadGenerator.skipDurationInSec));
+        }, TimeUnit.SECONDS.toMillis(loadGenerator.warmupDurationInSec + loadGenerator.skipDurationInSec));
+    }
+
+    // Continuous run: the 'skipDurationInSec' counts from the end of the warmup
+    public synchronized void startMeasurement() {
+        skipDurationOver = loadGenerator.skipDurationInSec == 0;
+    }
+
+    // The skipped requests are closed in an interval of their own, i.e. the summary starts exactly with the measured window
+    private synchronized void endSkipDuration() {
+        if (skipDurationOver) return;
+        takeHistogramSnapshot();
+        skipDurationOver = true;
     }
 
     public void stop() {
@@ -174,6 +246,10 @@ class MetricsCollector {
 
         // Take one last snapshot of the histogram to collect any residue buckets
         takeHistogramSnapshot();
+
+        if (slowRequestLog != null) {
+            slowRequestLog.close();
+        }
     }
 }
 
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Everything measured for one operation over one phase (warmup, measurement, ...): the accumulated histograms, a
+ * per-interval time series and the request/error counts. Filled by the {@link LoadGenerator} and its
+ * {@link MetricsCollector}, consumed by the end-of-run report.
+ */
+public class PhaseMetrics {
+
+    public static class IntervalSample {
+        public final long timestampInMillis;
+        public final long requestsCompleted;
+        public final double responseTimeP50InMillis;
+        public final double responseTimeP99InMillis;
+        public final double responseTimeMaxInMillis;
+        public final double serviceTimeP99InMillis;
+
+        IntervalSample(long timestampInMillis, Histogram serviceTimeHistogram, Histogram responseTimeHistogram) {
+            this.timestampInMillis       = timestampInMillis;
+            this.requestsCompleted       = responseTimeHistogram.getTotalCount();
+            this.responseTimeP50InMillis = responseTimeHistogram.getValueAtPercentile(50) / 1e6;
+            this.responseTimeP99InMillis = responseTimeHistogram.getValueAtPercentile(99) / 1e6;
+            this.responseTimeMaxInMillis = responseTimeHistogram.getMaxValue() / 1e6;
+            this.serviceTimeP99InMillis  = serviceTimeHistogram.getValueAtPercentile(99) / 1e6;
+        }
+    }
+
+    // Selectivity bands ("1-9", "10-99", ..., "100000+") in the order of their lowest number of hits
+    private static final Comparator<String> SELECTIVITY_ORDER =
+            Comparator.comparingLong(PhaseMetrics::getLowestHits).thenComparing(Comparator.naturalOrder());
+
+    private final String operationName;
+    private final int targetThroughput;
+
+    private final Histogram clientSideViewServiceTimeHistogram  = new Histogram(2); // in nanos
+    private final Histogram serverSideViewServiceTimeHistogram  = new Histogram(2); // in millis (QTime)
+    private final Histogram clientSideViewResponseTimeHistogram = new Histogram(2); // in nanos
+    private final List<IntervalSample> intervalSamples = new ArrayList<>();
+    private final Map<String, Histogram> stepResponseTimeHistograms = new TreeMap<>(); // in nanos
+    private final Map<String, Histogram> selectivityResponseTimeHistograms = new TreeMap<>(SELECTIVITY_ORDER); // in nanos
+
+    private double startTimeInSec;
+    private double endTimeInSec;
+    private long totalRequestsSent;
+    private long totalErrors;
+    private ClientHealthMonitor clientHealthMonitor;
+    private AdaptiveConcurrencyController adaptiveConcurrencyController; // closed-loop mode only
+    private SolrClientFactory solrClientFactory; // transport and its connection statistics (whole run of the clients)
+    private FreshnessProbe freshnessProbe; // write-to-visible latency of the markers written during the phase, if any
+
+    // Deadline accounting (measured window = scheduled window of the sent requests, 0 if unknown -> wall clock duration)
+    private double measuredWindowInSec;
+    private long requestsNotSentBeforeDeadline;
+    private final Histogram completedAfterDeadlineResponseTimeHistogram = new Histogram(2); // in nanos
+
+    public PhaseMetrics(String operationName, int targetThroughput) {
+        this.operationName = operationName;
+        this.targetThroughput = targetThroughput;
+    }
+
+    public synchronized void addToSummary(Histogram clientSideViewServiceTime, Histogram serverSideViewServiceTime,
+                                   Histogram clientSideViewResponseTime) {
+        clientSideViewServiceTimeHistogram.add(clientSideViewServiceTime);
+        serverSideViewServiceTimeHistogram.add(serverSideViewServiceTime);
+        clientSideViewResponseTimeHistogram.add(clientSideViewResponseTime);
+    }
+
+    public synchronized void addStepResponseTimes(String step, Histogram stepResponseTime) {
+        stepResponseTimeHistograms.computeIfAbsent(step, x -> new Histogram(2)).add(stepResponseTime);
+    }
+
+    public synchronized void addSelectivityResponseTimes(String selectivity, Histogram selectivityResponseTime) {
+        selectivityResponseTimeHistograms.computeIfAbsent(selectivity, x -> new Histogram(2)).add(selectivityResponseTime);
+    }
+
+    public synchronized void addIntervalSample(long timestampInMillis, Histogram clientSideViewServiceTime,
+                                        Histogram clientSideViewResponseTime) {
+        intervalSamples.add(new IntervalSample(timestampInMillis, clientSideViewServiceTime, clientSideViewResponseTime));
+    }
+
+    public void complete(double startTimeInSec, double endTimeInSec, long totalRequestsSent, long totalErrors,
+                  ClientHealthMonitor clientHealthMonitor) {
+        this.startTimeInSec = startTimeInSec;
+        this.endTimeInSec = endTimeInSec;
+        this.totalRequestsSent = totalRequestsSent;
+        this.totalErrors = totalErrors;
+        this.clientHealthMonitor = clientHealthMonitor;
+    }
+
+    public synchronized void completeDeadlineAccounting(double measuredWindowInSec, long requestsNotSentBeforeDeadline,
+                                                        Histogram completedAfterDeadlineResponseTime) {
+        this.measuredWindowInSec = measuredWindowInSec;
+        this.requestsNotSentBeforeDeadline = requestsNotSentBeforeDeadline;
+        this.completedAfterDeadlineResponseTimeHistogram.add(completedAfterDeadlineResponseTime);
+    }
+
+    public String getOperationName() {
+        return operationName;
+    }
+
+    public int getTargetThroughput() {
+        return targetThroughput;
+    }
+
+    public synchronized Histogram getClientSideViewServiceTimeHistogram() {
+        return clientSideViewServiceTimeHistogram.copy();
+    }
+
+    public synchronized Histogram getServerSideViewServiceTimeHistogram() {
+        return serverSideViewServiceTimeHistogram.copy();
+    }
+
+    public synchronized Histogram getClientSideViewResponseTimeHistogram() {
+        return clientSideViewResponseTimeHistogram.copy();
+    }
+
+    public synchronized Map<String, Histogram> getStepResponseTimeHistograms() {
+        final Map<String, Histogram> stepResponseTimeHistogramsCopy = new TreeMap<>();
+        stepResponseTimeHistograms.forEach((step, histogram) -> stepResponseTimeHistogramsCopy.put(step, histogram.copy()));
+        return stepResponseTimeHistogramsCopy;
+    }
+
+    public synchronized Map<String, Histogram> getSelectivityResponseTimeHistograms() {
+        final Map<String, Histogram> selectivityResponseTimeHistogramsCopy = new TreeMap<>(SELECTIVITY_ORDER);
+        selectivityResponseTimeHistograms.forEach((selectivity, histogram) -> selectivityResponseTimeHistogramsCopy.put(selectivity, histogram.copy()));
+        return selectivityResponseTimeHistogramsCopy;
+    }
+
+    private static long getLowestHits(String selectivity) {
+        int digits = 0;
+        while (digits < selectivity.length() && digits < 18 && Character.isDigit(selectivity.charAt(digits))) {
+            digits++;
+        }
+        return digits == 0 ? Long.MAX_VALUE : Long.parseLong(selectivity.substring(0, digits));
+    }
+
+    public synchronized List<IntervalSample> getIntervalSamples() {
+        return new ArrayList<>(intervalSamples);
+    }
+
+    public double getStartTimeInSec() {
+        return startTimeInSec;
+    }
+
+    public double getEndTimeInSec() {
+        return endTimeInSec;
+    }
+
+    public double getDurationInSec() {
+        return endTimeInSec - startTimeInSec;
+    }
+
+    public long getTotalRequestsSent() {
+        return totalRequestsSent;
+    }
+
+    public long getTotalErrors() {
+        return totalErrors;
+    }
+
+    public double getMeasuredWindowInSec() {
+        return measuredWindowInSec > 0 ? measuredWindowInSec : getDurationInSec();
+    }
+
+    public long getRequestsNotSentBeforeDeadline() {
+        return requestsNotSentBeforeDeadline;
+    }
+
+    public synchronized Histogram getCompletedAfterDeadlineResponseTimeHistogram() {
+        return completedAfterDeadlineResponseTimeHistogram.copy();
+    }
+
+    public double getActualThroughput() {
+        return getMeasuredWindowInSec() > 0 ? totalRequestsSent / getMeasuredWindowInSec() : 0;
+    }
+
+    public void setAdaptiveConcurrencyController(AdaptiveConcurrencyController adaptiveConcurrencyController) {
+        this.adaptiveConcurrencyController = adaptiveConcurrencyController;
+    }
+
+    public AdaptiveConcurrencyController getAdaptiveConcurrencyController() {
+        return adaptiveConcurrencyController;
+    }
+
+    public void setSolrClientFactory(SolrClientFactory solrClientFactory) {
+        this.solrClientFactory = solrClientFactory;
+    }
+
+    public SolrClientFactory getSolrClientFactory() {
+        return solrClientFactory;
+    }
+
+    public void setFreshnessProbe(FreshnessProbe freshnessProbe) {
+        this.freshnessProbe = freshnessProbe;
+    }
+
+    public FreshnessProbe getFreshnessProbe() {
+        return freshnessProbe;
+    }
+
+    public ClientHealthMonitor getClientHealthMonitor() {
+        return clientHealthMonitor;
+    }
+}
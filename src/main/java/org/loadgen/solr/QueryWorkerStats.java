@@ -36,8 +36,11 @@ package org.loadgen.solr;
  * @author deepakr
  */
 import org.HdrHistogram.SingleWriterRecorder;
+import org.loadgen.solr.sink.RequestEvent;
+import org.loadgen.solr.sink.RequestEventRingBuffer;
 
-import java.util.function.Consumer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class QueryWorkerStats {
 
@@ -45,14 +48,42 @@ public class QueryWorkerStats {
     private final SingleWriterRecorder serverSideViewServiceTimeHistogram;
     private final SingleWriterRecorder clientSideViewResponseTimeHistogram;
 
-    private long totalRequestsSent;
+    // Client self-health: actual send time - intended start time, and the oversleep after parking
+    private final SingleWriterRecorder schedulingLagHistogram;
+    private final SingleWriterRecorder wakeUpLagHistogram;
 
-    private Consumer<Long> statsConsumerExternal;
+    // Requests sent before the deadline of the run that completed after it (response time). Deliberately recorded in
+    // the recorders above as well: they are the slowest requests of the window, the report states that they are included
+    private final SingleWriterRecorder completedAfterDeadlineHistogram;
+
+    // Response time per request type of a multi-step workload (e.g. steps of the user sessions), created on first use
+    private final Map<String, SingleWriterRecorder> stepResponseTimeHistograms = new ConcurrentHashMap<>();
+
+    // Response time per selectivity band of the query files (see QueryFileHeader), created on first use
+    private final Map<String, SingleWriterRecorder> selectivityResponseTimeHistograms = new ConcurrentHashMap<>();
+
+    // Tail-latency exemplars: the slowest requests of the current interval
+    private final SlowRequestRecorder slowRequestRecorder;
+
+    private volatile long totalRequestsSent; // set by the worker when it stops, from its (reset) operation count
+    private long totalErrors;
+    private volatile long totalErrorsBeforeLastReset; // the worker owns 'totalErrors', reset() only moves the baseline
+
+    // Hand-off of every request to the metrics sinks (null if no sink is configured)
+    private RequestEventRingBuffer requestEventRingBuffer;
 
     public QueryWorkerStats() {
+        this(0);
+    }
+
+    public QueryWorkerStats(int maxSlowRequestsPerInterval) {
         this.clientSideViewServiceTimeHistogram  = new SingleWriterRecorder(2);
         this.serverSideViewServiceTimeHistogram  = new SingleWriterRecorder(2);
         this.clientSideViewResponseTimeHistogram = new SingleWriterRecorder(2);
+        this.schedulingLagHistogram              = new SingleWriterRecorder(2);
+        this.wakeUpLagHistogram                  = new SingleWriterRecorder(2);
+        this.completedAfterDeadlineHistogram     = new SingleWriterRecorder(2);
+        this.slowRequestRecorder                 = new SlowRequestRecorder(maxSlowRequestsPerInterval);
     }
 
     public SingleWriterRecorder getClientSideViewServiceTimeHistogram() {
@@ -67,6 +98,30 @@ public class QueryWorkerStats {
         return clientSideViewResponseTimeHistogram;
     }
 
+    public SingleWriterRecorder getSchedulingLagHistogram() {
+        return schedulingLagHistogram;
+    }
+
+    public SingleWriterRecorder getWakeUpLagHistogram() {
+        return wakeUpLagHistogram;
+    }
+
+    public SingleWriterRecorder getCompletedAfterDeadlineHistogram() {
+        return completedAfterDeadlineHistogram;
+    }
+
+    public Map<String, SingleWriterRecorder> getStepResponseTimeHistograms() {
+        return stepResponseTimeHistograms;
+    }
+
+    public Map<String, SingleWriterRecorder> getSelectivityResponseTimeHistograms() {
+        return selectivityResponseTimeHistograms;
+    }
+
+    public SlowRequestRecorder getSlowRequestRecorder() {
+        return slowRequestRecorder;
+    }
+
     public long getTotalRequestsSent() {
         return totalRequestsSent;
     }
@@ -75,24 +130,68 @@ public class QueryWorkerStats {
         this.totalRequestsSent = totalRequestsSent;
     }
 
-    public void reset() {
-        clientSideViewResponseTimeHistogram.reset();
-        clientSideViewServiceTimeHistogram.reset();
-        serverSideViewServiceTimeHistogram.reset();
-        totalRequestsSent = 0;
+    public long getTotalErrors() {
+        return totalErrors - totalErrorsBeforeLastReset;
+    }
+
+    public void collectError() {
+        totalErrors++;
+    }
+
+    /**
+     * Restarts the error count and the client health recorders, e.g. at the end of the warmup of a continuous run.
+     * The response time recorders are not touched: they are swapped by the interval snapshot of the phase switch, so
+     * nothing recorded after that snapshot is lost.
+     *
+     * @return the errors since the previous reset
+     */
+    public long reset() {
+        final long totalErrorsNow = totalErrors;
+        final long totalErrorsSinceLastReset = totalErrorsNow - totalErrorsBeforeLastReset;
+        totalErrorsBeforeLastReset = totalErrorsNow;
+        schedulingLagHistogram.reset();
+        wakeUpLagHistogram.reset();
+        completedAfterDeadlineHistogram.reset();
+        return totalErrorsSinceLastReset;
     }
 
     public void collect(long responseTimeInNanos, long serviceTimeInNanos, int qTime) {
         clientSideViewResponseTimeHistogram.recordValue(responseTimeInNanos);
         clientSideViewServiceTimeHistogram.recordValue(serviceTimeInNanos);
-        serverSideViewServiceTimeHistogram.recordValue(qTime);
+        if (qTime >= 0) { // unknown if the response body is discarded
+            serverSideViewServiceTimeHistogram.recordValue(qTime);
+        }
+    }
+
+    public void collectStep(String step, long responseTimeInNanos) {
+        stepResponseTimeHistograms.computeIfAbsent(step, x -> new SingleWriterRecorder(2)).recordValue(responseTimeInNanos);
+    }
+
+    public void collectSelectivity(String selectivity, long responseTimeInNanos) {
+        selectivityResponseTimeHistograms.computeIfAbsent(selectivity, x -> new SingleWriterRecorder(2)).recordValue(responseTimeInNanos);
+    }
+
+    public void collectCompletedAfterDeadline(long responseTimeInNanos) {
+        completedAfterDeadlineHistogram.recordValue(responseTimeInNanos);
+    }
+
+    public void publishEvent(RequestEvent.Type type, long intendedStartTimeInNanos, long actualStartTimeInNanos,
+                             long serviceTimeInNanos, long responseTimeInNanos, int qTime, int status,
+                             long numFound, long responseSizeInBytes) {
+        if (requestEventRingBuffer != null) {
+            requestEventRingBuffer.publish(type, intendedStartTimeInNanos, actualStartTimeInNanos, serviceTimeInNanos,
+                    responseTimeInNanos, qTime, status, numFound, responseSizeInBytes);
+        }
+    }
 
-        if (statsConsumerExternal != null) {
-            statsConsumerExternal.accept(responseTimeInNanos);
+    public void collectSchedulingLag(long schedulingLagInNanos, long wakeUpLagInNanos) {
+        schedulingLagHistogram.recordValue(schedulingLagInNanos);
+        if (wakeUpLagInNanos >= 0) {
+            wakeUpLagHistogram.recordValue(wakeUpLagInNanos);
         }
     }
 
-    public void setupExternalMetricsConsumer(Consumer<Long> statsConsumerExternal) {
-        this.statsConsumerExternal = statsConsumerExternal;
+    public void setRequestEventRingBuffer(RequestEventRingBuffer requestEventRingBuffer) {
+        this.requestEventRingBuffer = requestEventRingBuffer;
     }
 }
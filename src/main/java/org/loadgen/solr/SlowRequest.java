@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr;
+
+/**
+ * One tail-latency exemplar: a request that was among the slowest of its interval, with enough context
+ * (query, parameters, target node, timings) to reproduce it.
+ */
+public class SlowRequest {
+    public final String query;
+    public final String params;
+    public final String targetNode;
+    public final long intendedStartEpochMillis;
+    public final long actualStartEpochMillis;
+    public final double responseTimeInMillis;
+    public final double serviceTimeInMillis;
+    public final int qTime;
+    public final long numFound;
+
+    // Not serialized to the exemplar logs, only used to rank the requests
+    final transient long responseTimeInNanos;
+
+    SlowRequest(String query, String params, String targetNode, long intendedStartEpochMillis, long actualStartEpochMillis,
+                long responseTimeInNanos, long serviceTimeInNanos, int qTime, long numFound) {
+        this.query = query;
+        this.params = params;
+        this.targetNode = targetNode;
+        this.intendedStartEpochMillis = intendedStartEpochMillis;
+        this.actualStartEpochMillis = actualStartEpochMillis;
+        this.responseTimeInNanos = responseTimeInNanos;
+        this.responseTimeInMillis = responseTimeInNanos / 1e6;
+        this.serviceTimeInMillis = serviceTimeInNanos / 1e6;
+        this.qTime = qTime;
+        this.numFound = numFound;
+    }
+
+    public long getResponseTimeInNanos() {
+        return responseTimeInNanos;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr;
+
+import org.HdrHistogram.WriterReaderPhaser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the N slowest requests (by response time) of a worker per interval. Like the {@link org.HdrHistogram.SingleWriterRecorder}
+ * it is wait-free for its single writer (the worker) and swaps an active/inactive pair under a {@link WriterReaderPhaser}
+ * when the reader takes the interval. Exemplar objects are only created for requests that make it into the top-N.
+ */
+public class SlowRequestRecorder {
+
+    private static final Comparator<SlowRequest> SLOWEST_FIRST =
+            Comparator.comparingLong(SlowRequest::getResponseTimeInNanos).reversed();
+
+    private final int capacity;
+    private final WriterReaderPhaser recordingPhaser = new WriterReaderPhaser();
+    private final long epochOffsetInNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+
+    private volatile SlowestRequests activeSlowRequests;
+    private SlowestRequests inactiveSlowRequests;
+
+    public SlowRequestRecorder(int capacity) {
+        this.capacity = capacity;
+        this.activeSlowRequests = new SlowestRequests(capacity);
+        this.inactiveSlowRequests = new SlowestRequests(capacity);
+    }
+
+    /** 'requestParams' is only turned into a String if the request makes it into the top-N */
+    public void record(Object requestParams, String query, String targetNode, long intendedStartTimeInNanos,
+                       long actualStartTimeInNanos, long responseTimeInNanos, long serviceTimeInNanos, int qTime, long numFound) {
+        if (capacity == 0) return;
+
+        final long criticalValueAtEnter = recordingPhaser.writerCriticalSectionEnter();
+        try {
+            final SlowestRequests slowestRequests = activeSlowRequests;
+            if (slowestRequests.isCandidate(responseTimeInNanos)) {
+                slowestRequests.offer(new SlowRequest(query, String.valueOf(requestParams), targetNode,
+                        toEpochMillis(intendedStartTimeInNanos), toEpochMillis(actualStartTimeInNanos),
+                        responseTimeInNanos, serviceTimeInNanos, qTime, numFound));
+            }
+        } finally {
+            recordingPhaser.writerCriticalSectionExit(criticalValueAtEnter);
+        }
+    }
+
+    private long toEpochMillis(long nanoTime) {
+        return TimeUnit.NANOSECONDS.toMillis(nanoTime + epochOffsetInNanos);
+    }
+
+    /** Returns the slowest requests recorded since the last call (slowest first) and starts a new interval */
+    public synchronized List<SlowRequest> getIntervalSlowRequests() {
+        inactiveSlowRequests.clear();
+        recordingPhaser.readerLock();
+        try {
+            final SlowestRequests temp = inactiveSlowRequests;
+            inactiveSlowRequests = activeSlowRequests;
+            activeSlowRequests = temp;
+            recordingPhaser.flipPhase();
+        } finally {
+            recordingPhaser.readerUnlock();
+        }
+        return inactiveSlowRequests.toSortedList();
+    }
+
+    public synchronized void reset() {
+        getIntervalSlowRequests();
+    }
+
+    /** Merges per-worker lists into the overall slowest 'limit' requests (slowest first) */
+    public static List<SlowRequest> merge(List<SlowRequest> slowRequests, int limit) {
+        slowRequests.sort(SLOWEST_FIRST);
+        return new ArrayList<>(slowRequests.subList(0, Math.min(limit, slowRequests.size())));
+    }
+
+    // Bounded min-heap on the response time, the root is the fastest of the slowest requests
+    private static class SlowestRequests {
+        private final SlowRequest[] heap;
+        private int size;
+
+        SlowestRequests(int capacity) {
+            this.heap = new SlowRequest[capacity];
+        }
+
+        boolean isCandidate(long responseTimeInNanos) {
+            return size < heap.length || responseTimeInNanos > heap[0].responseTimeInNanos;
+        }
+
+        void offer(SlowRequest slowRequest) {
+            if (size < heap.length) {
+                heap[size] = slowRequest;
+                siftUp(size++);
+            } else {
+                heap[0] = slowRequest;
+                siftDown(0);
+            }
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                final int parent = (index - 1) / 2;
+                if (heap[parent].responseTimeInNanos <= heap[index].responseTimeInNanos) break;
+                swap(parent, index);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            while (true) {
+                final int left = 2 * index + 1;
+                final int right = left + 1;
+                int smallest = index;
+                if (left < size && heap[left].responseTimeInNanos < heap[smallest].responseTimeInNanos) smallest = left;
+                if (right < size && heap[right].responseTimeInNanos < heap[smallest].responseTimeInNanos) smallest = right;
+                if (smallest == index) break;
+                swap(smallest, index);
+                index = smallest;
+            }
+        }
+
+        private void swap(int i, int j) {
+            final SlowRequest temp = heap[i];
+            heap[i] = heap[j];
+            heap[j] = temp;
+        }
+
+        void clear() {
+            Arrays.fill(heap, 0, size, null);
+            size = 0;
+        }
+
+        List<SlowRequest> toSortedList() {
+            final List<SlowRequest> slowRequests = new ArrayList<>(Arrays.asList(heap).subList(0, size));
+            slowRequests.sort(SLOWEST_FIRST);
+            return slowRequests;
+        }
+    }
+}
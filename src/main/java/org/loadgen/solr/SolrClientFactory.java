@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr;
+
+import org.apache.solr.client.solrj.impl.Http2SolrClient;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.io.ConnectionStatistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+
+/**
+ * Creates the SolrJ clients of a load generator with the transport to compare:
+ * <ul>
+ *   <li>http2 : HTTP/2 (h2c), all the requests of a client multiplexed over one connection per host</li>
+ *   <li>http1 : HTTP/1.1 with a keep-alive pool of up to 'maxConnectionsPerHost' connections per host and client</li>
+ * </ul>
+ * With 'responseCompression', gzip responses are asked for (Accept-Encoding), otherwise the responses are uncompressed.
+ * The connections of all the clients share one {@link ConnectionStatistics} (connections opened, bytes on the wire).
+ */
+public class SolrClientFactory {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    public static final String HTTP2 = "http2";
+    public static final String HTTP1 = "http1";
+
+    private final String baseUrl;
+    private final String transport;
+    private final int maxConnectionsPerHost;
+    private final int idleTimeoutInMillis;
+    private final boolean responseCompression;
+    private final ConnectionStatistics connectionStatistics = new ConnectionStatistics();
+
+    public SolrClientFactory(String baseUrl, String transport, int maxConnectionsPerHost, int idleTimeoutInMillis,
+                             boolean responseCompression) {
+        if (!HTTP2.equals(transport) && !HTTP1.equals(transport)) {
+            throw new IllegalArgumentException("Unknown transport '" + transport + "' (" + HTTP2 + "|" + HTTP1 + ")");
+        }
+        this.baseUrl = baseUrl;
+        this.transport = transport;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.idleTimeoutInMillis = idleTimeoutInMillis;
+        this.responseCompression = responseCompression;
+        try {
+            connectionStatistics.start();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static SolrClientFactory fromConfig(String baseUrl, BenchConfig benchConfig) {
+        return new SolrClientFactory(baseUrl, benchConfig.transport, benchConfig.maxConnectionsPerHost, benchConfig.connectionIdleTimeoutInMillis,
+                benchConfig.responseCompression);
+    }
+
+    public Http2SolrClient newSolrClient() {
+        final Http2SolrClient.Builder builder = new Http2SolrClient.Builder(baseUrl).useHttp1_1(HTTP1.equals(transport));
+        if (maxConnectionsPerHost != -1) builder.maxConnectionsPerHost(maxConnectionsPerHost);
+        if (idleTimeoutInMillis != -1) builder.idleTimeout(idleTimeoutInMillis);
+        final Http2SolrClient solrClient = builder.build();
+
+        final HttpClient httpClient = getHttpClient(solrClient);
+        if (httpClient != null) {
+            // not managed: closing one client must not stop the statistics shared by all of them
+            httpClient.addBean(connectionStatistics, false);
+            if (responseCompression) {
+                // SolrJ does not ask for compressed responses, the gzip decoder of the HttpClient is there though
+                httpClient.getRequestListeners().add(new Request.Listener.Adapter() {
+                    @Override
+                    public void onQueued(Request request) {
+                        request.header(HttpHeader.ACCEPT_ENCODING, "gzip");
+                    }
+                });
+            }
+        }
+        return solrClient;
+    }
+
+    public String getTransport() {
+        return transport;
+    }
+
+    public boolean isResponseCompression() {
+        return responseCompression;
+    }
+
+    // Complete once the connections are closed (the bytes of a connection are added when it closes)
+    public long getConnectionsOpened() {
+        return connectionStatistics.getConnectionsTotal();
+    }
+
+    public long getMaxOpenConnections() {
+        return connectionStatistics.getConnectionsMax();
+    }
+
+    public long getBytesReceived() {
+        return connectionStatistics.getReceivedBytes();
+    }
+
+    // -1 for http2: the HTTP/2 connections of Jetty do not count the bytes they write
+    public long getBytesSent() {
+        return HTTP2.equals(transport) ? -1 : connectionStatistics.getSentBytes();
+    }
+
+    public void printConfig() {
+        log.info(String.format("%-30s %s %s", "transport", ":", transport
+                + (HTTP1.equals(transport) ? " (maxConnectionsPerHost " + (maxConnectionsPerHost != -1 ? maxConnectionsPerHost : "default") + ")" : "")
+                + (responseCompression ? ", gzip" : ", no compression")));
+    }
+
+    public void printSummary(String operationName, long totalRequestsSent) {
+        log.info(String.format("%-30s %s %d connections opened (max %d open) | %.1f MB received (%d bytes per request)%s",
+                operationName + " transport", ":", getConnectionsOpened(), getMaxOpenConnections(),
+                getBytesReceived() / 1e6, totalRequestsSent > 0 ? getBytesReceived() / totalRequestsSent : 0,
+                getBytesSent() != -1 ? String.format(", %.1f MB sent", getBytesSent() / 1e6) : ""));
+    }
+
+    // The Jetty HttpClient of Http2SolrClient is not exposed (package-private getter)
+    private static HttpClient getHttpClient(Http2SolrClient solrClient) {
+        try {
+            final Method getHttpClient = Http2SolrClient.class.getDeclaredMethod("getHttpClient");
+            getHttpClient.setAccessible(true);
+            return (HttpClient) getHttpClient.invoke(solrClient);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Cannot configure the HTTP client of SolrJ (no transport statistics, no compression): " + e);
+            return null;
+        }
+    }
+}
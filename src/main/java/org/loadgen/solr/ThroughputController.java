@@ -36,27 +36,59 @@ package org.loadgen.solr;
  * @author deepakr
  */
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.LockSupport;
 
 public class ThroughputController {
 
+    private static final long IDLE_WORKER_POLL_INTERVAL_IN_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
     private final AtomicLong operationCounter = new AtomicLong();
-    private final int throughputToAchieve;
-    private final long intendedTimeBetweenSuccessiveOpsInNanos;
+    // (volatile: read by the threads that request a reset)
+    private volatile int throughputToAchieve;
+    private long intendedTimeBetweenSuccessiveOpsInNanos;
+
+    // Reset requested by another thread (new target throughput, 0 = none), applied by the worker before its next operation
+    private final AtomicInteger pendingResetThroughputToAchieve = new AtomicInteger();
 
     private long operationStartTimeInNanos;
 
+    // End of the run: operations scheduled at (or after) the deadline are not sent
+    private long deadlineInNanos = Long.MAX_VALUE;
+
+    // How late the worker woke up after parking for its next operation (-1 if it did not have to park)
+    private long lastWakeUpLagInNanos = -1;
+
+    // Closed-loop mode (null = fixed rate): no schedule, the worker sends back-to-back while it is within the limit
+    private final AdaptiveConcurrencyController adaptiveConcurrencyController;
+    private final int workerIndex;
+
     private ThroughputController(int throughputToAchieve) {
         this.throughputToAchieve = throughputToAchieve;
         this.operationStartTimeInNanos = System.nanoTime();
         intendedTimeBetweenSuccessiveOpsInNanos = TimeUnit.SECONDS.toNanos(1) / throughputToAchieve;
+        this.adaptiveConcurrencyController = null;
+        this.workerIndex = -1;
+    }
+
+    private ThroughputController(AdaptiveConcurrencyController adaptiveConcurrencyController, int workerIndex) {
+        this.throughputToAchieve = 0;
+        this.operationStartTimeInNanos = System.nanoTime();
+        intendedTimeBetweenSuccessiveOpsInNanos = 0;
+        this.adaptiveConcurrencyController = adaptiveConcurrencyController;
+        this.workerIndex = workerIndex;
     }
 
     public static ThroughputController getInstance(int throughputToAchieve) {
         return new ThroughputController(throughputToAchieve);
     }
 
+    public static ThroughputController getClosedLoopInstance(AdaptiveConcurrencyController adaptiveConcurrencyController,
+                                                             int workerIndex) {
+        return new ThroughputController(adaptiveConcurrencyController, workerIndex);
+    }
+
     public int getThroughputToAchieve() {
         return throughputToAchieve;
     }
@@ -71,6 +103,46 @@ public class ThroughputController {
         return operationStartTimeInNanos;
     }
 
+    public void setDeadlineInNanos(long deadlineInNanos) {
+        this.deadlineInNanos = deadlineInNanos;
+    }
+
+    public long getDeadlineInNanos() {
+        return deadlineInNanos;
+    }
+
+    /**
+     * True if the next operation is scheduled before the deadline (and the deadline has not passed yet), i.e. if the
+     * worker should send it. Also picks up a pending {@link #reset()}.
+     */
+    public boolean isNextOperationDueBeforeDeadline() {
+        if (pendingResetThroughputToAchieve.get() != 0) {
+            applyPendingReset();
+        }
+        if (adaptiveConcurrencyController != null) {
+            // closed loop: idle (beyond the current concurrency limit) until the limit is raised or the run ends
+            long now;
+            while ((now = System.nanoTime()) < deadlineInNanos && !adaptiveConcurrencyController.isActive(workerIndex)) {
+                LockSupport.parkNanos(Math.min(deadlineInNanos - now, IDLE_WORKER_POLL_INTERVAL_IN_NANOS));
+            }
+            return now < deadlineInNanos;
+        }
+        final long intendedStartTimeOfNextOperationInNanos = operationStartTimeInNanos + operationCounter.get() * intendedTimeBetweenSuccessiveOpsInNanos;
+        return intendedStartTimeOfNextOperationInNanos < deadlineInNanos && System.nanoTime() < deadlineInNanos;
+    }
+
+    // Scheduled window of the operations counted so far: from the (last reset of the) start time to the deadline
+    public long getMeasuredWindowInNanos() {
+        return deadlineInNanos - operationStartTimeInNanos;
+    }
+
+    // Operations scheduled before the deadline but never sent, because the worker was running behind the schedule
+    public long getOperationsNotSentBeforeDeadline() {
+        if (intendedTimeBetweenSuccessiveOpsInNanos == 0) return 0; // closed loop: nothing is scheduled
+        final long operationsScheduledBeforeDeadline = (getMeasuredWindowInNanos() + intendedTimeBetweenSuccessiveOpsInNanos - 1) / intendedTimeBetweenSuccessiveOpsInNanos;
+        return Math.max(0, operationsScheduledBeforeDeadline - operationCounter.get());
+    }
+
     public long getIntededStartTimeOfNthOperation(int n) {
         return operationStartTimeInNanos + n * intendedTimeBetweenSuccessiveOpsInNanos;
     }
@@ -80,6 +152,15 @@ public class ThroughputController {
     }
 
     public long blockUntilIntendedStartTimeOfNextOperation() {
+        if (pendingResetThroughputToAchieve.get() != 0) {
+            applyPendingReset();
+        }
+        if (adaptiveConcurrencyController != null) {
+            // closed loop: no intended schedule, the request is sent right away
+            operationCounter.getAndIncrement();
+            lastWakeUpLagInNanos = -1;
+            return System.nanoTime();
+        }
         long totalRequestsCompletedSoFar = operationCounter.getAndIncrement();
         long intendedStartTimeOfNextOperationInNanos = operationStartTimeInNanos + totalRequestsCompletedSoFar * intendedTimeBetweenSuccessiveOpsInNanos;
 
@@ -89,13 +170,39 @@ public class ThroughputController {
 //        }
 
         long now;
+        boolean parked = false;
         while ((now = System.nanoTime()) < intendedStartTimeOfNextOperationInNanos) {
+            parked = true;
             LockSupport.parkNanos(intendedStartTimeOfNextOperationInNanos - now);
         }
+        lastWakeUpLagInNanos = parked ? (now - intendedStartTimeOfNextOperationInNanos) : -1;
         return intendedStartTimeOfNextOperationInNanos;
     }
 
+    public long getLastWakeUpLagInNanos() {
+        return lastWakeUpLagInNanos;
+    }
+
+    /**
+     * Restarts the schedule (and the operation count) from the time the worker picks up the reset, e.g. at the start
+     * of the measured window. Safe to call from any thread: the owning worker applies it before its next operation.
+     * Keeps the throughput of a reset that is still pending, e.g. the switch to the measurement rate of a continuous
+     * run requested at the same time.
+     */
     public void reset() {
+        pendingResetThroughputToAchieve.compareAndSet(0, Math.max(throughputToAchieve, 1));
+    }
+
+    public void reset(int newThroughputToAchieve) {
+        pendingResetThroughputToAchieve.set(Math.max(newThroughputToAchieve, 1));
+    }
+
+    private void applyPendingReset() {
+        final int newThroughputToAchieve = pendingResetThroughputToAchieve.getAndSet(0);
+        if (adaptiveConcurrencyController == null) {
+            throughputToAchieve = newThroughputToAchieve;
+            intendedTimeBetweenSuccessiveOpsInNanos = TimeUnit.SECONDS.toNanos(1) / throughputToAchieve;
+        }
         markCurrentTimeAsOperationStartTime();
         operationCounter.set(0);
     }
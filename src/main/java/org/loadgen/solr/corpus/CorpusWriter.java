@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.corpus;
+
+import io.airlift.compress.zstd.ZstdOutputStream;
+import org.loadgen.solr.upload.UploadInput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the synthetic corpus as newline-delimited JSON, up to a number of documents or of (uncompressed) bytes. The
+ * documents are generated, and compressed, by blocks in parallel and written in order: the file only depends on the
+ * seed, not on the number of threads.
+ * <p>
+ * A '.gz' (or '.zst') file is written as one gzip member (zstd frame) per block, which any gzip (zstd) reader reads as
+ * a single stream and which lets a resumed {@code Upload} restart from the closest block.
+ */
+public class CorpusWriter {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final long PROGRESS_LOG_INTERVAL_IN_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final SyntheticCorpus corpus;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int documentsPerBlock = 2_000;
+    private long maxDocuments = Long.MAX_VALUE;
+    private long maxBytes = Long.MAX_VALUE;
+
+    public CorpusWriter(SyntheticCorpus corpus) {
+        this.corpus = corpus;
+    }
+
+    public CorpusWriter setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    public CorpusWriter setDocumentsPerBlock(int documentsPerBlock) {
+        this.documentsPerBlock = Math.max(1, documentsPerBlock);
+        return this;
+    }
+
+    public CorpusWriter setMaxDocuments(long maxDocuments) {
+        this.maxDocuments = maxDocuments;
+        return this;
+    }
+
+    /** The generation stops at the end of the block which reaches this uncompressed size */
+    public CorpusWriter setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    private static class Block {
+        final byte[] bytes;
+        final long documents;
+        final long uncompressedBytes;
+
+        Block(byte[] bytes, long documents, long uncompressedBytes) {
+            this.bytes = bytes;
+            this.documents = documents;
+            this.uncompressedBytes = uncompressedBytes;
+        }
+    }
+
+    /**
+     * @return the number of documents written
+     */
+    public long write(File outputFile) throws IOException, InterruptedException {
+        final UploadInput.Compression compression = UploadInput.getCompression(outputFile);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "corpus-generator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final Deque<Future<Block>> inFlightBlocks = new ArrayDeque<>();
+        final long startTime = System.nanoTime();
+        long documents = 0;
+        long uncompressedBytes = 0;
+        long writtenBytes = 0;
+        long nextBlockStart = 0;
+        long lastProgressLogTime = startTime;
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(outputFile), 1 << 20)) {
+            while (true) {
+                while (inFlightBlocks.size() < 2 * threads && nextBlockStart < maxDocuments) {
+                    final long blockStart = nextBlockStart;
+                    final long blockEnd = Math.min(maxDocuments, blockStart + documentsPerBlock);
+                    inFlightBlocks.add(executor.submit(() -> generateBlock(blockStart, blockEnd, compression)));
+                    nextBlockStart = blockEnd;
+                }
+                if (inFlightBlocks.isEmpty()) {
+                    break;
+                }
+                final Block block = inFlightBlocks.poll().get();
+                outputStream.write(block.bytes);
+                documents += block.documents;
+                uncompressedBytes += block.uncompressedBytes;
+                writtenBytes += block.bytes.length;
+                if (uncompressedBytes >= maxBytes) {
+                    break;
+                }
+
+                if (System.nanoTime() - lastProgressLogTime >= PROGRESS_LOG_INTERVAL_IN_NANOS) {
+                    lastProgressLogTime = System.nanoTime();
+                    log.info(String.format("%-30s %s %,d docs, %,d MB (%,.0f MB/sec)", "generated", ":", documents,
+                            uncompressedBytes >> 20, (uncompressedBytes >> 20) / ((lastProgressLogTime - startTime) / 1e9)));
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Generating a block of documents failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final double elapsedTimeInSec = (System.nanoTime() - startTime) / 1e9;
+        log.info(String.format("%-30s %s %s", "output file", ":", outputFile.getAbsolutePath()));
+        log.info(String.format("%-30s %s %,d", "documents", ":", documents));
+        log.info(String.format("%-30s %s %,d MB (%,d MB written)", "size", ":", uncompressedBytes >> 20, writtenBytes >> 20));
+        log.info(String.format("%-30s %s %.1f sec (%,.0f docs/sec, %,.0f MB/sec)", "generation time", ":", elapsedTimeInSec,
+                documents / elapsedTimeInSec, (uncompressedBytes >> 20) / elapsedTimeInSec));
+        return documents;
+    }
+
+    private Block generateBlock(long start, long end, UploadInput.Compression compression) throws IOException {
+        final StringBuilder json = new StringBuilder(documentsPerBlock * 1024);
+        for (long number = start; number < end; number++) {
+            corpus.appendJson(corpus.document(number), json);
+            json.append('\n');
+        }
+        final byte[] uncompressed = json.toString().getBytes(StandardCharsets.UTF_8);
+        if (compression == UploadInput.Compression.NONE) {
+            return new Block(uncompressed, end - start, uncompressed.length);
+        }
+
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(uncompressed.length / 3);
+        try (OutputStream compressingStream = compression == UploadInput.Compression.GZIP
+                ? new GZIPOutputStream(compressed, 1 << 16) : new ZstdOutputStream(compressed)) {
+            compressingStream.write(uncompressed);
+        }
+        return new Block(compressed.toByteArray(), end - start, uncompressed.length);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.corpus;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Writes the query files of a synthetic corpus ('FIELD_TYPE.txt', one query per line, as read by the QueryHandler) and
+ * the 'docIdFile.txt'. Every query is taken from a document of the corpus drawn at random (a term, consecutive terms or
+ * close terms of its fields, a range around its timestamp): the queries have hits, in proportion to how frequent their
+ * terms are in the corpus. The fuzzy queries alter a term the way the wiki query files do. The queries of a file are
+ * distinct, as in the wiki query files.
+ */
+public class QueryFileGenerator {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    public static final String DOCUMENT_ID_FILE = "docIdFile.txt";
+
+    private static final int MAX_PHRASE_TERMS = 5;
+    private static final int MAX_PROXIMITY_DISTANCE = 6;
+    private static final int MAX_ATTEMPTS = 1000;
+    private static final int MAX_DISTINCT_ATTEMPTS = 16;
+    private static final int ATTEMPTS_PER_DOCUMENT = 4;
+
+    private final SyntheticCorpus corpus;
+    private final long documents;
+    private final long seed;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    public QueryFileGenerator(SyntheticCorpus corpus, long documents, long seed) {
+        if (documents <= 0) {
+            throw new IllegalArgumentException("The corpus has no documents");
+        }
+        this.corpus = corpus;
+        this.documents = documents;
+        this.seed = seed;
+    }
+
+    public QueryFileGenerator setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    /** Writes the same query files as the wiki query files, with queriesPerFile queries each, one file per thread */
+    public void write(File directory, int queriesPerFile) throws IOException, InterruptedException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create the directory : " + directory.getAbsolutePath());
+        }
+        final Map<String, QueryBuilder> queryBuilders = new LinkedHashMap<>();
+        addTermQueries(queryBuilders, "title", document -> document.titleTerms, false);
+        addTermQueries(queryBuilders, "username", document -> document.usernameTerms, true);
+        addTermQueries(queryBuilders, "comment", document -> document.commentTerms, true);
+        addTermQueries(queryBuilders, "text", document -> document.textTerms, true);
+        queryBuilders.put("TIMESTAMP_RANGE.txt", (document, random) -> rangeQuery(document, random));
+        queryBuilders.put(DOCUMENT_ID_FILE, (document, random) -> document.id);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, queryBuilders.size()));
+        try {
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (Map.Entry<String, QueryBuilder> queryBuilder : queryBuilders.entrySet()) {
+                futures.add(executor.submit(() -> {
+                    writeQueryFile(directory, queryBuilder.getKey(), queriesPerFile, queryBuilder.getValue());
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Writing a query file failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info(String.format("%-30s %s %s", "query files", ":", directory.getAbsolutePath()
+                + " (" + queriesPerFile + " queries per file, from " + documents + " documents)"));
+    }
+
+    private void addTermQueries(Map<String, QueryBuilder> queryBuilders, String field,
+                                Function<SyntheticDocument, String[]> fieldTerms, boolean withPhrases) {
+        final String prefix = field.toUpperCase();
+        queryBuilders.put(prefix + "_FIELD.txt", (document, random) -> {
+            final String[] terms = fieldTerms.apply(document);
+            return terms.length == 0 ? null : field + ":" + terms[random.nextInt(terms.length)];
+        });
+        queryBuilders.put(prefix + "_FUZZY.txt", (document, random) -> {
+            final String[] terms = fieldTerms.apply(document);
+            return terms.length == 0 ? null : field + ":" + fuzzyTerm(terms[random.nextInt(terms.length)], random);
+        });
+        if (!withPhrases) {
+            return;
+        }
+        queryBuilders.put(prefix + "_PHRASE.txt", (document, random) -> {
+            final String[] terms = fieldTerms.apply(document);
+            if (terms.length < 2) {
+                return null;
+            }
+            final int length = 2 + random.nextInt(Math.min(MAX_PHRASE_TERMS, terms.length) - 1);
+            final int start = random.nextInt(terms.length - length + 1);
+            return field + ":\"" + String.join(" ", Arrays.copyOfRange(terms, start, start + length)) + "\"";
+        });
+        queryBuilders.put(prefix + "_PROXIMITY.txt", (document, random) -> {
+            final String[] terms = fieldTerms.apply(document);
+            if (terms.length < 2) {
+                return null;
+            }
+            final int first = random.nextInt(terms.length - 1);
+            final int second = first + 1 + random.nextInt(Math.min(MAX_PROXIMITY_DISTANCE, terms.length - 1 - first));
+            // a slop of (distance - 1) is enough to match, a bit more to also match other documents
+            final int slop = second - first - 1 + random.nextInt(3);
+            return field + ":\"" + terms[first] + " " + terms[second] + "\"~" + Math.max(1, slop);
+        });
+    }
+
+    private interface QueryBuilder {
+        /** @return the query, or null if the document has no query of this type */
+        String build(SyntheticDocument document, SplittableRandom random);
+    }
+
+    private void writeQueryFile(File directory, String fileName, int queries, QueryBuilder queryBuilder) throws IOException {
+        // a stream of its own per file: a file does not change when other files are added
+        final SplittableRandom random = new SplittableRandom(seed ^ fileName.hashCode());
+        final Set<String> writtenQueries = new HashSet<>();
+        try (PrintWriter writer = new PrintWriter(new File(directory, fileName), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < queries; i++) {
+                // distinct queries, unless the corpus is too small to have enough of them
+                String query = null;
+                SyntheticDocument document = null;
+                for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+                    if (attempt % ATTEMPTS_PER_DOCUMENT == 0) {
+                        document = corpus.document(random.nextLong(documents));
+                    }
+                    final String candidate = queryBuilder.build(document, random);
+                    if (candidate != null) {
+                        query = candidate;
+                        if (writtenQueries.add(query) || attempt >= MAX_DISTINCT_ATTEMPTS) {
+                            break;
+                        }
+                    }
+                }
+                if (query == null) {
+                    throw new IOException("No document of the corpus has a query for " + fileName);
+                }
+                writer.println(query);
+            }
+        }
+    }
+
+    /** Inserts "xX" in a long term (matched with a distance of 2) or replaces a letter of a short one (distance of 1) */
+    private static String fuzzyTerm(String term, SplittableRandom random) {
+        final int position = random.nextInt(term.length());
+        if (term.length() >= 6) {
+            return term.substring(0, position) + "xX" + term.substring(position) + "~2";
+        }
+        return term.substring(0, position) + "X" + term.substring(position + 1) + "~1";
+    }
+
+    private static String rangeQuery(SyntheticDocument document, SplittableRandom random) {
+        // from a minute to a week
+        final long widthInSec = (long) (60 * Math.pow(10, 4 * random.nextDouble()));
+        final String from = Instant.ofEpochSecond(document.timestampInSec).toString();
+        final String to = Instant.ofEpochSecond(document.timestampInSec + widthInSec).toString();
+        final int bounds = random.nextInt(10);
+        if (bounds < 7) {
+            return "timestamp:[" + from + " TO " + to + "]";
+        } else if (bounds < 8) {
+            return "timestamp:[" + from + " TO " + to + "}";
+        } else if (bounds < 9) {
+            return "timestamp:{" + from + " TO *]";
+        }
+        return "timestamp:[* TO " + to + "]";
+    }
+}
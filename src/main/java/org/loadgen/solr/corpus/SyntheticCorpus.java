@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.corpus;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * A synthetic wiki-like corpus with the fields of the wiki dump (id, title, username, comment, text, timestamp, sha1,
+ * ns, model). The terms are pseudo-words drawn with Zipf's law from a vocabulary where the frequent words are short,
+ * the users follow a Zipf's law too (a few users make most of the edits) and the length of the text is log-normal.
+ * <p>
+ * The document N only depends on the seed and on N: the corpus can be generated by blocks in parallel, at any scale,
+ * and any of its documents regenerated later (to build the query files) without reading the corpus.
+ */
+public class SyntheticCorpus {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    public static final String MODEL = "wikitext";
+
+    static final long FIRST_TIMESTAMP_IN_SEC = Instant.parse("2001-01-15T00:00:00Z").getEpochSecond();
+    static final long LAST_TIMESTAMP_IN_SEC = Instant.parse("2022-12-31T23:59:59Z").getEpochSecond();
+
+    // the most frequent terms ("the", "of", ...) are never in a title
+    private static final int STOPWORD_COUNT = 100;
+    private static final double TERM_EXPONENT = 1.0;
+    private static final double TITLE_TERM_EXPONENT = 0.8;
+    private static final double USER_EXPONENT = 1.0;
+    private static final int MEDIAN_TEXT_TERMS = 350;
+    private static final double TEXT_TERMS_SIGMA = 1.1;
+    private static final int MAX_TEXT_TERMS = 30_000;
+    private static final int MEDIAN_COMMENT_TERMS = 5;
+    private static final double COMMENT_TERMS_SIGMA = 0.7;
+    private static final int[] NAMESPACES = {0, 1, 2, 3, 4, 6, 10, 14, 118};
+    private static final int[] NAMESPACE_WEIGHTS = {70, 5, 4, 10, 3, 4, 1, 2, 1};
+
+    private static final String[] ONSETS = {"", "", "b", "c", "d", "f", "g", "h", "j", "k", "l", "m", "n", "p", "r", "s",
+            "t", "v", "w", "z", "br", "ch", "cl", "dr", "fl", "gr", "kr", "pl", "pr", "sh", "sk", "st", "th", "tr"};
+    private static final String[] VOWELS = {"a", "e", "i", "o", "u", "a", "e", "i", "o", "y", "ai", "ea", "ie", "io", "ou"};
+    private static final String[] CODAS = {"", "", "", "", "", "", "n", "r", "s", "t", "l", "m", "nd", "nt", "st", "ng"};
+
+    private final long documentSeedBase;
+    private final String[] terms;
+    private final ZipfSampler termSampler;
+    private final ZipfSampler titleTermSampler;
+    private final String[] usernames;
+    private final String[][] usernameTerms;
+    private final ZipfSampler userSampler;
+
+    public SyntheticCorpus(long seed, int vocabularySize, int userCount) {
+        if (vocabularySize <= STOPWORD_COUNT) {
+            throw new IllegalArgumentException("The vocabulary must have more than " + STOPWORD_COUNT + " terms : " + vocabularySize);
+        }
+        if (userCount <= 0) {
+            throw new IllegalArgumentException("The number of users must be > 0 : " + userCount);
+        }
+        final SplittableRandom random = new SplittableRandom(seed);
+        this.documentSeedBase = random.nextLong();
+
+        final Set<String> uniqueTerms = new HashSet<>();
+        terms = new String[vocabularySize];
+        for (int rank = 0; rank < vocabularySize; rank++) {
+            String term;
+            int attempts = 0;
+            do {
+                term = newTerm(random, rank, attempts++);
+            } while (!uniqueTerms.add(term));
+            terms[rank] = term;
+        }
+        termSampler = new ZipfSampler(vocabularySize, TERM_EXPONENT);
+        titleTermSampler = new ZipfSampler(vocabularySize - STOPWORD_COUNT, TITLE_TERM_EXPONENT);
+
+        final Set<String> uniqueUsernames = new HashSet<>();
+        usernames = new String[userCount];
+        usernameTerms = new String[userCount][];
+        for (int user = 0; user < userCount; user++) {
+            String[] nameTerms;
+            do {
+                nameTerms = newUsername(random);
+            } while (!uniqueUsernames.add(String.join(" ", nameTerms)));
+            usernames[user] = String.join(" ", nameTerms);
+            usernameTerms[user] = nameTerms;
+        }
+        userSampler = new ZipfSampler(userCount, USER_EXPONENT);
+
+        log.info(String.format("%-30s %s %s", "synthetic corpus", ":",
+                "seed = " + seed + ", " + vocabularySize + " terms, " + userCount + " users"));
+    }
+
+    /** The frequent terms are short ones, as in natural languages. A few of the terms are numbers (years, quantities) */
+    private static String newTerm(SplittableRandom random, int rank, int attempts) {
+        if (rank >= STOPWORD_COUNT && random.nextInt(100) < 3) {
+            return Integer.toString(random.nextInt(10) < 7 ? 1500 + random.nextInt(523) : random.nextInt(100_000));
+        }
+        final int syllables = 1 + (int) (Math.log10(rank + 1) / 2) + (rank >= STOPWORD_COUNT && random.nextInt(10) < 2 ? 1 : 0)
+                + attempts / 10;
+        final StringBuilder term = new StringBuilder();
+        for (int i = 0; i < syllables; i++) {
+            term.append(ONSETS[random.nextInt(ONSETS.length)])
+                    .append(VOWELS[random.nextInt(VOWELS.length)])
+                    .append(CODAS[random.nextInt(CODAS.length)]);
+        }
+        return term.toString();
+    }
+
+    private String[] newUsername(SplittableRandom random) {
+        final int style = random.nextInt(100);
+        if (style < 45) {
+            // "Hornstrandir1"
+            final StringBuilder name = new StringBuilder(capitalize(terms[STOPWORD_COUNT + random.nextInt(terms.length - STOPWORD_COUNT)]));
+            final int digits = random.nextInt(5);
+            for (int i = 0; i < digits; i++) {
+                name.append(random.nextInt(10));
+            }
+            return new String[]{name.toString()};
+        } else if (style < 75) {
+            // "Tasty monster", "Daniel Monk"
+            final String[] nameTerms = new String[2 + (random.nextInt(10) < 2 ? 1 : 0)];
+            for (int i = 0; i < nameTerms.length; i++) {
+                final String term = terms[STOPWORD_COUNT + random.nextInt(terms.length - STOPWORD_COUNT)];
+                nameTerms[i] = i == 0 || random.nextBoolean() ? capitalize(term) : term;
+            }
+            return nameTerms;
+        } else {
+            return new String[]{capitalize(terms[STOPWORD_COUNT + random.nextInt(terms.length - STOPWORD_COUNT)])};
+        }
+    }
+
+    SyntheticDocument document(long number) {
+        final SplittableRandom random = new SplittableRandom(documentSeedBase + number);
+
+        // the first long of the stream is different for every document: the ids are unique
+        final StringBuilder id = new StringBuilder(40);
+        appendHex(id, random.nextLong(), 16);
+        appendHex(id, random.nextLong(), 16);
+        appendHex(id, random.nextInt(), 8);
+
+        final String[] titleTerms = new String[Math.min(8, 1 + (int) (-Math.log(1.0 - random.nextDouble()) * 1.2))];
+        final StringBuilder title = new StringBuilder();
+        for (int i = 0; i < titleTerms.length; i++) {
+            titleTerms[i] = capitalize(terms[STOPWORD_COUNT + titleTermSampler.sample(random)]);
+            if (i > 0) title.append(' ');
+            title.append(titleTerms[i]);
+        }
+
+        final int user = userSampler.sample(random);
+
+        final String[] commentTerms;
+        final StringBuilder comment = new StringBuilder();
+        if (random.nextInt(10) == 0) {
+            commentTerms = new String[0];
+        } else {
+            final int sectionTerms = random.nextInt(5) == 0 ? 1 + random.nextInt(3) : 0;
+            commentTerms = new String[sectionTerms + logNormal(random, MEDIAN_COMMENT_TERMS, COMMENT_TERMS_SIGMA, 1, 50)];
+            for (int i = 0; i < commentTerms.length; i++) {
+                if (i < sectionTerms) {
+                    // "/* Early life */ fix typo"
+                    commentTerms[i] = capitalize(terms[STOPWORD_COUNT + titleTermSampler.sample(random)]);
+                    comment.append(i == 0 ? "/* " : " ").append(commentTerms[i]).append(i == sectionTerms - 1 ? " */" : "");
+                } else {
+                    commentTerms[i] = terms[termSampler.sample(random)];
+                    if (i > 0) comment.append(' ');
+                    comment.append(commentTerms[i]);
+                }
+            }
+        }
+
+        final String[] textTerms = new String[logNormal(random, MEDIAN_TEXT_TERMS, TEXT_TERMS_SIGMA, 5, MAX_TEXT_TERMS)];
+        final StringBuilder text = new StringBuilder(textTerms.length * 8);
+        int sentenceLeft = 0;
+        int paragraphLeft = 5 + random.nextInt(10);
+        for (int i = 0; i < textTerms.length; i++) {
+            textTerms[i] = terms[termSampler.sample(random)];
+            if (sentenceLeft == 0) {
+                if (i > 0) {
+                    text.append('.');
+                    if (--paragraphLeft == 0) {
+                        text.append("\n\n");
+                        paragraphLeft = 5 + random.nextInt(10);
+                    } else {
+                        text.append(' ');
+                    }
+                }
+                sentenceLeft = 6 + random.nextInt(20);
+                text.append(capitalize(textTerms[i]));
+            } else {
+                text.append(random.nextInt(100) < 8 ? ", " : " ").append(textTerms[i]);
+            }
+            sentenceLeft--;
+        }
+        text.append('.');
+
+        final long timestampInSec = FIRST_TIMESTAMP_IN_SEC
+                + (long) ((LAST_TIMESTAMP_IN_SEC - FIRST_TIMESTAMP_IN_SEC) * Math.pow(random.nextDouble(), 0.7));
+
+        final byte[] sha1 = new byte[20];
+        random.nextBytes(sha1);
+        final StringBuilder base36Sha1 = new StringBuilder(new BigInteger(1, sha1).toString(36));
+        while (base36Sha1.length() < 31) {
+            base36Sha1.insert(0, '0');
+        }
+
+        int ns = NAMESPACES[0];
+        int nsDraw = random.nextInt(100);
+        for (int i = 0; i < NAMESPACES.length; i++) {
+            if ((nsDraw -= NAMESPACE_WEIGHTS[i]) < 0) {
+                ns = NAMESPACES[i];
+                break;
+            }
+        }
+
+        return new SyntheticDocument(number, id.toString(), title.toString(), titleTerms, usernames[user], usernameTerms[user],
+                comment.toString(), commentTerms, text.toString(), textTerms, timestampInSec, base36Sha1.toString(), ns);
+    }
+
+    /** Appends the document as a single line JSON object (without the new line) */
+    void appendJson(SyntheticDocument document, StringBuilder json) {
+        json.append("{\"id\": \"").append(document.id)
+                .append("\", \"title\": \"");
+        appendEscaped(json, document.title);
+        json.append("\", \"ns\": ").append(document.ns)
+                .append(", \"timestamp\": \"").append(Instant.ofEpochSecond(document.timestampInSec))
+                .append("\", \"username\": \"");
+        appendEscaped(json, document.username);
+        json.append("\", \"comment\": \"");
+        appendEscaped(json, document.comment);
+        json.append("\", \"model\": \"").append(MODEL)
+                .append("\", \"sha1\": \"").append(document.sha1)
+                .append("\", \"text\": \"");
+        appendEscaped(json, document.text);
+        json.append("\"}");
+    }
+
+    private static void appendEscaped(StringBuilder json, String value) {
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\' || c == '\n') {
+                json.append(value, start, i).append(c == '\n' ? "\\n" : c == '"' ? "\\\"" : "\\\\");
+                start = i + 1;
+            }
+        }
+        json.append(value, start, value.length());
+    }
+
+    private static void appendHex(StringBuilder hex, long value, int digits) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            hex.append(Character.forDigit((int) ((value >>> shift) & 0xf), 16));
+        }
+    }
+
+    private static int logNormal(SplittableRandom random, int median, double sigma, int min, int max) {
+        // Box-Muller, SplittableRandom has no nextGaussian() in Java 11
+        final double gaussian = Math.sqrt(-2.0 * Math.log(1.0 - random.nextDouble())) * Math.cos(2.0 * Math.PI * random.nextDouble());
+        return (int) Math.max(min, Math.min(max, Math.round(median * Math.exp(sigma * gaussian))));
+    }
+
+    private static String capitalize(String term) {
+        return Character.toUpperCase(term.charAt(0)) + term.substring(1);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.corpus;
+
+/**
+ * A document of the synthetic corpus: the rendered fields, and the terms of the text fields the query files are built from
+ */
+class SyntheticDocument {
+    final long number;
+    final String id;
+    final String title;
+    final String[] titleTerms;
+    final String username;
+    final String[] usernameTerms;
+    final String comment;
+    final String[] commentTerms;
+    final String text;
+    final String[] textTerms;
+    final long timestampInSec;
+    final String sha1;
+    final int ns;
+
+    SyntheticDocument(long number, String id, String title, String[] titleTerms, String username, String[] usernameTerms,
+                      String comment, String[] commentTerms, String text, String[] textTerms, long timestampInSec,
+                      String sha1, int ns) {
+        this.number = number;
+        this.id = id;
+        this.title = title;
+        this.titleTerms = titleTerms;
+        this.username = username;
+        this.usernameTerms = usernameTerms;
+        this.comment = comment;
+        this.commentTerms = commentTerms;
+        this.text = text;
+        this.textTerms = textTerms;
+        this.timestampInSec = timestampInSec;
+        this.sha1 = sha1;
+        this.ns = ns;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.corpus;
+
+import java.util.SplittableRandom;
+
+/**
+ * Samples ranks 0..n-1 with a Zipf distribution (the probability of rank r is proportional to 1 / (r + 1)^exponent),
+ * in constant time with the alias method: the sampling of the terms of a 500GB corpus must not be log(n) per term.
+ */
+public class ZipfSampler {
+    private final double[] probabilities;
+    private final int[] aliases;
+
+    public ZipfSampler(int n, double exponent) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("The number of ranks must be > 0 : " + n);
+        }
+        final double[] weights = new double[n];
+        double sum = 0;
+        for (int rank = 0; rank < n; rank++) {
+            weights[rank] = 1.0 / Math.pow(rank + 1, exponent);
+            sum += weights[rank];
+        }
+
+        // Vose's alias method: every column holds its own rank with probabilities[i], its alias otherwise
+        probabilities = new double[n];
+        aliases = new int[n];
+        final int[] small = new int[n];
+        final int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int rank = 0; rank < n; rank++) {
+            weights[rank] = weights[rank] * n / sum;
+            if (weights[rank] < 1.0) {
+                small[smallCount++] = rank;
+            } else {
+                large[largeCount++] = rank;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            final int less = small[--smallCount];
+            final int more = large[--largeCount];
+            probabilities[less] = weights[less];
+            aliases[less] = more;
+            weights[more] = weights[more] + weights[less] - 1.0;
+            if (weights[more] < 1.0) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        while (largeCount > 0) {
+            probabilities[large[--largeCount]] = 1.0;
+        }
+        while (smallCount > 0) {
+            // only left by rounding errors
+            probabilities[small[--smallCount]] = 1.0;
+        }
+    }
+
+    public int sample(SplittableRandom random) {
+        final int column = random.nextInt(probabilities.length);
+        return random.nextDouble() < probabilities[column] ? column : aliases[column];
+    }
+
+    public int size() {
+        return probabilities.length;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.distributed;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Line based protocol between the coordinator and its agents (one TCP connection per agent, space separated tokens,
+ * binary payloads base64 encoded):
+ * <pre>
+ * agent       -> coordinator : HELLO &lt;hostname&gt;
+ * coordinator -> agent       : CONFIG &lt;base64 yaml config&gt;
+ * coordinator -> agent       : START &lt;agentIndex&gt; &lt;agentCount&gt; &lt;startEpochMillis&gt;
+ * agent       -> coordinator : INTERVAL &lt;operation&gt; &lt;startMs&gt; &lt;endMs&gt; &lt;client st&gt; &lt;server st&gt; &lt;client rt&gt;
+ * agent       -> coordinator : DONE &lt;phase&gt; &lt;operation&gt; &lt;targetRate&gt; &lt;startSec&gt; &lt;endSec&gt; &lt;requests&gt; &lt;errors&gt; &lt;saturated&gt;
+ *                              &lt;measuredWindowSec&gt; &lt;notSentBeforeDeadline&gt; &lt;completed after deadline rt&gt;
+ * agent       -> coordinator : BYE
+ * </pre>
+ * Interval histograms use the compressed encoding of the hlog files.
+ */
+public final class AgentProtocol {
+
+    public static final String HELLO    = "HELLO";
+    public static final String CONFIG   = "CONFIG";
+    public static final String START    = "START";
+    public static final String INTERVAL = "INTERVAL";
+    public static final String DONE     = "DONE";
+    public static final String BYE      = "BYE";
+
+    private AgentProtocol() {
+    }
+
+    public static String encodeText(String text) {
+        return Base64.getEncoder().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String decodeText(String encodedText) {
+        return new String(Base64.getDecoder().decode(encodedText), StandardCharsets.UTF_8);
+    }
+
+    /** The agent's share of a rate, the remainder is spread over the first agents. Non-positive values (unset) are kept */
+    public static int shareOf(int rate, int agentIndex, int agentCount) {
+        if (rate <= 0) return rate;
+        return Math.max(1, rate / agentCount + (agentIndex < rate % agentCount ? 1 : 0));
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.distributed;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.loadgen.solr.BenchConfig;
+import org.loadgen.solr.PhaseMetrics;
+import org.loadgen.solr.report.BenchmarkReport;
+import org.loadgen.solr.report.HistogramJson;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Merges the interval histograms streamed by the agents into one set of intervals per operation (aligned on the
+ * 1 sec boundaries since the common start time) and the per agent phase results into one report.
+ */
+public class DistributedRunMerger {
+
+    private static final int CLIENT_SERVICE_TIME  = 0;
+    private static final int SERVER_SERVICE_TIME  = 1;
+    private static final int CLIENT_RESPONSE_TIME = 2;
+    private static final String[] HLOG_SUFFIXES = {"_client_st.log", "_server_st.log", "_client_rt.log"};
+    private static final String MEASUREMENT_PHASE = "measurement";
+
+    private static class PhaseResult {
+        final String operationName;
+        int targetThroughput;
+        double startTimeInSec = Double.MAX_VALUE;
+        double endTimeInSec;
+        long totalRequestsSent;
+        long totalErrors;
+        double sumOfMeasuredWindowsInSec;
+        int agents;
+        long requestsNotSentBeforeDeadline;
+        final Histogram completedAfterDeadlineResponseTime = new Histogram(2);
+        final List<String> saturatedAgents = new ArrayList<>();
+
+        PhaseResult(String operationName) {
+            this.operationName = operationName;
+        }
+    }
+
+    private final long startEpochMillis;
+    private final Map<String, TreeMap<Long, Histogram[]>> intervalsPerOperation = new LinkedHashMap<>();
+    private final Map<String, PhaseResult> phaseResults = new LinkedHashMap<>();
+
+    public DistributedRunMerger(long startEpochMillis) {
+        this.startEpochMillis = startEpochMillis;
+    }
+
+    public synchronized void onInterval(String operationName, long startTimeStamp, long endTimeStamp,
+                                        Histogram clientSideViewServiceTime, Histogram serverSideViewServiceTime,
+                                        Histogram clientSideViewResponseTime) {
+        final long intervalIndex = Math.max(0, Math.round((endTimeStamp - startEpochMillis) / 1000.0));
+        final Histogram[] merged = intervalsPerOperation
+                .computeIfAbsent(operationName, x -> new TreeMap<>())
+                .computeIfAbsent(intervalIndex, x -> new Histogram[] {new Histogram(2), new Histogram(2), new Histogram(2)});
+
+        final Histogram[] agentHistograms = {clientSideViewServiceTime, serverSideViewServiceTime, clientSideViewResponseTime};
+        for (int i = 0; i < merged.length; i++) {
+            agentHistograms[i].setStartTimeStamp(startTimeStamp);
+            agentHistograms[i].setEndTimeStamp(endTimeStamp);
+            merged[i].add(agentHistograms[i]);
+        }
+    }
+
+    public synchronized void onPhaseDone(String agentName, String phaseName, String operationName, int targetThroughput,
+                                         double startTimeInSec, double endTimeInSec, long requestsSent, long errors,
+                                         boolean saturated, double measuredWindowInSec, long requestsNotSentBeforeDeadline,
+                                         Histogram completedAfterDeadlineResponseTime) {
+        final PhaseResult phaseResult = phaseResults.computeIfAbsent(phaseName, x -> new PhaseResult(operationName));
+        phaseResult.targetThroughput += targetThroughput;
+        phaseResult.startTimeInSec = Math.min(phaseResult.startTimeInSec, startTimeInSec);
+        phaseResult.endTimeInSec = Math.max(phaseResult.endTimeInSec, endTimeInSec);
+        phaseResult.totalRequestsSent += requestsSent;
+        phaseResult.totalErrors += errors;
+        phaseResult.sumOfMeasuredWindowsInSec += measuredWindowInSec;
+        phaseResult.agents++;
+        phaseResult.requestsNotSentBeforeDeadline += requestsNotSentBeforeDeadline;
+        phaseResult.completedAfterDeadlineResponseTime.add(completedAfterDeadlineResponseTime);
+        if (saturated) {
+            phaseResult.saturatedAgents.add(agentName);
+        }
+    }
+
+    /** The phases reported by the agents, in the order they completed */
+    public synchronized List<String> getPhaseNames() {
+        return new ArrayList<>(phaseResults.keySet());
+    }
+
+    public synchronized List<String> getSaturatedAgents(String phaseName) {
+        final PhaseResult phaseResult = phaseResults.get(phaseName);
+        return phaseResult == null ? new ArrayList<>() : new ArrayList<>(phaseResult.saturatedAgents);
+    }
+
+    /** Writes one merged hlog per operation and metric, in the same layout as the MetricsCollector of a single client */
+    public synchronized void writeHistogramLogs(String logDir) throws IOException {
+        for (PhaseResult phaseResult : phaseResults.values()) {
+            final TreeMap<Long, Histogram[]> intervals = intervalsPerOperation.get(phaseResult.operationName);
+            if (intervals == null) continue;
+
+            final String operationLogDir = logDir + File.separator + "hdr_histogram-logs-" + phaseResult.operationName;
+            Files.createDirectories(Paths.get(operationLogDir));
+            for (int metric = 0; metric < HLOG_SUFFIXES.length; metric++) {
+                final String fileName = operationLogDir + File.separator + "hlog_ttpt" + phaseResult.targetThroughput +
+                        "_" + phaseResult.operationName + "_merged" + HLOG_SUFFIXES[metric];
+                final HistogramLogWriter histogramLogWriter = new HistogramLogWriter(fileName);
+                for (Histogram[] merged : intervals.values()) {
+                    histogramLogWriter.outputIntervalHistogram(merged[metric]);
+                }
+                histogramLogWriter.close();
+            }
+        }
+    }
+
+    /**
+     * The report of the merged phases, computed the way a single client does: the 'benchmarkMeasurementSkipDuration'
+     * only applies to the measurement, and the throughput is based on the scheduled window of the agents (their mean,
+     * the agents run the same window in parallel), not on the wall clock time of the phase.
+     */
+    public synchronized BenchmarkReport toReport(BenchConfig benchConfig) {
+        final BenchmarkReport benchmarkReport = new BenchmarkReport(benchConfig);
+        for (Map.Entry<String, PhaseResult> entry : phaseResults.entrySet()) {
+            final PhaseResult phaseResult = entry.getValue();
+            final PhaseMetrics phaseMetrics = new PhaseMetrics(phaseResult.operationName, phaseResult.targetThroughput);
+
+            final TreeMap<Long, Histogram[]> intervals = intervalsPerOperation.getOrDefault(phaseResult.operationName, new TreeMap<>());
+            final int skipDurationInSec = MEASUREMENT_PHASE.equals(entry.getKey()) ? benchConfig.benchmarkMeasurementSkipDuration : 0;
+            final long measuredWindowStartInMillis = (long) (phaseResult.startTimeInSec * 1000) + skipDurationInSec * 1000L;
+            for (Histogram[] merged : intervals.values()) {
+                phaseMetrics.addIntervalSample(merged[CLIENT_RESPONSE_TIME].getEndTimeStamp(),
+                        merged[CLIENT_SERVICE_TIME], merged[CLIENT_RESPONSE_TIME]);
+                if (merged[CLIENT_RESPONSE_TIME].getEndTimeStamp() > measuredWindowStartInMillis) {
+                    phaseMetrics.addToSummary(merged[CLIENT_SERVICE_TIME], merged[SERVER_SERVICE_TIME], merged[CLIENT_RESPONSE_TIME]);
+                }
+            }
+            phaseMetrics.complete(phaseResult.startTimeInSec, phaseResult.endTimeInSec,
+                    phaseResult.totalRequestsSent, phaseResult.totalErrors, null);
+            phaseMetrics.completeDeadlineAccounting(phaseResult.sumOfMeasuredWindowsInSec / phaseResult.agents,
+                    phaseResult.requestsNotSentBeforeDeadline, phaseResult.completedAfterDeadlineResponseTime);
+            benchmarkReport.addPhase(entry.getKey(), phaseMetrics);
+        }
+        return benchmarkReport;
+    }
+
+    public static Histogram decodeHistogram(String encodedHistogram) {
+        return HistogramJson.decode(encodedHistogram);
+    }
+
+    public static String encodeHistogram(Histogram histogram) {
+        return HistogramJson.encode(histogram);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.get;
+
+import org.loadgen.solr.BenchConfig;
+import org.loadgen.solr.LoadGenerator;
+import org.loadgen.solr.QueryWorker;
+import org.loadgen.solr.select.QueryFileHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class LoadGeneratorForRealTimeGet extends LoadGenerator {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private int[] batchSizes = {1};
+    private String documentIdFile;
+    private List<String> documentIds = Collections.emptyList();
+
+    public LoadGeneratorForRealTimeGet setBatchSizes(String batchSizes) {
+        this.batchSizes = Arrays.stream(batchSizes.trim().split("\\s+"))
+                .mapToInt(Integer::parseInt)
+                .map(batchSize -> Math.max(1, batchSize))
+                .toArray();
+        return this;
+    }
+
+    public LoadGeneratorForRealTimeGet registerDocumentIdFile(String documentIdFile) {
+        this.documentIdFile = documentIdFile;
+        if (numberOfThreads == 0) return this;
+
+        final List<String> ids = new ArrayList<>();
+        if (documentIdFile != null && new File(documentIdFile).exists()) {
+            try {
+                for (String line : Files.readAllLines(new File(documentIdFile).toPath(), StandardCharsets.UTF_8)) {
+                    if (!line.trim().isEmpty() && !QueryFileHeader.isHeaderLine(line)) {
+                        ids.add(line.trim());
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (ids.isEmpty()) {
+            log.error("No document ids in the documentIdFile : " + documentIdFile + ", real-time get skipped");
+            this.setNumberOfThreads(0);
+        }
+        this.documentIds = Collections.unmodifiableList(ids);
+        return this;
+    }
+
+    @Override
+    protected String getOperationName() {
+        return "get";
+    }
+
+    @Override
+    public void applyConfig(BenchConfig benchConfig) {
+        super.applyConfig(benchConfig);
+        // Own resources, not a share of maxNumberOfThreads/maxNumberOfClients
+        if (benchConfig.maxNumberOfRealTimeGetOpThreads != -1) this.setNumberOfThreads(benchConfig.maxNumberOfRealTimeGetOpThreads);
+        if (benchConfig.maxNumberOfRealTimeGetOpClients != -1) this.setNumberOfClients(benchConfig.maxNumberOfRealTimeGetOpClients);
+        this.setBatchSizes(benchConfig.realTimeGetBatchSizes)
+                .registerDocumentIdFile(benchConfig.documentIdFile);
+
+        if (getOperationName().contains("warmup")) {
+            this.setRunDurationInSec(benchConfig.benchmarkWarmupTime);
+            this.setSkipDurationInSec(0);
+            if (benchConfig.targetRateForRealTimeGetOpAtWarmup != -1) {
+                this.setTargetThroughput(benchConfig.targetRateForRealTimeGetOpAtWarmup);
+            }
+        } else {
+            if (benchConfig.continuousRun) {
+                this.setWarmup(benchConfig.benchmarkWarmupTime,
+                        benchConfig.targetRateForRealTimeGetOpAtWarmup != -1 ? benchConfig.targetRateForRealTimeGetOpAtWarmup : targetThroughput);
+            }
+            this.setRunDurationInSec(benchConfig.benchmarkMeasurementTime);
+            if (benchConfig.targetRateForRealTimeGetOp != -1) {
+                this.setTargetThroughput(benchConfig.targetRateForRealTimeGetOp);
+            }
+        }
+        this.applyClosedLoopConfig(benchConfig);
+    }
+
+    @Override
+    protected double getScaleFactor() {
+        return 1.0;
+    }
+
+    @Override
+    protected QueryWorker getQueryWorkerInstance() {
+        return new RealTimeGetWorker(documentIds, batchSizes);
+    }
+
+    public void printConfig() {
+        super.printConfig();
+        log.info(String.format("%-30s %s %s", "documentIdFile", ":", documentIdFile));
+        log.info(String.format("%-30s %s %s", "documentIds", ":", documentIds.size()));
+        log.info(String.format("%-30s %s %s", "batchSizes", ":", Arrays.toString(batchSizes)));
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.get;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.loadgen.solr.QueryWorker;
+import org.loadgen.solr.QueryWorkerStats;
+import org.loadgen.solr.ThroughputController;
+import org.loadgen.solr.sink.RequestEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Real-time get of random ids: a single id goes through '/get?id=' (one document, from the transaction log if it was
+ * not committed yet), a batch through '/get' with the 'ids' in the body. The response time is also recorded per batch
+ * size.
+ */
+public class RealTimeGetWorker implements QueryWorker {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final String REAL_TIME_GET_PATH = "/get";
+    private static final String FIELD_LIST = "id,title,username,sha1,timestamp"; // same as the select queries
+
+    private long runDurationInSec;
+    private ThroughputController throughputController;
+    private final List<SolrClient> solrClientList = new ArrayList<>();
+    private QueryWorkerStats queryWorkerStats;
+
+    // Real-time get specific vars
+    private final List<String> documentIds;
+    private final int[] batchSizes;
+
+    RealTimeGetWorker(List<String> documentIds, int[] batchSizes) {
+        this.documentIds = documentIds;
+        this.batchSizes = batchSizes;
+    }
+
+    @Override
+    public void setQueryWorkerStats(QueryWorkerStats queryWorkerStats) {
+        this.queryWorkerStats = queryWorkerStats;
+    }
+
+    @Override
+    public QueryWorkerStats getQueryWorkerStat() {
+        return queryWorkerStats;
+    }
+
+    @Override
+    public void setRunDurationInSec(long runDurationInSec) {
+        this.runDurationInSec = runDurationInSec;
+    }
+
+    @Override
+    public void addSolrClient(SolrClient solrClient) {
+        this.solrClientList.add(solrClient);
+    }
+
+    @Override
+    public void setRateLimiter(ThroughputController throughputController) {
+        this.throughputController = throughputController;
+    }
+
+    @Override
+    public ThroughputController getRateLimiter() {
+        return this.throughputController;
+    }
+
+    @Override
+    public void closeClientConnections() {
+        for (int i = 0; i < solrClientList.size(); i++) {
+            try {
+                solrClientList.get(i).close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public Long call() {
+        final int numberOfClientsAssignedToCurrentWorker = solrClientList.size();
+        final long startTime = System.nanoTime();
+
+        throughputController.markCurrentTimeAsOperationStartTime();
+        throughputController.setDeadlineInNanos(startTime + TimeUnit.SECONDS.toNanos(runDurationInSec));
+        while (throughputController.isNextOperationDueBeforeDeadline()) {
+            long intendedStartTimeForCurrentGet = 0;
+            long getStartTime = 0;
+            int batchSize = 1;
+            try {
+                int clientIndex = (int) (throughputController.getTotalOperationsCompletedSoFar() % numberOfClientsAssignedToCurrentWorker);
+                SolrClient solrClient = solrClientList.get(clientIndex);
+
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                batchSize = batchSizes[random.nextInt(batchSizes.length)];
+                final ModifiableSolrParams params = new ModifiableSolrParams();
+                if (batchSize == 1) {
+                    params.set("id", documentIds.get(random.nextInt(documentIds.size())));
+                } else {
+                    final String[] ids = new String[batchSize];
+                    for (int i = 0; i < batchSize; i++) {
+                        ids[i] = documentIds.get(random.nextInt(documentIds.size()));
+                    }
+                    params.set("ids", String.join(",", ids));
+                }
+                params.set("fl", FIELD_LIST);
+                // (the ids of a large batch would not fit in the request line)
+                final QueryRequest getRequest = new QueryRequest(params, batchSize == 1 ? SolrRequest.METHOD.GET : SolrRequest.METHOD.POST);
+                getRequest.setPath(REAL_TIME_GET_PATH);
+
+                intendedStartTimeForCurrentGet = throughputController.blockUntilIntendedStartTimeOfNextOperation();
+                getStartTime = System.nanoTime();
+                if (queryWorkerStats != null) {
+                    queryWorkerStats.collectSchedulingLag(getStartTime - intendedStartTimeForCurrentGet,
+                            throughputController.getLastWakeUpLagInNanos());
+                }
+                final NamedList<Object> response = solrClient.request(getRequest);
+                final long getEndTime = System.nanoTime();
+
+                final long serviceTimeInNanos = getEndTime - getStartTime;
+                final long responseTimeInNanos = getEndTime - intendedStartTimeForCurrentGet;
+                // '/get' omits the response header by default (omitHeader=true in the stock solrconfig.xml)
+                final int qTime = getHeaderValue(response, "QTime", -1);
+
+                if (queryWorkerStats != null) {
+                    queryWorkerStats.collect(responseTimeInNanos, serviceTimeInNanos, qTime);
+                    if (getEndTime > throughputController.getDeadlineInNanos()) {
+                        queryWorkerStats.collectCompletedAfterDeadline(responseTimeInNanos);
+                    }
+                    queryWorkerStats.collectStep(getBatchName(batchSize), responseTimeInNanos);
+                    queryWorkerStats.publishEvent(RequestEvent.Type.GET, intendedStartTimeForCurrentGet, getStartTime,
+                            serviceTimeInNanos, responseTimeInNanos, qTime, getHeaderValue(response, "status", 0),
+                            getDocumentsFound(response), -1);
+                }
+            } catch (Exception e) {
+                if (queryWorkerStats != null) {
+                    queryWorkerStats.collectError();
+                    if (getStartTime != 0) {
+                        final long failureTime = System.nanoTime();
+                        queryWorkerStats.publishEvent(RequestEvent.Type.GET, intendedStartTimeForCurrentGet, getStartTime,
+                                failureTime - getStartTime, failureTime - intendedStartTimeForCurrentGet, -1,
+                                RequestEvent.STATUS_CLIENT_ERROR, -1, -1);
+                    }
+                }
+                log.error("Cause   : " + e.getCause());
+                log.error("Message : " + e.getMessage());
+            }
+        }
+
+        queryWorkerStats.setTotalRequestsSent(throughputController.getTotalOperationsCompletedSoFar());
+        return throughputController.getTotalOperationsCompletedSoFar();
+    }
+
+    private static String getBatchName(int batchSize) {
+        return batchSize == 1 ? "1 id" : batchSize + " ids";
+    }
+
+    private static int getHeaderValue(NamedList<Object> response, String name, int defaultValue) {
+        final Object responseHeader = response.get("responseHeader");
+        if (responseHeader instanceof NamedList) {
+            final Object value = ((NamedList<?>) responseHeader).get(name);
+            if (value instanceof Number) {
+                return ((Number) value).intValue();
+            }
+        }
+        return defaultValue;
+    }
+
+    // 'doc' (null if not found) for a single id, 'response' for a batch
+    private static long getDocumentsFound(NamedList<Object> response) {
+        final Object documents = response.get("response");
+        if (documents instanceof SolrDocumentList) {
+            return ((SolrDocumentList) documents).size();
+        }
+        return response.get("doc") != null ? 1 : 0;
+    }
+}
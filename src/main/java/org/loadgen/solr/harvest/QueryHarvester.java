@@ -0,0 +1,459 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.harvest;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.LukeRequest;
+import org.apache.solr.client.solrj.response.LukeResponse;
+import org.apache.solr.client.solrj.response.TermsResponse;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.luke.FieldFlag;
+import org.apache.solr.common.util.NamedList;
+import org.loadgen.solr.select.QueryFileHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Harvests the queries of an indexed collection and writes them by selectivity band, i.e. by number of hits per query:
+ * <ul>
+ *     <li>term queries from the top terms of the fields (Luke) and from the terms of each band ('/terms' with
+ *     terms.mincount and terms.maxcount, from random points of the term dictionary), and their fuzzy variants</li>
+ *     <li>phrase and proximity queries from the stored fields of sampled documents</li>
+ *     <li>timestamp ranges around the timestamps of sampled documents, from a minute to years wide</li>
+ * </ul>
+ * Every candidate query is sent with rows=0 to get its exact number of hits, and kept if its band is not full yet.
+ * The query files are named 'FIELD_TYPE_band.txt' and start with a header (see {@link QueryFileHeader}) giving their
+ * band, so that the response time is reported per band.
+ */
+public class QueryHarvester {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final String[] TEXT_FIELDS = {"title", "username", "comment", "text"};
+    private static final String TIMESTAMP_FIELD = "timestamp";
+    private static final int LUKE_TOP_TERMS = 100;
+    private static final int TERMS_PER_REQUEST = 25;
+    private static final int CANDIDATES_PER_ROUND = 200;
+    private static final int MAX_ROUNDS_WITHOUT_CANDIDATES = 20;
+    /** The harvest of a file stops when this fraction of maxProbesPerFile did not add a query (bands out of reach) */
+    private static final int PROBES_WITHOUT_PROGRESS_DIVISOR = 10;
+    private static final int SAMPLE_PAGE_SIZE = 500;
+    private static final int MAX_PHRASE_TERMS = 4;
+    private static final int MAX_PROXIMITY_DISTANCE = 6;
+    private static final double MIN_RANGE_WIDTH_IN_SEC = 60;
+    private static final double MAX_RANGE_WIDTH_IN_SEC = 5 * 365 * 24 * 3600;
+    private static final String TERM_START_CHARACTERS = "abcdefghijklmnopqrstuvwxyz0123456789";
+    // close to the StandardTokenizer of the text fields, the tokens of the phrases have no characters to escape
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final SolrClient solrClient;
+    private final String source;
+    private final SelectivityBands bands;
+    private int queriesPerBand = 1000;
+    private int maxProbesPerFile = 20_000;
+    private int sampleDocuments = 5000;
+    private int threads = 8;
+    private long seed = 42;
+
+    private long numDocs;
+    private final Map<String, List<String>> topTerms = new HashMap<>();
+    private final Set<String> storedFields = new HashSet<>();
+    private final List<SolrDocument> sampledDocuments = new ArrayList<>();
+    private final AtomicLong failedProbes = new AtomicLong();
+
+    private interface CandidateGenerator {
+        /** @return candidate queries, preferably in the given band */
+        List<String> next(SplittableRandom random, int band) throws IOException, SolrServerException;
+    }
+
+    /**
+     * @param source where the collection is (for the header of the query files)
+     */
+    public QueryHarvester(SolrClient solrClient, String source, SelectivityBands bands) {
+        this.solrClient = solrClient;
+        this.source = source;
+        this.bands = bands;
+    }
+
+    public QueryHarvester setQueriesPerBand(int queriesPerBand) {
+        this.queriesPerBand = queriesPerBand;
+        return this;
+    }
+
+    public QueryHarvester setMaxProbesPerFile(int maxProbesPerFile) {
+        this.maxProbesPerFile = maxProbesPerFile;
+        return this;
+    }
+
+    public QueryHarvester setSampleDocuments(int sampleDocuments) {
+        this.sampleDocuments = sampleDocuments;
+        return this;
+    }
+
+    public QueryHarvester setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    public QueryHarvester setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public void harvest(File directory) throws IOException, SolrServerException, InterruptedException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create the directory : " + directory.getAbsolutePath());
+        }
+        numDocs = solrClient.query(new SolrQuery("*:*").setRows(0)).getResults().getNumFound();
+        log.info(String.format("%-30s %s %s", "collection", ":", source + " (" + numDocs + " documents)"));
+        readFields();
+        sampleDocuments();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (String field : TEXT_FIELDS) {
+                harvestFile(directory, field, "FIELD", executor, topTerms.getOrDefault(field, List.of()),
+                        (random, band) -> termQueries(field, random, band, false));
+                harvestFile(directory, field, "FUZZY", executor, List.of(),
+                        (random, band) -> termQueries(field, random, band, true));
+                if (storedFields.contains(field)) {
+                    harvestFile(directory, field, "PHRASE", executor, List.of(),
+                            (random, band) -> documentQueries(field, random, QueryHarvester::phraseQuery));
+                    harvestFile(directory, field, "PROXIMITY", executor, List.of(),
+                            (random, band) -> documentQueries(field, random, QueryHarvester::proximityQuery));
+                } else {
+                    log.warn("The field '" + field + "' is not stored : no phrase and proximity queries");
+                }
+            }
+            if (storedFields.contains(TIMESTAMP_FIELD)) {
+                harvestFile(directory, TIMESTAMP_FIELD, "RANGE", executor, List.of(),
+                        (random, band) -> rangeQueries(random));
+            } else {
+                log.warn("The field '" + TIMESTAMP_FIELD + "' is not stored : no range queries");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        if (failedProbes.get() > 0) {
+            log.warn(failedProbes.get() + " candidate queries failed and were not used");
+        }
+    }
+
+    /** The stored fields and the top terms of the fields, from Luke */
+    private void readFields() throws IOException, SolrServerException {
+        final LukeRequest lukeRequest = new LukeRequest();
+        lukeRequest.setNumTerms(LUKE_TOP_TERMS);
+        final List<String> fields = new ArrayList<>(Arrays.asList(TEXT_FIELDS));
+        fields.add(TIMESTAMP_FIELD);
+        lukeRequest.setFields(fields);
+        final LukeResponse lukeResponse = lukeRequest.process(solrClient);
+        if (lukeResponse.getFieldInfo() == null) {
+            return;
+        }
+        for (LukeResponse.FieldInfo fieldInfo : lukeResponse.getFieldInfo().values()) {
+            // getSchemaFlags() returns the parsed "flags" (of the index), the schema flags are in getSchema()
+            if (fieldInfo.getSchema() != null && LukeResponse.FieldInfo.parseFlags(fieldInfo.getSchema()).contains(FieldFlag.STORED)) {
+                storedFields.add(fieldInfo.getName());
+            }
+            final NamedList<Integer> fieldTopTerms = fieldInfo.getTopTerms();
+            if (fieldTopTerms != null) {
+                final List<String> queries = new ArrayList<>();
+                fieldTopTerms.forEach((term, docFreq) -> queries.add(fieldInfo.getName() + ":" + ClientUtils.escapeQueryChars(term)));
+                topTerms.put(fieldInfo.getName(), queries);
+            }
+        }
+        log.info(String.format("%-30s %s %s", "stored fields", ":", storedFields));
+    }
+
+    /** A random sample of the documents (random sort if the schema has the 'random_*' fields, random pages otherwise) */
+    private void sampleDocuments() {
+        final String[] fields = storedFields.toArray(new String[0]);
+        if (fields.length == 0 || numDocs == 0) {
+            return;
+        }
+        final SplittableRandom random = new SplittableRandom(seed);
+        boolean randomSort = true;
+        while (sampledDocuments.size() < Math.min(sampleDocuments, numDocs)) {
+            final SolrQuery sampleQuery = new SolrQuery("*:*").setFields(fields).setRows(SAMPLE_PAGE_SIZE);
+            if (randomSort) {
+                sampleQuery.setStart(sampledDocuments.size()).setSort("random_" + seed, SolrQuery.ORDER.asc);
+            } else {
+                sampleQuery.setStart((int) random.nextLong(Math.max(1, numDocs - SAMPLE_PAGE_SIZE)));
+            }
+            try {
+                sampledDocuments.addAll(solrClient.query(sampleQuery).getResults());
+            } catch (Exception e) {
+                if (!randomSort) {
+                    log.error("Sampling the documents failed : " + e.getMessage());
+                    break;
+                }
+                log.warn("No random sort (" + e.getMessage() + "), documents sampled from random pages");
+                randomSort = false;
+            }
+        }
+        log.info(String.format("%-30s %s %d", "sampled documents", ":", sampledDocuments.size()));
+    }
+
+    private void harvestFile(File directory, String field, String queryType, ExecutorService executor,
+                             List<String> initialCandidates, CandidateGenerator candidateGenerator) throws IOException, InterruptedException {
+        final String fileName = field.toUpperCase() + "_" + queryType;
+        // a stream of its own per file: the harvest of a file does not depend on the other files
+        final SplittableRandom random = new SplittableRandom(seed ^ fileName.hashCode());
+        final List<List<String>> queries = new ArrayList<>();
+        final List<List<Long>> hits = new ArrayList<>();
+        for (int band = 0; band < bands.size(); band++) {
+            queries.add(new ArrayList<>());
+            hits.add(new ArrayList<>());
+        }
+
+        final Set<String> probedQueries = new HashSet<>();
+        List<String> nextCandidates = initialCandidates;
+        int probes = 0;
+        int roundsWithoutCandidates = 0;
+        int probesWithoutProgress = 0;
+        final int maxProbesWithoutProgress = Math.max(CANDIDATES_PER_ROUND, maxProbesPerFile / PROBES_WITHOUT_PROGRESS_DIVISOR);
+        while (probes < maxProbesPerFile && roundsWithoutCandidates < MAX_ROUNDS_WITHOUT_CANDIDATES
+                && probesWithoutProgress < maxProbesWithoutProgress) {
+            final List<Integer> openBands = new ArrayList<>();
+            for (int band = 0; band < bands.size(); band++) {
+                // a band needing more hits than there are documents can't be filled
+                if (queries.get(band).size() < queriesPerBand && bands.getLowestHits(band) <= numDocs) openBands.add(band);
+            }
+            if (openBands.isEmpty()) {
+                break;
+            }
+
+            final List<String> candidates = new ArrayList<>();
+            for (String candidate : nextCandidates) {
+                if (probedQueries.add(candidate)) candidates.add(candidate);
+            }
+            try {
+                nextCandidates = candidateGenerator.next(random, openBands.get(random.nextInt(openBands.size())));
+            } catch (SolrServerException e) {
+                throw new IOException("Harvesting the candidates of " + fileName + " failed", e);
+            }
+            if (candidates.isEmpty()) {
+                roundsWithoutCandidates++;
+                continue;
+            }
+            roundsWithoutCandidates = 0;
+
+            // the hits of the candidates in parallel, kept in the order of the candidates
+            final List<Future<Long>> candidateHits = new ArrayList<>();
+            for (String candidate : candidates) {
+                candidateHits.add(executor.submit(() -> countHits(candidate)));
+            }
+            for (int i = 0; i < candidates.size(); i++) {
+                final long candidateHitCount;
+                try {
+                    candidateHitCount = candidateHits.get(i).get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Counting the hits of " + candidates.get(i) + " failed", e.getCause());
+                }
+                final int band = bands.getBand(candidateHitCount);
+                if (band >= 0 && queries.get(band).size() < queriesPerBand) {
+                    queries.get(band).add(candidates.get(i));
+                    hits.get(band).add(candidateHitCount);
+                    probesWithoutProgress = 0;
+                } else {
+                    probesWithoutProgress++;
+                }
+            }
+            probes += candidates.size();
+        }
+
+        final StringBuilder summary = new StringBuilder();
+        for (int band = 0; band < bands.size(); band++) {
+            summary.append(band == 0 ? "" : ", ").append(bands.getName(band)).append(" hits: ").append(queries.get(band).size());
+            if (!queries.get(band).isEmpty()) {
+                writeQueryFile(new File(directory, fileName + "_" + bands.getName(band) + ".txt"), band, queries.get(band), hits.get(band));
+            }
+        }
+        log.info(String.format("%-30s %s %s (%d probes)", fileName, ":", summary, probes));
+    }
+
+    private long countHits(String query) {
+        try {
+            return solrClient.query(new SolrQuery(query).setRows(0)).getResults().getNumFound();
+        } catch (Exception e) {
+            // e.g. a fuzzy query expanding to too many terms
+            failedProbes.incrementAndGet();
+            log.debug("Candidate query " + query + " failed : " + e.getMessage());
+            return -1;
+        }
+    }
+
+    private void writeQueryFile(File queryFile, int band, List<String> queries, List<Long> hits) throws IOException {
+        final List<Long> sortedHits = hits.stream().sorted().collect(Collectors.toList());
+        final Map<String, String> header = new LinkedHashMap<>();
+        header.put(QueryFileHeader.SELECTIVITY, bands.getName(band));
+        header.put("hits", "min " + sortedHits.get(0) + ", median " + sortedHits.get(sortedHits.size() / 2)
+                + ", max " + sortedHits.get(sortedHits.size() - 1));
+        header.put("documents", String.valueOf(numDocs));
+        header.put("source", source);
+        header.put("harvested", Instant.now().toString());
+        try (PrintWriter writer = new PrintWriter(queryFile, StandardCharsets.UTF_8)) {
+            QueryFileHeader.write(writer, header);
+            queries.forEach(writer::println);
+        }
+    }
+
+    private List<String> termQueries(String field, SplittableRandom random, int band, boolean fuzzy) throws IOException, SolrServerException {
+        // the terms of the band (per the document frequency) after a random point of the term dictionary
+        final SolrQuery termsQuery = new SolrQuery()
+                .setRequestHandler("/terms")
+                .setTerms(true)
+                .addTermsField(field)
+                .setTermsSortString("index")
+                .setTermsLimit(TERMS_PER_REQUEST)
+                .setTermsLower(new String(new char[]{
+                        TERM_START_CHARACTERS.charAt(random.nextInt(TERM_START_CHARACTERS.length())),
+                        TERM_START_CHARACTERS.charAt(random.nextInt(TERM_START_CHARACTERS.length()))}))
+                .setTermsMinCount(fuzzy ? 1 : (int) Math.min(Integer.MAX_VALUE, Math.max(1, bands.getLowestHits(band))));
+        if (!fuzzy && bands.getHighestHits(band) != -1) {
+            termsQuery.setTermsMaxCount((int) Math.min(Integer.MAX_VALUE, bands.getHighestHits(band)));
+        }
+        termsQuery.set("distrib", true);
+        termsQuery.set("shards.qt", "/terms");
+
+        final TermsResponse termsResponse = solrClient.query(termsQuery).getTermsResponse();
+        final List<String> queries = new ArrayList<>();
+        if (termsResponse == null || termsResponse.getTerms(field) == null) {
+            return queries;
+        }
+        for (TermsResponse.Term term : termsResponse.getTerms(field)) {
+            queries.add(field + ":" + (fuzzy ? fuzzyTerm(term.getTerm(), random) : ClientUtils.escapeQueryChars(term.getTerm())));
+        }
+        return queries;
+    }
+
+    /** Inserts "xX" in a long term (matched with a distance of 2) or replaces a letter of a short one (distance of 1) */
+    private static String fuzzyTerm(String term, SplittableRandom random) {
+        final int position = random.nextInt(term.length());
+        if (term.length() >= 6) {
+            return ClientUtils.escapeQueryChars(term.substring(0, position) + "xX" + term.substring(position)) + "~2";
+        }
+        return ClientUtils.escapeQueryChars(term.substring(0, position) + "X" + term.substring(position + 1)) + "~1";
+    }
+
+    private interface TokenQueryBuilder {
+        /** @return the query of these tokens, or null */
+        String build(String field, String[] tokens, SplittableRandom random);
+    }
+
+    private List<String> documentQueries(String field, SplittableRandom random, TokenQueryBuilder queryBuilder) {
+        final List<String> queries = new ArrayList<>();
+        for (int attempt = 0; attempt < CANDIDATES_PER_ROUND && !sampledDocuments.isEmpty(); attempt++) {
+            final Object value = sampledDocuments.get(random.nextInt(sampledDocuments.size())).getFirstValue(field);
+            if (value == null) {
+                continue;
+            }
+            final String[] tokens = Arrays.stream(TOKEN_SEPARATOR.split(value.toString()))
+                    .filter(token -> !token.isEmpty())
+                    .toArray(String[]::new);
+            final String query = queryBuilder.build(field, tokens, random);
+            if (query != null) {
+                queries.add(query);
+            }
+        }
+        return queries;
+    }
+
+    private static String phraseQuery(String field, String[] tokens, SplittableRandom random) {
+        if (tokens.length < 2) {
+            return null;
+        }
+        final int length = 2 + random.nextInt(Math.min(MAX_PHRASE_TERMS, tokens.length) - 1);
+        final int start = random.nextInt(tokens.length - length + 1);
+        return field + ":\"" + String.join(" ", Arrays.copyOfRange(tokens, start, start + length)) + "\"";
+    }
+
+    private static String proximityQuery(String field, String[] tokens, SplittableRandom random) {
+        if (tokens.length < 2) {
+            return null;
+        }
+        final int first = random.nextInt(tokens.length - 1);
+        final int second = first + 1 + random.nextInt(Math.min(MAX_PROXIMITY_DISTANCE, tokens.length - 1 - first));
+        final int slop = second - first - 1 + random.nextInt(3);
+        return field + ":\"" + tokens[first] + " " + tokens[second] + "\"~" + Math.max(1, slop);
+    }
+
+    private List<String> rangeQueries(SplittableRandom random) {
+        final List<String> queries = new ArrayList<>();
+        for (int attempt = 0; attempt < CANDIDATES_PER_ROUND && !sampledDocuments.isEmpty(); attempt++) {
+            final Object value = sampledDocuments.get(random.nextInt(sampledDocuments.size())).getFirstValue(TIMESTAMP_FIELD);
+            if (!(value instanceof Date)) {
+                continue;
+            }
+            // log-uniform width: as many narrow (selective) ranges as wide ones
+            final long widthInSec = (long) Math.exp(Math.log(MIN_RANGE_WIDTH_IN_SEC)
+                    + random.nextDouble() * (Math.log(MAX_RANGE_WIDTH_IN_SEC) - Math.log(MIN_RANGE_WIDTH_IN_SEC)));
+            final Instant from = ((Date) value).toInstant();
+            final int bounds = random.nextInt(10);
+            if (bounds < 8) {
+                queries.add(TIMESTAMP_FIELD + ":[" + from + " TO " + from.plusSeconds(widthInSec) + "]");
+            } else if (bounds < 9) {
+                queries.add(TIMESTAMP_FIELD + ":{" + from + " TO *]");
+            } else {
+                queries.add(TIMESTAMP_FIELD + ":[* TO " + from + "]");
+            }
+        }
+        return queries;
+    }
+}
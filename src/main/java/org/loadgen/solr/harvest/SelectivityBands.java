@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.harvest;
+
+import java.util.Arrays;
+
+/**
+ * Selectivity bands of the queries, by number of hits: the bands "1,10,100" are 1-9, 10-99 and 100+ hits. A number of
+ * hits below the first band (e.g. no hits at all) is in no band.
+ */
+public class SelectivityBands {
+    private final long[] lowestHits;
+
+    public SelectivityBands(long... lowestHits) {
+        if (lowestHits.length == 0) {
+            throw new IllegalArgumentException("No selectivity bands");
+        }
+        for (int band = 0; band < lowestHits.length; band++) {
+            if (lowestHits[band] < 0 || (band > 0 && lowestHits[band] <= lowestHits[band - 1])) {
+                throw new IllegalArgumentException("The selectivity bands must be increasing numbers of hits : " + Arrays.toString(lowestHits));
+            }
+        }
+        this.lowestHits = lowestHits.clone();
+    }
+
+    /** e.g. "1,10,100,1000,10000,100000" */
+    public static SelectivityBands parse(String commaSeparatedLowestHits) {
+        return new SelectivityBands(Arrays.stream(commaSeparatedLowestHits.split(","))
+                .map(String::trim)
+                .filter(hits -> !hits.isEmpty())
+                .mapToLong(Long::parseLong)
+                .toArray());
+    }
+
+    public int size() {
+        return lowestHits.length;
+    }
+
+    /** @return the band of this number of hits, -1 if it is below the first band */
+    public int getBand(long hits) {
+        for (int band = lowestHits.length - 1; band >= 0; band--) {
+            if (hits >= lowestHits[band]) {
+                return band;
+            }
+        }
+        return -1;
+    }
+
+    public long getLowestHits(int band) {
+        return lowestHits[band];
+    }
+
+    /** @return the highest number of hits of the band, -1 for the last band (unbounded) */
+    public long getHighestHits(int band) {
+        return band == lowestHits.length - 1 ? -1 : lowestHits[band + 1] - 1;
+    }
+
+    /** "10-99", "100000+", or "0" for a band of a single number of hits */
+    public String getName(int band) {
+        final long highestHits = getHighestHits(band);
+        if (highestHits == -1) {
+            return lowestHits[band] + "+";
+        }
+        return highestHits == lowestHits[band] ? String.valueOf(highestHits) : lowestHits[band] + "-" + highestHits;
+    }
+}
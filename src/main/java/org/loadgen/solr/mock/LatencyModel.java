@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.mock;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the mock Solr server: a base latency drawn from a distribution, plus periodic stalls during which no
+ * response completes (like a stop-the-world pause of the server). Spec format of the base latency:
+ * <pre>
+ *   fixed:&lt;ms&gt;
+ *   uniform:&lt;minMs&gt;:&lt;maxMs&gt;
+ *   exponential:&lt;meanMs&gt;
+ *   lognormal:&lt;medianMs&gt;:&lt;sigma&gt;
+ * </pre>
+ * and of the stalls: '&lt;everyMs&gt;:&lt;durationMs&gt;' (empty = no stalls).
+ */
+public class LatencyModel {
+
+    private enum Distribution {
+        FIXED,
+        UNIFORM,
+        EXPONENTIAL,
+        LOGNORMAL
+    }
+
+    private final String spec;
+    private final Distribution distribution;
+    private final double param1InNanos;
+    private final double param2;
+
+    private final long stallEveryInNanos;
+    private final long stallDurationInNanos;
+    private final long stallScheduleStartTimeInNanos = System.nanoTime();
+
+    public LatencyModel(String latencySpec, String stallSpec) {
+        this.spec = latencySpec + (stallSpec == null || stallSpec.isEmpty() ? "" : " stalls:" + stallSpec);
+
+        final String[] tokens = latencySpec.trim().split(":");
+        this.distribution = Distribution.valueOf(tokens[0].toUpperCase());
+        this.param1InNanos = Double.parseDouble(tokens[1]) * TimeUnit.MILLISECONDS.toNanos(1);
+        switch (distribution) {
+            case UNIFORM:
+                this.param2 = Double.parseDouble(tokens[2]) * TimeUnit.MILLISECONDS.toNanos(1);
+                break;
+            case LOGNORMAL:
+                this.param2 = Double.parseDouble(tokens[2]);
+                break;
+            default:
+                this.param2 = 0;
+        }
+
+        if (stallSpec == null || stallSpec.trim().isEmpty()) {
+            this.stallEveryInNanos = 0;
+            this.stallDurationInNanos = 0;
+        } else {
+            final String[] stallTokens = stallSpec.trim().split(":");
+            this.stallEveryInNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(stallTokens[0]));
+            this.stallDurationInNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(stallTokens[1]));
+        }
+    }
+
+    public static LatencyModel fixed(double latencyInMillis) {
+        return new LatencyModel("fixed:" + latencyInMillis, null);
+    }
+
+    private long nextBaseLatencyInNanos() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (distribution) {
+            case UNIFORM:
+                return (long) (param1InNanos + random.nextDouble() * (param2 - param1InNanos));
+            case EXPONENTIAL:
+                return (long) (-Math.log(1.0 - random.nextDouble()) * param1InNanos);
+            case LOGNORMAL:
+                return (long) (param1InNanos * Math.exp(param2 * random.nextGaussian()));
+            default:
+                return (long) param1InNanos;
+        }
+    }
+
+    /**
+     * Time at which the response of a request received at 'arrivalTimeInNanos' completes: after the base latency,
+     * pushed to the end of the stall if it would complete during one.
+     */
+    public long getCompletionTimeInNanos(long arrivalTimeInNanos) {
+        long completionTimeInNanos = arrivalTimeInNanos + nextBaseLatencyInNanos();
+        if (stallEveryInNanos > 0) {
+            final long positionInStallPeriod = (completionTimeInNanos - stallScheduleStartTimeInNanos) % stallEveryInNanos;
+            if (positionInStallPeriod < stallDurationInNanos) {
+                completionTimeInNanos += stallDurationInNanos - positionInStallPeriod;
+            }
+        }
+        return completionTimeInNanos;
+    }
+
+    public long getStallEveryInNanos() {
+        return stallEveryInNanos;
+    }
+
+    public long getStallDurationInNanos() {
+        return stallDurationInNanos;
+    }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+}
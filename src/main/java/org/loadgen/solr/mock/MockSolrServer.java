@@ -0,0 +1,384 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.mock;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.apache.commons.io.IOUtils;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lightweight local Solr stand-in (HTTP/1.1 and h2c, i.e. what Http2SolrClient talks by default) to benchmark the
+ * load generator itself: '/select' returns 'docsPerResponse' synthetic documents (javabin, or JSON with 'wt=json'),
+ * '/update' an empty response, '/get' the requested ids ('doc' for 'id', 'response' for 'ids', without a response header
+ * like the stock '/get'), '/select' with a '{!terms f=id}' query the listed ids (as the freshness probe polls), all after the latency of the {@link LatencyModel}, gzipped if the client accepts it.
+ * '/admin/segments' reports the bytes of the updates received so far as the index size. Responses are delayed
+ * asynchronously, so the number of requests in flight is not bound by the server threads.
+ * <pre>
+ *   java -DmockLatency=fixed:1 -DmockStalls=2000:200 -cp ... org.loadgen.solr.mock.MockSolrServer &lt;port&gt;
+ * </pre>
+ */
+public class MockSolrServer {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final Gson gson = new Gson();
+    private static final String ID_LOOKUP_QUERY_PREFIX = "{!terms f=id}";
+
+    private final int requestedPort;
+    private volatile LatencyModel latencyModel = LatencyModel.fixed(0);
+    private long numFound = 1000;
+    private int docsPerResponse = 10;
+    private int fieldSizeInBytes = 100;
+
+    private Server server;
+    private ServerConnector serverConnector;
+    private ScheduledExecutorService responseScheduler;
+
+    // Encoded responses per (format, QTime in ms): the documents are the same for every request
+    private final Map<Long, byte[]> javabinResponses = new ConcurrentHashMap<>();
+    private final Map<Long, byte[]> jsonResponses = new ConcurrentHashMap<>();
+
+    // Bytes of the '/update' requests received, reported as the index size by '/admin/segments'
+    private final AtomicLong indexSizeInBytes = new AtomicLong();
+
+    public MockSolrServer(int port) {
+        this.requestedPort = port;
+    }
+
+    public MockSolrServer setLatencyModel(LatencyModel latencyModel) {
+        this.latencyModel = latencyModel;
+        return this;
+    }
+
+    public MockSolrServer setResponseSize(long numFound, int docsPerResponse, int fieldSizeInBytes) {
+        this.numFound = numFound;
+        this.docsPerResponse = docsPerResponse;
+        this.fieldSizeInBytes = fieldSizeInBytes;
+        javabinResponses.clear();
+        jsonResponses.clear();
+        return this;
+    }
+
+    public LatencyModel getLatencyModel() {
+        return latencyModel;
+    }
+
+    public MockSolrServer start() throws Exception {
+        responseScheduler = Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors() / 4), runnable -> {
+            final Thread thread = new Thread(runnable, "mock-solr-responder");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server = new Server(new QueuedThreadPool(200, 8));
+        final HttpConfiguration httpConfiguration = new HttpConfiguration();
+        httpConfiguration.setSendServerVersion(false);
+        serverConnector = new ServerConnector(server,
+                new HttpConnectionFactory(httpConfiguration),
+                new HTTP2CServerConnectionFactory(httpConfiguration));
+        serverConnector.setPort(requestedPort);
+        server.addConnector(serverConnector);
+        // gzip only for the clients that accept it (Accept-Encoding), as Solr does with its gzip module
+        final GzipHandler gzipHandler = new GzipHandler();
+        gzipHandler.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
+                baseRequest.setHandled(true);
+                handleRequest(target, request, response);
+            }
+        });
+        server.setHandler(gzipHandler);
+        server.start();
+
+        log.info(String.format("%-30s %s http://localhost:%d/solr/<collection> | latency %s | %d docs/response, %d bytes/field",
+                "Mock Solr server started", ":", getPort(), latencyModel, docsPerResponse, fieldSizeInBytes));
+        return this;
+    }
+
+    public int getPort() {
+        return serverConnector.getLocalPort();
+    }
+
+    public void stop() {
+        try {
+            server.stop();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        responseScheduler.shutdownNow();
+    }
+
+    private void handleRequest(String target, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        final long arrivalTimeInNanos = System.nanoTime();
+        final long completionTimeInNanos = latencyModel.getCompletionTimeInNanos(arrivalTimeInNanos);
+        final long qTimeInMillis = TimeUnit.NANOSECONDS.toMillis(completionTimeInNanos - arrivalTimeInNanos);
+
+        final boolean isSelect = target.endsWith("/select");
+        final boolean isJson = "json".equals(request.getParameter("wt"));
+        final String query = request.getParameter("q");
+        final boolean isIdLookup = isSelect && query != null && query.startsWith(ID_LOOKUP_QUERY_PREFIX);
+        if (target.endsWith("/update")) {
+            indexSizeInBytes.addAndGet(IOUtils.consume(request.getInputStream()));
+        }
+        final byte[] body = target.endsWith("/admin/segments") ? getSegmentsResponse()
+                : target.endsWith("/get") ? getRealTimeGetResponse(request, isJson)
+                : isIdLookup ? getDocumentsResponse(query.substring(ID_LOOKUP_QUERY_PREFIX.length()).split(","), isJson)
+                : isJson ? getJsonResponse(isSelect, qTimeInMillis) : getJavabinResponse(isSelect, qTimeInMillis);
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(isJson ? "application/json;charset=utf-8" : "application/octet-stream");
+        response.setContentLength(body.length);
+
+        final long delayInNanos = completionTimeInNanos - System.nanoTime();
+        if (delayInNanos <= 0) {
+            response.getOutputStream().write(body);
+            return;
+        }
+
+        final AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(0);
+        responseScheduler.schedule(() -> {
+            try {
+                asyncContext.getResponse().getOutputStream().write(body);
+            } catch (IOException e) {
+                log.error("Failed to send the mock response : " + e.getMessage());
+            } finally {
+                asyncContext.complete();
+            }
+        }, delayInNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Body of a '/select' response in the given format ('javabin' or 'json'), e.g. as a parser benchmark payload
+    public byte[] getSelectResponse(String wt, long qTimeInMillis) {
+        return "json".equals(wt) ? getJsonResponse(true, qTimeInMillis) : getJavabinResponse(true, qTimeInMillis);
+    }
+
+    // A single segment, as large as the update requests received so far (javabin only)
+    private byte[] getSegmentsResponse() {
+        final NamedList<Object> segment = new SimpleOrderedMap<>();
+        segment.add("sizeInBytes", indexSizeInBytes.get());
+        final NamedList<Object> segments = new SimpleOrderedMap<>();
+        segments.add("_0", segment);
+        final NamedList<Object> solrResponse = new SimpleOrderedMap<>();
+        solrResponse.add("responseHeader", getResponseHeader(0));
+        solrResponse.add("segments", segments);
+        try (JavaBinCodec javaBinCodec = new JavaBinCodec()) {
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            javaBinCodec.marshal(solrResponse, outputStream);
+            return outputStream.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Every requested id is found (not cached: the documents depend on the ids)
+    private byte[] getRealTimeGetResponse(HttpServletRequest request, boolean isJson) {
+        final String id = request.getParameter("id");
+        if (id == null) {
+            final String[] ids = request.getParameterValues("ids") == null ? new String[0]
+                    : Arrays.stream(request.getParameterValues("ids")).flatMap(x -> Arrays.stream(x.split(","))).toArray(String[]::new);
+            return getDocumentsResponse(ids, isJson);
+        }
+        if (isJson) {
+            final JsonObject jsonResponse = new JsonObject();
+            jsonResponse.add("doc", gson.toJsonTree(getDocumentFields(id, 0)));
+            return gson.toJson(jsonResponse).getBytes(StandardCharsets.UTF_8);
+        }
+        final NamedList<Object> solrResponse = new SimpleOrderedMap<>();
+        solrResponse.add("doc", getDocument(id, 0));
+        return marshal(solrResponse);
+    }
+
+    // A 'response' with one document per id
+    private byte[] getDocumentsResponse(String[] ids, boolean isJson) {
+        if (isJson) {
+            final JsonObject jsonResponse = new JsonObject();
+            final JsonObject documents = new JsonObject();
+            documents.addProperty("numFound", ids.length);
+            documents.addProperty("start", 0);
+            final JsonArray docs = new JsonArray();
+            for (int i = 0; i < ids.length; i++) {
+                docs.add(gson.toJsonTree(getDocumentFields(ids[i], i)));
+            }
+            documents.add("docs", docs);
+            jsonResponse.add("response", documents);
+            return gson.toJson(jsonResponse).getBytes(StandardCharsets.UTF_8);
+        }
+        final NamedList<Object> solrResponse = new SimpleOrderedMap<>();
+        final SolrDocumentList solrDocumentList = new SolrDocumentList();
+        solrDocumentList.setNumFound(ids.length);
+        solrDocumentList.setStart(0);
+        for (int i = 0; i < ids.length; i++) {
+            solrDocumentList.add(getDocument(ids[i], i));
+        }
+        solrResponse.add("response", solrDocumentList);
+        return marshal(solrResponse);
+    }
+
+    private static byte[] marshal(NamedList<Object> solrResponse) {
+        try (JavaBinCodec javaBinCodec = new JavaBinCodec()) {
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            javaBinCodec.marshal(solrResponse, outputStream);
+            return outputStream.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private SolrDocument getDocument(String id, int docIndex) {
+        final SolrDocument solrDocument = new SolrDocument();
+        getDocumentFields(id, docIndex).forEach(solrDocument::addField);
+        return solrDocument;
+    }
+
+    private Map<String, Object> getDocumentFields(String id, int docIndex) {
+        final Map<String, Object> fields = getDocumentFields(docIndex);
+        fields.put("id", id);
+        return fields;
+    }
+
+    // (select responses are keyed by +QTime, update responses by -QTime-1)
+    private byte[] getJavabinResponse(boolean isSelect, long qTimeInMillis) {
+        return javabinResponses.computeIfAbsent(isSelect ? qTimeInMillis : -qTimeInMillis - 1, key -> {
+            final NamedList<Object> solrResponse = new SimpleOrderedMap<>();
+            solrResponse.add("responseHeader", getResponseHeader(qTimeInMillis));
+            if (isSelect) {
+                final SolrDocumentList solrDocumentList = new SolrDocumentList();
+                solrDocumentList.setNumFound(numFound);
+                solrDocumentList.setStart(0);
+                for (int i = 0; i < docsPerResponse; i++) {
+                    final SolrDocument solrDocument = new SolrDocument();
+                    getDocumentFields(i).forEach(solrDocument::addField);
+                    solrDocumentList.add(solrDocument);
+                }
+                solrResponse.add("response", solrDocumentList);
+            }
+            try (JavaBinCodec javaBinCodec = new JavaBinCodec()) {
+                final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                javaBinCodec.marshal(solrResponse, outputStream);
+                return outputStream.toByteArray();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private byte[] getJsonResponse(boolean isSelect, long qTimeInMillis) {
+        return jsonResponses.computeIfAbsent(isSelect ? qTimeInMillis : -qTimeInMillis - 1, key -> {
+            final JsonObject solrResponse = new JsonObject();
+            final JsonObject responseHeader = new JsonObject();
+            responseHeader.addProperty("status", 0);
+            responseHeader.addProperty("QTime", (int) qTimeInMillis);
+            solrResponse.add("responseHeader", responseHeader);
+            if (isSelect) {
+                final JsonObject documents = new JsonObject();
+                documents.addProperty("numFound", numFound);
+                documents.addProperty("start", 0);
+                documents.addProperty("numFoundExact", true);
+                final JsonArray docs = new JsonArray();
+                for (int i = 0; i < docsPerResponse; i++) {
+                    docs.add(gson.toJsonTree(getDocumentFields(i)));
+                }
+                documents.add("docs", docs);
+                solrResponse.add("response", documents);
+            }
+            return gson.toJson(solrResponse).getBytes(StandardCharsets.UTF_8);
+        });
+    }
+
+    private static NamedList<Object> getResponseHeader(long qTimeInMillis) {
+        final NamedList<Object> responseHeader = new SimpleOrderedMap<>();
+        responseHeader.add("status", 0);
+        responseHeader.add("QTime", (int) qTimeInMillis);
+        return responseHeader;
+    }
+
+    private Map<String, Object> getDocumentFields(int docIndex) {
+        final char[] filler = new char[fieldSizeInBytes];
+        Arrays.fill(filler, 'x');
+        final Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("id", "mock-" + docIndex);
+        fields.put("title", new String(filler));
+        fields.put("username", "mock-user-" + docIndex);
+        fields.put("sha1", String.format("%040x", docIndex));
+        fields.put("timestamp", "2021-01-01T00:00:00Z");
+        return fields;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            throw new Exception("USAGE: java [-DmockLatency=fixed:<ms>|uniform:<min>:<max>|exponential:<mean>|lognormal:<median>:<sigma>]" +
+                    " [-DmockStalls=<everyMs>:<durationMs>] [-DmockNumFound=<n>] [-DmockDocsPerResponse=<n>]" +
+                    " [-DmockFieldSizeInBytes=<n>] " + MockSolrServer.class.getName() + " port");
+        }
+        new MockSolrServer(Integer.parseInt(args[0]))
+                .setLatencyModel(new LatencyModel(System.getProperty("mockLatency", "fixed:0"), System.getProperty("mockStalls", "")))
+                .setResponseSize(Long.parseLong(System.getProperty("mockNumFound", "1000")),
+                        Integer.parseInt(System.getProperty("mockDocsPerResponse", "10")),
+                        Integer.parseInt(System.getProperty("mockFieldSizeInBytes", "100")))
+                .start()
+                .server.join();
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.report;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.HdrHistogram.Histogram;
+import org.loadgen.solr.AdaptiveConcurrencyController;
+import org.loadgen.solr.BenchConfig;
+import org.loadgen.solr.ClientHealthMonitor;
+import org.loadgen.solr.FreshnessProbe;
+import org.loadgen.solr.PhaseMetrics;
+import org.loadgen.solr.SolrClientFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.invoke.MethodHandles;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Machine readable end-of-run report: configuration, JVM and host info and, for every phase, the throughput, the
+ * full percentile spectrum of service and response time, error counts and the client health. Written as JSON,
+ * with a static HTML rendering next to it.
+ */
+public class BenchmarkReport {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    public static final String REPORT_FILE_NAME = "benchmark-report";
+
+    private static final Gson gson = new GsonBuilder()
+            .setPrettyPrinting()
+            .serializeSpecialFloatingPointValues()
+            .disableJdkUnsafe()
+            .create();
+
+    private final BenchConfig benchConfig;
+    private final Date creationDate = new Date();
+    private final List<String> phaseNames = new ArrayList<>();
+    private final List<PhaseMetrics> phases = new ArrayList<>();
+
+    public BenchmarkReport(BenchConfig benchConfig) {
+        this.benchConfig = benchConfig;
+    }
+
+    public void addPhase(String phaseName, PhaseMetrics phaseMetrics) {
+        if (phaseMetrics == null) return; // operation was skipped
+
+        phaseNames.add(phaseName);
+        phases.add(phaseMetrics);
+    }
+
+    /** The names of the phases added so far, in run order */
+    public List<String> getPhaseNames() {
+        return new ArrayList<>(phaseNames);
+    }
+
+    public PhaseMetrics getPhase(String phaseName) {
+        final int index = phaseNames.indexOf(phaseName);
+        return index == -1 ? null : phases.get(index);
+    }
+
+    public JsonObject toJson() {
+        final JsonObject report = new JsonObject();
+        report.addProperty("timestamp", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").format(creationDate));
+        report.addProperty("queryType", System.getProperty("queryType", ""));
+        report.add("config", gson.toJsonTree(benchConfig));
+        report.add("jvm", getJvmInfo());
+        report.add("host", getHostInfo());
+
+        final JsonArray phasesJson = new JsonArray();
+        for (int i = 0; i < phases.size(); i++) {
+            phasesJson.add(toJson(phaseNames.get(i), phases.get(i)));
+        }
+        report.add("phases", phasesJson);
+        return report;
+    }
+
+    private static JsonObject toJson(String phaseName, PhaseMetrics phaseMetrics) {
+        final JsonObject phase = new JsonObject();
+        phase.addProperty("name", phaseName);
+        phase.addProperty("operation", phaseMetrics.getOperationName());
+        phase.addProperty("startTimeInSec", phaseMetrics.getStartTimeInSec());
+        phase.addProperty("durationInSec", phaseMetrics.getDurationInSec());
+        phase.addProperty("measuredWindowInSec", phaseMetrics.getMeasuredWindowInSec());
+        phase.addProperty("targetThroughput", phaseMetrics.getTargetThroughput());
+        phase.addProperty("actualThroughput", phaseMetrics.getActualThroughput());
+        phase.addProperty("requestsSent", phaseMetrics.getTotalRequestsSent());
+        phase.addProperty("errors", phaseMetrics.getTotalErrors());
+        phase.addProperty("requestsNotSentBeforeDeadline", phaseMetrics.getRequestsNotSentBeforeDeadline());
+        // the requests completed after the deadline are part of the response/service times below, not excluded from them
+        final Histogram completedAfterDeadlineResponseTimeHistogram = phaseMetrics.getCompletedAfterDeadlineResponseTimeHistogram();
+        phase.addProperty("requestsCompletedAfterDeadline", completedAfterDeadlineResponseTimeHistogram.getTotalCount());
+        phase.addProperty("latenciesIncludeRequestsCompletedAfterDeadline", true);
+        if (completedAfterDeadlineResponseTimeHistogram.getTotalCount() > 0) {
+            phase.add("completedAfterDeadlineResponseTime", HistogramJson.toJson(completedAfterDeadlineResponseTimeHistogram, HistogramJson.NANOS_PER_MILLI));
+        }
+
+        phase.add("clientServiceTime", HistogramJson.toJson(phaseMetrics.getClientSideViewServiceTimeHistogram(), HistogramJson.NANOS_PER_MILLI));
+        phase.add("serverServiceTime", HistogramJson.toJson(phaseMetrics.getServerSideViewServiceTimeHistogram(), 1));
+        phase.add("clientResponseTime", HistogramJson.toJson(phaseMetrics.getClientSideViewResponseTimeHistogram(), HistogramJson.NANOS_PER_MILLI));
+
+        final Map<String, Histogram> stepResponseTimeHistograms = phaseMetrics.getStepResponseTimeHistograms();
+        if (!stepResponseTimeHistograms.isEmpty()) {
+            final JsonObject steps = new JsonObject();
+            stepResponseTimeHistograms.forEach((step, histogram) ->
+                    steps.add(step, HistogramJson.toJson(histogram, HistogramJson.NANOS_PER_MILLI)));
+            phase.add("stepResponseTime", steps);
+        }
+
+        final Map<String, Histogram> selectivityResponseTimeHistograms = phaseMetrics.getSelectivityResponseTimeHistograms();
+        if (!selectivityResponseTimeHistograms.isEmpty()) {
+            // by number of hits per query, see QueryFileHeader
+            final JsonObject selectivities = new JsonObject();
+            selectivityResponseTimeHistograms.forEach((selectivity, histogram) ->
+                    selectivities.add(selectivity, HistogramJson.toJson(histogram, HistogramJson.NANOS_PER_MILLI)));
+            phase.add("selectivityResponseTime", selectivities);
+        }
+
+        final JsonArray timeSeries = new JsonArray();
+        for (PhaseMetrics.IntervalSample sample : phaseMetrics.getIntervalSamples()) {
+            timeSeries.add(gson.toJsonTree(sample));
+        }
+        phase.add("timeSeries", timeSeries);
+
+        final ClientHealthMonitor clientHealthMonitor = phaseMetrics.getClientHealthMonitor();
+        if (clientHealthMonitor != null) {
+            final JsonObject clientHealth = new JsonObject();
+            clientHealth.addProperty("saturated", clientHealthMonitor.isClientSaturated());
+            clientHealth.add("saturationReasons", gson.toJsonTree(clientHealthMonitor.getSaturationReasons()));
+            clientHealth.add("schedulingLag", HistogramJson.toJson(clientHealthMonitor.getSchedulingLagHistogram(), HistogramJson.NANOS_PER_MILLI));
+            clientHealth.add("wakeUpLag", HistogramJson.toJson(clientHealthMonitor.getWakeUpLagHistogram(), HistogramJson.NANOS_PER_MILLI));
+            clientHealth.add("gcPause", HistogramJson.toJson(clientHealthMonitor.getGcPauseHistogram(), 1));
+            clientHealth.addProperty("gcPausePercent", clientHealthMonitor.getGcPausePercent());
+            clientHealth.addProperty("processCpuLoadMeanPercent", clientHealthMonitor.getProcessCpuLoadHistogram().getMean());
+            clientHealth.addProperty("processCpuLoadMaxPercent", clientHealthMonitor.getProcessCpuLoadHistogram().getMaxValue());
+            phase.add("clientHealth", clientHealth);
+        }
+
+        final SolrClientFactory solrClientFactory = phaseMetrics.getSolrClientFactory();
+        if (solrClientFactory != null) {
+            final JsonObject transport = new JsonObject();
+            transport.addProperty("type", solrClientFactory.getTransport());
+            transport.addProperty("responseCompression", solrClientFactory.isResponseCompression());
+            transport.addProperty("connectionsOpened", solrClientFactory.getConnectionsOpened());
+            transport.addProperty("maxOpenConnections", solrClientFactory.getMaxOpenConnections());
+            transport.addProperty("bytesReceived", solrClientFactory.getBytesReceived());
+            transport.addProperty("bytesSent", solrClientFactory.getBytesSent());
+            phase.add("transport", transport);
+        }
+
+        final AdaptiveConcurrencyController adaptiveConcurrencyController = phaseMetrics.getAdaptiveConcurrencyController();
+        if (adaptiveConcurrencyController != null) {
+            final JsonObject adaptiveConcurrency = new JsonObject();
+            adaptiveConcurrency.add("knee", gson.toJsonTree(adaptiveConcurrencyController.getKnee()));
+            adaptiveConcurrency.add("timeSeries", gson.toJsonTree(adaptiveConcurrencyController.getSamples()));
+            phase.add("adaptiveConcurrency", adaptiveConcurrency);
+        }
+
+        final FreshnessProbe freshnessProbe = phaseMetrics.getFreshnessProbe();
+        if (freshnessProbe != null) {
+            final JsonObject freshness = new JsonObject();
+            freshness.addProperty("markersPerSec", freshnessProbe.getMarkersPerSec());
+            freshness.addProperty("pollIntervalInMillis", freshnessProbe.getPollIntervalInMillis());
+            freshness.addProperty("markersWritten", freshnessProbe.getMarkersWritten());
+            freshness.addProperty("writeErrors", freshnessProbe.getWriteErrors());
+            freshness.addProperty("pollErrors", freshnessProbe.getPollErrors());
+            freshness.addProperty("markersNotVisible", freshnessProbe.getMarkersNotVisible());
+            freshness.add("writeTime", HistogramJson.toJson(freshnessProbe.getWriteTimeHistogram(), HistogramJson.NANOS_PER_MILLI));
+            freshness.add("visibleInGet", HistogramJson.toJson(freshnessProbe.getVisibleInGetHistogram(), HistogramJson.NANOS_PER_MILLI));
+            freshness.add("visibleInSelect", HistogramJson.toJson(freshnessProbe.getVisibleInSelectHistogram(), HistogramJson.NANOS_PER_MILLI));
+            phase.add("freshness", freshness);
+        }
+        return phase;
+    }
+
+    private static JsonObject getJvmInfo() {
+        final RuntimeMXBean runtimeMXBean = ManagementFactory.getRuntimeMXBean();
+        final JsonObject jvm = new JsonObject();
+        jvm.addProperty("vendor", System.getProperty("java.vendor"));
+        jvm.addProperty("version", System.getProperty("java.runtime.version", System.getProperty("java.version")));
+        jvm.addProperty("vmName", runtimeMXBean.getVmName());
+        jvm.addProperty("vmVersion", runtimeMXBean.getVmVersion());
+        jvm.add("inputArguments", gson.toJsonTree(runtimeMXBean.getInputArguments()));
+        jvm.addProperty("availableProcessors", Runtime.getRuntime().availableProcessors());
+        jvm.addProperty("maxHeapInBytes", Runtime.getRuntime().maxMemory());
+
+        final JsonArray garbageCollectors = new JsonArray();
+        for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            garbageCollectors.add(gcBean.getName());
+        }
+        jvm.add("garbageCollectors", garbageCollectors);
+        return jvm;
+    }
+
+    @SuppressWarnings("deprecation") // getTotalPhysicalMemorySize(): getTotalMemorySize() needs JDK 14+
+    private static JsonObject getHostInfo() {
+        final JsonObject host = new JsonObject();
+        try {
+            host.addProperty("hostname", InetAddress.getLocalHost().getHostName());
+        } catch (UnknownHostException e) {
+            host.addProperty("hostname", "unknown");
+        }
+        host.addProperty("osName", System.getProperty("os.name"));
+        host.addProperty("osVersion", System.getProperty("os.version"));
+        host.addProperty("osArch", System.getProperty("os.arch"));
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean) {
+            host.addProperty("totalMemoryInBytes",
+                    ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getTotalPhysicalMemorySize());
+        }
+        return host;
+    }
+
+    /**
+     * Writes {@value #REPORT_FILE_NAME}.json and {@value #REPORT_FILE_NAME}.html into the given directory
+     * (a numeric suffix is appended if a report already exists there)
+     */
+    public File write(String directory) throws IOException {
+        Files.createDirectories(Paths.get(directory));
+        String baseName = directory + File.separator + REPORT_FILE_NAME;
+        int counter = 0;
+        while (new File(baseName + ".json").exists()) {
+            baseName = directory + File.separator + REPORT_FILE_NAME + "." + counter++;
+        }
+
+        final JsonObject report = toJson();
+        final File jsonFile = new File(baseName + ".json");
+        try (Writer writer = Files.newBufferedWriter(jsonFile.toPath(), StandardCharsets.UTF_8)) {
+            gson.toJson(report, writer);
+        }
+        try (Writer writer = Files.newBufferedWriter(Paths.get(baseName + ".html"), StandardCharsets.UTF_8)) {
+            writer.write(HtmlReportRenderer.render(report));
+        }
+        log.info("Benchmark report written to : " + jsonFile.getAbsolutePath() + " (and .html)");
+        return jsonFile;
+    }
+
+    public static JsonObject read(File jsonFile) throws IOException {
+        try (Reader reader = Files.newBufferedReader(jsonFile.toPath(), StandardCharsets.UTF_8)) {
+            return gson.fromJson(reader, JsonObject.class);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.report;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+
+/**
+ * Converts histograms to/from the JSON representation used in the reports. Besides the percentile spectrum, the
+ * compressed histogram itself is embedded (same encoding as in the hlog files) so that reports can be merged and
+ * compared without loss.
+ */
+public final class HistogramJson {
+
+    public static final double NANOS_PER_MILLI = 1e6;
+
+    private static final double[] SUMMARY_PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private HistogramJson() {
+    }
+
+    public static JsonObject toJson(Histogram histogram, double valueUnitsPerMilli) {
+        final JsonObject json = new JsonObject();
+        json.addProperty("unit", "ms");
+        json.addProperty("count", histogram.getTotalCount());
+        json.addProperty("min", histogram.getMinValue() / valueUnitsPerMilli);
+        json.addProperty("mean", histogram.getMean() / valueUnitsPerMilli);
+        json.addProperty("stdDev", histogram.getStdDeviation() / valueUnitsPerMilli);
+        json.addProperty("max", histogram.getMaxValue() / valueUnitsPerMilli);
+        for (double percentile : SUMMARY_PERCENTILES) {
+            json.addProperty("p" + formatPercentile(percentile), histogram.getValueAtPercentile(percentile) / valueUnitsPerMilli);
+        }
+
+        final JsonArray spectrum = new JsonArray();
+        if (histogram.getTotalCount() > 0) {
+            for (HistogramIterationValue value : histogram.percentiles(5)) {
+                final JsonObject point = new JsonObject();
+                point.addProperty("percentile", value.getPercentileLevelIteratedTo());
+                point.addProperty("value", value.getValueIteratedTo() / valueUnitsPerMilli);
+                spectrum.add(point);
+            }
+        }
+        json.add("spectrum", spectrum);
+        json.addProperty("valueUnitsPerMilli", valueUnitsPerMilli);
+        json.addProperty("encodedHistogram", encode(histogram));
+        return json;
+    }
+
+    public static String formatPercentile(double percentile) {
+        return (percentile == Math.rint(percentile)) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+
+    public static String encode(Histogram histogram) {
+        final ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        final int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        final byte[] bytes = new byte[length];
+        buffer.rewind();
+        buffer.get(bytes);
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    public static Histogram decode(String encodedHistogram) {
+        try {
+            return Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(Base64.getDecoder().decode(encodedHistogram)), 0);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Not a valid encoded histogram", e);
+        }
+    }
+
+    /** Decodes the embedded histogram of a JSON object created with {@link #toJson(Histogram, double)} */
+    public static Histogram fromJson(JsonObject json) {
+        return decode(json.get("encodedHistogram").getAsString());
+    }
+}
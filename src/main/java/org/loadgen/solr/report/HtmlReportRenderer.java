@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.report;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Renders a JSON report (see {@link BenchmarkReport#toJson()}) as a self-contained static HTML page with inline SVG
+ * charts, i.e. no scripts or external resources are needed to view it.
+ */
+public final class HtmlReportRenderer {
+
+    private static final int CHART_WIDTH  = 800;
+    private static final int CHART_HEIGHT = 300;
+    private static final int MARGIN       = 50;
+    private static final String[] COLORS  = {"#1f77b4", "#d62728", "#2ca02c", "#ff7f0e", "#9467bd"};
+
+    private HtmlReportRenderer() {
+    }
+
+    private static class Series {
+        final String name;
+        final List<double[]> points = new ArrayList<>();
+
+        Series(String name) {
+            this.name = name;
+        }
+    }
+
+    public static String render(JsonObject report) {
+        final StringBuilder html = new StringBuilder();
+        html.append("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>Solr benchmark report</title>\n")
+            .append("<style>body{font-family:sans-serif;margin:20px}table{border-collapse:collapse;margin-bottom:10px}")
+            .append("td,th{border:1px solid #ccc;padding:3px 8px;text-align:right}th{background:#eee}")
+            .append(".warn{color:#d62728;font-weight:bold}</style></head><body>\n")
+            .append("<h1>Solr benchmark report</h1>\n");
+
+        html.append("<h2>Run</h2>\n<table>");
+        row(html, "timestamp", report.get("timestamp").getAsString());
+        row(html, "queryType", report.get("queryType").getAsString());
+        appendObject(html, report.getAsJsonObject("jvm"), "jvm.");
+        appendObject(html, report.getAsJsonObject("host"), "host.");
+        html.append("</table>\n");
+
+        for (JsonElement phaseElement : report.getAsJsonArray("phases")) {
+            renderPhase(html, phaseElement.getAsJsonObject());
+        }
+
+        html.append("<h2>Configuration</h2>\n<table>");
+        appendObject(html, report.getAsJsonObject("config"), "");
+        html.append("</table>\n</body></html>\n");
+        return html.toString();
+    }
+
+    private static void renderPhase(StringBuilder html, JsonObject phase) {
+        html.append("<h2>Phase: ").append(escape(phase.get("name").getAsString()))
+            .append(" (").append(escape(phase.get("operation").getAsString())).append(")</h2>\n");
+
+        html.append("<table>");
+        row(html, "duration (sec)", format(phase.get("durationInSec").getAsDouble()));
+        row(html, "requested rate (req/sec)", phase.get("targetThroughput").getAsString());
+        row(html, "actual rate (req/sec)", format(phase.get("actualThroughput").getAsDouble()));
+        row(html, "requests sent", phase.get("requestsSent").getAsString());
+        row(html, "errors", phase.get("errors").getAsString());
+        if (phase.has("requestsNotSentBeforeDeadline")) {
+            row(html, "requests not sent before deadline", phase.get("requestsNotSentBeforeDeadline").getAsString());
+            row(html, "requests completed after deadline (included in the latencies)", phase.get("requestsCompletedAfterDeadline").getAsString());
+        }
+        html.append("</table>\n");
+
+        if (phase.has("clientHealth")) {
+            final JsonObject clientHealth = phase.getAsJsonObject("clientHealth");
+            if (clientHealth.get("saturated").getAsBoolean()) {
+                html.append("<p class=\"warn\">Client was SATURATED, results are not valid: ")
+                    .append(escape(clientHealth.get("saturationReasons").toString())).append("</p>\n");
+            }
+        }
+
+        final String[] histogramNames = {"clientResponseTime", "clientServiceTime", "serverServiceTime"};
+        latencyTableHeader(html);
+        for (String histogramName : histogramNames) {
+            latencyRow(html, histogramName + " (ms)", phase.getAsJsonObject(histogramName));
+        }
+        if (phase.has("completedAfterDeadlineResponseTime")) {
+            latencyRow(html, "completedAfterDeadlineResponseTime (ms, subset of clientResponseTime)",
+                    phase.getAsJsonObject("completedAfterDeadlineResponseTime"));
+        }
+        html.append("</table>\n");
+
+        if (phase.has("selectivityResponseTime")) {
+            html.append("<h3>Response time by selectivity (hits per query)</h3>\n");
+            latencyTableHeader(html);
+            for (Map.Entry<String, JsonElement> selectivity : phase.getAsJsonObject("selectivityResponseTime").entrySet()) {
+                latencyRow(html, escape(selectivity.getKey()) + " hits (ms)", selectivity.getValue().getAsJsonObject());
+            }
+            html.append("</table>\n");
+        }
+
+        if (phase.has("freshness")) {
+            final JsonObject freshness = phase.getAsJsonObject("freshness");
+            html.append("<h3>Write-to-visible latency (freshness probe, ")
+                .append(String.format("%.1f", freshness.get("markersPerSec").getAsDouble())).append(" markers/sec, polled every ")
+                .append(freshness.get("pollIntervalInMillis").getAsLong()).append(" ms)</h3>\n");
+            if (freshness.get("markersNotVisible").getAsLong() > 0) {
+                html.append("<p class=\"warn\">").append(freshness.get("markersNotVisible").getAsLong())
+                    .append(" of ").append(freshness.get("markersWritten").getAsLong())
+                    .append(" markers were not visible within the timeout</p>\n");
+            }
+            latencyTableHeader(html);
+            latencyRow(html, "write acknowledged (ms)", freshness.getAsJsonObject("writeTime"));
+            latencyRow(html, "visible in /get (ms)", freshness.getAsJsonObject("visibleInGet"));
+            latencyRow(html, "visible in /select (ms)", freshness.getAsJsonObject("visibleInSelect"));
+            html.append("</table>\n");
+        }
+
+        // Percentile distribution, x-axis as 1/(1-percentile) on log scale like the HdrHistogram plotter
+        final List<Series> percentileSeries = new ArrayList<>();
+        for (String histogramName : histogramNames) {
+            final Series series = new Series(histogramName);
+            for (JsonElement pointElement : phase.getAsJsonObject(histogramName).getAsJsonArray("spectrum")) {
+                final JsonObject point = pointElement.getAsJsonObject();
+                final double percentile = point.get("percentile").getAsDouble();
+                if (percentile >= 100) continue;
+                series.points.add(new double[] {Math.log10(100.0 / (100.0 - percentile)), point.get("value").getAsDouble()});
+            }
+            percentileSeries.add(series);
+        }
+        html.append(svgLineChart("Latency by percentile (ms)", percentileSeries, true));
+
+        final JsonArray timeSeries = phase.getAsJsonArray("timeSeries");
+        if (timeSeries.size() > 0) {
+            final long firstTimestamp = timeSeries.get(0).getAsJsonObject().get("timestampInMillis").getAsLong();
+            final Series throughput = new Series("requests/sec");
+            final Series p50 = new Series("response time p50");
+            final Series p99 = new Series("response time p99");
+            final Series max = new Series("response time max");
+            for (JsonElement sampleElement : timeSeries) {
+                final JsonObject sample = sampleElement.getAsJsonObject();
+                final double x = (sample.get("timestampInMillis").getAsLong() - firstTimestamp) / 1000.0;
+                throughput.points.add(new double[] {x, sample.get("requestsCompleted").getAsDouble()});
+                p50.points.add(new double[] {x, sample.get("responseTimeP50InMillis").getAsDouble()});
+                p99.points.add(new double[] {x, sample.get("responseTimeP99InMillis").getAsDouble()});
+                max.points.add(new double[] {x, sample.get("responseTimeMaxInMillis").getAsDouble()});
+            }
+            html.append(svgLineChart("Throughput over time (req/sec, x = sec)", List.of(throughput), false));
+            html.append(svgLineChart("Response time over time (ms, x = sec)", List.of(p50, p99, max), false));
+        }
+    }
+
+    private static void latencyTableHeader(StringBuilder html) {
+        html.append("<table><tr><th></th><th>count</th><th>mean</th><th>p50</th><th>p90</th><th>p99</th>")
+            .append("<th>p99.9</th><th>p99.99</th><th>max</th></tr>");
+    }
+
+    private static void latencyRow(StringBuilder html, String name, JsonObject histogram) {
+        html.append("<tr><th>").append(name).append("</th><td>").append(histogram.get("count").getAsLong()).append("</td>");
+        for (String key : new String[] {"mean", "p50", "p90", "p99", "p99.9", "p99.99", "max"}) {
+            html.append("<td>").append(format(histogram.get(key).getAsDouble())).append("</td>");
+        }
+        html.append("</tr>");
+    }
+
+    private static String svgLineChart(String title, List<Series> seriesList, boolean percentileAxis) {
+        double maxX = 0, maxY = 0;
+        for (Series series : seriesList) {
+            for (double[] point : series.points) {
+                maxX = Math.max(maxX, point[0]);
+                maxY = Math.max(maxY, point[1]);
+            }
+        }
+        if (maxX <= 0) maxX = 1;
+        if (maxY <= 0) maxY = 1;
+
+        final int plotWidth = CHART_WIDTH - 2 * MARGIN;
+        final int plotHeight = CHART_HEIGHT - 2 * MARGIN;
+        final StringBuilder svg = new StringBuilder();
+        svg.append("<h3>").append(escape(title)).append("</h3>\n")
+           .append(String.format(Locale.ROOT, "<svg width=\"%d\" height=\"%d\" xmlns=\"http://www.w3.org/2000/svg\">", CHART_WIDTH, CHART_HEIGHT))
+           .append(String.format(Locale.ROOT, "<rect x=\"%d\" y=\"%d\" width=\"%d\" height=\"%d\" fill=\"none\" stroke=\"#888\"/>",
+                   MARGIN, MARGIN, plotWidth, plotHeight));
+
+        // y-axis labels
+        for (int i = 0; i <= 4; i++) {
+            final double y = MARGIN + plotHeight - plotHeight * i / 4.0;
+            svg.append(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%.1f\" font-size=\"10\" text-anchor=\"end\">%s</text>",
+                    MARGIN - 4, y + 3, format(maxY * i / 4.0)));
+        }
+        // x-axis labels
+        if (percentileAxis) {
+            final String[] labels = {"0%", "90%", "99%", "99.9%", "99.99%", "99.999%"};
+            for (int i = 0; i < labels.length && i <= maxX; i++) {
+                final double x = MARGIN + plotWidth * i / maxX;
+                svg.append(String.format(Locale.ROOT, "<text x=\"%.1f\" y=\"%d\" font-size=\"10\" text-anchor=\"middle\">%s</text>",
+                        x, MARGIN + plotHeight + 14, labels[i]));
+            }
+        } else {
+            for (int i = 0; i <= 4; i++) {
+                final double x = MARGIN + plotWidth * i / 4.0;
+                svg.append(String.format(Locale.ROOT, "<text x=\"%.1f\" y=\"%d\" font-size=\"10\" text-anchor=\"middle\">%s</text>",
+                        x, MARGIN + plotHeight + 14, format(maxX * i / 4.0)));
+            }
+        }
+
+        for (int s = 0; s < seriesList.size(); s++) {
+            final Series series = seriesList.get(s);
+            final String color = COLORS[s % COLORS.length];
+            svg.append("<polyline fill=\"none\" stroke=\"").append(color).append("\" stroke-width=\"1.5\" points=\"");
+            for (double[] point : series.points) {
+                svg.append(String.format(Locale.ROOT, "%.1f,%.1f ",
+                        MARGIN + plotWidth * point[0] / maxX,
+                        MARGIN + plotHeight - plotHeight * point[1] / maxY));
+            }
+            svg.append("\"/>");
+            svg.append(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%d\" font-size=\"11\" fill=\"%s\">%s</text>",
+                    MARGIN + 10 + s * 170, MARGIN - 10, color, escape(series.name)));
+        }
+        svg.append("</svg>\n");
+        return svg.toString();
+    }
+
+    private static void appendObject(StringBuilder html, JsonObject object, String prefix) {
+        if (object == null) return;
+        for (String key : object.keySet()) {
+            final JsonElement value = object.get(key);
+            row(html, prefix + key, value.isJsonPrimitive() ? value.getAsString() : value.toString());
+        }
+    }
+
+    private static void row(StringBuilder html, String key, String value) {
+        html.append("<tr><th style=\"text-align:left\">").append(escape(key)).append("</th><td style=\"text-align:left\">")
+            .append(escape(value)).append("</td></tr>");
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, value >= 100 ? "%.0f" : "%.3f", value);
+    }
+
+    static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
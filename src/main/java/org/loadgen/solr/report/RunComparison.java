@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.report;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Compares repeated runs of a baseline against repeated runs of a candidate. For every metric the relative delta of
+ * the means is reported with a bootstrap (resampling the runs) confidence interval. A metric is flagged as regression
+ * if the delta is worse than the threshold and the whole confidence interval lies on the 'worse' side of zero, i.e.
+ * the change is both large enough and not explainable by run-to-run noise.
+ */
+public class RunComparison {
+
+    private static final double[] COMPARED_PERCENTILES = {50, 90, 99, 99.9};
+    private static final int BOOTSTRAP_RESAMPLES = 10_000;
+
+    public static class MetricDelta {
+        public final String metric;
+        public final boolean higherIsBetter;
+        public final double baselineMean;
+        public final double candidateMean;
+        public final double deltaPercent;
+        public final double ciLowPercent;
+        public final double ciHighPercent;
+        public final boolean regression;
+
+        MetricDelta(String metric, boolean higherIsBetter, double baselineMean, double candidateMean,
+                    double deltaPercent, double ciLowPercent, double ciHighPercent, boolean regression) {
+            this.metric = metric;
+            this.higherIsBetter = higherIsBetter;
+            this.baselineMean = baselineMean;
+            this.candidateMean = candidateMean;
+            this.deltaPercent = deltaPercent;
+            this.ciLowPercent = ciLowPercent;
+            this.ciHighPercent = ciHighPercent;
+            this.regression = regression;
+        }
+    }
+
+    private final double regressionThresholdPercent;
+    private final double confidenceLevel;
+    private final Random random = new Random(42); // fixed seed, the comparison must be reproducible
+
+    public RunComparison(double regressionThresholdPercent, double confidenceLevel) {
+        this.regressionThresholdPercent = regressionThresholdPercent;
+        this.confidenceLevel = confidenceLevel;
+    }
+
+    public List<MetricDelta> compare(List<RunResult> baselineRuns, List<RunResult> candidateRuns) {
+        final List<MetricDelta> deltas = new ArrayList<>();
+        deltas.add(compare("throughput (req/sec)", true, baselineRuns, candidateRuns, RunResult::getThroughput));
+
+        for (String metric : new String[] {RunResult.CLIENT_RESPONSE_TIME, RunResult.CLIENT_SERVICE_TIME, RunResult.SERVER_SERVICE_TIME}) {
+            if (!baselineRuns.stream().allMatch(run -> run.hasMetric(metric)) ||
+                    !candidateRuns.stream().allMatch(run -> run.hasMetric(metric))) {
+                continue;
+            }
+            for (double percentile : COMPARED_PERCENTILES) {
+                deltas.add(compare(metric + " p" + HistogramJson.formatPercentile(percentile) + " (ms)", false,
+                        baselineRuns, candidateRuns, run -> run.getValueAtPercentileInMillis(metric, percentile)));
+            }
+        }
+        return deltas;
+    }
+
+    private MetricDelta compare(String metric, boolean higherIsBetter, List<RunResult> baselineRuns,
+                                List<RunResult> candidateRuns, ToDoubleFunction<RunResult> extractor) {
+        final double[] baseline = baselineRuns.stream().mapToDouble(extractor).toArray();
+        final double[] candidate = candidateRuns.stream().mapToDouble(extractor).toArray();
+
+        final double baselineMean = mean(baseline);
+        final double candidateMean = mean(candidate);
+        final double deltaPercent = relativeDeltaPercent(baselineMean, candidateMean);
+
+        final double[] resampledDeltas = new double[BOOTSTRAP_RESAMPLES];
+        for (int i = 0; i < BOOTSTRAP_RESAMPLES; i++) {
+            resampledDeltas[i] = relativeDeltaPercent(mean(resample(baseline)), mean(resample(candidate)));
+        }
+        Arrays.sort(resampledDeltas);
+        final double alpha = (1 - confidenceLevel) / 2;
+        final double ciLowPercent = resampledDeltas[(int) Math.floor(alpha * (BOOTSTRAP_RESAMPLES - 1))];
+        final double ciHighPercent = resampledDeltas[(int) Math.ceil((1 - alpha) * (BOOTSTRAP_RESAMPLES - 1))];
+
+        final boolean regression = higherIsBetter
+                ? (deltaPercent < -regressionThresholdPercent && ciHighPercent < 0)
+                : (deltaPercent > regressionThresholdPercent && ciLowPercent > 0);
+
+        return new MetricDelta(metric, higherIsBetter, baselineMean, candidateMean, deltaPercent, ciLowPercent, ciHighPercent, regression);
+    }
+
+    private double[] resample(double[] values) {
+        final double[] resampled = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            resampled[i] = values[random.nextInt(values.length)];
+        }
+        return resampled;
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return values.length > 0 ? sum / values.length : 0;
+    }
+
+    private static double relativeDeltaPercent(double baseline, double candidate) {
+        if (baseline == 0) {
+            return candidate == 0 ? 0 : Double.POSITIVE_INFINITY;
+        }
+        return (candidate - baseline) * 100.0 / baseline;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.report;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.HdrHistogram.EncodableHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The measured numbers of one run, loaded either from a JSON report (one phase of it) or from an hlog file written
+ * by the MetricsCollector. Latency histograms are kept in their original units together with the scaling to millis.
+ */
+public class RunResult {
+
+    public static final String CLIENT_RESPONSE_TIME = "clientResponseTime";
+    public static final String CLIENT_SERVICE_TIME  = "clientServiceTime";
+    public static final String SERVER_SERVICE_TIME  = "serverServiceTime";
+
+    private final String source;
+    private final double throughput;
+    private final Map<String, Histogram> histograms = new LinkedHashMap<>();
+    private final Map<String, Double> valueUnitsPerMilli = new LinkedHashMap<>();
+
+    private RunResult(String source, double throughput) {
+        this.source = source;
+        this.throughput = throughput;
+    }
+
+    public static RunResult load(File file, String phaseName) throws IOException {
+        if (file.getName().endsWith(".json")) {
+            return fromReport(file, phaseName);
+        }
+        return fromHistogramLog(file);
+    }
+
+    public static RunResult fromReport(File reportFile, String phaseName) throws IOException {
+        final JsonObject report = BenchmarkReport.read(reportFile);
+        for (JsonElement phaseElement : report.getAsJsonArray("phases")) {
+            final JsonObject phase = phaseElement.getAsJsonObject();
+            if (!phase.get("name").getAsString().equals(phaseName)) continue;
+
+            final RunResult runResult = new RunResult(reportFile.getPath(), phase.get("actualThroughput").getAsDouble());
+            for (String metric : new String[] {CLIENT_RESPONSE_TIME, CLIENT_SERVICE_TIME, SERVER_SERVICE_TIME}) {
+                if (phase.has(metric)) {
+                    final JsonObject histogramJson = phase.getAsJsonObject(metric);
+                    runResult.histograms.put(metric, HistogramJson.fromJson(histogramJson));
+                    runResult.valueUnitsPerMilli.put(metric, histogramJson.get("valueUnitsPerMilli").getAsDouble());
+                }
+            }
+            return runResult;
+        }
+        throw new IOException("No phase '" + phaseName + "' in report : " + reportFile.getPath());
+    }
+
+    public static RunResult fromHistogramLog(File hlogFile) throws IOException {
+        final Histogram accumulatedHistogram = new Histogram(2);
+        long firstStartTimeStamp = Long.MAX_VALUE;
+        long lastEndTimeStamp = 0;
+
+        final HistogramLogReader histogramLogReader = new HistogramLogReader(hlogFile);
+        try {
+            EncodableHistogram intervalHistogram;
+            while ((intervalHistogram = histogramLogReader.nextIntervalHistogram()) != null) {
+                accumulatedHistogram.add((Histogram) intervalHistogram);
+                firstStartTimeStamp = Math.min(firstStartTimeStamp, intervalHistogram.getStartTimeStamp());
+                lastEndTimeStamp = Math.max(lastEndTimeStamp, intervalHistogram.getEndTimeStamp());
+            }
+        } finally {
+            histogramLogReader.close();
+        }
+
+        final double durationInSec = (lastEndTimeStamp > firstStartTimeStamp) ? (lastEndTimeStamp - firstStartTimeStamp) / 1000.0 : 0;
+        final RunResult runResult = new RunResult(hlogFile.getPath(),
+                durationInSec > 0 ? accumulatedHistogram.getTotalCount() / durationInSec : 0);
+
+        // file names follow hlog_ttpt<rate>_<operation>_{client_rt,client_st,server_st}.log
+        final String fileName = hlogFile.getName();
+        if (fileName.contains("_server_st")) {
+            runResult.histograms.put(SERVER_SERVICE_TIME, accumulatedHistogram);
+            runResult.valueUnitsPerMilli.put(SERVER_SERVICE_TIME, 1.0);
+        } else if (fileName.contains("_client_st")) {
+            runResult.histograms.put(CLIENT_SERVICE_TIME, accumulatedHistogram);
+            runResult.valueUnitsPerMilli.put(CLIENT_SERVICE_TIME, HistogramJson.NANOS_PER_MILLI);
+        } else {
+            runResult.histograms.put(CLIENT_RESPONSE_TIME, accumulatedHistogram);
+            runResult.valueUnitsPerMilli.put(CLIENT_RESPONSE_TIME, HistogramJson.NANOS_PER_MILLI);
+        }
+        return runResult;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public double getThroughput() {
+        return throughput;
+    }
+
+    public boolean hasMetric(String metric) {
+        return histograms.containsKey(metric) && histograms.get(metric).getTotalCount() > 0;
+    }
+
+    public double getValueAtPercentileInMillis(String metric, double percentile) {
+        return histograms.get(metric).getValueAtPercentile(percentile) / valueUnitsPerMilli.get(metric);
+    }
+}
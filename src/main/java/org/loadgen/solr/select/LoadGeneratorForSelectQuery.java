@@ -56,6 +56,9 @@ public class LoadGeneratorForSelectQuery extends LoadGenerator {
     private int maxSizeOfClientSideCacheableSelectQueries;
     private double percentageUsableClientSideQueryCache;
     private List<File> listOfQueryFiles;
+    private final QueryHandler queryHandler = new QueryHandler();
+    private SessionModel sessionModel;
+    private SelectResponseParser selectResponseParser = new SelectResponseParser(SelectResponseParser.Mode.FULL, "javabin");
 
     public LoadGeneratorForSelectQuery setShouldRunSecondaryQueryOps(boolean shouldRunSecondaryQueryOps) {
         this.shouldRunSecondaryQueryOps = shouldRunSecondaryQueryOps;
@@ -77,6 +80,16 @@ public class LoadGeneratorForSelectQuery extends LoadGenerator {
         return this;
     }
 
+    public LoadGeneratorForSelectQuery setSessionModel(SessionModel sessionModel) {
+        this.sessionModel = sessionModel;
+        return this;
+    }
+
+    public LoadGeneratorForSelectQuery setResponseHandling(String responseHandling, String responseWriterType) {
+        this.selectResponseParser = SelectResponseParser.fromConfig(responseHandling, responseWriterType);
+        return this;
+    }
+
     public LoadGeneratorForSelectQuery registerQueryFiles(String selectQueryFiles) {
         if (numberOfThreads == 0) return this;
 
@@ -88,7 +101,7 @@ public class LoadGeneratorForSelectQuery extends LoadGenerator {
 
         listOfQueryFiles.stream().forEach(file -> {
             try {
-                QueryHandler.registerQueryFile(
+                queryHandler.registerQueryFile(
                         file,
                         maxUsableSelectQueries != -1 ? (maxUsableSelectQueries / listOfQueryFiles.size()) : -1
                 );
@@ -109,6 +122,8 @@ public class LoadGeneratorForSelectQuery extends LoadGenerator {
     public void applyConfig(BenchConfig benchConfig) {
         super.applyConfig(benchConfig);
         this.setMaxUsableSelectQueries(benchConfig.maxUsableSelectQueries)
+                .setSessionModel(benchConfig.sessionMode ? SessionModel.fromConfig(benchConfig) : null)
+                .setResponseHandling(benchConfig.responseHandling, benchConfig.responseWriterType)
                 .registerQueryFiles(benchConfig.selectQueryFiles);
 
         if (benchConfig.maxNumberOfSelectOpThreads != -1) this.setNumberOfThreads(benchConfig.maxNumberOfSelectOpThreads);
@@ -121,12 +136,17 @@ public class LoadGeneratorForSelectQuery extends LoadGenerator {
                 this.setTargetThroughput(benchConfig.targetRateForSelectOpAtWarmup);
             }
         } else {
+            if (benchConfig.continuousRun) {
+                this.setWarmup(benchConfig.benchmarkWarmupTime,
+                        benchConfig.targetRateForSelectOpAtWarmup != -1 ? benchConfig.targetRateForSelectOpAtWarmup : targetThroughput);
+            }
             this.setRunDurationInSec(benchConfig.benchmarkMeasurementTime);
             if (benchConfig.targetRateForSelectOp != -1) {
                 // send 'select' queries at a fixed rate instead of 'targetRate * readPercent'
                 this.setTargetThroughput(benchConfig.targetRateForSelectOp);
             }
         }
+        this.applyClosedLoopConfig(benchConfig);
     }
 
     @Override
@@ -136,10 +156,11 @@ public class LoadGeneratorForSelectQuery extends LoadGenerator {
 
     @Override
     protected QueryWorker getQueryWorkerInstance() {
-        SelectQueryWorker selectQueryWorker = new SelectQueryWorker();
+        SelectQueryWorker selectQueryWorker = new SelectQueryWorker(queryHandler, selectResponseParser);
         selectQueryWorker.setShouldRunSecondaryQueryOps(shouldRunSecondaryQueryOps);
         selectQueryWorker.setMaxSizeOfClientSideQueryCacheForCurrentWorker(maxSizeOfClientSideCacheableSelectQueries / numberOfThreads);
         selectQueryWorker.setPercentageUsableClientSideQueryCache(percentageUsableClientSideQueryCache);
+        selectQueryWorker.setSessionModel(sessionModel);
         return selectQueryWorker;
     }
 
@@ -148,6 +169,11 @@ public class LoadGeneratorForSelectQuery extends LoadGenerator {
         log.info(String.format("%-30s %s %s", "selectQueryPercentage", ":", getScaleFactor() * 100));
         log.info(String.format("%-30s %s %s", "maxUsableSelectQueries", ":", maxUsableSelectQueries));
         log.info(String.format("%-30s %s %s", "listOfQueryFiles", ":", listOfQueryFiles.stream().map(file -> file.getName()).collect(Collectors.toList())));
+        log.info(String.format("%-30s %s %s", "responseHandling", ":",
+                selectResponseParser.getMode().name().toLowerCase() + " (" + selectResponseParser.getWriterType() + ")"));
+        if (sessionModel != null) {
+            log.info(String.format("%-30s %s %s", "sessionMode", ":", true));
+        }
         if (shouldRunSecondaryQueryOps) {
             log.info(String.format("%-30s %s %s", "shouldRunSecondaryQueryOps", ":", shouldRunSecondaryQueryOps));
         }
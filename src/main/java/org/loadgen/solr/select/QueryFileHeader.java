@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.select;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The metadata of a query file: '# key: value' lines at the top of the file, before the queries. The lines starting
+ * with '#' are not queries. A query file with a 'selectivity' band has the response time of its queries reported per band.
+ */
+public final class QueryFileHeader {
+    public static final String COMMENT_PREFIX = "#";
+    public static final String SELECTIVITY = "selectivity";
+
+    private QueryFileHeader() {
+    }
+
+    public static boolean isHeaderLine(String line) {
+        return line.startsWith(COMMENT_PREFIX);
+    }
+
+    public static Map<String, String> read(File queryFile) throws IOException {
+        final Map<String, String> header = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(queryFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null && isHeaderLine(line)) {
+                final int separator = line.indexOf(':');
+                if (separator > 0) {
+                    header.put(line.substring(COMMENT_PREFIX.length(), separator).trim(), line.substring(separator + 1).trim());
+                }
+            }
+        }
+        return header;
+    }
+
+    public static void write(PrintWriter writer, Map<String, String> header) {
+        header.forEach((key, value) -> writer.println(COMMENT_PREFIX + " " + key + ": " + value));
+    }
+}
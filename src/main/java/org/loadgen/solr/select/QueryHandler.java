@@ -51,10 +51,16 @@ class QueryHandler {
     private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
     private static final Random random = new Random();
-
-    private static final Map<String, Map<String, QueryFileData>> queryDetailsList = new HashMap<>();
     private static final boolean useListInsteadOfFile = Boolean.valueOf(System.getProperty("useQueryList", "true"));
 
+    // Each select load generator owns its QueryHandler, i.e. its own query mix
+    // Per field and query type, the query files (more than one if they are of different selectivity bands)
+    private final Map<String, Map<String, List<QueryFileData>>> queryDetailsList = new HashMap<>();
+    private final List<SolrField> supportedSolrFields = new ArrayList<>();
+    private final List<QueryType> supportedQueryTypes = new ArrayList<>();
+    private final Map<SolrField, List<QueryType>> supportedQueryTypesPerSolrField = new EnumMap<>(SolrField.class);
+    private final Map<QueryType, List<SolrField>> supportedSolrFieldsPerQueryType = new EnumMap<>(QueryType.class);
+
     enum SolrField {
         TITLE,
         USERNAME,
@@ -66,49 +72,11 @@ class QueryHandler {
         ID,
         MODEL;
 
-        // Static fields
         private static final int length = SolrField.values().length;
-        private static final List<SolrField> supportedSolrFields = new ArrayList<>();
 
-        // Instances fields
-        private final List<QueryType> supportedQueryTypes = new ArrayList<>();
-
-        // Static methods
         static SolrField getRandomValue() {
             return SolrField.values()[random.nextInt(length)];
         }
-
-        public static void addSupportedSolrFields(SolrField solrField) {
-            supportedSolrFields.add(solrField);
-        }
-
-        private static SolrField getRandomSupportedSolrField() {
-            return supportedSolrFields.get(random.nextInt(supportedSolrFields.size()));
-        }
-
-        // Instance methods
-
-        // Use this method to add all the QueryType's that 'this' SolrField supports
-        private void addSupportedQueryType(QueryType queryType) {
-            this.supportedQueryTypes.add(queryType);
-        }
-
-        // Return all the QueryTypes supported by 'this' SolrField
-        private QueryType getRandomSupportedQueryType() {
-            return this.supportedQueryTypes.get(random.nextInt(supportedQueryTypes.size()));
-        }
-
-        private String getQuery() {
-            return QueryHandler.getQuery(this.name(), this.getRandomSupportedQueryType().name());
-        }
-
-        public String getQuery(QueryType queryType) {
-            return QueryHandler.getQuery(this.name(), queryType.name());
-        }
-
-        public boolean isSolrFieldSupported() {
-            return supportedSolrFields.contains(this);
-        }
     }
 
     enum QueryType {
@@ -117,50 +85,17 @@ class QueryHandler {
         PROXIMITY,
         WILDCARD,
         FUZZY,
-        RANGE;
-
-        // Static fields
-        private static final int length = QueryType.values().length;
-        private static final List<QueryType> supportedQueryTypes = new ArrayList<>();
-
-        // Instances fields
-        private final List<SolrField> supportedSolrFields = new ArrayList<>();
-
-        // Static methods
-        private static QueryType getRandomValue() {
-            return QueryType.values()[random.nextInt(length)];
-        }
-
-        private static void addSupportedQueryType(QueryType queryType) {
-            supportedQueryTypes.add(queryType);
-        }
-
-        private static QueryType getRandomSupportedQueryType() {
-            return supportedQueryTypes.get(random.nextInt(supportedQueryTypes.size()));
-        }
-
-        // Instance methods
-
-        // Use this method to add all the SolrField's that 'this' QueryType supports
-        private void addSupportedSolrFields(SolrField solrField) {
-            this.supportedSolrFields.add(solrField);
-        }
-
-        // Return all the SolrField supported by 'this' QueryType
-        private SolrField getRandomSupportedSolrField() {
-            return this.supportedSolrFields.get(random.nextInt(supportedSolrFields.size()));
-        }
-
-        private String getQuery() {
-            return QueryHandler.getQuery(this.getRandomSupportedSolrField().name(), this.name());
-        }
+        RANGE
+    }
 
-        public String getQuery(SolrField solrField) {
-            return QueryHandler.getQuery(solrField.name(), this.name());
-        }
+    /** A query, with the selectivity band of its query file (null if the file has none) */
+    static class Query {
+        final String text;
+        final String selectivity;
 
-        public boolean isQueryTypeSupported() {
-            return supportedQueryTypes.contains(this);
+        Query(String text, String selectivity) {
+            this.text = text;
+            this.selectivity = selectivity;
         }
     }
 
@@ -168,15 +103,17 @@ class QueryHandler {
         final File file;
         LineIterator lineIterator;
         final long maxUsableQueries;
+        final String selectivity;
         List<String> queryList;
         AtomicLong incrementingLongCounter = new AtomicLong(0);
 
         long queryCount;
 
-        public QueryFileData(File file, LineIterator lineIterator, long maxUsableQueries) {
+        public QueryFileData(File file, LineIterator lineIterator, long maxUsableQueries, String selectivity) {
             this.file = file;
             this.lineIterator = lineIterator;
             this.maxUsableQueries = maxUsableQueries;
+            this.selectivity = selectivity;
 
             this.queryList = new ArrayList<>();
             populateQueryList();
@@ -187,7 +124,11 @@ class QueryHandler {
         private void populateQueryList() {
             long localCount = 0;
             while (lineIterator.hasNext()) {
-                queryList.add(lineIterator.next());
+                final String line = lineIterator.next();
+                if (QueryFileHeader.isHeaderLine(line)) {
+                    continue;
+                }
+                queryList.add(line);
                 localCount++;
 
                 if ((maxUsableQueries != -1) && (localCount >= maxUsableQueries)) {
@@ -195,11 +136,12 @@ class QueryHandler {
                 }
             }
 
-            log.info(queryList.size() + " queries from queryFile : '" + file.getAbsolutePath() + "' will be used");
+            log.info(queryList.size() + " queries from queryFile : '" + file.getAbsolutePath() + "' will be used"
+                    + (selectivity != null ? " (selectivity " + selectivity + ")" : ""));
         }
     }
 
-    protected static void registerQueryFile(File queryFile, long maxUsableQueries) throws IOException {
+    protected void registerQueryFile(File queryFile, long maxUsableQueries) throws IOException {
         if (!queryFile.exists()) {
             log.error("The query file : " + queryFile.getAbsolutePath() + " not found");
             System.exit(1);
@@ -216,71 +158,109 @@ class QueryHandler {
             return;
         }
 
-        if (!SolrField.supportedSolrFields.contains(SolrField.valueOf(fieldName))) {
-            SolrField.valueOf(fieldName).addSupportedSolrFields(SolrField.valueOf(fieldName));
+        final SolrField solrField = SolrField.valueOf(fieldName);
+        final QueryType type = QueryType.valueOf(queryType);
+
+        final String selectivity = QueryFileHeader.read(queryFile).get(QueryFileHeader.SELECTIVITY);
+        final List<QueryFileData> queryFiles = queryDetailsList.computeIfAbsent(fieldName, x -> new HashMap<>())
+                .computeIfAbsent(queryType, x -> new ArrayList<>());
+        if (queryFiles.stream().anyMatch(x -> Objects.equals(x.selectivity, selectivity))) {
+            // Already registered, re-registering must not skew the selection of fields and query types
+            return;
         }
 
-        if (!QueryType.supportedQueryTypes.contains(QueryType.valueOf(queryType))) {
-            QueryType.valueOf(queryType).addSupportedQueryType(QueryType.valueOf(queryType));
+        final QueryFileData queryFileData = new QueryFileData(
+                queryFile,
+                FileUtils.lineIterator(queryFile, "UTF-8"),
+                maxUsableQueries,
+                selectivity
+        );
+        if (queryFileData.queryList.isEmpty()) {
+            log.error("The query file : " + queryFile.getAbsolutePath() + " has no queries, it is not used");
+            return;
         }
 
-        SolrField.valueOf(fieldName).addSupportedQueryType(QueryType.valueOf(queryType));
-        QueryType.valueOf(queryType).addSupportedSolrFields(SolrField.valueOf(fieldName));
+        if (queryFiles.isEmpty()) {
+            if (!supportedSolrFields.contains(solrField)) {
+                supportedSolrFields.add(solrField);
+            }
+            if (!supportedQueryTypes.contains(type)) {
+                supportedQueryTypes.add(type);
+            }
+            supportedQueryTypesPerSolrField.computeIfAbsent(solrField, x -> new ArrayList<>()).add(type);
+            supportedSolrFieldsPerQueryType.computeIfAbsent(type, x -> new ArrayList<>()).add(solrField);
+        }
+        // The selectivity bands of a field and query type are picked evenly
+        queryFiles.add(queryFileData);
+    }
 
+    boolean isSolrFieldSupported(SolrField solrField) {
+        return supportedSolrFields.contains(solrField);
+    }
 
-        if (!queryDetailsList.containsKey(fieldName)) {
-            queryDetailsList.put(fieldName, new HashMap<>());
-        }
+    boolean isQueryTypeSupported(QueryType queryType) {
+        return supportedQueryTypes.contains(queryType);
+    }
 
-        queryDetailsList.get(fieldName).put(queryType, new QueryFileData(
-                        queryFile,
-                        FileUtils.lineIterator(queryFile, "UTF-8"),
-                        maxUsableQueries
-                )
-        );
+    boolean isQuerySupported(SolrField solrField, QueryType queryType) {
+        return supportedQueryTypesPerSolrField.getOrDefault(solrField, Collections.emptyList()).contains(queryType);
     }
 
-    static String getQuery() {
+    String getQuery() {
+        return nextQuery().text;
+    }
+
+    Query nextQuery() {
         // Select a random 'queryType', and extract a random 'solrField' that it supports
         // Note: Don't do the reverse. WHY ?
         //     Given a 'queryType', we definitely have at least 1 associated 'solrField'
         //     The same cannot be said about 'solrField', Ex: 'sha1' (AS OF NOW), is not used in any queries and
         //     hence this SolrField does not have any supported 'queryType'
-        QueryType queryType = QueryType.getRandomSupportedQueryType();
-        SolrField solrField = queryType.getRandomSupportedSolrField();
+        QueryType queryType = supportedQueryTypes.get(random.nextInt(supportedQueryTypes.size()));
+        List<SolrField> solrFields = supportedSolrFieldsPerQueryType.get(queryType);
+        SolrField solrField = solrFields.get(random.nextInt(solrFields.size()));
 
         return getQuery(solrField.name(), queryType.name());
     }
 
-    private static String getQuery(String fieldName, String queryType) {
+    String getQuery(SolrField solrField, QueryType queryType) {
+        return getQuery(solrField.name(), queryType.name()).text;
+    }
+
+    private Query getQuery(String fieldName, String queryType) {
 
-        QueryFileData queryFileData = queryDetailsList.get(fieldName).get(queryType);
+        final List<QueryFileData> queryFiles = queryDetailsList.get(fieldName).get(queryType);
+        QueryFileData queryFileData = queryFiles.get(queryFiles.size() == 1 ? 0 : random.nextInt(queryFiles.size()));
         if (useListInsteadOfFile) {
-            return queryFileData.queryList.get((int) (queryFileData.incrementingLongCounter.incrementAndGet() % queryFileData.queryList.size()));
+            return new Query(queryFileData.queryList.get((int) (queryFileData.incrementingLongCounter.incrementAndGet() % queryFileData.queryList.size())),
+                    queryFileData.selectivity);
         } else {
             LineIterator lineIterator = queryFileData.lineIterator;
-
-            // If we have read all the lines in the query file or if the hit the limit on the number of query lines
-            // that we are allowed to read in the given file, read the query file from the beginning
-            if (
-                    (!lineIterator.hasNext()) ||
-                            (
-                                    (queryFileData.maxUsableQueries != -1) && // First check if we have set maxUsableQueries limit
-                                            (queryFileData.queryCount++ >= queryFileData.maxUsableQueries)
-                            )
-            ) {
-                try {
-                    synchronized (queryDetailsList) {
-                        lineIterator.close();
-                        lineIterator = FileUtils.lineIterator(queryFileData.file, "UTF-8");
-                        queryDetailsList.get(fieldName).get(queryType).lineIterator = lineIterator;
+            String line;
+            do {
+                // If we have read all the lines in the query file or if the hit the limit on the number of query lines
+                // that we are allowed to read in the given file, read the query file from the beginning
+                if (
+                        (!lineIterator.hasNext()) ||
+                                (
+                                        (queryFileData.maxUsableQueries != -1) && // First check if we have set maxUsableQueries limit
+                                                (queryFileData.queryCount++ >= queryFileData.maxUsableQueries)
+                                )
+                ) {
+                    try {
+                        synchronized (queryDetailsList) {
+                            lineIterator.close();
+                            lineIterator = FileUtils.lineIterator(queryFileData.file, "UTF-8");
+                            queryFileData.lineIterator = lineIterator;
+                        }
+                        queryFileData.queryCount = 0; // reset the counter
+                    } catch (IOException e) {
+                        e.printStackTrace();
                     }
-                    queryFileData.queryCount = 0; // reset the counter
-                } catch (IOException e) {
-                    e.printStackTrace();
                 }
-            }
-            return lineIterator.nextLine();
+                line = lineIterator.nextLine();
+            } while (QueryFileHeader.isHeaderLine(line)); // the file has queries, see registerQueryFile()
+            return new Query(line, queryFileData.selectivity);
         }
 
     }
@@ -35,16 +35,21 @@ package org.loadgen.solr.select;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
-import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.client.solrj.impl.Http2SolrClient;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.common.util.NamedList;
 import org.loadgen.solr.QueryWorker;
 import org.loadgen.solr.QueryWorkerStats;
 import org.loadgen.solr.ThroughputController;
+import org.loadgen.solr.sink.RequestEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,6 +61,7 @@ public class SelectQueryWorker implements QueryWorker {
     private long runDurationInSec;
     private ThroughputController throughputController;
     private List<SolrClient> solrClientList;
+    private List<String> solrClientBaseUrlList;
 
     // Select specific vars
     private boolean shouldRunSecondaryQueryOps;
@@ -63,6 +69,12 @@ public class SelectQueryWorker implements QueryWorker {
     private double percentageUsableClientSideQueryCache;
     private List<SolrQuery> listOfClientSideQueryCacheForCurrentWorker;
     private QueryWorkerStats queryWorkerStats;
+    private final QueryHandler queryHandler;
+    private final SelectResponseParser selectResponseParser;
+
+    // Session mode (null = independent queries): users of this worker waiting for their next step, by ready time
+    private SessionModel sessionModel;
+    private final PriorityQueue<UserSession> waitingUserSessions = new PriorityQueue<>(Comparator.comparingLong(UserSession::getReadyTimeInNanos));
 
 //    private static final int[] queryResultSizeUpperBound = new int[] {
 //            0,
@@ -78,8 +90,11 @@ public class SelectQueryWorker implements QueryWorker {
 //    };
 //    private static final int[] queryResultSizeHistogram = new int[queryResultSizeUpperBound.length + 1];
 
-    public SelectQueryWorker() {
+    SelectQueryWorker(QueryHandler queryHandler, SelectResponseParser selectResponseParser) {
+        this.queryHandler = queryHandler;
+        this.selectResponseParser = selectResponseParser;
         this.solrClientList = new ArrayList<>();
+        this.solrClientBaseUrlList = new ArrayList<>();
     }
 
     @Override
@@ -100,6 +115,7 @@ public class SelectQueryWorker implements QueryWorker {
     @Override
     public void addSolrClient(SolrClient solrClient) {
         this.solrClientList.add(solrClient);
+        this.solrClientBaseUrlList.add(solrClient instanceof Http2SolrClient ? ((Http2SolrClient) solrClient).getBaseURL() : "");
     }
 
     @Override
@@ -127,6 +143,10 @@ public class SelectQueryWorker implements QueryWorker {
         return shouldRunSecondaryQueryOps;
     }
 
+    void setSessionModel(SessionModel sessionModel) {
+        this.sessionModel = sessionModel;
+    }
+
     public void setShouldRunSecondaryQueryOps(boolean shouldRunSecondaryQueryOps) {
         this.shouldRunSecondaryQueryOps = shouldRunSecondaryQueryOps;
     }
@@ -142,13 +162,16 @@ public class SelectQueryWorker implements QueryWorker {
 
     @Override
     public Long call() {
-        long now;
-
         final int numberOfClientsAssignedToCurrentWorker = solrClientList.size();
         final long startTime = System.nanoTime();
 
         throughputController.markCurrentTimeAsOperationStartTime();
-        do {
+        throughputController.setDeadlineInNanos(startTime + TimeUnit.SECONDS.toNanos(runDurationInSec));
+        while (throughputController.isNextOperationDueBeforeDeadline()) {
+            long intendedStartTimeForCurrentQuery = 0;
+            long queryStartTime = 0;
+            UserSession userSession = null;
+            String selectivity = null; // selectivity band of the query, if its query file has one
             try {
                 int clientIndex = (int) (throughputController.getTotalOperationsCompletedSoFar() % numberOfClientsAssignedToCurrentWorker);
                 SolrClient solrClient = solrClientList.get(clientIndex);
@@ -159,33 +182,38 @@ public class SelectQueryWorker implements QueryWorker {
 
                 solrQuery.setFields("title", "username", "sha1", "timestamp", "id");
 
-                if ((random.nextInt(100) > (100 - percentageUsableClientSideQueryCache)) && (listOfClientSideQueryCacheForCurrentWorker.size() >= maxSizeOfClientSideQueryCacheForCurrentWorker)) {
+                if (sessionModel != null) {
+                    userSession = getNextUserSession();
+                    solrQuery = userSession.toSolrQuery();
+                } else if ((random.nextInt(100) > (100 - percentageUsableClientSideQueryCache)) && (listOfClientSideQueryCacheForCurrentWorker.size() >= maxSizeOfClientSideQueryCacheForCurrentWorker)) {
                     solrQuery = listOfClientSideQueryCacheForCurrentWorker.get(Math.max(0, random.nextInt(listOfClientSideQueryCacheForCurrentWorker.size())));
                 } else {
-                    solrQuery.setQuery(QueryHandler.getQuery()); // get some random query
+                    final QueryHandler.Query query = queryHandler.nextQuery(); // get some random query
+                    solrQuery.setQuery(query.text);
+                    selectivity = query.selectivity;
 
                     if (shouldRunSecondaryQueryOps()) {
                         int randomPercent = random.nextInt(20);
 
-                        if (QueryHandler.SolrField.TIMESTAMP.isSolrFieldSupported() && randomPercent == 0) {
+                        if (queryHandler.isSolrFieldSupported(QueryHandler.SolrField.TIMESTAMP) && randomPercent == 0) {
                             solrQuery.addOrUpdateSort(QueryHandler.SolrField.TIMESTAMP.name().toLowerCase(), SolrQuery.ORDER.asc);
-                        } else if (QueryHandler.SolrField.TIMESTAMP.isSolrFieldSupported() && randomPercent == 1) {
+                        } else if (queryHandler.isSolrFieldSupported(QueryHandler.SolrField.TIMESTAMP) && randomPercent == 1) {
                             solrQuery.addOrUpdateSort(QueryHandler.SolrField.TIMESTAMP.name().toLowerCase(), SolrQuery.ORDER.desc);
-                        } else if (QueryHandler.SolrField.USERNAME.isSolrFieldSupported() && randomPercent == 2) {
+                        } else if (queryHandler.isSolrFieldSupported(QueryHandler.SolrField.USERNAME) && randomPercent == 2) {
                             solrQuery.addOrUpdateSort(QueryHandler.SolrField.USERNAME.name().toLowerCase(), SolrQuery.ORDER.asc);
-                        } else if (QueryHandler.SolrField.USERNAME.isSolrFieldSupported() && randomPercent == 3) {
+                        } else if (queryHandler.isSolrFieldSupported(QueryHandler.SolrField.USERNAME) && randomPercent == 3) {
                             solrQuery.addOrUpdateSort(QueryHandler.SolrField.USERNAME.name().toLowerCase(), SolrQuery.ORDER.desc);
-                        } else if (QueryHandler.SolrField.USERNAME.isSolrFieldSupported() && randomPercent == 4) {
-                            solrQuery.setFilterQueries(QueryHandler.SolrField.USERNAME.getQuery(QueryHandler.QueryType.FIELD));
-                        } else if (QueryHandler.SolrField.TIMESTAMP.isSolrFieldSupported() && randomPercent == 5) {
-                            solrQuery.setFilterQueries(QueryHandler.SolrField.TIMESTAMP.getQuery(QueryHandler.QueryType.RANGE));
-                        } else if (QueryHandler.SolrField.TIMESTAMP.isSolrFieldSupported() && randomPercent == 6) {
+                        } else if (queryHandler.isSolrFieldSupported(QueryHandler.SolrField.USERNAME) && randomPercent == 4) {
+                            solrQuery.setFilterQueries(queryHandler.getQuery(QueryHandler.SolrField.USERNAME, QueryHandler.QueryType.FIELD));
+                        } else if (queryHandler.isSolrFieldSupported(QueryHandler.SolrField.TIMESTAMP) && randomPercent == 5) {
+                            solrQuery.setFilterQueries(queryHandler.getQuery(QueryHandler.SolrField.TIMESTAMP, QueryHandler.QueryType.RANGE));
+                        } else if (queryHandler.isSolrFieldSupported(QueryHandler.SolrField.TIMESTAMP) && randomPercent == 6) {
                             solrQuery.setFields(
                                     QueryHandler.SolrField.getRandomValue().name().toLowerCase(),
                                     QueryHandler.SolrField.getRandomValue().name().toLowerCase(),
                                     QueryHandler.SolrField.getRandomValue().name().toLowerCase()
                             );
-                        } else if (QueryHandler.SolrField.USERNAME.isSolrFieldSupported() && randomPercent == 7) {
+                        } else if (queryHandler.isSolrFieldSupported(QueryHandler.SolrField.USERNAME) && randomPercent == 7) {
                             solrQuery.setFacetLimit(10);
                             solrQuery.addFacetField(QueryHandler.SolrField.USERNAME.name().toLowerCase());
                         } else {
@@ -198,30 +226,83 @@ public class SelectQueryWorker implements QueryWorker {
                     }
                 }
 
-                long intendedStartTimeForCurrentQuery = throughputController.blockUntilIntendedStartTimeOfNextOperation();
-                final long queryStartTime = System.nanoTime();
-                final QueryResponse queryResponse = solrClient.query(solrQuery);
+                intendedStartTimeForCurrentQuery = throughputController.blockUntilIntendedStartTimeOfNextOperation();
+                queryStartTime = System.nanoTime();
+                if (queryWorkerStats != null) {
+                    queryWorkerStats.collectSchedulingLag(queryStartTime - intendedStartTimeForCurrentQuery,
+                            throughputController.getLastWakeUpLagInNanos());
+                }
+                final QueryRequest queryRequest = new QueryRequest(solrQuery);
+                queryRequest.setResponseParser(selectResponseParser);
+                final NamedList<Object> response = solrClient.request(queryRequest);
                 final long queryEndTime = System.nanoTime();
 
                 final long serviceTimeInNanos = queryEndTime - queryStartTime;
                 final long responseTimeInNanos = queryEndTime - intendedStartTimeForCurrentQuery;
+                final int qTime = SelectResponseParser.getQTime(response);
+                final long numFound = SelectResponseParser.getNumFound(response);
 
                 //collectResponseStats(queryResponse);
                 if (queryWorkerStats != null) {
-                    queryWorkerStats.collect(responseTimeInNanos, serviceTimeInNanos, queryResponse.getQTime());
+                    queryWorkerStats.collect(responseTimeInNanos, serviceTimeInNanos, qTime);
+                    if (queryEndTime > throughputController.getDeadlineInNanos()) {
+                        queryWorkerStats.collectCompletedAfterDeadline(responseTimeInNanos);
+                    }
+                    queryWorkerStats.getSlowRequestRecorder().record(solrQuery, solrQuery.getQuery(),
+                            solrClientBaseUrlList.get(clientIndex), intendedStartTimeForCurrentQuery, queryStartTime,
+                            responseTimeInNanos, serviceTimeInNanos, qTime, numFound);
+                    queryWorkerStats.publishEvent(RequestEvent.Type.SELECT, intendedStartTimeForCurrentQuery, queryStartTime,
+                            serviceTimeInNanos, responseTimeInNanos, qTime, SelectResponseParser.getStatus(response),
+                            numFound, SelectResponseParser.getResponseBytes(response));
+                    if (userSession != null) {
+                        queryWorkerStats.collectStep(userSession.getStep().name(), responseTimeInNanos);
+                    }
+                    if (selectivity != null) {
+                        queryWorkerStats.collectSelectivity(selectivity, responseTimeInNanos);
+                    }
+                }
+                if (userSession != null) {
+                    scheduleNextStep(userSession, Math.max(0, numFound), queryEndTime);
                 }
             } catch (Exception e) {
+                if (queryWorkerStats != null) {
+                    queryWorkerStats.collectError();
+                    if (queryStartTime != 0) {
+                        final long failureTime = System.nanoTime();
+                        queryWorkerStats.publishEvent(RequestEvent.Type.SELECT, intendedStartTimeForCurrentQuery, queryStartTime,
+                                failureTime - queryStartTime, failureTime - intendedStartTimeForCurrentQuery, -1,
+                                RequestEvent.STATUS_CLIENT_ERROR, -1, -1);
+                    }
+                }
                 log.error("Cause   : " + e.getCause());
                 log.error("Message : " + e.getMessage());
                 e.printStackTrace();
             }
-            now = System.nanoTime();
-        } while (now - startTime < TimeUnit.SECONDS.toNanos(runDurationInSec));
+        }
 
         queryWorkerStats.setTotalRequestsSent(throughputController.getTotalOperationsCompletedSoFar());
         return throughputController.getTotalOperationsCompletedSoFar();
     }
 
+    // The user whose think time is over, or else a new user (the request rate stays the one of the schedule)
+    private UserSession getNextUserSession() {
+        final UserSession waitingUserSession = waitingUserSessions.peek();
+        if (waitingUserSession != null && waitingUserSession.getReadyTimeInNanos() <= System.nanoTime()) {
+            return waitingUserSessions.poll();
+        }
+        return new UserSession(queryHandler.getQuery());
+    }
+
+    private void scheduleNextStep(UserSession userSession, long numFound, long now) {
+        if (waitingUserSessions.size() >= sessionModel.getMaxSessionsPerWorker()) {
+            return; // too many users waiting: this one leaves
+        }
+        final SessionModel.Step nextStep = sessionModel.nextStep(userSession.getStep());
+        if (userSession.advance(nextStep, queryHandler, numFound, now + sessionModel.nextThinkTimeInNanos())) {
+            waitingUserSessions.add(userSession);
+        }
+    }
+
 //    public void collectResponseStats(QueryResponse queryResponse) {
 //        for (int i = 0; i < queryResultSizeUpperBound.length; i++) {
 //            if (!(queryResponse.getResults().getNumFound() > queryResultSizeUpperBound[i])) {
@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.select;
+
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.input.ProxyReader;
+import org.apache.solr.client.solrj.ResponseParser;
+import org.apache.solr.client.solrj.StreamingResponseCallback;
+import org.apache.solr.client.solrj.impl.BinaryResponseParser;
+import org.apache.solr.client.solrj.impl.StreamingBinaryResponseParser;
+import org.apache.solr.client.solrj.response.DelegationTokenResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.NamedList;
+import org.noggit.JSONParser;
+import org.noggit.ObjectBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Response handling of the '/select' requests, to keep the client CPU out of the measurement at high rates:
+ * <ul>
+ *   <li>FULL      : the whole response is parsed (documents included), as a regular SolrJ application does</li>
+ *   <li>STREAMING : only QTime, status and numFound are extracted, the documents are not collected (javabin: handed
+ *                   over one by one and dropped, json: not parsed at all)</li>
+ *   <li>DISCARD   : the body is read and dropped (no QTime / numFound)</li>
+ * </ul>
+ * The wire format ('javabin' or 'json') is the 'wt' sent to Solr, i.e. it also selects the server side serialization.
+ * The parsed NamedList is reduced to 'QTime', 'status', 'numFound' (-1 if unknown) and 'responseBytes'.
+ */
+class SelectResponseParser extends ResponseParser {
+
+    enum Mode {
+        FULL,
+        STREAMING,
+        DISCARD
+    }
+
+    static final String QTIME = "QTime";
+    static final String STATUS = "status";
+    static final String NUM_FOUND = "numFound";
+    static final String RESPONSE_BYTES = "responseBytes";
+
+    private static final int DRAIN_BUFFER_SIZE = 8192;
+
+    private final Mode mode;
+    private final boolean json;
+    private final ResponseParser fullResponseParser;
+    private final ResponseParser streamingResponseParser;
+
+    SelectResponseParser(Mode mode, String writerType) {
+        if (!"javabin".equals(writerType) && !"json".equals(writerType)) {
+            throw new IllegalArgumentException("Unknown response writer type '" + writerType + "' (javabin|json)");
+        }
+        this.mode = mode;
+        this.json = "json".equals(writerType);
+        this.fullResponseParser = json ? new DelegationTokenResponse.JsonMapResponseParser() : new BinaryResponseParser();
+        this.streamingResponseParser = json ? null : new StreamingBinaryResponseParser(new SkippingDocsCallback());
+    }
+
+    static SelectResponseParser fromConfig(String responseHandling, String responseWriterType) {
+        return new SelectResponseParser(Mode.valueOf(responseHandling.toUpperCase()), responseWriterType);
+    }
+
+    Mode getMode() {
+        return mode;
+    }
+
+    @Override
+    public String getWriterType() {
+        return fullResponseParser.getWriterType();
+    }
+
+    @Override
+    public String getContentType() {
+        return fullResponseParser.getContentType();
+    }
+
+    @Override
+    public String getVersion() {
+        return fullResponseParser.getVersion();
+    }
+
+    @Override
+    public NamedList<Object> processResponse(InputStream body, String encoding) {
+        final CountingInputStream countingInputStream = new CountingInputStream(body);
+        final NamedList<Object> result = new NamedList<>();
+        try {
+            switch (mode) {
+                case FULL:
+                    addHeaderAndNumFound(fullResponseParser.processResponse(countingInputStream, encoding), result);
+                    break;
+                case STREAMING:
+                    if (json) {
+                        parseJsonHeaderAndNumFound(new InputStreamReader(countingInputStream,
+                                encoding != null ? encoding : StandardCharsets.UTF_8.name()), result);
+                    } else {
+                        addHeaderAndNumFound(streamingResponseParser.processResponse(countingInputStream, encoding), result);
+                    }
+                    break;
+                case DISCARD:
+                    break;
+            }
+            drain(countingInputStream);
+        } catch (IOException e) {
+            throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Failed to read the response", e);
+        }
+        result.add(RESPONSE_BYTES, countingInputStream.getByteCount());
+        return result;
+    }
+
+    // A character stream is JSON ('responseBytes' counts the chars); javabin is binary, the full parser rejects it
+    @Override
+    @SuppressWarnings("unchecked")
+    public NamedList<Object> processResponse(Reader reader) {
+        if (!json) {
+            return fullResponseParser.processResponse(reader);
+        }
+        final CountingReader countingReader = new CountingReader(reader);
+        final NamedList<Object> result = new NamedList<>();
+        try {
+            switch (mode) {
+                case FULL:
+                    // (as JsonMapResponseParser does for an InputStream, it has no Reader support)
+                    addHeaderAndNumFound(new NamedList<>((Map<String, Object>) ObjectBuilder.getVal(new JSONParser(countingReader))), result);
+                    break;
+                case STREAMING:
+                    parseJsonHeaderAndNumFound(countingReader, result);
+                    break;
+                case DISCARD:
+                    break;
+            }
+            drain(countingReader);
+        } catch (IOException e) {
+            throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Failed to read the response", e);
+        }
+        result.add(RESPONSE_BYTES, countingReader.getCharCount());
+        return result;
+    }
+
+    static int getQTime(NamedList<Object> response) {
+        final Object qTime = response.get(QTIME);
+        return qTime != null ? (Integer) qTime : -1;
+    }
+
+    static int getStatus(NamedList<Object> response) {
+        final Object status = response.get(STATUS);
+        return status != null ? (Integer) status : 0;
+    }
+
+    static long getNumFound(NamedList<Object> response) {
+        final Object numFound = response.get(NUM_FOUND);
+        return numFound != null ? (Long) numFound : -1;
+    }
+
+    static long getResponseBytes(NamedList<Object> response) {
+        return (Long) response.get(RESPONSE_BYTES);
+    }
+
+    // javabin: NamedList header and SolrDocumentList, json: the same as maps
+    @SuppressWarnings("unchecked")
+    private static void addHeaderAndNumFound(NamedList<Object> response, NamedList<Object> result) {
+        final Object responseHeader = response.get("responseHeader");
+        if (responseHeader instanceof NamedList) {
+            addNumber(result, QTIME, ((NamedList<Object>) responseHeader).get(QTIME));
+            addNumber(result, STATUS, ((NamedList<Object>) responseHeader).get(STATUS));
+        } else if (responseHeader instanceof Map) {
+            addNumber(result, QTIME, ((Map<String, Object>) responseHeader).get(QTIME));
+            addNumber(result, STATUS, ((Map<String, Object>) responseHeader).get(STATUS));
+        }
+        final Object docs = response.get("response");
+        if (docs instanceof SolrDocumentList) {
+            result.add(NUM_FOUND, ((SolrDocumentList) docs).getNumFound());
+        } else if (docs instanceof Map) {
+            final Object numFound = ((Map<String, Object>) docs).get(NUM_FOUND);
+            if (numFound instanceof Number) {
+                result.add(NUM_FOUND, ((Number) numFound).longValue());
+            }
+        }
+    }
+
+    private static void addNumber(NamedList<Object> result, String name, Object value) {
+        if (value instanceof Number) {
+            result.add(name, ((Number) value).intValue());
+        }
+    }
+
+    // Stops at 'response.numFound' (written before the documents), the rest of the body is only drained
+    private static void parseJsonHeaderAndNumFound(Reader body, NamedList<Object> result) throws IOException {
+        final JSONParser parser = new JSONParser(body);
+        String parentKey = null;
+        String key = null;
+        int depth = 0;
+        int event;
+        while ((event = parser.nextEvent()) != JSONParser.EOF) {
+            switch (event) {
+                case JSONParser.OBJECT_START:
+                case JSONParser.ARRAY_START:
+                    depth++;
+                    if (depth == 2) {
+                        parentKey = key;
+                    }
+                    break;
+                case JSONParser.OBJECT_END:
+                case JSONParser.ARRAY_END:
+                    depth--;
+                    break;
+                case JSONParser.STRING:
+                    if (parser.wasKey()) {
+                        key = parser.getString();
+                    }
+                    break;
+                case JSONParser.LONG:
+                    if (depth == 2 && "responseHeader".equals(parentKey) && (QTIME.equals(key) || STATUS.equals(key))) {
+                        result.add(key, (int) parser.getLong());
+                    } else if (depth == 2 && "response".equals(parentKey) && NUM_FOUND.equals(key)) {
+                        result.add(NUM_FOUND, parser.getLong());
+                        return;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static void drain(InputStream body) throws IOException {
+        final byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+        while (body.read(buffer) != -1) {
+            // discard
+        }
+    }
+
+    private static void drain(Reader body) throws IOException {
+        final char[] buffer = new char[DRAIN_BUFFER_SIZE];
+        while (body.read(buffer) != -1) {
+            // discard
+        }
+    }
+
+    private static class CountingReader extends ProxyReader {
+        private long charCount;
+
+        CountingReader(Reader reader) {
+            super(reader);
+        }
+
+        @Override
+        protected void afterRead(int n) {
+            if (n > 0) {
+                charCount += n;
+            }
+        }
+
+        long getCharCount() {
+            return charCount;
+        }
+    }
+
+    // The javabin stream has no lengths to jump over: each document is decoded, then dropped (no SolrDocumentList)
+    private static class SkippingDocsCallback extends StreamingResponseCallback {
+        @Override
+        public void streamSolrDocument(SolrDocument doc) {
+        }
+
+        @Override
+        public void streamDocListInfo(long numFound, long start, Float maxScore) {
+        }
+    }
+}
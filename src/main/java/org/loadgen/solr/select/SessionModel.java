@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.select;
+
+import org.loadgen.solr.BenchConfig;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Markov chain of the steps of a simulated user session: a search, followed by next page / add filter / sort change /
+ * refine steps (with a think time in between) until the user leaves. Shared by all the workers of a load generator.
+ */
+public class SessionModel {
+
+    public enum Step {
+        SEARCH,
+        NEXT_PAGE,
+        ADD_FILTER,
+        CHANGE_SORT,
+        REFINE,
+        END
+    }
+
+    private static final Map<Step, Map<Step, Double>> DEFAULT_TRANSITIONS = new EnumMap<>(Step.class);
+    static {
+        DEFAULT_TRANSITIONS.put(Step.SEARCH,      transitions(0.25, 0.20, 0.10, 0.15, 0.30));
+        DEFAULT_TRANSITIONS.put(Step.NEXT_PAGE,   transitions(0.30, 0.10, 0.00, 0.00, 0.60));
+        DEFAULT_TRANSITIONS.put(Step.ADD_FILTER,  transitions(0.30, 0.10, 0.10, 0.00, 0.50));
+        DEFAULT_TRANSITIONS.put(Step.CHANGE_SORT, transitions(0.30, 0.10, 0.00, 0.00, 0.60));
+        DEFAULT_TRANSITIONS.put(Step.REFINE,      transitions(0.20, 0.20, 0.00, 0.10, 0.50));
+    }
+
+    // Per step: cumulative probabilities of the next steps (in Step order)
+    private final Map<Step, double[]> cumulativeTransitions = new EnumMap<>(Step.class);
+    private final long meanThinkTimeInNanos;
+    private final int maxSessionsPerWorker;
+
+    public SessionModel(Map<String, Map<String, Number>> transitions, double meanThinkTimeInMillis, int maxSessionsPerWorker) {
+        this.meanThinkTimeInNanos = (long) (meanThinkTimeInMillis * TimeUnit.MILLISECONDS.toNanos(1));
+        this.maxSessionsPerWorker = maxSessionsPerWorker;
+
+        for (Step step : Step.values()) {
+            if (step == Step.END) continue;
+
+            Map<Step, Double> nextSteps = DEFAULT_TRANSITIONS.get(step);
+            if (transitions != null && transitions.containsKey(step.name())) {
+                nextSteps = new EnumMap<>(Step.class);
+                for (Map.Entry<String, Number> entry : transitions.get(step.name()).entrySet()) {
+                    nextSteps.put(Step.valueOf(entry.getKey()), entry.getValue().doubleValue());
+                }
+            }
+
+            final double total = nextSteps.values().stream().mapToDouble(Double::doubleValue).sum();
+            final double[] cumulative = new double[Step.values().length];
+            double sum = 0;
+            for (Step nextStep : Step.values()) {
+                sum += total > 0 ? nextSteps.getOrDefault(nextStep, 0.0) / total : (nextStep == Step.END ? 1 : 0);
+                cumulative[nextStep.ordinal()] = sum;
+            }
+            cumulativeTransitions.put(step, cumulative);
+        }
+    }
+
+    public static SessionModel fromConfig(BenchConfig benchConfig) {
+        return new SessionModel(benchConfig.sessionTransitions, benchConfig.sessionThinkTimeInMillis,
+                benchConfig.maxSessionsPerWorker);
+    }
+
+    private static Map<Step, Double> transitions(double nextPage, double addFilter, double changeSort, double refine, double end) {
+        final Map<Step, Double> transitions = new EnumMap<>(Step.class);
+        transitions.put(Step.NEXT_PAGE, nextPage);
+        transitions.put(Step.ADD_FILTER, addFilter);
+        transitions.put(Step.CHANGE_SORT, changeSort);
+        transitions.put(Step.REFINE, refine);
+        transitions.put(Step.END, end);
+        return transitions;
+    }
+
+    Step nextStep(Step currentStep) {
+        final double[] cumulative = cumulativeTransitions.get(currentStep);
+        final double randomValue = ThreadLocalRandom.current().nextDouble();
+        for (Step step : Step.values()) {
+            if (randomValue < cumulative[step.ordinal()]) {
+                return step;
+            }
+        }
+        return Step.END;
+    }
+
+    // Exponentially distributed think time
+    long nextThinkTimeInNanos() {
+        return (long) (-Math.log(1.0 - ThreadLocalRandom.current().nextDouble()) * meanThinkTimeInNanos);
+    }
+
+    int getMaxSessionsPerWorker() {
+        return maxSessionsPerWorker;
+    }
+}
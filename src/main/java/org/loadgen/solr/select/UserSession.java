@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.select;
+
+import org.apache.solr.client.solrj.SolrQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * State of one simulated user: the current query, page, filters and sort, and when the user sends the next step.
+ */
+class UserSession {
+    static final int ROWS = 10;
+
+    private String query;
+    private int start = 0;
+    private final List<String> filterQueries = new ArrayList<>();
+    private String sortField;
+    private SolrQuery.ORDER sortOrder;
+
+    private SessionModel.Step step = SessionModel.Step.SEARCH;
+    private long readyTimeInNanos;
+
+    UserSession(String query) {
+        this.query = query;
+    }
+
+    SessionModel.Step getStep() {
+        return step;
+    }
+
+    long getReadyTimeInNanos() {
+        return readyTimeInNanos;
+    }
+
+    SolrQuery toSolrQuery() {
+        final SolrQuery solrQuery = new SolrQuery(query);
+        solrQuery.setStart(start);
+        solrQuery.setRows(ROWS);
+        solrQuery.setFields("title", "username", "sha1", "timestamp", "id");
+        if (!filterQueries.isEmpty()) {
+            solrQuery.setFilterQueries(filterQueries.toArray(new String[0]));
+        }
+        if (sortField != null) {
+            solrQuery.addOrUpdateSort(sortField, sortOrder);
+        }
+        return solrQuery;
+    }
+
+    /**
+     * Moves the session to its next step. Returns false if the step is not possible (e.g. no next page, no query file
+     * for the filter), i.e. the session ends.
+     */
+    boolean advance(SessionModel.Step nextStep, QueryHandler queryHandler, long numFound, long readyTimeInNanos) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (nextStep) {
+            case NEXT_PAGE:
+                if (start + ROWS >= numFound) return false;
+                start += ROWS;
+                break;
+            case ADD_FILTER:
+                final String filterQuery = getFilterQuery(queryHandler, random);
+                if (filterQuery == null) return false;
+                filterQueries.add(filterQuery);
+                start = 0;
+                break;
+            case CHANGE_SORT:
+                if (!queryHandler.isSolrFieldSupported(QueryHandler.SolrField.TIMESTAMP)) return false;
+                sortField = QueryHandler.SolrField.TIMESTAMP.name().toLowerCase();
+                sortOrder = (sortOrder == SolrQuery.ORDER.desc) ? SolrQuery.ORDER.asc : SolrQuery.ORDER.desc;
+                start = 0;
+                break;
+            case REFINE:
+                query = "+(" + query + ") +(" + queryHandler.getQuery() + ")";
+                start = 0;
+                break;
+            default:
+                return false;
+        }
+        this.step = nextStep;
+        this.readyTimeInNanos = readyTimeInNanos;
+        return true;
+    }
+
+    private static String getFilterQuery(QueryHandler queryHandler, ThreadLocalRandom random) {
+        final boolean hasUsernameFilter  = queryHandler.isQuerySupported(QueryHandler.SolrField.USERNAME, QueryHandler.QueryType.FIELD);
+        final boolean hasTimestampFilter = queryHandler.isQuerySupported(QueryHandler.SolrField.TIMESTAMP, QueryHandler.QueryType.RANGE);
+        if (hasUsernameFilter && (!hasTimestampFilter || random.nextBoolean())) {
+            return queryHandler.getQuery(QueryHandler.SolrField.USERNAME, QueryHandler.QueryType.FIELD);
+        } else if (hasTimestampFilter) {
+            return queryHandler.getQuery(QueryHandler.SolrField.TIMESTAMP, QueryHandler.QueryType.RANGE);
+        }
+        return null;
+    }
+}
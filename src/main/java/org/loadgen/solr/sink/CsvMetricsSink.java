@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.sink;
+
+import org.loadgen.solr.BenchConfig;
+import org.loadgen.solr.LogFiles;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes one CSV row per request to 'requests_&lt;operation&gt;.csv' in the log directory.
+ */
+public class CsvMetricsSink implements MetricsSink {
+
+    private BufferedWriter writer;
+
+    @Override
+    public String getName() {
+        return "csv";
+    }
+
+    @Override
+    public void open(BenchConfig benchConfig, String operationName, String logDir) throws IOException {
+        writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(LogFiles.getNonDuplicateLogName(logDir + File.separator + "requests_" + operationName + ".csv")),
+                StandardCharsets.UTF_8), 1 << 20);
+        writer.write("type,workerId,intendedStartTimeInNanos,actualStartTimeInNanos,serviceTimeInNanos," +
+                "responseTimeInNanos,qTime,status,numFound,responseSizeInBytes\n");
+    }
+
+    @Override
+    public void onEvent(RequestEvent requestEvent) {
+        try {
+            writer.write(requestEvent.getType().name());
+            writer.write(',');
+            writer.write(Integer.toString(requestEvent.getWorkerId()));
+            writer.write(',');
+            writer.write(Long.toString(requestEvent.getIntendedStartTimeInNanos()));
+            writer.write(',');
+            writer.write(Long.toString(requestEvent.getActualStartTimeInNanos()));
+            writer.write(',');
+            writer.write(Long.toString(requestEvent.getServiceTimeInNanos()));
+            writer.write(',');
+            writer.write(Long.toString(requestEvent.getResponseTimeInNanos()));
+            writer.write(',');
+            writer.write(Integer.toString(requestEvent.getQTime()));
+            writer.write(',');
+            writer.write(Integer.toString(requestEvent.getStatus()));
+            writer.write(',');
+            writer.write(Long.toString(requestEvent.getNumFound()));
+            writer.write(',');
+            writer.write(Long.toString(requestEvent.getResponseSizeInBytes()));
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+}
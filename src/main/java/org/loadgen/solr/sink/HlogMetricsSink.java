@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.sink;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.loadgen.solr.BenchConfig;
+import org.loadgen.solr.LogFiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the response time of the measured window per request type into 1 sec interval hlogs
+ * ('sink_&lt;operation&gt;_&lt;type&gt;_client_rt.log'), e.g. to separate request types of mixed workloads.
+ */
+public class HlogMetricsSink implements MetricsSink {
+
+    private final Map<RequestEvent.Type, Histogram> intervalHistograms = new EnumMap<>(RequestEvent.Type.class);
+    private final Map<RequestEvent.Type, HistogramLogWriter> histogramLogWriters = new EnumMap<>(RequestEvent.Type.class);
+
+    private String logFilePrefix;
+    private long intervalStartTimeInMillis;
+
+    @Override
+    public String getName() {
+        return "hlog";
+    }
+
+    @Override
+    public void open(BenchConfig benchConfig, String operationName, String logDir) {
+        logFilePrefix = logDir + File.separator + "sink_" + operationName + "_";
+        intervalStartTimeInMillis = System.currentTimeMillis();
+    }
+
+    @Override
+    public void onEvent(RequestEvent requestEvent) {
+        final long now = System.currentTimeMillis();
+        if (now - intervalStartTimeInMillis >= TimeUnit.SECONDS.toMillis(1)) {
+            outputIntervalHistograms(now);
+        }
+        intervalHistograms.computeIfAbsent(requestEvent.getType(), type -> new Histogram(2))
+                .recordValue(requestEvent.getResponseTimeInNanos());
+    }
+
+    private void outputIntervalHistograms(long now) {
+        for (Map.Entry<RequestEvent.Type, Histogram> entry : intervalHistograms.entrySet()) {
+            final Histogram intervalHistogram = entry.getValue();
+            intervalHistogram.setStartTimeStamp(intervalStartTimeInMillis);
+            intervalHistogram.setEndTimeStamp(now);
+            histogramLogWriters.computeIfAbsent(entry.getKey(), this::createHistogramLogWriter)
+                    .outputIntervalHistogram(intervalHistogram);
+            intervalHistogram.reset();
+        }
+        intervalStartTimeInMillis = now;
+    }
+
+    private HistogramLogWriter createHistogramLogWriter(RequestEvent.Type type) {
+        try {
+            final HistogramLogWriter histogramLogWriter = new HistogramLogWriter(
+                    LogFiles.getNonDuplicateLogName(logFilePrefix + type.name().toLowerCase() + "_client_rt.log"));
+            histogramLogWriter.outputLogFormatVersion();
+            histogramLogWriter.outputStartTime(intervalStartTimeInMillis);
+            histogramLogWriter.setBaseTime(intervalStartTimeInMillis);
+            histogramLogWriter.outputLegend();
+            return histogramLogWriter;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        outputIntervalHistograms(System.currentTimeMillis());
+        histogramLogWriters.values().forEach(HistogramLogWriter::close);
+    }
+}
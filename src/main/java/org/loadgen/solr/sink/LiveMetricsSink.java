@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.sink;
+
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpServer;
+import org.HdrHistogram.Histogram;
+import org.loadgen.solr.BenchConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Serves the live counters and response time percentiles of the running operations as JSON on
+ * http://&lt;client&gt;:&lt;liveMetricsPort&gt;/metrics (keyed by operation name), or of one of them on
+ * http://&lt;client&gt;:&lt;liveMetricsPort&gt;/metrics/&lt;operation&gt;. The generators running at the same time (select
+ * + update, scenario phases) share one server per process.
+ */
+public class LiveMetricsSink implements MetricsSink {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static class TypeStats {
+        final Histogram responseTimeHistogram = new Histogram(2);
+        long errors;
+    }
+
+    private static final String CONTEXT_PATH = "/metrics";
+
+    // The server of the process, open while at least one sink is
+    private static final Map<String, LiveMetricsSink> openSinks = new LinkedHashMap<>();
+    private static HttpServer httpServer;
+
+    private final Map<RequestEvent.Type, TypeStats> statsPerType = new EnumMap<>(RequestEvent.Type.class);
+    private String operationName;
+    private long startTimeInMillis;
+
+    @Override
+    public String getName() {
+        return "live";
+    }
+
+    @Override
+    public void open(BenchConfig benchConfig, String operationName, String logDir) throws IOException {
+        this.operationName = operationName;
+        this.startTimeInMillis = System.currentTimeMillis();
+
+        synchronized (LiveMetricsSink.class) {
+            if (httpServer == null) {
+                httpServer = HttpServer.create(new InetSocketAddress(benchConfig.liveMetricsPort), 0);
+                httpServer.createContext(CONTEXT_PATH, exchange -> {
+                    final JsonObject metrics = getMetricsAsJson(exchange.getRequestURI().getPath());
+                    final byte[] body = (metrics != null ? metrics.toString() : "{}").getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().add("Content-Type", "application/json");
+                    exchange.sendResponseHeaders(metrics != null ? 200 : 404, body.length);
+                    try (OutputStream outputStream = exchange.getResponseBody()) {
+                        outputStream.write(body);
+                    }
+                });
+                httpServer.start();
+            }
+            openSinks.put(operationName, this);
+        }
+        log.info("Live metrics available at http://localhost:" + benchConfig.liveMetricsPort + CONTEXT_PATH + "/" + operationName);
+    }
+
+    // All the open operations for '/metrics', one of them for '/metrics/<operation>' (null if unknown)
+    private static synchronized JsonObject getMetricsAsJson(String path) {
+        if (path.length() > CONTEXT_PATH.length() + 1) {
+            final LiveMetricsSink sink = openSinks.get(path.substring(CONTEXT_PATH.length() + 1));
+            return sink != null ? sink.getMetricsAsJson() : null;
+        }
+        final JsonObject metrics = new JsonObject();
+        openSinks.forEach((name, sink) -> metrics.add(name, sink.getMetricsAsJson()));
+        return metrics;
+    }
+
+    @Override
+    public synchronized void onEvent(RequestEvent requestEvent) {
+        final TypeStats typeStats = statsPerType.computeIfAbsent(requestEvent.getType(), type -> new TypeStats());
+        typeStats.responseTimeHistogram.recordValue(requestEvent.getResponseTimeInNanos());
+        if (requestEvent.isError()) {
+            typeStats.errors++;
+        }
+    }
+
+    synchronized JsonObject getMetricsAsJson() {
+        final double elapsedInSec = Math.max(1, System.currentTimeMillis() - startTimeInMillis) / 1000.0;
+        final JsonObject metrics = new JsonObject();
+        metrics.addProperty("operation", operationName);
+        metrics.addProperty("elapsedInSec", elapsedInSec);
+        for (Map.Entry<RequestEvent.Type, TypeStats> entry : statsPerType.entrySet()) {
+            final Histogram histogram = entry.getValue().responseTimeHistogram;
+            final JsonObject typeJson = new JsonObject();
+            typeJson.addProperty("count", histogram.getTotalCount());
+            typeJson.addProperty("errors", entry.getValue().errors);
+            typeJson.addProperty("rate", histogram.getTotalCount() / elapsedInSec);
+            typeJson.addProperty("responseTimeP50InMillis", histogram.getValueAtPercentile(50) / 1e6);
+            typeJson.addProperty("responseTimeP99InMillis", histogram.getValueAtPercentile(99) / 1e6);
+            typeJson.addProperty("responseTimeP999InMillis", histogram.getValueAtPercentile(99.9) / 1e6);
+            typeJson.addProperty("responseTimeMaxInMillis", histogram.getMaxValue() / 1e6);
+            metrics.add(entry.getKey().name().toLowerCase(), typeJson);
+        }
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        synchronized (LiveMetricsSink.class) {
+            openSinks.remove(operationName, this);
+            if (openSinks.isEmpty() && httpServer != null) {
+                httpServer.stop(0);
+                httpServer = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.sink;
+
+import org.loadgen.solr.BenchConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+/**
+ * Drains the per-worker {@link RequestEventRingBuffer}s on its own thread and hands the events of the measured window
+ * (i.e. started after 'skipDurationInSec') to the {@link MetricsSink}s.
+ */
+public class MetricsEventDispatcher {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final int MAX_EVENTS_PER_DRAIN = 1024;
+
+    private final List<MetricsSink> metricsSinks;
+    private final List<RequestEventRingBuffer> ringBuffers = new ArrayList<>();
+    private final RequestEvent flyweight = new RequestEvent();
+
+    private volatile boolean running;
+    private long measurementStartTimeInNanos;
+    private Thread dispatcherThread;
+
+    public MetricsEventDispatcher(List<MetricsSink> metricsSinks) {
+        this.metricsSinks = metricsSinks;
+    }
+
+    /** Loads the sinks named in the (space separated) 'metricsSinks' config option */
+    public static List<MetricsSink> loadMetricsSinks(String metricsSinkNames) {
+        final List<String> names = Arrays.stream(metricsSinkNames == null ? new String[0] : metricsSinkNames.split("\\s+"))
+                .filter(x -> !x.equals(""))
+                .collect(Collectors.toList());
+
+        final List<MetricsSink> metricsSinks = new ArrayList<>();
+        for (MetricsSink metricsSink : ServiceLoader.load(MetricsSink.class)) {
+            if (names.remove(metricsSink.getName())) {
+                metricsSinks.add(metricsSink);
+            }
+        }
+        if (!names.isEmpty()) {
+            log.error("Unknown metrics sink(s) : " + names);
+        }
+        return metricsSinks;
+    }
+
+    public RequestEventRingBuffer createRingBuffer(int workerId, int capacity) {
+        final RequestEventRingBuffer ringBuffer = new RequestEventRingBuffer(workerId, capacity);
+        ringBuffers.add(ringBuffer);
+        return ringBuffer;
+    }
+
+    public void start(BenchConfig benchConfig, String operationName, String logDir, long skipDurationInSec) {
+        for (MetricsSink metricsSink : metricsSinks) {
+            try {
+                metricsSink.open(benchConfig, operationName, logDir);
+            } catch (IOException e) {
+                log.error("Failed to open metrics sink : " + metricsSink.getName());
+                e.printStackTrace();
+            }
+        }
+
+        measurementStartTimeInNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(skipDurationInSec);
+        running = true;
+        dispatcherThread = new Thread(this::dispatchLoop, "metrics-event-dispatcher-" + operationName);
+        dispatcherThread.setDaemon(true);
+        dispatcherThread.start();
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            if (drainAll() == 0) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+        while (drainAll() > 0) {
+            // residue after the workers stopped, a drain takes at most MAX_EVENTS_PER_DRAIN per ring buffer
+        }
+    }
+
+    private int drainAll() {
+        int drained = 0;
+        for (int i = 0; i < ringBuffers.size(); i++) {
+            drained += ringBuffers.get(i).drain(flyweight, this::dispatch, MAX_EVENTS_PER_DRAIN);
+        }
+        return drained;
+    }
+
+    private void dispatch(RequestEvent requestEvent) {
+        if (requestEvent.getActualStartTimeInNanos() < measurementStartTimeInNanos) {
+            return; // skip duration, not part of the measured window
+        }
+        for (int i = 0; i < metricsSinks.size(); i++) {
+            try {
+                metricsSinks.get(i).onEvent(requestEvent);
+            } catch (RuntimeException e) {
+                log.error("Metrics sink " + metricsSinks.get(i).getName() + " failed : " + e.getMessage());
+            }
+        }
+    }
+
+    public void stop() throws InterruptedException {
+        running = false;
+        dispatcherThread.join();
+
+        for (MetricsSink metricsSink : metricsSinks) {
+            try {
+                metricsSink.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        final long droppedEvents = ringBuffers.stream().mapToLong(RequestEventRingBuffer::getDroppedEvents).sum();
+        if (droppedEvents > 0) {
+            log.warn(droppedEvents + " request events were dropped, the metrics sinks could not keep up");
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.sink;
+
+/**
+ * A single request as seen by the {@link MetricsSink}s. Instances are flyweights re-used by the dispatcher thread,
+ * they are only valid for the duration of {@link MetricsSink#onEvent(RequestEvent)}.
+ */
+public final class RequestEvent {
+
+    public enum Type {
+        SELECT,
+        UPDATE,
+        GET
+    }
+
+    public static final int STATUS_CLIENT_ERROR = -1;
+
+    private static final Type[] TYPES = Type.values();
+
+    private Type type;
+    private int workerId;
+    private long intendedStartTimeInNanos;
+    private long actualStartTimeInNanos;
+    private long serviceTimeInNanos;
+    private long responseTimeInNanos;
+    private int qTime;
+    private int status;
+    private long numFound;
+    private long responseSizeInBytes;
+
+    void set(int workerId, long[] slots, int offset) {
+        this.workerId                 = workerId;
+        this.type                     = TYPES[(int) slots[offset]];
+        this.intendedStartTimeInNanos = slots[offset + 1];
+        this.actualStartTimeInNanos   = slots[offset + 2];
+        this.serviceTimeInNanos       = slots[offset + 3];
+        this.responseTimeInNanos      = slots[offset + 4];
+        this.qTime                    = (int) slots[offset + 5];
+        this.status                   = (int) slots[offset + 6];
+        this.numFound                 = slots[offset + 7];
+        this.responseSizeInBytes      = slots[offset + 8];
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getWorkerId() {
+        return workerId;
+    }
+
+    /** System.nanoTime() based */
+    public long getIntendedStartTimeInNanos() {
+        return intendedStartTimeInNanos;
+    }
+
+    /** System.nanoTime() based */
+    public long getActualStartTimeInNanos() {
+        return actualStartTimeInNanos;
+    }
+
+    public long getServiceTimeInNanos() {
+        return serviceTimeInNanos;
+    }
+
+    public long getResponseTimeInNanos() {
+        return responseTimeInNanos;
+    }
+
+    public int getQTime() {
+        return qTime;
+    }
+
+    /** Solr response status (0 = OK) or {@link #STATUS_CLIENT_ERROR} if the request failed on the client side */
+    public int getStatus() {
+        return status;
+    }
+
+    public boolean isError() {
+        return status != 0;
+    }
+
+    /** -1 if unknown */
+    public long getNumFound() {
+        return numFound;
+    }
+
+    /** -1 if unknown */
+    public long getResponseSizeInBytes() {
+        return responseSizeInBytes;
+    }
+}
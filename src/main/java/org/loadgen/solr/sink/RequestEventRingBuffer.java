@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.sink;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-producer/single-consumer ring buffer of request events, one per worker. Events are stored as primitives in
+ * one pre-allocated long[] so publishing costs the worker a few array stores and an ordered write of the sequence,
+ * no allocation and no boxing. If the dispatcher falls behind, events are dropped (and counted) rather than ever
+ * blocking the worker.
+ */
+public final class RequestEventRingBuffer {
+
+    static final int FIELDS_PER_EVENT = 9;
+
+    private final int workerId;
+    private final long[] slots;
+    private final int mask;
+
+    private final AtomicLong producerSequence = new AtomicLong(); // next slot to write, written by the worker only
+    private final AtomicLong consumerSequence = new AtomicLong(); // next slot to read, written by the dispatcher only
+    private long cachedConsumerSequence;                          // worker-local copy, avoids reading the volatile
+    private volatile long droppedEvents;
+
+    public RequestEventRingBuffer(int workerId, int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of 2 : " + capacity);
+        }
+        this.workerId = workerId;
+        this.slots = new long[capacity * FIELDS_PER_EVENT];
+        this.mask = capacity - 1;
+    }
+
+    public boolean publish(RequestEvent.Type type, long intendedStartTimeInNanos, long actualStartTimeInNanos,
+                           long serviceTimeInNanos, long responseTimeInNanos, int qTime, int status,
+                           long numFound, long responseSizeInBytes) {
+        final long sequence = producerSequence.get();
+        if (sequence - cachedConsumerSequence > mask) {
+            cachedConsumerSequence = consumerSequence.get();
+            if (sequence - cachedConsumerSequence > mask) {
+                droppedEvents++; // single writer
+                return false;
+            }
+        }
+
+        final int offset = (int) (sequence & mask) * FIELDS_PER_EVENT;
+        slots[offset]     = type.ordinal();
+        slots[offset + 1] = intendedStartTimeInNanos;
+        slots[offset + 2] = actualStartTimeInNanos;
+        slots[offset + 3] = serviceTimeInNanos;
+        slots[offset + 4] = responseTimeInNanos;
+        slots[offset + 5] = qTime;
+        slots[offset + 6] = status;
+        slots[offset + 7] = numFound;
+        slots[offset + 8] = responseSizeInBytes;
+        producerSequence.lazySet(sequence + 1);
+        return true;
+    }
+
+    /** Called by the dispatcher thread only, returns the number of events handed to the consumer */
+    int drain(RequestEvent flyweight, RequestEventConsumer consumer, int maxEvents) {
+        final long available = producerSequence.get();
+        long sequence = consumerSequence.get();
+        int drained = 0;
+        while (sequence < available && drained < maxEvents) {
+            flyweight.set(workerId, slots, (int) (sequence & mask) * FIELDS_PER_EVENT);
+            consumer.accept(flyweight);
+            sequence++;
+            drained++;
+        }
+        consumerSequence.lazySet(sequence);
+        return drained;
+    }
+
+    public long getDroppedEvents() {
+        return droppedEvents;
+    }
+
+    interface RequestEventConsumer {
+        void accept(RequestEvent requestEvent);
+    }
+}
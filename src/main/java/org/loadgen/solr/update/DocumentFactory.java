@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.update;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.loadgen.solr.select.QueryFileHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Builds wiki-like documents (same fields as the indexed dump) for the update workload. The vocabulary is taken from
+ * the terms of the '*_FIELD.txt' query files, so that the new documents also match the select queries.
+ */
+public class DocumentFactory {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final String idPrefix;
+    private final AtomicLong documentCounter = new AtomicLong();
+    private final List<String> vocabulary = new ArrayList<>();
+
+    public DocumentFactory(String idPrefix, String queryFiles) {
+        this.idPrefix = idPrefix;
+
+        final List<File> fieldQueryFiles = Arrays.stream(queryFiles == null ? new String[0] : queryFiles.split("\\s+"))
+                // <field>_FIELD.txt, or <field>_FIELD_<selectivity>.txt when harvested by selectivity
+                .filter(fileName -> fileName.matches(".*_FIELD(_[^_/]+)?\\.txt"))
+                .map(File::new)
+                .filter(File::exists)
+                .collect(Collectors.toList());
+        for (File fieldQueryFile : fieldQueryFiles) {
+            try {
+                for (String line : Files.readAllLines(fieldQueryFile.toPath(), StandardCharsets.UTF_8)) {
+                    if (QueryFileHeader.isHeaderLine(line)) {
+                        continue;
+                    }
+                    final int separator = line.indexOf(':');
+                    final String term = line.substring(separator + 1).trim();
+                    if (!term.isEmpty()) {
+                        vocabulary.add(term);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (vocabulary.isEmpty()) {
+            for (int i = 0; i < 10_000; i++) {
+                vocabulary.add("term" + Integer.toString(i, 36));
+            }
+        }
+        log.info(vocabulary.size() + " terms in the vocabulary of the update documents");
+    }
+
+    public SolrInputDocument nextDocument() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final long documentNumber = documentCounter.incrementAndGet();
+
+        final SolrInputDocument solrInputDocument = new SolrInputDocument();
+        solrInputDocument.addField("id", idPrefix + documentNumber);
+        solrInputDocument.addField("title", words(random, 1 + random.nextInt(4)));
+        solrInputDocument.addField("username", words(random, 1));
+        solrInputDocument.addField("comment", words(random, 3 + random.nextInt(6)));
+        solrInputDocument.addField("text", words(random, 50 + random.nextInt(250)));
+        solrInputDocument.addField("timestamp", Instant.now().toString());
+        solrInputDocument.addField("ns", "0");
+        solrInputDocument.addField("model", "wikitext");
+        solrInputDocument.addField("sha1", String.format("%040x", (idPrefix + documentNumber).hashCode() & 0xffffffffL));
+        return solrInputDocument;
+    }
+
+    private String words(ThreadLocalRandom random, int count) {
+        final StringBuilder words = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) words.append(' ');
+            words.append(vocabulary.get(random.nextInt(vocabulary.size())));
+        }
+        return words.toString();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.update;
+
+import org.loadgen.solr.BenchConfig;
+import org.loadgen.solr.LoadGenerator;
+import org.loadgen.solr.QueryWorker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+
+public class LoadGeneratorForUpdateQuery extends LoadGenerator {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private int batchSize = 1;
+    private int commitWithinMs = -1;
+    private DocumentFactory documentFactory;
+
+    public LoadGeneratorForUpdateQuery setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public LoadGeneratorForUpdateQuery setCommitWithinMs(int commitWithinMs) {
+        this.commitWithinMs = commitWithinMs;
+        return this;
+    }
+
+    @Override
+    protected String getOperationName() {
+        return "update";
+    }
+
+    @Override
+    public void applyConfig(BenchConfig benchConfig) {
+        super.applyConfig(benchConfig);
+        this.setBatchSize(benchConfig.updateBatchSize)
+                .setCommitWithinMs(benchConfig.updateCommitWithinMs);
+        documentFactory = new DocumentFactory("bench-" + getOperationName() + "-" + System.currentTimeMillis() + "-",
+                benchConfig.selectQueryFiles);
+
+        if (benchConfig.maxNumberOfUpdateOpThreads != -1) this.setNumberOfThreads(benchConfig.maxNumberOfUpdateOpThreads);
+        if (benchConfig.maxNumberOfUpdateOpClients != -1) this.setNumberOfClients(benchConfig.maxNumberOfUpdateOpClients);
+
+        if (getOperationName().contains("warmup")) {
+            this.setRunDurationInSec(benchConfig.benchmarkWarmupTime);
+            this.setSkipDurationInSec(0);
+            if (benchConfig.targetRateForUpdateOpAtWarmup != -1) {
+                this.setTargetThroughput(benchConfig.targetRateForUpdateOpAtWarmup);
+            }
+        } else {
+            if (benchConfig.continuousRun) {
+                this.setWarmup(benchConfig.benchmarkWarmupTime,
+                        benchConfig.targetRateForUpdateOpAtWarmup != -1 ? benchConfig.targetRateForUpdateOpAtWarmup : targetThroughput);
+            }
+            this.setRunDurationInSec(benchConfig.benchmarkMeasurementTime);
+            if (benchConfig.targetRateForUpdateOp != -1) {
+                this.setTargetThroughput(benchConfig.targetRateForUpdateOp);
+            }
+        }
+        this.applyClosedLoopConfig(benchConfig);
+    }
+
+    @Override
+    protected double getScaleFactor() {
+        return updatePercentage / 100.0;
+    }
+
+    @Override
+    protected QueryWorker getQueryWorkerInstance() {
+        return new UpdateQueryWorker(documentFactory, batchSize, commitWithinMs);
+    }
+
+    public void printConfig() {
+        super.printConfig();
+        log.info(String.format("%-30s %s %s", "updatePercentage", ":", getScaleFactor() * 100));
+        log.info(String.format("%-30s %s %s", "batchSize", ":", batchSize));
+        log.info(String.format("%-30s %s %s", "commitWithinMs", ":", commitWithinMs));
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.update;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.response.UpdateResponse;
+import org.apache.solr.common.SolrInputDocument;
+import org.loadgen.solr.QueryWorker;
+import org.loadgen.solr.QueryWorkerStats;
+import org.loadgen.solr.ThroughputController;
+import org.loadgen.solr.sink.RequestEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class UpdateQueryWorker implements QueryWorker {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private long runDurationInSec;
+    private ThroughputController throughputController;
+    private final List<SolrClient> solrClientList = new ArrayList<>();
+    private QueryWorkerStats queryWorkerStats;
+
+    // Update specific vars
+    private final DocumentFactory documentFactory;
+    private final int batchSize;
+    private final int commitWithinMs;
+
+    UpdateQueryWorker(DocumentFactory documentFactory, int batchSize, int commitWithinMs) {
+        this.documentFactory = documentFactory;
+        this.batchSize = Math.max(1, batchSize);
+        this.commitWithinMs = commitWithinMs;
+    }
+
+    @Override
+    public void setQueryWorkerStats(QueryWorkerStats queryWorkerStats) {
+        this.queryWorkerStats = queryWorkerStats;
+    }
+
+    @Override
+    public QueryWorkerStats getQueryWorkerStat() {
+        return queryWorkerStats;
+    }
+
+    @Override
+    public void setRunDurationInSec(long runDurationInSec) {
+        this.runDurationInSec = runDurationInSec;
+    }
+
+    @Override
+    public void addSolrClient(SolrClient solrClient) {
+        this.solrClientList.add(solrClient);
+    }
+
+    @Override
+    public void setRateLimiter(ThroughputController throughputController) {
+        this.throughputController = throughputController;
+    }
+
+    @Override
+    public ThroughputController getRateLimiter() {
+        return this.throughputController;
+    }
+
+    @Override
+    public void closeClientConnections() {
+        for (int i = 0; i < solrClientList.size(); i++) {
+            try {
+                solrClientList.get(i).close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public Long call() {
+        final int numberOfClientsAssignedToCurrentWorker = solrClientList.size();
+        final long startTime = System.nanoTime();
+
+        throughputController.markCurrentTimeAsOperationStartTime();
+        throughputController.setDeadlineInNanos(startTime + TimeUnit.SECONDS.toNanos(runDurationInSec));
+        while (throughputController.isNextOperationDueBeforeDeadline()) {
+            long intendedStartTimeForCurrentUpdate = 0;
+            long updateStartTime = 0;
+            try {
+                int clientIndex = (int) (throughputController.getTotalOperationsCompletedSoFar() % numberOfClientsAssignedToCurrentWorker);
+                SolrClient solrClient = solrClientList.get(clientIndex);
+
+                final List<SolrInputDocument> documents = new ArrayList<>(batchSize);
+                for (int i = 0; i < batchSize; i++) {
+                    documents.add(documentFactory.nextDocument());
+                }
+
+                intendedStartTimeForCurrentUpdate = throughputController.blockUntilIntendedStartTimeOfNextOperation();
+                updateStartTime = System.nanoTime();
+                if (queryWorkerStats != null) {
+                    queryWorkerStats.collectSchedulingLag(updateStartTime - intendedStartTimeForCurrentUpdate,
+                            throughputController.getLastWakeUpLagInNanos());
+                }
+                final UpdateResponse updateResponse = solrClient.add(documents, commitWithinMs);
+                final long updateEndTime = System.nanoTime();
+
+                final long serviceTimeInNanos = updateEndTime - updateStartTime;
+                final long responseTimeInNanos = updateEndTime - intendedStartTimeForCurrentUpdate;
+
+                if (queryWorkerStats != null) {
+                    queryWorkerStats.collect(responseTimeInNanos, serviceTimeInNanos, updateResponse.getQTime());
+                    if (updateEndTime > throughputController.getDeadlineInNanos()) {
+                        queryWorkerStats.collectCompletedAfterDeadline(responseTimeInNanos);
+                    }
+                    queryWorkerStats.publishEvent(RequestEvent.Type.UPDATE, intendedStartTimeForCurrentUpdate, updateStartTime,
+                            serviceTimeInNanos, responseTimeInNanos, updateResponse.getQTime(), updateResponse.getStatus(),
+                            documents.size(), -1);
+                }
+            } catch (Exception e) {
+                if (queryWorkerStats != null) {
+                    queryWorkerStats.collectError();
+                    if (updateStartTime != 0) {
+                        final long failureTime = System.nanoTime();
+                        queryWorkerStats.publishEvent(RequestEvent.Type.UPDATE, intendedStartTimeForCurrentUpdate, updateStartTime,
+                                failureTime - updateStartTime, failureTime - intendedStartTimeForCurrentUpdate, -1,
+                                RequestEvent.STATUS_CLIENT_ERROR, batchSize, -1);
+                    }
+                }
+                log.error("Cause   : " + e.getCause());
+                log.error("Message : " + e.getMessage());
+            }
+        }
+
+        queryWorkerStats.setTotalRequestsSent(throughputController.getTotalOperationsCompletedSoFar());
+        return throughputController.getTotalOperationsCompletedSoFar();
+    }
+}
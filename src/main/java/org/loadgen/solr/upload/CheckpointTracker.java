@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.upload;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Follows which batches of the input were sent to Solr. The senders complete the batches out of order, so only the
+ * contiguous prefix of completed batches (in the order of the input) can be checkpointed: it is snapshotted before a
+ * commit and written once the commit succeeded. A batch that failed to be sent never completes: the checkpoints stay
+ * before it, so that a resumed upload sends it again.
+ */
+class CheckpointTracker {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static class CompletedBatch {
+        final long endOffset;
+        final long documents;
+        final long errors;
+
+        CompletedBatch(long endOffset, long documents, long errors) {
+            this.endOffset = endOffset;
+            this.documents = documents;
+            this.errors = errors;
+        }
+    }
+
+    private final File checkpointFile;
+    private final UploadInput uploadInput;
+
+    // Completed batches after the prefix, by sequence number
+    private final Map<Long, CompletedBatch> completedBatches = new HashMap<>();
+    private long nextSequence;
+    private long prefixOffset;
+    private long prefixDocuments;
+    private long prefixErrors;
+    private long lastCheckpointOffset = -1;
+    private long firstFailedSequence = Long.MAX_VALUE;
+
+    CheckpointTracker(File checkpointFile, UploadInput uploadInput, UploadCheckpoint resumedFrom) {
+        this.checkpointFile = checkpointFile;
+        this.uploadInput = uploadInput;
+        this.prefixOffset = uploadInput.getStartOffset();
+        if (resumedFrom != null) {
+            this.prefixDocuments = resumedFrom.documents;
+            this.prefixErrors = resumedFrom.errors;
+        }
+    }
+
+    /** Called once the batch is in Solr (its documents that could not be parsed are counted as errors) */
+    synchronized void onBatchCompleted(long sequence, long endOffset, long documents, long errors) {
+        if (sequence > firstFailedSequence) {
+            return; // the prefix cannot get past the failed batch
+        }
+        completedBatches.put(sequence, new CompletedBatch(endOffset, documents, errors));
+        CompletedBatch next;
+        while (nextSequence < firstFailedSequence && (next = completedBatches.remove(nextSequence)) != null) {
+            prefixOffset = next.endOffset;
+            prefixDocuments += next.documents;
+            prefixErrors += next.errors;
+            nextSequence++;
+        }
+    }
+
+    /** Called if the batch could not be sent: the checkpoints stop before it */
+    synchronized void onBatchFailed(long sequence) {
+        if (sequence < firstFailedSequence) {
+            if (firstFailedSequence == Long.MAX_VALUE) {
+                log.warn("Batch " + sequence + " could not be sent : the checkpoints stay before it, a resumed upload sends it again");
+            }
+            firstFailedSequence = sequence;
+            completedBatches.keySet().removeIf(completedSequence -> completedSequence > sequence);
+        }
+    }
+
+    /** The checkpoint of the batches completed so far, to be written after the next successful commit */
+    synchronized UploadCheckpoint snapshot() {
+        final long[] restartPoint = uploadInput.getRestartPoint(prefixOffset);
+        return new UploadCheckpoint(uploadInput.getFile(), prefixOffset, restartPoint[0], restartPoint[1],
+                prefixDocuments, prefixErrors);
+    }
+
+    synchronized void write(UploadCheckpoint checkpoint) {
+        if (checkpoint.offset == lastCheckpointOffset) {
+            return;
+        }
+        try {
+            checkpoint.write(checkpointFile);
+            lastCheckpointOffset = checkpoint.offset;
+            uploadInput.discardRestartPointsBefore(checkpoint.restartUncompressedOffset);
+            log.info("Checkpoint written : " + checkpoint);
+        } catch (IOException e) {
+            log.error("Failed to write the checkpoint " + checkpointFile);
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.upload;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * When the documents sent by the upload pipeline are committed:
+ * <pre>
+ *   none          : no commit until the end of the upload
+ *   commit_within : every 'add' asks Solr to commit within 'commitWithinInMillis'
+ *   soft          : a soft commit every 'softCommitIntervalInMillis'
+ *   hard          : a hard commit every 'commitEveryDocs' documents and/or 'commitEveryBytes' bytes (0 = not used)
+ * </pre>
+ * The commits are sent by a thread of their own, not by the senders: a commit in progress never blocks the 'add's, and a
+ * hard commit due while another one is in progress is merged into the next one. A checkpoint is written after each hard
+ * commit (the soft commits and 'commitWithin' do not make the documents durable).
+ */
+public class CommitPolicy {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    public enum Type {NONE, COMMIT_WITHIN, SOFT, HARD}
+
+    private final Type type;
+    private int commitWithinInMillis = 15_000;
+    private long softCommitIntervalInMillis = 1_000;
+    private long commitEveryDocs = 10_000;
+    private long commitEveryBytes = 0;
+
+    private SolrClient solrClient;
+    private IndexingMetrics indexingMetrics; // null = commit latencies not recorded
+    private CheckpointTracker checkpointTracker; // null = no checkpoints
+    private ScheduledExecutorService committer;
+    private final AtomicLong documents = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicBoolean commitPending = new AtomicBoolean();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong commitTimeInNanos = new AtomicLong();
+
+    public CommitPolicy(Type type) {
+        this.type = type;
+    }
+
+    public static CommitPolicy fromName(String commitPolicy) {
+        return new CommitPolicy(Type.valueOf(commitPolicy.toUpperCase()));
+    }
+
+    public CommitPolicy setCommitWithinInMillis(int commitWithinInMillis) {
+        this.commitWithinInMillis = commitWithinInMillis;
+        return this;
+    }
+
+    public CommitPolicy setSoftCommitIntervalInMillis(long softCommitIntervalInMillis) {
+        this.softCommitIntervalInMillis = softCommitIntervalInMillis;
+        return this;
+    }
+
+    public CommitPolicy setCommitEveryDocs(long commitEveryDocs) {
+        this.commitEveryDocs = commitEveryDocs;
+        return this;
+    }
+
+    public CommitPolicy setCommitEveryBytes(long commitEveryBytes) {
+        this.commitEveryBytes = commitEveryBytes;
+        return this;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /** The 'commitWithin' of the 'add's, -1 = none */
+    int getCommitWithinInMillis() {
+        return type == Type.COMMIT_WITHIN ? commitWithinInMillis : -1;
+    }
+
+    void start(SolrClient solrClient, IndexingMetrics indexingMetrics, CheckpointTracker checkpointTracker) {
+        this.solrClient = solrClient;
+        this.indexingMetrics = indexingMetrics;
+        this.checkpointTracker = checkpointTracker;
+        committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "upload-committer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (type == Type.SOFT) {
+            committer.scheduleWithFixedDelay(() -> commit(true),
+                    softCommitIntervalInMillis, softCommitIntervalInMillis, TimeUnit.MILLISECONDS);
+        }
+        printConfig();
+    }
+
+    /** Called by the senders after each successful 'add' */
+    void onAdded(long numberOfDocuments, long numberOfBytes) {
+        final long totalDocuments = documents.addAndGet(numberOfDocuments);
+        final long totalBytes = bytes.addAndGet(numberOfBytes);
+        if (type != Type.HARD) return;
+        final boolean docsThresholdCrossed = commitEveryDocs > 0
+                && totalDocuments / commitEveryDocs != (totalDocuments - numberOfDocuments) / commitEveryDocs;
+        final boolean bytesThresholdCrossed = commitEveryBytes > 0
+                && totalBytes / commitEveryBytes != (totalBytes - numberOfBytes) / commitEveryBytes;
+        if ((docsThresholdCrossed || bytesThresholdCrossed) && commitPending.compareAndSet(false, true)) {
+            committer.execute(() -> {
+                commitPending.set(false);
+                commit(false);
+            });
+        }
+    }
+
+    private void commit(boolean softCommit) {
+        // Everything sent before the commit starts is in the commit
+        final UploadCheckpoint checkpoint = checkpointTracker != null && !softCommit ? checkpointTracker.snapshot() : null;
+        final long commitStartTime = System.nanoTime();
+        try {
+            solrClient.commit(true, true, softCommit);
+        } catch (SolrServerException | IOException | RuntimeException e) {
+            log.info("Error while committing: " + e);
+            return;
+        }
+        final long commitLatencyInNanos = System.nanoTime() - commitStartTime;
+        commits.incrementAndGet();
+        commitTimeInNanos.addAndGet(commitLatencyInNanos);
+        if (indexingMetrics != null) {
+            indexingMetrics.recordCommit(commitLatencyInNanos);
+        }
+        if (!softCommit) {
+            log.info(String.format("Hard commit after %d docs (%.1f MB) took %.1f ms",
+                    documents.get(), bytes.get() / 1e6, commitLatencyInNanos / 1e6));
+        }
+        if (checkpoint != null) {
+            checkpointTracker.write(checkpoint);
+        }
+    }
+
+    /** Waits for the commit in progress, if any; the final commit is left to the caller */
+    void stop() throws InterruptedException {
+        committer.shutdown();
+        committer.awaitTermination(1, TimeUnit.MINUTES);
+        log.info(String.format("%-30s %s %s: %d commit(s), %.1f sec in total", "commits", ":",
+                type.name().toLowerCase(), commits.get(), commitTimeInNanos.get() / 1e9));
+    }
+
+    private void printConfig() {
+        log.info(String.format("%-30s %s %s", "commitPolicy", ":", type.name().toLowerCase()));
+        switch (type) {
+            case COMMIT_WITHIN:
+                log.info(String.format("%-30s %s %s", "commitWithinInMillis", ":", commitWithinInMillis));
+                break;
+            case SOFT:
+                log.info(String.format("%-30s %s %s", "softCommitIntervalInMillis", ":", softCommitIntervalInMillis));
+                break;
+            case HARD:
+                log.info(String.format("%-30s %s %s", "commitEveryDocs", ":", commitEveryDocs));
+                log.info(String.format("%-30s %s %s", "commitEveryBytes", ":", commitEveryBytes));
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.upload;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses a gzip file like {@link java.util.zip.GZIPInputStream}, but reports where each gzip member starts (offset
+ * in the file and in the decompressed content): a member can be decompressed on its own, so these are the points an
+ * interrupted upload can be restarted from without decompressing the file from its beginning. A file compressed by
+ * 'gzip' is a single member; concatenated gzip files (e.g. 'split --filter=gzip') have one per part.
+ */
+class GzipMemberInputStream extends InputStream {
+
+    interface MemberListener {
+        void onMemberStart(long compressedOffset, long uncompressedOffset);
+    }
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final InputStream inputStream;
+    private final MemberListener memberListener;
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+    private final byte[] inputBuffer;
+    private int inputPosition;
+    private int inputLimit;
+    private long inputBufferOffset; // compressed offset of inputBuffer[0]
+    private long uncompressedOffset;
+    private long memberUncompressedSize;
+    private boolean inMember;
+    private boolean firstMember = true;
+    private boolean endOfInput;
+
+    /**
+     * @param inputStream        the compressed input, positioned at the start of a member
+     * @param compressedOffset   offset of that member in the file
+     * @param uncompressedOffset offset of its content in the decompressed content of the file
+     */
+    GzipMemberInputStream(InputStream inputStream, long compressedOffset, long uncompressedOffset, int inputBufferSize,
+                          MemberListener memberListener) {
+        this.inputStream = inputStream;
+        this.inputBufferOffset = compressedOffset;
+        this.uncompressedOffset = uncompressedOffset;
+        this.inputBuffer = new byte[inputBufferSize];
+        this.memberListener = memberListener;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            if (!inMember && !startMember()) {
+                return -1;
+            }
+            final int inflated;
+            try {
+                inflated = inflater.inflate(b, off, len);
+            } catch (DataFormatException e) {
+                throw new ZipException("Invalid gzip data at offset " + (inputBufferOffset + inputPosition) + ": " + e.getMessage());
+            }
+            inputPosition = inputLimit - inflater.getRemaining();
+            if (inflated > 0) {
+                crc.update(b, off, inflated);
+                uncompressedOffset += inflated;
+                memberUncompressedSize += inflated;
+                return inflated;
+            }
+            if (inflater.finished()) {
+                readTrailer();
+                inMember = false;
+            } else if (inflater.needsInput()) {
+                if (!fill()) {
+                    throw new EOFException("Unexpected end of gzip input");
+                }
+                inflater.setInput(inputBuffer, inputPosition, inputLimit - inputPosition);
+            } else if (inflater.needsDictionary()) {
+                throw new ZipException("Invalid gzip data: preset dictionary");
+            }
+        }
+    }
+
+    // Reads the header of the next member, false at the end of the input (or on trailing garbage, as GZIPInputStream)
+    private boolean startMember() throws IOException {
+        if (endOfInput || (inputPosition == inputLimit && !fill())) {
+            return false;
+        }
+        final long memberCompressedOffset = inputBufferOffset + inputPosition;
+        if ((inputBuffer[inputPosition] & 0xff) != 0x1f) {
+            if (firstMember) {
+                throw new ZipException("Not in GZIP format");
+            }
+            endOfInput = true;
+            return false;
+        }
+        if (readUnsignedByte() != 0x1f || readUnsignedByte() != 0x8b) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if (readUnsignedByte() != 8) {
+            throw new ZipException("Unsupported compression method");
+        }
+        final int flags = readUnsignedByte();
+        skipBytes(6); // MTIME, XFL, OS
+        if ((flags & FEXTRA) != 0) {
+            skipBytes(readUnsignedByte() | (readUnsignedByte() << 8));
+        }
+        if ((flags & FNAME) != 0) {
+            while (readUnsignedByte() != 0) ;
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (readUnsignedByte() != 0) ;
+        }
+        if ((flags & FHCRC) != 0) {
+            skipBytes(2);
+        }
+        memberListener.onMemberStart(memberCompressedOffset, uncompressedOffset);
+        firstMember = false;
+        inMember = true;
+        memberUncompressedSize = 0;
+        crc.reset();
+        inflater.reset();
+        inflater.setInput(inputBuffer, inputPosition, inputLimit - inputPosition);
+        return true;
+    }
+
+    private void readTrailer() throws IOException {
+        final long expectedCrc = readUnsignedInt();
+        final long expectedSize = readUnsignedInt();
+        if (expectedCrc != crc.getValue()) {
+            throw new ZipException("Corrupt gzip member (wrong CRC) ending at offset " + (inputBufferOffset + inputPosition));
+        }
+        if (expectedSize != (memberUncompressedSize & 0xffffffffL)) {
+            throw new ZipException("Corrupt gzip member (wrong size) ending at offset " + (inputBufferOffset + inputPosition));
+        }
+    }
+
+    private long readUnsignedInt() throws IOException {
+        return readUnsignedByte() | (readUnsignedByte() << 8) | (readUnsignedByte() << 16) | ((long) readUnsignedByte() << 24);
+    }
+
+    private int readUnsignedByte() throws IOException {
+        if (inputPosition == inputLimit && !fill()) {
+            throw new EOFException("Unexpected end of gzip input");
+        }
+        return inputBuffer[inputPosition++] & 0xff;
+    }
+
+    private void skipBytes(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            readUnsignedByte();
+        }
+    }
+
+    // Called once the buffer is consumed
+    private boolean fill() throws IOException {
+        inputBufferOffset += inputLimit;
+        inputPosition = 0;
+        inputLimit = 0;
+        final int read = inputStream.read(inputBuffer);
+        if (read <= 0) {
+            return false;
+        }
+        inputLimit = read;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        inputStream.close();
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.upload;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.GenericSolrRequest;
+import org.apache.solr.common.util.NamedList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls the size of the index ('/admin/segments') from a background timer, so that the index size limit of an upload
+ * never blocks the senders. The size is the one of the segments visible to searchers, i.e. it grows with the commits.
+ */
+public class IndexSizePoller {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final SolrClient solrClient;
+    private final long maxIndexSizeInBytes;
+    private final Runnable onMaxIndexSizeExceeded;
+    private Timer pollingTimer;
+    private volatile long indexSizeInBytes = -1;
+
+    public IndexSizePoller(SolrClient solrClient, long maxIndexSizeInBytes, Runnable onMaxIndexSizeExceeded) {
+        this.solrClient = solrClient;
+        this.maxIndexSizeInBytes = maxIndexSizeInBytes;
+        this.onMaxIndexSizeExceeded = onMaxIndexSizeExceeded;
+    }
+
+    public void start(int pollIntervalInSec) {
+        pollingTimer = new Timer("index-size-poller", true);
+        pollingTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, TimeUnit.SECONDS.toMillis(pollIntervalInSec), TimeUnit.SECONDS.toMillis(pollIntervalInSec));
+    }
+
+    private void poll() {
+        final long size;
+        try {
+            size = getIndexSize(solrClient);
+        } catch (SolrServerException | IOException | RuntimeException e) {
+            log.info("Error while getting the index size: " + e);
+            return;
+        }
+        if (size != indexSizeInBytes) {
+            log.info("Size of index in bytes so far : " + size);
+        }
+        indexSizeInBytes = size;
+        if (size > maxIndexSizeInBytes) {
+            log.info("Size exceeded " + maxIndexSizeInBytes + " bytes, stopping indexing.");
+            pollingTimer.cancel();
+            onMaxIndexSizeExceeded.run();
+        }
+    }
+
+    /** Last size polled, -1 = not known yet */
+    public long getIndexSizeInBytes() {
+        return indexSizeInBytes;
+    }
+
+    public void stop() {
+        if (pollingTimer != null) {
+            pollingTimer.cancel();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static long getIndexSize(SolrClient solrClient) throws IOException, SolrServerException {
+        GenericSolrRequest admin = new GenericSolrRequest(SolrRequest.METHOD.GET, "/admin/segments", null);
+        var result = solrClient.request(admin);
+        var segments = (NamedList<Object>) result.get("segments");
+        return segments.asMap().values().stream().mapToLong(v -> (((NamedList<Number>) v).get("sizeInBytes")).longValue()).sum();
+    }
+}
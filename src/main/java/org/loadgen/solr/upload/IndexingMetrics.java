@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.upload;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+import org.loadgen.solr.LogFiles;
+import org.loadgen.solr.report.HistogramJson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Indexing as a measured benchmark, with the same HdrHistogram/hlog machinery as the select benchmark: every second,
+ * the latencies of the interval (the 'add' of each batch, the commits, the merge stalls) go to hlogs and its docs/sec
+ * and bytes/sec to 'index_throughput.csv'. The first 'warmupTimeInSec' are logged but left out of the summary, the
+ * measurement ends after 'measurementTimeInSec' (0 = at the end of the input).
+ * <p>
+ * Merge stalls are seen from the client: when merges fall behind, Solr blocks the indexing threads, i.e. an 'add' takes
+ * far longer than usual. An 'add' slower than 'mergeStallFactor' x the median 'add' latency of the previous interval
+ * (and than 'minMergeStallInMillis') is counted as a stall of the time above that median.
+ */
+public class IndexingMetrics {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final String DEFAULT_LOG_DIR = Paths.get(".").toAbsolutePath().normalize().toString();
+    private static final String OPERATION_NAME = "index";
+
+    private static final Gson gson = new GsonBuilder().disableJdkUnsafe().setPrettyPrinting().create();
+
+    public static class IntervalSample {
+        public final long timestampInMillis;
+        public final boolean warmup;
+        public final long documents;
+        public final long bytes;
+        public final double docsPerSec;
+        public final double bytesPerSec;
+        public final double addLatencyP50InMillis;
+        public final double addLatencyP99InMillis;
+        public final double addLatencyMaxInMillis;
+        public final long commits;
+        public final long mergeStalls;
+
+        IntervalSample(long timestampInMillis, boolean warmup, long documents, long bytes, double intervalInSec,
+                       Histogram addLatency, Histogram commitLatency, Histogram mergeStall) {
+            this.timestampInMillis     = timestampInMillis;
+            this.warmup                = warmup;
+            this.documents             = documents;
+            this.bytes                 = bytes;
+            this.docsPerSec            = documents / intervalInSec;
+            this.bytesPerSec           = bytes / intervalInSec;
+            this.addLatencyP50InMillis = addLatency.getValueAtPercentile(50) / 1e6;
+            this.addLatencyP99InMillis = addLatency.getValueAtPercentile(99) / 1e6;
+            this.addLatencyMaxInMillis = addLatency.getMaxValue() / 1e6;
+            this.commits               = commitLatency.getTotalCount();
+            this.mergeStalls           = mergeStall.getTotalCount();
+        }
+    }
+
+    private final String logDir;
+    private int warmupTimeInSec = 0;
+    private int measurementTimeInSec = 0;
+    private double mergeStallFactor = 10;
+    private long minMergeStallInMillis = 250;
+
+    private final Recorder addLatencyRecorder    = new Recorder(2); // in nanos, one value per batch
+    private final Recorder commitLatencyRecorder = new Recorder(2); // in nanos
+    private final Recorder mergeStallRecorder    = new Recorder(2); // in nanos
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private volatile long addLatencyMedianInNanos = -1; // of the previous interval, -1 = no baseline yet
+
+    // Summary of the measured window
+    private final Histogram addLatencyHistogram    = new Histogram(2);
+    private final Histogram commitLatencyHistogram = new Histogram(2);
+    private final Histogram mergeStallHistogram    = new Histogram(2);
+    private final Histogram intervalDocsPerSecHistogram = new Histogram(2);
+    private final List<IntervalSample> intervalSamples = new ArrayList<>();
+    private long measuredDocuments;
+    private long measuredBytes;
+    private long measuredTimeInNanos;
+    private int measuredIntervals;
+
+    private HistogramLogWriter addLatencyLogWriter;
+    private HistogramLogWriter commitLatencyLogWriter;
+    private HistogramLogWriter mergeStallLogWriter;
+    private PrintStream throughputLog;
+    private Timer metricsCollectionTimer;
+    private int intervals;
+    private long lastSnapshotTimeInNanos;
+    private long lastDocuments;
+    private long lastBytes;
+    private volatile boolean measurementOver;
+
+    public IndexingMetrics() {
+        logDir = System.getProperty("logDir", DEFAULT_LOG_DIR) + File.separator + "hdr_histogram-logs-" + OPERATION_NAME;
+    }
+
+    public IndexingMetrics setWarmupTimeInSec(int warmupTimeInSec) {
+        this.warmupTimeInSec = warmupTimeInSec;
+        return this;
+    }
+
+    public IndexingMetrics setMeasurementTimeInSec(int measurementTimeInSec) {
+        this.measurementTimeInSec = measurementTimeInSec;
+        return this;
+    }
+
+    public IndexingMetrics setMergeStallFactor(double mergeStallFactor) {
+        this.mergeStallFactor = mergeStallFactor;
+        return this;
+    }
+
+    public IndexingMetrics setMinMergeStallInMillis(long minMergeStallInMillis) {
+        this.minMergeStallInMillis = minMergeStallInMillis;
+        return this;
+    }
+
+    public void start() throws IOException {
+        Files.createDirectories(Paths.get(logDir));
+        final String hlogPrefix = logDir + File.separator + "hlog_" + OPERATION_NAME;
+        addLatencyLogWriter    = createHistogramLogWriter(LogFiles.getNonDuplicateLogName(hlogPrefix + "_add_latency.log"));
+        commitLatencyLogWriter = createHistogramLogWriter(LogFiles.getNonDuplicateLogName(hlogPrefix + "_commit_latency.log"));
+        mergeStallLogWriter    = createHistogramLogWriter(LogFiles.getNonDuplicateLogName(hlogPrefix + "_merge_stall.log"));
+        throughputLog = new PrintStream(LogFiles.getNonDuplicateLogName(logDir + File.separator + OPERATION_NAME + "_throughput.csv"), "UTF-8");
+        throughputLog.println("timestampInMillis,phase,documents,bytes,docsPerSec,bytesPerSec," +
+                "addLatencyP50InMillis,addLatencyP99InMillis,addLatencyMaxInMillis,commits,mergeStalls");
+        printConfig();
+
+        lastSnapshotTimeInNanos = System.nanoTime();
+        metricsCollectionTimer = new Timer("indexing-metrics", true);
+        metricsCollectionTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                takeHistogramSnapshot();
+            }
+        }, TimeUnit.SECONDS.toMillis(1), TimeUnit.SECONDS.toMillis(1));
+    }
+
+    /** Called by the senders after each successful 'add' */
+    public void recordAdd(long numberOfDocuments, long numberOfBytes, long latencyInNanos) {
+        addLatencyRecorder.recordValue(latencyInNanos);
+        documents.add(numberOfDocuments);
+        bytes.add(numberOfBytes);
+        final long addLatencyMedian = addLatencyMedianInNanos;
+        if (addLatencyMedian >= 0 && latencyInNanos > TimeUnit.MILLISECONDS.toNanos(minMergeStallInMillis)
+                && latencyInNanos > addLatencyMedian * mergeStallFactor) {
+            mergeStallRecorder.recordValue(latencyInNanos - addLatencyMedian);
+        }
+    }
+
+    public void recordCommit(long latencyInNanos) {
+        commitLatencyRecorder.recordValue(latencyInNanos);
+    }
+
+    /** True once 'measurementTimeInSec' were measured: the indexing can be stopped */
+    public boolean isMeasurementOver() {
+        return measurementOver;
+    }
+
+    private synchronized void takeHistogramSnapshot() {
+        final long now = System.nanoTime();
+        final long intervalInNanos = now - lastSnapshotTimeInNanos;
+        lastSnapshotTimeInNanos = now;
+        final Histogram addLatency    = addLatencyRecorder.getIntervalHistogram();
+        final Histogram commitLatency = commitLatencyRecorder.getIntervalHistogram();
+        final Histogram mergeStall    = mergeStallRecorder.getIntervalHistogram();
+        final long currentDocuments = documents.sum();
+        final long currentBytes = bytes.sum();
+        final long intervalDocuments = currentDocuments - lastDocuments;
+        final long intervalBytes = currentBytes - lastBytes;
+        lastDocuments = currentDocuments;
+        lastBytes = currentBytes;
+
+        addLatencyLogWriter.outputIntervalHistogram(addLatency);
+        commitLatencyLogWriter.outputIntervalHistogram(commitLatency);
+        mergeStallLogWriter.outputIntervalHistogram(mergeStall);
+
+        if (addLatency.getTotalCount() > 0) {
+            addLatencyMedianInNanos = addLatency.getValueAtPercentile(50);
+        }
+
+        final boolean warmup = intervals++ < warmupTimeInSec;
+        final IntervalSample intervalSample = new IntervalSample(System.currentTimeMillis(), warmup, intervalDocuments,
+                intervalBytes, intervalInNanos / 1e9, addLatency, commitLatency, mergeStall);
+        intervalSamples.add(intervalSample);
+        throughputLog.println(String.format("%d,%s,%d,%d,%.1f,%.1f,%.3f,%.3f,%.3f,%d,%d",
+                intervalSample.timestampInMillis, warmup ? "warmup" : "measurement", intervalDocuments, intervalBytes,
+                intervalSample.docsPerSec, intervalSample.bytesPerSec, intervalSample.addLatencyP50InMillis,
+                intervalSample.addLatencyP99InMillis, intervalSample.addLatencyMaxInMillis,
+                intervalSample.commits, intervalSample.mergeStalls));
+        throughputLog.flush();
+
+        // The summary covers only the measured window (i.e. after the 'warmupTimeInSec')
+        if (!warmup && !measurementOver) {
+            addLatencyHistogram.add(addLatency);
+            commitLatencyHistogram.add(commitLatency);
+            mergeStallHistogram.add(mergeStall);
+            intervalDocsPerSecHistogram.recordValue(Math.round(intervalSample.docsPerSec));
+            measuredDocuments += intervalDocuments;
+            measuredBytes += intervalBytes;
+            measuredTimeInNanos += intervalInNanos;
+            measuredIntervals++;
+            if (measurementTimeInSec > 0 && measuredIntervals >= measurementTimeInSec) {
+                log.info("Measurement of " + measurementTimeInSec + " sec completed, stopping indexing");
+                measurementOver = true;
+            }
+        }
+    }
+
+    public void stop() {
+        metricsCollectionTimer.cancel();
+        // One last snapshot for the residue of the last (partial) interval
+        takeHistogramSnapshot();
+        addLatencyLogWriter.close();
+        commitLatencyLogWriter.close();
+        mergeStallLogWriter.close();
+        throughputLog.close();
+        printSummary();
+        writeReport();
+    }
+
+    public synchronized void printSummary() {
+        final double measuredTimeInSec = Math.max(measuredTimeInNanos, 1) / 1e9;
+        if (measuredIntervals == 0) {
+            log.warn("Indexing ended during the warmup (" + warmupTimeInSec + " sec): nothing measured");
+            return;
+        }
+        log.info(String.format("%-30s %s %d docs, %.1f MB in %.1f sec", "Indexing measurement", ":",
+                measuredDocuments, measuredBytes / 1e6, measuredTimeInSec));
+        log.info(String.format("%-30s %s %,.0f docs/s, %.1f MB/s | per interval: min %d, median %d, max %d docs/s",
+                "Indexing throughput", ":", measuredDocuments / measuredTimeInSec, measuredBytes / measuredTimeInSec / 1e6,
+                intervalDocsPerSecHistogram.getMinValue(), intervalDocsPerSecHistogram.getValueAtPercentile(50),
+                intervalDocsPerSecHistogram.getMaxValue()));
+        log.info(String.format("%-30s %s %s", "Add latency (per batch)", ":", getLatencySummary(addLatencyHistogram)));
+        log.info(String.format("%-30s %s %s", "Commit latency", ":", getLatencySummary(commitLatencyHistogram)));
+        log.info(String.format("%-30s %s %d stall(s), %.1f sec stalled in total | %s", "Merge stalls", ":",
+                mergeStallHistogram.getTotalCount(), mergeStallHistogram.getMean() * mergeStallHistogram.getTotalCount() / 1e9,
+                getLatencySummary(mergeStallHistogram)));
+    }
+
+    private static String getLatencySummary(Histogram histogram) {
+        if (histogram.getTotalCount() == 0) {
+            return "none";
+        }
+        return String.format("p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f ms (%d)",
+                histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(90) / 1e6,
+                histogram.getValueAtPercentile(99) / 1e6, histogram.getValueAtPercentile(99.9) / 1e6,
+                histogram.getMaxValue() / 1e6, histogram.getTotalCount());
+    }
+
+    public synchronized JsonObject toJson() {
+        final double measuredTimeInSec = Math.max(measuredTimeInNanos, 1) / 1e9;
+        final JsonObject report = new JsonObject();
+        report.addProperty("timestamp", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").format(new Date()));
+        report.addProperty("operation", OPERATION_NAME);
+        report.addProperty("warmupTimeInSec", warmupTimeInSec);
+        report.addProperty("measurementTimeInSec", measurementTimeInSec);
+        report.addProperty("measuredWindowInSec", measuredTimeInNanos / 1e9);
+        report.addProperty("documents", measuredDocuments);
+        report.addProperty("bytes", measuredBytes);
+        report.addProperty("docsPerSec", measuredDocuments / measuredTimeInSec);
+        report.addProperty("bytesPerSec", measuredBytes / measuredTimeInSec);
+        report.add("intervalDocsPerSec", HistogramJson.toJson(intervalDocsPerSecHistogram, 1));
+        report.add("addLatency", HistogramJson.toJson(addLatencyHistogram, HistogramJson.NANOS_PER_MILLI));
+        report.add("commitLatency", HistogramJson.toJson(commitLatencyHistogram, HistogramJson.NANOS_PER_MILLI));
+        report.add("mergeStall", HistogramJson.toJson(mergeStallHistogram, HistogramJson.NANOS_PER_MILLI));
+        report.addProperty("mergeStallFactor", mergeStallFactor);
+        report.addProperty("minMergeStallInMillis", minMergeStallInMillis);
+        report.add("timeSeries", gson.toJsonTree(intervalSamples));
+        return report;
+    }
+
+    private void writeReport() {
+        final File jsonFile = new File(LogFiles.getNonDuplicateLogName(logDir + File.separator + OPERATION_NAME + "-report.json"));
+        try (Writer writer = new BufferedWriter(Files.newBufferedWriter(jsonFile.toPath(), StandardCharsets.UTF_8))) {
+            gson.toJson(toJson(), writer);
+            log.info("Indexing report written to : " + jsonFile.getAbsolutePath());
+        } catch (IOException e) {
+            log.error("Failed to write the indexing report");
+            e.printStackTrace();
+        }
+    }
+
+    private void printConfig() {
+        log.info(String.format("%-30s %s %s", "logDir", ":", logDir));
+        log.info(String.format("%-30s %s %s", "warmupTimeInSec", ":", warmupTimeInSec));
+        log.info(String.format("%-30s %s %s", "measurementTimeInSec", ":", measurementTimeInSec > 0 ? measurementTimeInSec : "until the end of the input"));
+        log.info(String.format("%-30s %s %s", "mergeStallFactor", ":", mergeStallFactor));
+        log.info(String.format("%-30s %s %s", "minMergeStallInMillis", ":", minMergeStallInMillis));
+    }
+
+    private static HistogramLogWriter createHistogramLogWriter(String fileName) throws IOException {
+        final long now = System.currentTimeMillis();
+        final HistogramLogWriter histogramLogWriter = new HistogramLogWriter(fileName);
+        histogramLogWriter.outputLogFormatVersion();
+        histogramLogWriter.outputStartTime(now);
+        histogramLogWriter.setBaseTime(now);
+        histogramLogWriter.outputLegend();
+        return histogramLogWriter;
+    }
+}
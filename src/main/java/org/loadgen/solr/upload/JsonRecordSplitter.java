@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.upload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Splits a stream of concatenated (or newline-delimited) JSON objects into records, without parsing them: only the
+ * nesting depth is tracked, outside of strings. The scan works on the UTF-8 bytes (the structural characters are ASCII,
+ * which never appear inside a multi-byte sequence), so it is cheap enough for a single reader thread to keep several
+ * parser threads busy. Anything else than objects at the top level is skipped (as the former JsonStreamParser loop did).
+ */
+class JsonRecordSplitter {
+
+    private final InputStream inputStream;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+
+    // Record being scanned, if it spans several buffers
+    private byte[] record = new byte[4096];
+    private int recordLength;
+
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+    private long bytesRead;
+
+    JsonRecordSplitter(InputStream inputStream, int bufferSize) {
+        this.inputStream = inputStream;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * @return the next top level JSON object (UTF-8), or null at the end of the input
+     */
+    byte[] nextRecord() throws IOException {
+        while (true) {
+            if (position == limit && !fill()) {
+                return null; // an incomplete last record is dropped
+            }
+            final int start = position;
+            if (depth == 0) {
+                while (position < limit && buffer[position] != '{') {
+                    position++;
+                }
+                if (position == limit) {
+                    continue;
+                }
+            }
+            final int recordStart = depth == 0 ? position : start;
+            while (position < limit) {
+                final byte b = buffer[position++];
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '\\') {
+                        escaped = true;
+                    } else if (b == '"') {
+                        inString = false;
+                    }
+                } else if (b == '"') {
+                    inString = true;
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if ((b == '}' || b == ']') && --depth == 0) {
+                    append(recordStart, position);
+                    final byte[] completeRecord = Arrays.copyOf(record, recordLength);
+                    recordLength = 0;
+                    return completeRecord;
+                }
+            }
+            append(recordStart, position);
+        }
+    }
+
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    /** Offset in the input right after the last record returned */
+    long getOffset() {
+        return bytesRead - (limit - position);
+    }
+
+    private boolean fill() throws IOException {
+        final int read = inputStream.read(buffer);
+        if (read <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        bytesRead += read;
+        return true;
+    }
+
+    private void append(int from, int to) {
+        final int length = to - from;
+        if (recordLength + length > record.length) {
+            record = Arrays.copyOf(record, Math.max(record.length * 2, recordLength + length));
+        }
+        System.arraycopy(buffer, from, record, recordLength, length);
+        recordLength += length;
+    }
+}
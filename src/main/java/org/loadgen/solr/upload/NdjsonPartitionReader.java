@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.upload;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the records (lines) of one byte range of a newline-delimited JSON file through memory-mapped windows. The ranges
+ * of {@link #split(FileChannel, int)} start right after a newline: every line belongs to exactly one range, none is
+ * split or read twice at a boundary.
+ */
+class NdjsonPartitionReader {
+
+    private static final int MAX_WINDOW_SIZE = 1 << 30; // a mapping is limited to 2 GB
+    private static final int BOUNDARY_SCAN_SIZE = 64 * 1024;
+
+    private final FileChannel fileChannel;
+    private final long start;
+    private final long end;
+    private final int windowSize;
+
+    private MappedByteBuffer window;
+    private ByteBuffer windowView; // for the bulk copies (relative gets)
+    private long windowStart;
+    private int position;
+
+    // Line spanning two windows
+    private byte[] carry = new byte[0];
+    private int carryLength;
+
+    NdjsonPartitionReader(FileChannel fileChannel, long start, long end, int windowSize) {
+        this.fileChannel = fileChannel;
+        this.start = start;
+        this.end = end;
+        this.windowSize = Math.min(windowSize, MAX_WINDOW_SIZE);
+        this.windowStart = start;
+    }
+
+    /**
+     * @return 'numberOfPartitions' readers of contiguous ranges covering the file, each starting at the beginning of a
+     * line (a range is empty if a line is longer than the range)
+     */
+    static List<NdjsonPartitionReader> split(FileChannel fileChannel, int numberOfPartitions, int windowSize) throws IOException {
+        final long size = fileChannel.size();
+        final long[] starts = new long[numberOfPartitions + 1];
+        for (int i = 1; i < numberOfPartitions; i++) {
+            // The line starting at the nominal boundary belongs to this range if the byte before it is a newline
+            starts[i] = Math.max(starts[i - 1], nextLineStart(fileChannel, size * i / numberOfPartitions - 1, size));
+        }
+        starts[numberOfPartitions] = size;
+        final List<NdjsonPartitionReader> partitionReaders = new ArrayList<>(numberOfPartitions);
+        for (int i = 0; i < numberOfPartitions; i++) {
+            partitionReaders.add(new NdjsonPartitionReader(fileChannel, starts[i], starts[i + 1], windowSize));
+        }
+        return partitionReaders;
+    }
+
+    // Offset after the first newline at or after 'from' (the size of the file if there is none)
+    private static long nextLineStart(FileChannel fileChannel, long from, long size) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(BOUNDARY_SCAN_SIZE);
+        long offset = Math.max(from, 0);
+        while (offset < size) {
+            buffer.clear();
+            final int read = fileChannel.read(buffer, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+
+    long getStart() {
+        return start;
+    }
+
+    long getEnd() {
+        return end;
+    }
+
+    /** Bytes of the range consumed so far */
+    long getBytesRead() {
+        return window == null ? windowStart - start : windowStart + position - start;
+    }
+
+    /**
+     * @return the next non-blank line (without its line terminator), or null at the end of the range
+     */
+    byte[] nextRecord() throws IOException {
+        while (true) {
+            if (window == null || position == window.limit()) {
+                if (window != null) {
+                    windowStart += window.limit();
+                }
+                if (windowStart >= end) {
+                    window = null;
+                    if (carryLength > 0) {
+                        final byte[] lastLine = Arrays.copyOf(carry, carryLength);
+                        carryLength = 0;
+                        if (!isBlank(lastLine, 0, lastLine.length)) {
+                            return lastLine;
+                        }
+                    }
+                    windowStart = end;
+                    position = 0;
+                    return null;
+                }
+                window = fileChannel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(windowSize, end - windowStart));
+                windowView = window.duplicate();
+                position = 0;
+            }
+            final int limit = window.limit();
+            int newline = position;
+            while (newline < limit && window.get(newline) != '\n') {
+                newline++;
+            }
+            if (newline == limit) {
+                appendToCarry(position, limit);
+                position = limit;
+                continue;
+            }
+            final byte[] line;
+            if (carryLength > 0) {
+                appendToCarry(position, newline);
+                line = Arrays.copyOf(carry, carryLength);
+                carryLength = 0;
+            } else {
+                line = new byte[newline - position];
+                windowView.position(position);
+                windowView.get(line);
+            }
+            position = newline + 1;
+            if (!isBlank(line, 0, line.length)) {
+                return line;
+            }
+        }
+    }
+
+    private void appendToCarry(int from, int to) {
+        final int length = to - from;
+        if (carryLength + length > carry.length) {
+            carry = Arrays.copyOf(carry, Math.max(carry.length * 2, carryLength + length));
+        }
+        windowView.position(from);
+        windowView.get(carry, carryLength, length);
+        carryLength += length;
+    }
+
+    private static boolean isBlank(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            final byte b = bytes[i];
+            if (b != ' ' && b != '\t' && b != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
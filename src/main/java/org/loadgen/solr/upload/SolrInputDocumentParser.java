@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.upload;
+
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.apache.solr.common.SolrInputDocument;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds a SolrInputDocument straight from the tokens of a JSON object (no intermediate Map): string and number values
+ * are added as written in the input, arrays as multi-valued fields, nested objects as their JSON text, nulls are skipped.
+ */
+class SolrInputDocumentParser {
+
+    private SolrInputDocumentParser() {
+    }
+
+    static SolrInputDocument parse(byte[] record) throws IOException {
+        final JsonReader jsonReader = new JsonReader(new StringReader(new String(record, StandardCharsets.UTF_8)));
+        final SolrInputDocument solrInputDocument = new SolrInputDocument();
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            final String fieldName = jsonReader.nextName();
+            if (jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+                jsonReader.beginArray();
+                while (jsonReader.hasNext()) {
+                    addValue(solrInputDocument, fieldName, jsonReader);
+                }
+                jsonReader.endArray();
+            } else {
+                addValue(solrInputDocument, fieldName, jsonReader);
+            }
+        }
+        jsonReader.endObject();
+        return solrInputDocument;
+    }
+
+    private static void addValue(SolrInputDocument solrInputDocument, String fieldName, JsonReader jsonReader) throws IOException {
+        switch (jsonReader.peek()) {
+            case STRING:
+            case NUMBER:
+                solrInputDocument.addField(fieldName, jsonReader.nextString());
+                break;
+            case BOOLEAN:
+                solrInputDocument.addField(fieldName, jsonReader.nextBoolean());
+                break;
+            case NULL:
+                jsonReader.nextNull();
+                break;
+            default:
+                solrInputDocument.addField(fieldName, JsonParser.parseReader(jsonReader).toString());
+                break;
+        }
+    }
+}
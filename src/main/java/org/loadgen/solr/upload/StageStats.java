@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.upload;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput of one stage of the upload pipeline: items and bytes processed, and the time its threads were busy
+ * (not waiting on a queue), i.e. the stage close to 100% busy is the bottleneck.
+ */
+class StageStats {
+
+    private final String name;
+    private final String itemName;
+    private final int numberOfThreads;
+
+    private final LongAdder items = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder busyTimeInNanos = new LongAdder();
+
+    // Totals at the previous report
+    private long lastItems;
+    private long lastBytes;
+    private long lastBusyTimeInNanos;
+
+    // 'itemName' null = only bytes are counted
+    StageStats(String name, String itemName, int numberOfThreads) {
+        this.name = name;
+        this.itemName = itemName;
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    void add(long items, long bytes, long busyTimeInNanos) {
+        this.items.add(items);
+        this.bytes.add(bytes);
+        this.busyTimeInNanos.add(busyTimeInNanos);
+    }
+
+    long getItems() {
+        return items.sum();
+    }
+
+    long getBytes() {
+        return bytes.sum();
+    }
+
+    String getName() {
+        return name;
+    }
+
+    // Rates since the previous call (single caller: the reporting timer)
+    String getIntervalSummary(long intervalInNanos) {
+        final long currentItems = items.sum();
+        final long currentBytes = bytes.sum();
+        final long currentBusyTimeInNanos = busyTimeInNanos.sum();
+        final String summary = getSummary(currentItems - lastItems, currentBytes - lastBytes,
+                currentBusyTimeInNanos - lastBusyTimeInNanos, intervalInNanos);
+        lastItems = currentItems;
+        lastBytes = currentBytes;
+        lastBusyTimeInNanos = currentBusyTimeInNanos;
+        return summary;
+    }
+
+    String getTotalSummary(long durationInNanos) {
+        return getSummary(items.sum(), bytes.sum(), busyTimeInNanos.sum(), durationInNanos);
+    }
+
+    private String getSummary(long items, long bytes, long busyTimeInNanos, long durationInNanos) {
+        final double durationInSec = Math.max(durationInNanos, 1) / (double) TimeUnit.SECONDS.toNanos(1);
+        return String.format("%s%.1f MB/s | %d thread(s), %.0f%% busy",
+                itemName != null ? String.format("%,.0f %s/s, ", items / durationInSec, itemName) : "",
+                bytes / durationInSec / 1e6, numberOfThreads,
+                100.0 * busyTimeInNanos / Math.max(durationInNanos, 1) / numberOfThreads);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.upload;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Where an upload can be resumed from: everything before 'offset' (in the decompressed input) was committed, and the
+ * closest point before it the input can be restarted from (e.g. the start of its gzip member), so that a resumed upload
+ * neither re-sends nor re-parses the input before 'offset'. Written as JSON, replaced atomically.
+ */
+public class UploadCheckpoint {
+
+    private static final Gson gson = new GsonBuilder().disableJdkUnsafe().setPrettyPrinting().create();
+
+    // The input file, to detect a checkpoint of another input
+    public String inputFile;
+    public long inputLength;
+    public long inputLastModified;
+
+    public long offset;              // in the decompressed input, at a record boundary
+    public long restartCompressedOffset;   // restart point of the input: offset in the file ...
+    public long restartUncompressedOffset; // ... and in the decompressed input (<= 'offset')
+    public long documents;           // documents indexed before 'offset' (all the runs)
+    public long errors;              // documents that could not be parsed before 'offset' (failed batches are never before it)
+    public long timestampInMillis;
+
+    private UploadCheckpoint() {
+        // for Gson
+    }
+
+    UploadCheckpoint(File inputFile, long offset, long restartCompressedOffset, long restartUncompressedOffset,
+                     long documents, long errors) {
+        this.inputFile = inputFile.getAbsolutePath();
+        this.inputLength = inputFile.length();
+        this.inputLastModified = inputFile.lastModified();
+        this.offset = offset;
+        this.restartCompressedOffset = restartCompressedOffset;
+        this.restartUncompressedOffset = restartUncompressedOffset;
+        this.documents = documents;
+        this.errors = errors;
+        this.timestampInMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the checkpoint, or null if there is none
+     */
+    public static UploadCheckpoint read(File checkpointFile) throws IOException {
+        if (!checkpointFile.exists()) {
+            return null;
+        }
+        try (Reader reader = Files.newBufferedReader(checkpointFile.toPath(), StandardCharsets.UTF_8)) {
+            return gson.fromJson(reader, UploadCheckpoint.class);
+        }
+    }
+
+    public void write(File checkpointFile) throws IOException {
+        final Path temporaryFile = new File(checkpointFile.getPath() + ".tmp").toPath();
+        try (Writer writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            gson.toJson(this, writer);
+        }
+        Files.move(temporaryFile, checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** True if the checkpoint was written for this file (same name, size and modification time) */
+    public boolean isFor(File inputFile) {
+        return new File(this.inputFile).getName().equals(inputFile.getName())
+                && inputLength == inputFile.length() && inputLastModified == inputFile.lastModified();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("offset %d (%.1f MB), %d documents indexed, restart point %d in the file",
+                offset, offset / 1e6, documents, restartCompressedOffset);
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.upload;
+
+import io.airlift.compress.zstd.ZstdInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The input file of the upload, read in large blocks. A '.gz' or '.zst' file is decompressed on the fly, by a thread of
+ * its own that fills a few buffers ahead of the reader (decompression overlaps with the record splitting and parsing,
+ * no decompressed copy on disk). Reports the bytes read from the file, and the time spent in file reads and decompression.
+ * <p>
+ * An input can be opened at the offset of an {@link UploadCheckpoint}: a plain file is positioned there, a compressed
+ * one at the restart point of the checkpoint (start of its gzip member, start of a zstd file) and then decompressed up
+ * to the offset without being split or parsed.
+ */
+public class UploadInput implements Closeable {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final int READ_AHEAD_BUFFERS = 8;
+    private static final ByteBuffer END_OF_INPUT = ByteBuffer.allocate(0);
+
+    public enum Compression {
+        NONE,
+        GZIP,
+        ZSTD
+    }
+
+    private final File file;
+    private final Compression compression;
+    private final TimedInputStream fileInputStream;
+    private final InputStream inputStream;
+    private final StageStats stats;
+    private final long startOffset;
+    // Restart points of a gzip input: uncompressed offset -> compressed offset of the members seen so far
+    private final ConcurrentSkipListMap<Long, Long> gzipMemberStarts = new ConcurrentSkipListMap<>();
+
+    // Decompression thread (compressed input only)
+    private Thread decompressionThread;
+    private final AtomicLong decompressedBytes = new AtomicLong();
+    private final AtomicLong decompressionTimeInNanos = new AtomicLong();
+    private volatile IOException decompressionError;
+
+    private UploadInput(File file, Compression compression, int readBufferSizeInBytes, UploadCheckpoint resumeFrom) throws IOException {
+        this.file = file;
+        this.compression = compression;
+        this.stats = new StageStats(compression == Compression.NONE ? "input" : "input (" + compression.name().toLowerCase() + ")", null, 1);
+        this.startOffset = resumeFrom != null ? resumeFrom.offset : 0;
+        final long restartCompressedOffset = resumeFrom == null ? 0
+                : compression == Compression.NONE ? resumeFrom.offset : resumeFrom.restartCompressedOffset;
+        final long restartUncompressedOffset = resumeFrom == null ? 0
+                : compression == Compression.NONE ? resumeFrom.offset : resumeFrom.restartUncompressedOffset;
+        final FileInputStream rawFileInputStream = new FileInputStream(file);
+        rawFileInputStream.getChannel().position(restartCompressedOffset);
+        this.fileInputStream = new TimedInputStream(rawFileInputStream, compression == Compression.NONE ? stats : null);
+        switch (compression) {
+            case GZIP:
+                inputStream = startDecompression(new GzipMemberInputStream(fileInputStream, restartCompressedOffset,
+                        restartUncompressedOffset, readBufferSizeInBytes,
+                        (compressedOffset, uncompressedOffset) -> gzipMemberStarts.put(uncompressedOffset, compressedOffset)),
+                        readBufferSizeInBytes, startOffset - restartUncompressedOffset);
+                break;
+            case ZSTD:
+                inputStream = startDecompression(new ZstdInputStream(fileInputStream), readBufferSizeInBytes,
+                        startOffset - restartUncompressedOffset);
+                break;
+            default:
+                inputStream = fileInputStream;
+                break;
+        }
+    }
+
+    public static UploadInput open(File file, int readBufferSizeInBytes) throws IOException {
+        return open(file, readBufferSizeInBytes, null);
+    }
+
+    /**
+     * @param resumeFrom checkpoint of an interrupted upload of this file, null = from the start
+     */
+    public static UploadInput open(File file, int readBufferSizeInBytes, UploadCheckpoint resumeFrom) throws IOException {
+        return new UploadInput(file, getCompression(file), readBufferSizeInBytes, resumeFrom);
+    }
+
+    /** The compression of a file, from its extension */
+    public static Compression getCompression(File file) {
+        final String fileName = file.getName().toLowerCase();
+        return fileName.endsWith(".gz") ? Compression.GZIP
+                : fileName.endsWith(".zst") ? Compression.ZSTD
+                : Compression.NONE;
+    }
+
+    /**
+     * @return the (decompressed) content of the file
+     */
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /** Offset of the start of {@link #getInputStream()} in the decompressed input (> 0 if resumed) */
+    public long getStartOffset() {
+        return startOffset;
+    }
+
+    /**
+     * @return {offset in the file, offset in the decompressed input} of the closest point before 'offset' the input can
+     * be restarted from
+     */
+    long[] getRestartPoint(long offset) {
+        switch (compression) {
+            case GZIP:
+                final Map.Entry<Long, Long> memberStart = gzipMemberStarts.floorEntry(offset);
+                return memberStart == null ? new long[] {0, 0} : new long[] {memberStart.getValue(), memberStart.getKey()};
+            case ZSTD:
+                return new long[] {0, 0};
+            default:
+                return new long[] {offset, offset};
+        }
+    }
+
+    /** The restart points before a written checkpoint are not needed anymore */
+    void discardRestartPointsBefore(long uncompressedOffset) {
+        gzipMemberStarts.headMap(uncompressedOffset).clear();
+    }
+
+    StageStats getStats() {
+        return stats;
+    }
+
+    String getTotalSummary(long durationInNanos) {
+        final double durationInSec = Math.max(durationInNanos, 1) / 1e9;
+        final long bytesRead = fileInputStream.bytesRead.get();
+        String summary = String.format("%s : %.1f MB read (%.1f MB/s), file reads %.1f sec",
+                file.getName(), bytesRead / 1e6, bytesRead / 1e6 / durationInSec, fileInputStream.readTimeInNanos.get() / 1e9);
+        if (compression != Compression.NONE) {
+            summary += String.format(" | %.1f MB decompressed (x%.1f, %.1f MB/s), decompression %.1f sec",
+                    decompressedBytes.get() / 1e6, decompressedBytes.get() / (double) Math.max(bytesRead, 1),
+                    decompressedBytes.get() / 1e6 / durationInSec, decompressionTimeInNanos.get() / 1e9);
+        }
+        return summary;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (decompressionThread != null) {
+            decompressionThread.interrupt();
+        }
+        fileInputStream.close();
+    }
+
+    private InputStream startDecompression(InputStream decompressingInputStream, int bufferSizeInBytes, long bytesToSkip) {
+        final BlockingQueue<ByteBuffer> freeBuffers = new ArrayBlockingQueue<>(READ_AHEAD_BUFFERS);
+        final BlockingQueue<ByteBuffer> filledBuffers = new ArrayBlockingQueue<>(READ_AHEAD_BUFFERS + 1);
+        for (int i = 0; i < READ_AHEAD_BUFFERS; i++) {
+            freeBuffers.add(ByteBuffer.allocate(bufferSizeInBytes));
+        }
+
+        decompressionThread = new Thread(() -> {
+            try {
+                if (bytesToSkip > 0) {
+                    skip(decompressingInputStream, bytesToSkip, freeBuffers.peek().array());
+                }
+                while (true) {
+                    final ByteBuffer buffer = freeBuffers.take();
+                    buffer.clear();
+                    final long startTime = System.nanoTime();
+                    final long readTimeAtStart = fileInputStream.readTimeInNanos.get();
+                    final long bytesReadAtStart = fileInputStream.bytesRead.get();
+                    int read = 0;
+                    while (buffer.hasRemaining()
+                            && (read = decompressingInputStream.read(buffer.array(), buffer.position(), buffer.remaining())) != -1) {
+                        buffer.position(buffer.position() + read);
+                    }
+                    final long busyTimeInNanos = System.nanoTime() - startTime;
+                    decompressionTimeInNanos.addAndGet(busyTimeInNanos - (fileInputStream.readTimeInNanos.get() - readTimeAtStart));
+                    decompressedBytes.addAndGet(buffer.position());
+                    stats.add(0, fileInputStream.bytesRead.get() - bytesReadAtStart, busyTimeInNanos);
+                    buffer.flip();
+                    if (buffer.hasRemaining()) {
+                        filledBuffers.put(buffer);
+                    }
+                    if (read == -1) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                decompressionError = e;
+            } catch (RuntimeException e) {
+                // e.g. aircompressor's MalformedInputException on a corrupt frame
+                decompressionError = new IOException("Decompression failed : " + e.getMessage(), e);
+            } catch (InterruptedException e) {
+                // closed
+            } finally {
+                // (always room for it: one slot more than the buffers) the reader must never wait forever
+                filledBuffers.add(END_OF_INPUT);
+            }
+        }, "upload-decompression");
+        decompressionThread.setDaemon(true);
+        decompressionThread.start();
+
+        return new InputStream() {
+            private ByteBuffer current;
+
+            @Override
+            public int read() throws IOException {
+                final byte[] b = new byte[1];
+                return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (current == END_OF_INPUT) {
+                    return -1;
+                }
+                if (current == null || !current.hasRemaining()) {
+                    if (current != null) {
+                        freeBuffers.add(current);
+                    }
+                    try {
+                        current = filledBuffers.take();
+                    } catch (InterruptedException e) {
+                        throw new IOException("Interrupted while waiting for the decompressed input", e);
+                    }
+                    if (current == END_OF_INPUT) {
+                        if (decompressionError != null) {
+                            throw decompressionError;
+                        }
+                        return -1;
+                    }
+                }
+                final int length = Math.min(len, current.remaining());
+                current.get(b, off, length);
+                return length;
+            }
+        };
+    }
+
+    // Decompresses up to the checkpoint of a resumed upload (nothing is split or parsed)
+    private static void skip(InputStream decompressingInputStream, long bytesToSkip, byte[] scratchBuffer) throws IOException {
+        final long startTime = System.nanoTime();
+        long skipped = 0;
+        while (skipped < bytesToSkip) {
+            final int read = decompressingInputStream.read(scratchBuffer, 0, (int) Math.min(scratchBuffer.length, bytesToSkip - skipped));
+            if (read == -1) {
+                throw new EOFException("The input ends before the offset of the checkpoint (" + bytesToSkip + " bytes to skip)");
+            }
+            skipped += read;
+        }
+        log.info(String.format("Decompressed %.1f MB up to the checkpoint in %.1f sec", skipped / 1e6, (System.nanoTime() - startTime) / 1e9));
+    }
+
+    // Counts the bytes read from the file and the time spent reading them
+    private static class TimedInputStream extends FilterInputStream {
+        final AtomicLong bytesRead = new AtomicLong();
+        final AtomicLong readTimeInNanos = new AtomicLong();
+        private final StageStats stats;
+
+        TimedInputStream(InputStream inputStream, StageStats stats) {
+            super(inputStream);
+            this.stats = stats;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final long startTime = System.nanoTime();
+            final int read = super.read(b, off, len);
+            final long readTime = System.nanoTime() - startTime;
+            readTimeInNanos.addAndGet(readTime);
+            if (read > 0) {
+                bytesRead.addAndGet(read);
+            }
+            if (stats != null) {
+                stats.add(0, Math.max(read, 0), readTime);
+            }
+            return read;
+        }
+    }
+}
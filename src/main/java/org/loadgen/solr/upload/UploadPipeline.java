@@ -0,0 +1,479 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.upload;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrInputDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bulk indexing as a staged pipeline, connected by bounded queues (a full queue blocks the stage before it):
+ * <pre>
+ *   input              : the file, decompressed by a thread of its own if compressed (see {@link UploadInput})
+ *   reader (1 thread)  : splits the input into JSON records, in batches of 'batchSize'   -> record queue
+ *   parsers (N threads): builds the SolrInputDocuments of a batch with a streaming reader -> document queue
+ *   senders (M threads): sends each batch to Solr ('add')
+ * </pre>
+ * For an uncompressed newline-delimited input, {@link #runPartitioned(File, int)} replaces the single reader: N workers
+ * read and parse a byte range of the file each, and feed a sender of their own.
+ * The commits follow the {@link CommitPolicy} and the index size limit is checked by an {@link IndexSizePoller}, both
+ * from threads of their own: neither blocks the senders. With a checkpoint file, each hard commit records how far in the
+ * input everything was committed (see {@link UploadCheckpoint}): an interrupted upload can be resumed from there.
+ * The throughput of each stage (and how busy its threads are) is logged every 'reportIntervalInSec'. With an
+ * {@link IndexingMetrics}, the run is a measured benchmark (latency of the 'add's and commits, merge stalls, warmup and
+ * measured window); the indexing stops at the end of the measurement.
+ */
+public class UploadPipeline {
+    private static Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    // End of stream markers, compared by reference
+    private static final RecordBatch END_OF_RECORDS = new RecordBatch(-1, new ArrayList<>(0), -1);
+    private static final DocumentBatch END_OF_DOCUMENTS = new DocumentBatch(-1, new ArrayList<>(0), 0, -1, 0);
+
+    private final SolrClient solrClient;
+    private int numberOfParserThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private int numberOfSenderThreads = 5;
+    private int batchSize = 500;
+    private int queueCapacityInBatches = 16;
+    private int readBufferSizeInBytes = 1 << 20;
+    private CommitPolicy commitPolicy = new CommitPolicy(CommitPolicy.Type.HARD);
+    private long maxIndexSizeInBytes = Long.MAX_VALUE;
+    private int indexSizePollIntervalInSec = 5;
+    private int reportIntervalInSec = 10;
+    private IndexingMetrics indexingMetrics; // null = not measured
+    private File checkpointFile; // null = no checkpoints
+    private UploadCheckpoint resumedFrom;
+
+    private BlockingQueue<RecordBatch> recordQueue;
+    private BlockingQueue<DocumentBatch> documentQueue;
+    private UploadInput uploadInput;
+    private StageStats readerStats;
+    private StageStats parserStats;
+    private StageStats senderStats;
+    private final AtomicLong documentsIndexed = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private CheckpointTracker checkpointTracker;
+    private volatile boolean stopped;
+    private volatile boolean inputFullyRead;
+
+    public UploadPipeline(SolrClient solrClient) {
+        this.solrClient = solrClient;
+    }
+
+    public UploadPipeline setNumberOfParserThreads(int numberOfParserThreads) {
+        this.numberOfParserThreads = numberOfParserThreads;
+        return this;
+    }
+
+    public UploadPipeline setNumberOfSenderThreads(int numberOfSenderThreads) {
+        this.numberOfSenderThreads = numberOfSenderThreads;
+        return this;
+    }
+
+    public UploadPipeline setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public UploadPipeline setQueueCapacityInBatches(int queueCapacityInBatches) {
+        this.queueCapacityInBatches = queueCapacityInBatches;
+        return this;
+    }
+
+    public UploadPipeline setReadBufferSizeInBytes(int readBufferSizeInBytes) {
+        this.readBufferSizeInBytes = readBufferSizeInBytes;
+        return this;
+    }
+
+    public UploadPipeline setCommitPolicy(CommitPolicy commitPolicy) {
+        this.commitPolicy = commitPolicy;
+        return this;
+    }
+
+    public UploadPipeline setMaxIndexSizeInBytes(long maxIndexSizeInBytes) {
+        this.maxIndexSizeInBytes = maxIndexSizeInBytes;
+        return this;
+    }
+
+    public UploadPipeline setIndexSizePollIntervalInSec(int indexSizePollIntervalInSec) {
+        this.indexSizePollIntervalInSec = indexSizePollIntervalInSec;
+        return this;
+    }
+
+    public UploadPipeline setReportIntervalInSec(int reportIntervalInSec) {
+        this.reportIntervalInSec = reportIntervalInSec;
+        return this;
+    }
+
+    /**
+     * @param checkpointFile written after each hard commit
+     * @param resumedFrom    checkpoint the input was opened at (see {@link UploadInput#open(File, int, UploadCheckpoint)}),
+     *                       null = from the start
+     */
+    public UploadPipeline setCheckpoint(File checkpointFile, UploadCheckpoint resumedFrom) {
+        this.checkpointFile = checkpointFile;
+        this.resumedFrom = resumedFrom;
+        return this;
+    }
+
+    public UploadPipeline setIndexingMetrics(IndexingMetrics indexingMetrics) {
+        this.indexingMetrics = indexingMetrics;
+        return this;
+    }
+
+    /**
+     * Indexes all the JSON objects of the input (or until the index size limit is exceeded)
+     *
+     * @return the number of documents indexed
+     */
+    public long run(UploadInput uploadInput) throws InterruptedException, ExecutionException, IOException {
+        this.uploadInput = uploadInput;
+        recordQueue   = new ArrayBlockingQueue<>(queueCapacityInBatches);
+        documentQueue = new ArrayBlockingQueue<>(queueCapacityInBatches);
+        readerStats = new StageStats("reader", "records", 1);
+        parserStats = new StageStats("parsers", "docs", numberOfParserThreads);
+        senderStats = new StageStats("senders", "docs", numberOfSenderThreads);
+        if (checkpointFile != null) {
+            checkpointTracker = new CheckpointTracker(checkpointFile, uploadInput, resumedFrom);
+        }
+
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        tasks.add(() -> read(uploadInput.getInputStream()));
+        final AtomicInteger activeParsers = new AtomicInteger(numberOfParserThreads);
+        for (int i = 0; i < numberOfParserThreads; i++) {
+            tasks.add(() -> parse(activeParsers));
+        }
+        for (int i = 0; i < numberOfSenderThreads; i++) {
+            tasks.add(() -> send(documentQueue));
+        }
+        return execute(tasks);
+    }
+
+    /**
+     * Indexes an uncompressed newline-delimited JSON file (one object per line) split in 'numberOfPartitions' byte
+     * ranges: each range is memory-mapped and read and parsed by a worker of its own, which feeds a sender of its own
+     * (the reader/parser/sender threads settings are not used). No checkpoints in this mode.
+     *
+     * @return the number of documents indexed
+     */
+    public long runPartitioned(File ndjsonFile, int numberOfPartitions) throws InterruptedException, ExecutionException, IOException {
+        readerStats = new StageStats("readers (mmap)", "records", numberOfPartitions);
+        parserStats = new StageStats("parsers", "docs", numberOfPartitions);
+        senderStats = new StageStats("senders", "docs", numberOfPartitions);
+        try (FileChannel fileChannel = FileChannel.open(ndjsonFile.toPath(), StandardOpenOption.READ)) {
+            final List<NdjsonPartitionReader> partitionReaders = NdjsonPartitionReader.split(fileChannel, numberOfPartitions,
+                    readBufferSizeInBytes);
+            final AtomicInteger partitionsToRead = new AtomicInteger(numberOfPartitions);
+            final List<Callable<Void>> tasks = new ArrayList<>();
+            for (NdjsonPartitionReader partitionReader : partitionReaders) {
+                log.info(String.format("%-30s %s bytes %d to %d", "partition", ":", partitionReader.getStart(), partitionReader.getEnd()));
+                final BlockingQueue<DocumentBatch> partitionDocumentQueue =
+                        new ArrayBlockingQueue<>(Math.max(2, queueCapacityInBatches / numberOfPartitions));
+                tasks.add(() -> readAndParsePartition(partitionReader, partitionDocumentQueue, partitionsToRead));
+                tasks.add(() -> send(partitionDocumentQueue));
+            }
+            return execute(tasks);
+        }
+    }
+
+    private long execute(List<Callable<Void>> tasks) throws InterruptedException, ExecutionException, IOException {
+        printConfig();
+        if (indexingMetrics != null) {
+            indexingMetrics.start();
+        }
+        commitPolicy.start(solrClient, indexingMetrics, checkpointTracker);
+        final IndexSizePoller indexSizePoller = new IndexSizePoller(solrClient, maxIndexSizeInBytes, () -> stopped = true);
+        if (maxIndexSizeInBytes < Long.MAX_VALUE) {
+            indexSizePoller.start(indexSizePollIntervalInSec);
+        }
+
+        final long startTime = System.nanoTime();
+        final Timer progressReportingTimer = new Timer("upload-progress", true);
+        progressReportingTimer.scheduleAtFixedRate(new TimerTask() {
+            private long lastReportTime = startTime;
+
+            @Override
+            public void run() {
+                final long now = System.nanoTime();
+                printProgress(now - lastReportTime);
+                lastReportTime = now;
+            }
+        }, TimeUnit.SECONDS.toMillis(reportIntervalInSec), TimeUnit.SECONDS.toMillis(reportIntervalInSec));
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(tasks.size());
+        final List<Future<Void>> futures = new ArrayList<>();
+        for (Callable<Void> task : tasks) {
+            futures.add(executorService.submit(task));
+        }
+        executorService.shutdown();
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+        progressReportingTimer.cancel();
+        indexSizePoller.stop();
+        commitPolicy.stop();
+        if (indexingMetrics != null) {
+            indexingMetrics.stop();
+        }
+
+        final long durationInNanos = System.nanoTime() - startTime;
+        log.info(String.format("%-30s %s %d documents in %.1f sec, %d errors", "Upload pipeline done", ":",
+                documentsIndexed.get(), durationInNanos / 1e9, errors.get()));
+        if (uploadInput != null) {
+            log.info(String.format("%-30s %s %s", "input file", ":", uploadInput.getTotalSummary(durationInNanos)));
+        }
+        for (StageStats stageStats : getStageStats()) {
+            log.info(String.format("%-30s %s %s", stageStats.getName(), ":", stageStats.getTotalSummary(durationInNanos)));
+        }
+        return documentsIndexed.get();
+    }
+
+    public long getDocumentsIndexed() {
+        return documentsIndexed.get();
+    }
+
+    /** True if the whole input was read and sent (i.e. the upload was not stopped, and no batch failed to be sent) */
+    public boolean isComplete() {
+        return inputFullyRead && !stopped && failedBatches.get() == 0;
+    }
+
+    /** Writes the checkpoint of all that was sent: to be called after a (hard) commit, at the end of the run */
+    public void writeCheckpoint() {
+        if (checkpointTracker != null) {
+            checkpointTracker.write(checkpointTracker.snapshot());
+        }
+    }
+
+    private Void read(InputStream inputStream) throws InterruptedException {
+        final JsonRecordSplitter jsonRecordSplitter = new JsonRecordSplitter(inputStream, readBufferSizeInBytes);
+        final long startOffset = uploadInput.getStartOffset();
+        long sequence = 0;
+        try {
+            List<byte[]> records = new ArrayList<>(batchSize);
+            long batchStartTime = System.nanoTime();
+            long bytesReadAtBatchStart = 0;
+            byte[] record;
+            while (!stopped && (record = jsonRecordSplitter.nextRecord()) != null) {
+                records.add(record);
+                if (records.size() == batchSize) {
+                    readerStats.add(records.size(), jsonRecordSplitter.getBytesRead() - bytesReadAtBatchStart,
+                            System.nanoTime() - batchStartTime);
+                    recordQueue.put(new RecordBatch(sequence++, records, startOffset + jsonRecordSplitter.getOffset()));
+                    records = new ArrayList<>(batchSize);
+                    batchStartTime = System.nanoTime();
+                    bytesReadAtBatchStart = jsonRecordSplitter.getBytesRead();
+                }
+            }
+            if (!records.isEmpty()) {
+                readerStats.add(records.size(), jsonRecordSplitter.getBytesRead() - bytesReadAtBatchStart,
+                        System.nanoTime() - batchStartTime);
+                recordQueue.put(new RecordBatch(sequence, records, startOffset + jsonRecordSplitter.getOffset()));
+            }
+            inputFullyRead = !stopped;
+        } catch (IOException e) {
+            log.error("Error while reading the input, indexing what was read so far: " + e);
+            e.printStackTrace();
+        } finally {
+            for (int i = 0; i < numberOfParserThreads; i++) {
+                recordQueue.put(END_OF_RECORDS);
+            }
+        }
+        return null;
+    }
+
+    private Void parse(AtomicInteger activeParsers) throws InterruptedException {
+        try {
+            RecordBatch recordBatch;
+            while ((recordBatch = recordQueue.take()) != END_OF_RECORDS) {
+                if (stopped) continue;
+                documentQueue.put(parseBatch(recordBatch));
+            }
+        } finally {
+            if (activeParsers.decrementAndGet() == 0) {
+                for (int i = 0; i < numberOfSenderThreads; i++) {
+                    documentQueue.put(END_OF_DOCUMENTS);
+                }
+            }
+        }
+        return null;
+    }
+
+    private DocumentBatch parseBatch(RecordBatch recordBatch) {
+        final List<byte[]> records = recordBatch.records;
+        final long parseStartTime = System.nanoTime();
+        final List<SolrInputDocument> documents = new ArrayList<>(records.size());
+        long bytes = 0;
+        int parseErrors = 0;
+        for (byte[] record : records) {
+            bytes += record.length;
+            try {
+                documents.add(SolrInputDocumentParser.parse(record));
+            } catch (IOException | RuntimeException e) {
+                errors.incrementAndGet();
+                parseErrors++;
+                log.info("Error while parsing doc: " + e);
+            }
+        }
+        parserStats.add(documents.size(), bytes, System.nanoTime() - parseStartTime);
+        return new DocumentBatch(recordBatch.sequence, documents, bytes, recordBatch.endOffset, parseErrors);
+    }
+
+    // Partitioned mode: reads and parses the records of one byte range, for the sender of the partition
+    private Void readAndParsePartition(NdjsonPartitionReader partitionReader, BlockingQueue<DocumentBatch> partitionDocumentQueue,
+                                       AtomicInteger partitionsToRead) throws InterruptedException {
+        try {
+            List<byte[]> records = new ArrayList<>(batchSize);
+            long batchStartTime = System.nanoTime();
+            long bytesReadAtBatchStart = 0;
+            byte[] record;
+            while (!stopped && (record = partitionReader.nextRecord()) != null) {
+                records.add(record);
+                if (records.size() == batchSize) {
+                    readerStats.add(records.size(), partitionReader.getBytesRead() - bytesReadAtBatchStart,
+                            System.nanoTime() - batchStartTime);
+                    partitionDocumentQueue.put(parseBatch(new RecordBatch(-1, records, -1)));
+                    records = new ArrayList<>(batchSize);
+                    batchStartTime = System.nanoTime();
+                    bytesReadAtBatchStart = partitionReader.getBytesRead();
+                }
+            }
+            if (!records.isEmpty()) {
+                readerStats.add(records.size(), partitionReader.getBytesRead() - bytesReadAtBatchStart,
+                        System.nanoTime() - batchStartTime);
+                partitionDocumentQueue.put(parseBatch(new RecordBatch(-1, records, -1)));
+            }
+            if (partitionsToRead.decrementAndGet() == 0) {
+                inputFullyRead = !stopped;
+            }
+        } catch (IOException e) {
+            log.error("Error while reading the partition " + partitionReader.getStart() + "-" + partitionReader.getEnd()
+                    + ", indexing what was read so far: " + e);
+            e.printStackTrace();
+        } finally {
+            partitionDocumentQueue.put(END_OF_DOCUMENTS);
+        }
+        return null;
+    }
+
+    private Void send(BlockingQueue<DocumentBatch> senderQueue) throws InterruptedException {
+        final int commitWithinInMillis = commitPolicy.getCommitWithinInMillis();
+        DocumentBatch documentBatch;
+        while ((documentBatch = senderQueue.take()) != END_OF_DOCUMENTS) {
+            final List<SolrInputDocument> documents = documentBatch.documents;
+            if (stopped) continue;
+            if (documents.isEmpty()) {
+                onBatchCompleted(documentBatch, 0, documentBatch.parseErrors);
+                continue;
+            }
+            final long sendStartTime = System.nanoTime();
+            try {
+                solrClient.add(documents, commitWithinInMillis);
+            } catch (SolrServerException | IOException | RuntimeException e) {
+                errors.addAndGet(documents.size());
+                log.info("Error while indexing a batch of " + documents.size() + " docs: " + e);
+                failedBatches.incrementAndGet();
+                if (checkpointTracker != null) {
+                    checkpointTracker.onBatchFailed(documentBatch.sequence);
+                }
+                continue;
+            }
+            final long sendTimeInNanos = System.nanoTime() - sendStartTime;
+            senderStats.add(documents.size(), documentBatch.inputBytes, sendTimeInNanos);
+            if (indexingMetrics != null) {
+                indexingMetrics.recordAdd(documents.size(), documentBatch.inputBytes, sendTimeInNanos);
+                if (indexingMetrics.isMeasurementOver()) {
+                    stopped = true;
+                }
+            }
+            documentsIndexed.addAndGet(documents.size());
+            onBatchCompleted(documentBatch, documents.size(), documentBatch.parseErrors);
+            commitPolicy.onAdded(documents.size(), documentBatch.inputBytes);
+        }
+        return null;
+    }
+
+    private void onBatchCompleted(DocumentBatch documentBatch, long documents, long errors) {
+        if (checkpointTracker != null) {
+            checkpointTracker.onBatchCompleted(documentBatch.sequence, documentBatch.endOffset, documents, errors);
+        }
+    }
+
+    private void printProgress(long intervalInNanos) {
+        if (recordQueue != null) {
+            log.info(String.format("%-30s %s %d docs indexed, %d errors | queued batches: %d records, %d documents",
+                    "Upload progress", ":", documentsIndexed.get(), errors.get(), recordQueue.size(), documentQueue.size()));
+        } else {
+            log.info(String.format("%-30s %s %d docs indexed, %d errors", "Upload progress", ":", documentsIndexed.get(), errors.get()));
+        }
+        for (StageStats stageStats : getStageStats()) {
+            log.info(String.format("%-30s %s %s", stageStats.getName(), ":", stageStats.getIntervalSummary(intervalInNanos)));
+        }
+    }
+
+    private StageStats[] getStageStats() {
+        return uploadInput != null ? new StageStats[] {uploadInput.getStats(), readerStats, parserStats, senderStats}
+                : new StageStats[] {readerStats, parserStats, senderStats};
+    }
+
+    private void printConfig() {
+        log.info(String.format("%-30s %s %s", "parserThreads", ":", numberOfParserThreads));
+        log.info(String.format("%-30s %s %s", "senderThreads", ":", numberOfSenderThreads));
+        log.info(String.format("%-30s %s %s", "batchSize", ":", batchSize));
+        log.info(String.format("%-30s %s %s", "queueCapacityInBatches", ":", queueCapacityInBatches));
+        log.info(String.format("%-30s %s %s", "maxIndexSizeInBytes", ":", maxIndexSizeInBytes));
+    }
+}
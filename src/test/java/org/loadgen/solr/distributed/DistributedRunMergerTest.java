@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.distributed;
+
+import org.HdrHistogram.Histogram;
+import org.loadgen.solr.BenchConfig;
+import org.loadgen.solr.PhaseMetrics;
+import org.loadgen.solr.report.BenchmarkReport;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Two fake agents of a continuous run: a 3 sec warmup ('select_warmup') then a 5 sec measurement ('select'), 10
+ * requests per agent and per 1 sec interval, the second agent waiting 0.6 sec longer for its last requests.
+ */
+public class DistributedRunMergerTest {
+
+    private static final long START_EPOCH_MILLIS = 1_700_000_000_000L;
+    private static final int WARMUP_SEC = 3;
+    private static final int MEASUREMENT_SEC = 5;
+    private static final int REQUESTS_PER_INTERVAL = 10;
+
+    @Test
+    public void testContinuousRunOfTwoAgents() {
+        final DistributedRunMerger distributedRunMerger = new DistributedRunMerger(START_EPOCH_MILLIS);
+        for (String agentName : new String[] {"agent#0", "agent#1"}) {
+            for (int second = 0; second < WARMUP_SEC + MEASUREMENT_SEC; second++) {
+                final boolean inWarmup = second < WARMUP_SEC;
+                final Histogram histogram = getIntervalHistogram(second, inWarmup ? 1 : 5);
+                distributedRunMerger.onInterval(inWarmup ? "select_warmup" : "select",
+                        histogram.getStartTimeStamp(), histogram.getEndTimeStamp(), histogram, histogram, histogram);
+            }
+            final double lastRequestsWaitInSec = "agent#1".equals(agentName) ? 0.6 : 0;
+            distributedRunMerger.onPhaseDone(agentName, "warmup", "select_warmup", 10,
+                    START_EPOCH_MILLIS / 1000.0, START_EPOCH_MILLIS / 1000.0 + WARMUP_SEC,
+                    WARMUP_SEC * REQUESTS_PER_INTERVAL, 0, false, WARMUP_SEC, 0, new Histogram(2));
+            distributedRunMerger.onPhaseDone(agentName, "measurement", "select", 10,
+                    START_EPOCH_MILLIS / 1000.0 + WARMUP_SEC,
+                    START_EPOCH_MILLIS / 1000.0 + WARMUP_SEC + MEASUREMENT_SEC + lastRequestsWaitInSec,
+                    MEASUREMENT_SEC * REQUESTS_PER_INTERVAL, 0, false, MEASUREMENT_SEC, 1, new Histogram(2));
+        }
+
+        final BenchConfig benchConfig = new BenchConfig();
+        benchConfig.benchmarkMeasurementSkipDuration = 2;
+        final BenchmarkReport benchmarkReport = distributedRunMerger.toReport(benchConfig);
+
+        // The skip duration does not apply to the warmup, which gets its own intervals
+        final PhaseMetrics warmup = benchmarkReport.getPhase("warmup");
+        assertEquals(2 * WARMUP_SEC * REQUESTS_PER_INTERVAL, warmup.getClientSideViewResponseTimeHistogram().getTotalCount());
+        assertEquals(WARMUP_SEC, warmup.getIntervalSamples().size());
+        assertEquals(1.0, warmup.getClientSideViewResponseTimeHistogram().getMaxValue() / 1e6, 0.1);
+
+        // The measurement: its own intervals only, the summary after the skip duration, the throughput on the scheduled window
+        final PhaseMetrics measurement = benchmarkReport.getPhase("measurement");
+        assertEquals(MEASUREMENT_SEC, measurement.getIntervalSamples().size());
+        assertEquals(2 * (MEASUREMENT_SEC - 2) * REQUESTS_PER_INTERVAL, measurement.getClientSideViewResponseTimeHistogram().getTotalCount());
+        assertEquals(5.0, measurement.getClientSideViewResponseTimeHistogram().getMinValue() / 1e6, 0.1);
+        assertEquals(MEASUREMENT_SEC, measurement.getMeasuredWindowInSec(), 1e-9);
+        assertEquals(2.0 * REQUESTS_PER_INTERVAL, measurement.getActualThroughput(), 1e-9);
+        assertEquals(20, measurement.getTargetThroughput());
+        assertEquals(2, measurement.getRequestsNotSentBeforeDeadline());
+    }
+
+    // The interval [second, second + 1[ after the start, with the response time of its requests
+    private static Histogram getIntervalHistogram(int second, long responseTimeInMillis) {
+        final Histogram histogram = new Histogram(2);
+        histogram.recordValueWithCount(TimeUnit.MILLISECONDS.toNanos(responseTimeInMillis), REQUESTS_PER_INTERVAL);
+        histogram.setStartTimeStamp(START_EPOCH_MILLIS + second * 1000L);
+        histogram.setEndTimeStamp(START_EPOCH_MILLIS + (second + 1) * 1000L);
+        return histogram;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.upload;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CheckpointTrackerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private UploadInput openPlainInput() throws IOException {
+        final File inputFile = temporaryFolder.newFile("input.json");
+        Files.write(inputFile.toPath(), new byte[1000]);
+        return UploadInput.open(inputFile, 1024);
+    }
+
+    @Test
+    public void testOnlyTheContiguousPrefixIsCheckpointed() throws IOException {
+        try (UploadInput uploadInput = openPlainInput()) {
+            final CheckpointTracker checkpointTracker = new CheckpointTracker(temporaryFolder.newFile("checkpoint"), uploadInput, null);
+            checkpointTracker.onBatchCompleted(1, 200, 10, 0);
+            checkpointTracker.onBatchCompleted(2, 300, 10, 0);
+            assertEquals(0, checkpointTracker.snapshot().offset);
+
+            checkpointTracker.onBatchCompleted(0, 100, 9, 1);
+            final UploadCheckpoint checkpoint = checkpointTracker.snapshot();
+            assertEquals(300, checkpoint.offset);
+            assertEquals(29, checkpoint.documents);
+            assertEquals(1, checkpoint.errors);
+            assertEquals(300, checkpoint.restartCompressedOffset);
+        }
+    }
+
+    @Test
+    public void testFailedBatchHoldsTheCheckpoint() throws IOException {
+        try (UploadInput uploadInput = openPlainInput()) {
+            final CheckpointTracker checkpointTracker = new CheckpointTracker(temporaryFolder.newFile("checkpoint"), uploadInput, null);
+            checkpointTracker.onBatchCompleted(0, 100, 10, 0);
+            checkpointTracker.onBatchCompleted(2, 300, 10, 0);
+            checkpointTracker.onBatchFailed(1);
+            checkpointTracker.onBatchCompleted(3, 400, 10, 0);
+            assertEquals(100, checkpointTracker.snapshot().offset);
+            assertEquals(10, checkpointTracker.snapshot().documents);
+
+            // an earlier failure moves the hold back
+            checkpointTracker.onBatchFailed(0);
+            assertEquals(100, checkpointTracker.snapshot().offset);
+        }
+    }
+
+    @Test
+    public void testResumedCountsAreCarriedOver() throws IOException {
+        final File inputFile = temporaryFolder.newFile("input.json");
+        Files.write(inputFile.toPath(), "{\"id\":\"1\"}\n{\"id\":\"2\"}\n".getBytes(StandardCharsets.UTF_8));
+        final UploadCheckpoint resumedFrom = new UploadCheckpoint(inputFile, 11, 11, 11, 1, 0);
+        try (UploadInput uploadInput = UploadInput.open(inputFile, 1024, resumedFrom)) {
+            final File checkpointFile = new File(temporaryFolder.getRoot(), "checkpoint");
+            final CheckpointTracker checkpointTracker = new CheckpointTracker(checkpointFile, uploadInput, resumedFrom);
+            checkpointTracker.onBatchCompleted(0, 22, 1, 0);
+            checkpointTracker.write(checkpointTracker.snapshot());
+
+            final UploadCheckpoint written = UploadCheckpoint.read(checkpointFile);
+            assertEquals(22, written.offset);
+            assertEquals(2, written.documents);
+        }
+        assertNull(UploadCheckpoint.read(new File(temporaryFolder.getRoot(), "none")));
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2021, Azul Systems
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ * * Neither the name of [project] nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package org.loadgen.solr.upload;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * An upload that fails to send one batch, then is resumed from its checkpoint: no document may be skipped, and the
+ * documents committed before the failed batch are not sent again.
+ */
+public class UploadResumeTest {
+
+    private static final int DOCUMENTS = 100;
+    private static final int BATCH_SIZE = 10;
+    private static final int DOCUMENTS_PER_GZIP_MEMBER = 25;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // Keeps the ids of the documents added, fails the n-th 'add' (0 = none)
+    private static class RecordingSolrClient extends SolrClient {
+        final Set<String> ids = new HashSet<>();
+        private final int failingAdd;
+        private int adds;
+
+        RecordingSolrClient(int failingAdd) {
+            this.failingAdd = failingAdd;
+        }
+
+        @Override
+        public synchronized NamedList<Object> request(SolrRequest<?> request, String collection) throws SolrServerException, IOException {
+            if (request instanceof UpdateRequest && ((UpdateRequest) request).getDocuments() != null) {
+                if (++adds == failingAdd) {
+                    throw new IOException("Simulated failure of add " + adds);
+                }
+                for (SolrInputDocument document : ((UpdateRequest) request).getDocuments()) {
+                    ids.add((String) document.getFieldValue("id"));
+                }
+            }
+            return new NamedList<>();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Test
+    public void testResumePlainInput() throws Exception {
+        final File inputFile = temporaryFolder.newFile("input.json");
+        try (OutputStream outputStream = new FileOutputStream(inputFile)) {
+            writeDocuments(outputStream, 0, DOCUMENTS);
+        }
+        // 3rd batch (documents 20-29) fails
+        final UploadCheckpoint checkpoint = failThenResume(inputFile, 3, 20);
+        assertEquals(checkpoint.offset, checkpoint.restartCompressedOffset);
+    }
+
+    @Test
+    public void testResumeMultiMemberGzipInput() throws Exception {
+        final File inputFile = temporaryFolder.newFile("input.json.gz");
+        try (OutputStream outputStream = new FileOutputStream(inputFile)) {
+            for (int first = 0; first < DOCUMENTS; first += DOCUMENTS_PER_GZIP_MEMBER) {
+                final GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream);
+                writeDocuments(gzipOutputStream, first, first + DOCUMENTS_PER_GZIP_MEMBER);
+                gzipOutputStream.finish();
+            }
+        }
+        // 7th batch (documents 60-69) fails: the checkpoint is in the 3rd member (documents 50-74)
+        final UploadCheckpoint checkpoint = failThenResume(inputFile, 7, 60);
+        assertTrue(checkpoint.restartCompressedOffset > 0);
+        assertTrue(checkpoint.restartUncompressedOffset > 0 && checkpoint.restartUncompressedOffset < checkpoint.offset);
+    }
+
+    private UploadCheckpoint failThenResume(File inputFile, int failingAdd, int firstDocumentOfFailedBatch) throws Exception {
+        final File checkpointFile = new File(temporaryFolder.getRoot(), "checkpoint");
+
+        final RecordingSolrClient failingSolrClient = new RecordingSolrClient(failingAdd);
+        try (UploadInput uploadInput = UploadInput.open(inputFile, 1024)) {
+            final UploadPipeline uploadPipeline = newUploadPipeline(failingSolrClient).setCheckpoint(checkpointFile, null);
+            uploadPipeline.run(uploadInput);
+            assertFalse(uploadPipeline.isComplete());
+            uploadPipeline.writeCheckpoint();
+        }
+        final UploadCheckpoint checkpoint = UploadCheckpoint.read(checkpointFile);
+        assertNotNull(checkpoint);
+        assertEquals(firstDocumentOfFailedBatch, checkpoint.documents);
+
+        final RecordingSolrClient resumedSolrClient = new RecordingSolrClient(0);
+        try (UploadInput uploadInput = UploadInput.open(inputFile, 1024, checkpoint)) {
+            final UploadPipeline uploadPipeline = newUploadPipeline(resumedSolrClient).setCheckpoint(checkpointFile, checkpoint);
+            uploadPipeline.run(uploadInput);
+            assertTrue(uploadPipeline.isComplete());
+        }
+
+        final Set<String> allIds = new TreeSet<>(failingSolrClient.ids);
+        allIds.addAll(resumedSolrClient.ids);
+        assertEquals(DOCUMENTS, allIds.size());
+        assertEquals(DOCUMENTS - firstDocumentOfFailedBatch, resumedSolrClient.ids.size());
+        for (int i = firstDocumentOfFailedBatch; i < firstDocumentOfFailedBatch + BATCH_SIZE; i++) {
+            assertTrue(resumedSolrClient.ids.contains("doc-" + i));
+        }
+        return checkpoint;
+    }
+
+    // One parser and one sender: the batches are sent in the order of the input; a hard commit after each batch
+    private static UploadPipeline newUploadPipeline(SolrClient solrClient) {
+        return new UploadPipeline(solrClient)
+                .setNumberOfParserThreads(1)
+                .setNumberOfSenderThreads(1)
+                .setBatchSize(BATCH_SIZE)
+                .setReadBufferSizeInBytes(1024)
+                .setCommitPolicy(new CommitPolicy(CommitPolicy.Type.HARD).setCommitEveryDocs(BATCH_SIZE));
+    }
+
+    private static void writeDocuments(OutputStream outputStream, int first, int end) throws IOException {
+        final StringBuilder documents = new StringBuilder();
+        for (int i = first; i < end; i++) {
+            documents.append("{\"id\":\"doc-").append(i).append("\",\"title\":\"title ").append(i).append("\"}\n");
+        }
+        outputStream.write(documents.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}